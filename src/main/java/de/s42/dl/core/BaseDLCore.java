@@ -54,6 +54,7 @@ import de.s42.dl.instances.ComplexTypeDLInstance;
 import de.s42.dl.instances.DefaultDLInstance;
 import de.s42.dl.instances.DefaultDLModule;
 import de.s42.dl.instances.SimpleTypeDLInstance;
+import de.s42.dl.io.binary.BinaryCoreImage;
 import de.s42.dl.parser.DLHrfReferenceResolver;
 import de.s42.dl.types.DLContainer;
 import de.s42.dl.types.DefaultDLEnum;
@@ -65,8 +66,10 @@ import de.s42.dl.validation.DLValidator;
 import de.s42.dl.validation.ValidationResult;
 import de.s42.log.LogManager;
 import de.s42.log.Logger;
+import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.*;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -90,6 +93,15 @@ public class BaseDLCore implements DLCore
 	protected final MappedList<String, DLInstance> exported = new MappedList<>();
 	protected final Map<DLType, String> shortestNames;
 
+	/**
+	 * Names of the defined annotation factories and the aliases (alias to name) in order of definition - the core
+	 * state can be exported from them (see BinaryCoreImage)
+	 */
+	protected final List<String> annotationFactoryNames = new ArrayList<>();
+	protected final Map<String, String> annotationFactoryAliases = new LinkedHashMap<>();
+	protected final Map<String, String> typeAliases = new LinkedHashMap<>();
+	protected final Map<String, String> pragmaAliases = new LinkedHashMap<>();
+
 	protected DLReferenceResolver referenceResolver;
 	protected DLPathResolver pathResolver;
 	protected boolean allowDefineTypes;
@@ -166,6 +178,18 @@ public class BaseDLCore implements DLCore
 			copy.annotationFactories.clear();
 			copy.annotationFactories.addAll(annotationFactories);
 
+			copy.annotationFactoryNames.clear();
+			copy.annotationFactoryNames.addAll(annotationFactoryNames);
+
+			copy.annotationFactoryAliases.clear();
+			copy.annotationFactoryAliases.putAll(annotationFactoryAliases);
+
+			copy.typeAliases.clear();
+			copy.typeAliases.putAll(typeAliases);
+
+			copy.pragmaAliases.clear();
+			copy.pragmaAliases.putAll(pragmaAliases);
+
 			copy.requiredModules.clear();
 			copy.requiredModules.putAll(requiredModules);
 
@@ -321,6 +345,7 @@ public class BaseDLCore implements DLCore
 		}
 
 		annotationFactories.add(name, factory);
+		annotationFactoryNames.add(name);
 
 		for (String alias : aliases) {
 			defineAliasForAnnotationFactory(alias, name);
@@ -370,10 +395,31 @@ public class BaseDLCore implements DLCore
 		}
 
 		annotationFactories.add(alias, annotationFactory);
+		annotationFactoryAliases.put(alias, name);
 
 		return annotationFactory;
 	}
 
+	/**
+	 * Names of the annotation factories in order of definition - without aliases
+	 *
+	 * @return
+	 */
+	public List<String> getAnnotationFactoryNames()
+	{
+		return Collections.unmodifiableList(annotationFactoryNames);
+	}
+
+	/**
+	 * Aliases of annotation factories mapped to the name of the factory
+	 *
+	 * @return
+	 */
+	public Map<String, String> getAnnotationFactoryAliases()
+	{
+		return Collections.unmodifiableMap(annotationFactoryAliases);
+	}
+
 	@Override
 	public boolean isAllowDefineAnnotationFactories()
 	{
@@ -424,6 +470,7 @@ public class BaseDLCore implements DLCore
 		}
 
 		types.add(alias, type);
+		typeAliases.put(alias, type.getCanonicalName());
 
 		// Update shortest names of that type
 		String shortestName = getShortestName(type);
@@ -435,6 +482,26 @@ public class BaseDLCore implements DLCore
 		return type;
 	}
 
+	/**
+	 * Aliases of types mapped to the canonical name of the type
+	 *
+	 * @return
+	 */
+	public Map<String, String> getTypeAliases()
+	{
+		return Collections.unmodifiableMap(typeAliases);
+	}
+
+	/**
+	 * Aliases of pragmas mapped to the name of the pragma
+	 *
+	 * @return
+	 */
+	public Map<String, String> getPragmaAliases()
+	{
+		return Collections.unmodifiableMap(pragmaAliases);
+	}
+
 	@Override
 	public DLPragma defineAliasForPragma(String alias, DLPragma pragma) throws InvalidCore, InvalidPragma
 	{
@@ -450,6 +517,7 @@ public class BaseDLCore implements DLCore
 		}
 
 		pragmas.add(alias, pragma);
+		pragmaAliases.put(alias, pragma.getName());
 
 		return pragma;
 	}
@@ -1403,6 +1471,36 @@ public class BaseDLCore implements DLCore
 		requiredModules.clear();
 	}
 
+	/**
+	 * Exports the state of this core to a binary image - see {@link BinaryCoreImage}
+	 *
+	 * @param file
+	 *
+	 * @throws IOException
+	 */
+	public void exportImage(Path file) throws IOException
+	{
+		assert file != null;
+
+		BinaryCoreImage.write(this, file);
+	}
+
+	/**
+	 * Defines the state of the binary image in this core without parsing - see {@link BinaryCoreImage}
+	 *
+	 * @param file
+	 *
+	 * @return the module containing the types and exported instances of the image
+	 *
+	 * @throws IOException
+	 */
+	public DLModule loadImage(Path file) throws IOException
+	{
+		assert file != null;
+
+		return BinaryCoreImage.load(this, file);
+	}
+
 	@Override
 	public DLModule parse(String moduleId) throws DLException
 	{
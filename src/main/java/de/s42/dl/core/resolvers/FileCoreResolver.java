@@ -28,11 +28,13 @@ package de.s42.dl.core.resolvers;
 import de.s42.base.files.FilesHelper;
 import de.s42.dl.DLCore;
 import de.s42.dl.DLModule;
+import de.s42.dl.core.BaseDLCore;
 import de.s42.dl.core.DLCoreResolver;
 import de.s42.dl.exceptions.DLException;
 import de.s42.dl.exceptions.InvalidModule;
 import de.s42.dl.io.DLReader;
 import de.s42.dl.io.binary.BinaryDLReader;
+import de.s42.dl.io.binary.BinaryModuleCache;
 import de.s42.dl.io.hrf.HrfDLReader;
 import de.s42.dl.language.DLFileType;
 import static de.s42.dl.util.DLHelper.recognizeFileType;
@@ -48,6 +50,21 @@ public class FileCoreResolver implements DLCoreResolver
 {
 
 	//private final static Logger log = LogManager.getLogger(FileCoreResolver.class.getName());
+	/**
+	 * Optional cache of parsed HRF modules - null if HRF files are always parsed
+	 */
+	protected final BinaryModuleCache cache;
+
+	public FileCoreResolver()
+	{
+		this(null);
+	}
+
+	public FileCoreResolver(BinaryModuleCache cache)
+	{
+		this.cache = cache;
+	}
+
 	@Override
 	public String getContent(DLCore core, String resolvedModuleId, String data) throws InvalidModule, IOException
 	{
@@ -114,6 +131,16 @@ public class FileCoreResolver implements DLCoreResolver
 			 */
 			// Use HRF reader for HRF formats
 			if (fileType == DLFileType.HRF || fileType == DLFileType.HRFMIN) {
+
+				// Load from the cache instead of parsing if possible
+				if (cache != null && core instanceof BaseDLCore) {
+					return cache.parse((BaseDLCore) core, resolvedModuleId, modulePath, () -> {
+						try (DLReader reader = new HrfDLReader(modulePath, core)) {
+							return reader.readModule();
+						}
+					});
+				}
+
 				try (DLReader reader = new HrfDLReader(modulePath, core)) {
 					return reader.readModule();
 				}
@@ -134,4 +161,9 @@ public class FileCoreResolver implements DLCoreResolver
 			core.getPathResolver().removeResolveDirectory(modulePath.getParent());
 		}
 	}
+
+	public BinaryModuleCache getCache()
+	{
+		return cache;
+	}
 }
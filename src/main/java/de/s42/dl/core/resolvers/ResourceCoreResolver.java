@@ -31,7 +31,7 @@ import de.s42.dl.DLModule;
 import de.s42.dl.core.DLCoreResolver;
 import de.s42.dl.exceptions.DLException;
 import de.s42.dl.exceptions.InvalidModule;
-import de.s42.dl.parser.DLHrfParsing;
+import de.s42.dl.parser2.DLHrfParsing2;
 import java.io.IOException;
 import java.util.Optional;
 
@@ -99,7 +99,7 @@ public class ResourceCoreResolver implements DLCoreResolver
 				throw new InvalidModule("Resource " + resolvedModuleId + " could not be loaded");
 			}
 
-			return DLHrfParsing.parse(core, resolvedModuleId, res.get());
+			return DLHrfParsing2.parse(core, resolvedModuleId, res.get());
 		} catch (IOException ex) {
 			throw new InvalidModule("Error loading module from resource - " + ex.getMessage(), ex);
 		}
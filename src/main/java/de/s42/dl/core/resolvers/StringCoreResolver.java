@@ -30,7 +30,7 @@ import de.s42.dl.DLModule;
 import de.s42.dl.core.DLCoreResolver;
 import de.s42.dl.exceptions.DLException;
 import de.s42.dl.exceptions.InvalidModule;
-import de.s42.dl.parser.DLHrfParsing;
+import de.s42.dl.parser2.DLHrfParsing2;
 import java.io.IOException;
 
 /**
@@ -69,6 +69,6 @@ public class StringCoreResolver implements DLCoreResolver
 		assert moduleId != null;
 		assert data != null;
 
-		return DLHrfParsing.parse(core, moduleId, data);
+		return DLHrfParsing2.parse(core, moduleId, data);
 	}
 }
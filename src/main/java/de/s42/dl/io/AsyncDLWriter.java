@@ -0,0 +1,406 @@
+// <editor-fold desc="The MIT License" defaultstate="collapsed">
+/*
+ * The MIT License
+ * 
+ * Copyright 2022 Studio 42 GmbH ( https://www.s42m.de ).
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+//</editor-fold>
+package de.s42.dl.io;
+
+import de.s42.dl.DLInstance;
+import de.s42.dl.DLPragma;
+import de.s42.dl.DLType;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Decorates a DLWriter and writes on a dedicated writer thread. Producers only enqueue into a bounded queue - they
+ * block if it is full (backpressure). Java objects get converted by the decorated writer on the writer thread, so
+ * they must not be modified after they got written. The first failure of the decorated writer is reported by all
+ * following calls and by the flush and close futures. If the writer thread ends without close - for example when
+ * interrupted - the decorated writer gets closed and all pending and following calls fail. Writes concurrent to close
+ * are not supported.
+ *
+ * @author Benjamin Schiller
+ */
+public class AsyncDLWriter implements DLWriter
+{
+
+	public final static int DEFAULT_QUEUE_CAPACITY = 1024;
+
+	/**
+	 * Max count of queued commands taken by the writer thread at once
+	 */
+	public final static int DEFAULT_BATCH_SIZE = 64;
+
+	@FunctionalInterface
+	protected interface Operation
+	{
+
+		public void apply(DLWriter writer) throws IOException;
+	}
+
+	protected static class Command
+	{
+
+		protected final Operation operation;
+
+		/**
+		 * Completed after the operation - is null for writes
+		 */
+		protected final CompletableFuture<Void> completion;
+
+		/**
+		 * The writer thread ends after this command
+		 */
+		protected final boolean close;
+
+		protected Command(Operation operation, CompletableFuture<Void> completion, boolean close)
+		{
+			assert operation != null;
+
+			this.operation = operation;
+			this.completion = completion;
+			this.close = close;
+		}
+	}
+
+	protected final DLWriter writer;
+	protected final BlockingQueue<Command> queue;
+	protected final int batchSize;
+	protected final Thread thread;
+
+	/**
+	 * First failure of the decorated writer - following writes are skipped
+	 */
+	protected volatile IOException failure;
+
+	protected volatile CompletableFuture<Void> closeFuture;
+
+	/**
+	 * Set once the writer thread ended - commands are not taken from the queue anymore
+	 */
+	protected volatile boolean terminated;
+
+	public AsyncDLWriter(DLWriter writer)
+	{
+		this(writer, DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE);
+	}
+
+	public AsyncDLWriter(DLWriter writer, int queueCapacity, int batchSize)
+	{
+		assert writer != null;
+		assert queueCapacity > 0;
+		assert batchSize > 0;
+
+		this.writer = writer;
+		this.batchSize = batchSize;
+		queue = new ArrayBlockingQueue<>(queueCapacity);
+
+		// a daemon as the thread would keep the vm alive if the writer does not get closed
+		thread = new Thread(this::run, "AsyncDLWriter");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	protected void run()
+	{
+		List<Command> batch = new ArrayList<>(batchSize);
+		boolean running = true;
+
+		try {
+			while (running) {
+
+				try {
+					batch.add(queue.take());
+				} catch (InterruptedException ex) {
+					fail(new InterruptedIOException("Writer thread got interrupted"));
+					return;
+				}
+				queue.drainTo(batch, batchSize - 1);
+
+				for (Command command : batch) {
+					execute(command);
+					running &= !command.close;
+				}
+
+				batch.clear();
+			}
+		} finally {
+			terminate(running);
+		}
+	}
+
+	/**
+	 * Ends the writer thread - closes the decorated writer if it was not closed by a close command and fails all
+	 * commands left in the queue. Commands put after the queue got drained are rejected by put.
+	 *
+	 * @param closeWriter true if the decorated writer was not closed yet
+	 */
+	protected void terminate(boolean closeWriter)
+	{
+		if (closeWriter) {
+			fail(new IOException("Writer thread ended before close"));
+
+			try {
+				writer.close();
+			} catch (Throwable ex) {
+				// the failure ending the thread is reported
+			}
+		}
+
+		terminated = true;
+
+		List<Command> remaining = new ArrayList<>();
+		queue.drainTo(remaining);
+
+		for (Command command : remaining) {
+			reject(command);
+		}
+	}
+
+	protected void execute(Command command)
+	{
+		assert command != null;
+
+		try {
+			// the decorated writer gets closed even after a failure
+			if (failure == null || command.close) {
+				command.operation.apply(writer);
+			}
+		} catch (IOException ex) {
+			fail(ex);
+		} catch (Throwable ex) {
+			// also errors like StackOverflowError on deeply nested instances must not end the writer thread
+			fail(new IOException("Error writing - " + ex.getMessage(), ex));
+		}
+
+		if (command.completion != null) {
+			IOException currentFailure = failure;
+			if (currentFailure != null) {
+				command.completion.completeExceptionally(currentFailure);
+			} else {
+				command.completion.complete(null);
+			}
+		}
+	}
+
+	protected void fail(IOException ex)
+	{
+		assert ex != null;
+
+		if (failure == null) {
+			failure = ex;
+		}
+	}
+
+	protected IOException createEndedException()
+	{
+		IOException currentFailure = failure;
+		if (currentFailure != null) {
+			return new IOException("Writer thread ended - " + currentFailure.getMessage(), currentFailure);
+		}
+
+		return new IOException("Writer is closed");
+	}
+
+	/**
+	 * Fails the command as the writer thread ended
+	 *
+	 * @param command
+	 */
+	protected void reject(Command command)
+	{
+		assert command != null;
+
+		if (command.completion != null) {
+			command.completion.completeExceptionally(createEndedException());
+		}
+	}
+
+	protected void enqueue(Command command) throws IOException
+	{
+		assert command != null;
+
+		IOException currentFailure = failure;
+		if (currentFailure != null) {
+			throw new IOException("Writer failed before - " + currentFailure.getMessage(), currentFailure);
+		}
+
+		if (closeFuture != null) {
+			throw new IOException("Writer is closed");
+		}
+
+		put(command);
+	}
+
+	/**
+	 * Puts the command into the queue - rejects it if the writer thread ended. The thread marks itself terminated
+	 * before draining the queue the last time, so a command put afterwards is removed here again.
+	 *
+	 * @param command
+	 *
+	 * @throws IOException if the writer thread ended and the command is a write
+	 */
+	protected void put(Command command) throws IOException
+	{
+		assert command != null;
+
+		if (terminated) {
+			rejectPut(command);
+			return;
+		}
+
+		try {
+			queue.put(command);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the queue");
+		}
+
+		if (terminated && queue.remove(command)) {
+			rejectPut(command);
+		}
+	}
+
+	protected void rejectPut(Command command) throws IOException
+	{
+		assert command != null;
+
+		if (command.completion == null) {
+			throw createEndedException();
+		}
+
+		reject(command);
+	}
+
+	protected static void await(CompletableFuture<Void> future) throws IOException
+	{
+		assert future != null;
+
+		try {
+			future.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the writer");
+		} catch (ExecutionException ex) {
+			throw new IOException(ex.getCause().getMessage(), ex.getCause());
+		}
+	}
+
+	@Override
+	public void write(DLPragma pragma) throws IOException
+	{
+		assert pragma != null;
+
+		enqueue(new Command((w) -> w.write(pragma), null, false));
+	}
+
+	@Override
+	public void write(DLType type) throws IOException
+	{
+		assert type != null;
+
+		enqueue(new Command((w) -> w.write(type), null, false));
+	}
+
+	@Override
+	public void write(DLInstance instance) throws IOException
+	{
+		assert instance != null;
+
+		enqueue(new Command((w) -> w.write(instance), null, false));
+	}
+
+	@Override
+	public void write(Object instance) throws IOException
+	{
+		assert instance != null;
+
+		enqueue(new Command((w) -> w.write(instance), null, false));
+	}
+
+	/**
+	 * Flushes the decorated writer after all commands queued before
+	 *
+	 * @return completes once flushed or exceptionally with the first failure
+	 *
+	 * @throws IOException
+	 */
+	public CompletableFuture<Void> flushAsync() throws IOException
+	{
+		if (closeFuture != null) {
+			throw new IOException("Writer is closed");
+		}
+
+		// flushes are queued even after a failure - it gets reported by the future
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		put(new Command(DLWriter::flush, future, false));
+		return future;
+	}
+
+	/**
+	 * Closes the decorated writer after all commands queued before and ends the writer thread
+	 *
+	 * @return completes once closed or exceptionally with the first failure
+	 *
+	 * @throws IOException
+	 */
+	public CompletableFuture<Void> closeAsync() throws IOException
+	{
+		CompletableFuture<Void> future;
+
+		synchronized (this) {
+			if (closeFuture != null) {
+				return closeFuture;
+			}
+			closeFuture = new CompletableFuture<>();
+			future = closeFuture;
+		}
+
+		put(new Command(DLWriter::close, future, true));
+
+		return future;
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		await(flushAsync());
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		await(closeAsync());
+	}
+
+	public DLWriter getWriter()
+	{
+		return writer;
+	}
+}
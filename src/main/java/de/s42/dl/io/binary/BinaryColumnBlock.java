@@ -0,0 +1,642 @@
+// <editor-fold desc="The MIT License" defaultstate="collapsed">
+/*
+ * The MIT License
+ * 
+ * Copyright 2022 Studio 42 GmbH ( https://www.s42m.de ).
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+//</editor-fold>
+package de.s42.dl.io.binary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rows of top level instances of one type stored column wise. Each column is a contiguous typed vector, so single
+ * columns can be scanned, projected and aggregated without creating instances.
+ * Layout (big endian): row count, column count, then per column its name symbol (0 for the instance names), kind,
+ * data length, a presence bitmap and the values - 4/8 bytes per row for numbers, a bitmap for booleans and row count +
+ * 1 offsets followed by the UTF-8 data for strings. Values of absent rows are 0.
+ *
+ * @author Benjamin Schiller
+ */
+public final class BinaryColumnBlock
+{
+
+	public final static byte KIND_INT = 1;
+	public final static byte KIND_LONG = 2;
+	public final static byte KIND_FLOAT = 3;
+	public final static byte KIND_DOUBLE = 4;
+	public final static byte KIND_BOOLEAN = 5;
+	public final static byte KIND_STRING = 6;
+
+	/**
+	 * Name symbol of the column containing the instance names
+	 */
+	public final static int NAME_COLUMN = 0;
+
+	private final ByteBuffer data;
+	private final int rowCount;
+	private final int[] nameIds;
+	private final byte[] kinds;
+	private final int[] valueOffsets;
+	private final int bitmapSize;
+
+	private String typeName;
+	private String[] columnNames;
+
+	/**
+	 * Parses the column headers of the block - the values stay in data
+	 *
+	 * @param data is not modified, the block reads from a duplicate
+	 *
+	 * @throws IOException if the block is corrupted
+	 */
+	public BinaryColumnBlock(ByteBuffer data) throws IOException
+	{
+		assert data != null;
+
+		this.data = data.slice();
+
+		if (this.data.remaining() < 8) {
+			throw new IOException("Source corrupted - column block is too short");
+		}
+
+		rowCount = this.data.getInt(0);
+		int columnCount = this.data.getInt(4);
+
+		if (rowCount < 0 || columnCount < 0) {
+			throw new IOException("Source corrupted - negative column block size");
+		}
+
+		bitmapSize = (rowCount + 7) / 8;
+		nameIds = new int[columnCount];
+		kinds = new byte[columnCount];
+		valueOffsets = new int[columnCount];
+
+		int position = 8;
+		for (int c = 0; c < columnCount; ++c) {
+
+			if (this.data.limit() - position < 9) {
+				throw new IOException("Source corrupted - column header " + c + " is truncated");
+			}
+
+			nameIds[c] = this.data.getInt(position);
+			kinds[c] = this.data.get(position + 4);
+			int length = this.data.getInt(position + 5);
+			position += 9;
+
+			if (kinds[c] < KIND_INT || kinds[c] > KIND_STRING) {
+				throw new IOException("Source corrupted - unknown kind " + kinds[c] + " of column " + c);
+			}
+
+			if (length < bitmapSize || length > this.data.limit() - position) {
+				throw new IOException("Source corrupted - invalid length " + length + " of column " + c);
+			}
+
+			valueOffsets[c] = position + bitmapSize;
+			position += length;
+		}
+	}
+
+	/**
+	 * Returns the kind of a value storable in a column or 0 if it can not be stored
+	 *
+	 * @param value
+	 *
+	 * @return
+	 */
+	public static byte getKind(Object value)
+	{
+		if (value instanceof Integer) {
+			return KIND_INT;
+		}
+		if (value instanceof Long) {
+			return KIND_LONG;
+		}
+		if (value instanceof Float) {
+			return KIND_FLOAT;
+		}
+		if (value instanceof Double) {
+			return KIND_DOUBLE;
+		}
+		if (value instanceof Boolean) {
+			return KIND_BOOLEAN;
+		}
+		if (value instanceof String) {
+			return KIND_STRING;
+		}
+
+		return 0;
+	}
+
+	void resolveNames(String typeName, String[] columnNames)
+	{
+		assert typeName != null;
+		assert columnNames != null;
+		assert columnNames.length == nameIds.length;
+
+		this.typeName = typeName;
+		this.columnNames = columnNames;
+	}
+
+	public String getTypeName()
+	{
+		return typeName;
+	}
+
+	public int getRowCount()
+	{
+		return rowCount;
+	}
+
+	public int getColumnCount()
+	{
+		return nameIds.length;
+	}
+
+	public int getColumnNameId(int column)
+	{
+		return nameIds[column];
+	}
+
+	/**
+	 * Returns the attribute name of the column or null for the name column - names are known for blocks returned by
+	 * {@link BinaryDLReader#readColumnBlock()}
+	 *
+	 * @param column
+	 *
+	 * @return
+	 */
+	public String getColumnName(int column)
+	{
+		if (columnNames == null) {
+			return null;
+		}
+
+		return columnNames[column];
+	}
+
+	public byte getColumnKind(int column)
+	{
+		return kinds[column];
+	}
+
+	/**
+	 * Returns the column of the attribute or -1 if the block does not contain it
+	 *
+	 * @param attributeName
+	 *
+	 * @return
+	 */
+	public int findColumn(String attributeName)
+	{
+		assert attributeName != null;
+
+		if (columnNames == null) {
+			return -1;
+		}
+
+		for (int c = 0; c < columnNames.length; ++c) {
+			if (attributeName.equals(columnNames[c])) {
+				return c;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the column containing the instance names or -1
+	 *
+	 * @return
+	 */
+	public int findNameColumn()
+	{
+		for (int c = 0; c < nameIds.length; ++c) {
+			if (nameIds[c] == NAME_COLUMN) {
+				return c;
+			}
+		}
+
+		return -1;
+	}
+
+	public boolean isPresent(int column, int row)
+	{
+		assert row >= 0 && row < rowCount;
+
+		int bitmapOffset = valueOffsets[column] - bitmapSize;
+		return (data.get(bitmapOffset + (row >>> 3)) & (1 << (row & 7))) != 0;
+	}
+
+	public int getInt(int column, int row)
+	{
+		assert kinds[column] == KIND_INT;
+		assert row >= 0 && row < rowCount;
+
+		return data.getInt(valueOffsets[column] + row * Integer.BYTES);
+	}
+
+	public long getLong(int column, int row)
+	{
+		assert row >= 0 && row < rowCount;
+
+		if (kinds[column] == KIND_INT) {
+			return getInt(column, row);
+		}
+
+		assert kinds[column] == KIND_LONG;
+
+		return data.getLong(valueOffsets[column] + row * Long.BYTES);
+	}
+
+	public float getFloat(int column, int row)
+	{
+		assert kinds[column] == KIND_FLOAT;
+		assert row >= 0 && row < rowCount;
+
+		return data.getFloat(valueOffsets[column] + row * Float.BYTES);
+	}
+
+	/**
+	 * Returns the value of any numeric column as double
+	 *
+	 * @param column
+	 * @param row
+	 *
+	 * @return
+	 */
+	public double getDouble(int column, int row)
+	{
+		assert row >= 0 && row < rowCount;
+
+		byte kind = kinds[column];
+
+		if (kind == KIND_DOUBLE) {
+			return data.getDouble(valueOffsets[column] + row * Double.BYTES);
+		}
+		if (kind == KIND_FLOAT) {
+			return getFloat(column, row);
+		}
+		if (kind == KIND_INT || kind == KIND_LONG) {
+			return getLong(column, row);
+		}
+
+		throw new IllegalArgumentException("Column " + column + " is not numeric");
+	}
+
+	public boolean getBoolean(int column, int row)
+	{
+		assert kinds[column] == KIND_BOOLEAN;
+		assert row >= 0 && row < rowCount;
+
+		return (data.get(valueOffsets[column] + (row >>> 3)) & (1 << (row & 7))) != 0;
+	}
+
+	/**
+	 * Returns the string or null if the row has no value
+	 *
+	 * @param column
+	 * @param row
+	 *
+	 * @return
+	 */
+	public String getString(int column, int row)
+	{
+		assert kinds[column] == KIND_STRING;
+		assert row >= 0 && row < rowCount;
+
+		if (!isPresent(column, row)) {
+			return null;
+		}
+
+		int offsets = valueOffsets[column];
+		int start = data.getInt(offsets + row * Integer.BYTES);
+		int end = data.getInt(offsets + (row + 1) * Integer.BYTES);
+		int stringData = offsets + (rowCount + 1) * Integer.BYTES;
+
+		if (data.hasArray()) {
+			return new String(data.array(), data.arrayOffset() + stringData + start, end - start, StandardCharsets.UTF_8);
+		}
+
+		return StandardCharsets.UTF_8.decode(data.slice(stringData + start, end - start)).toString();
+	}
+
+	/**
+	 * Returns the boxed value or null if the row has no value
+	 *
+	 * @param column
+	 * @param row
+	 *
+	 * @return
+	 */
+	public Object getValue(int column, int row)
+	{
+		if (!isPresent(column, row)) {
+			return null;
+		}
+
+		byte kind = kinds[column];
+
+		if (kind == KIND_INT) {
+			return getInt(column, row);
+		}
+		if (kind == KIND_LONG) {
+			return getLong(column, row);
+		}
+		if (kind == KIND_FLOAT) {
+			return getFloat(column, row);
+		}
+		if (kind == KIND_DOUBLE) {
+			return getDouble(column, row);
+		}
+		if (kind == KIND_BOOLEAN) {
+			return getBoolean(column, row);
+		}
+
+		return getString(column, row);
+	}
+
+	/**
+	 * Returns the count of rows having a value in the column
+	 *
+	 * @param column
+	 *
+	 * @return
+	 */
+	public int count(int column)
+	{
+		int result = 0;
+		for (int row = 0; row < rowCount; ++row) {
+			if (isPresent(column, row)) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Sums the present values of a numeric column - int and long columns are summed exactly, see sumLong
+	 *
+	 * @param column
+	 *
+	 * @return
+	 */
+	public double sum(int column)
+	{
+		if (kinds[column] == KIND_INT || kinds[column] == KIND_LONG) {
+			return sumLong(column);
+		}
+
+		double result = 0.0;
+		for (int row = 0; row < rowCount; ++row) {
+			if (isPresent(column, row)) {
+				result += getDouble(column, row);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Sums the present values of an int or long column exactly
+	 *
+	 * @param column
+	 *
+	 * @return
+	 *
+	 * @throws ArithmeticException if the sum overflows a long
+	 */
+	public long sumLong(int column)
+	{
+		assert kinds[column] == KIND_INT || kinds[column] == KIND_LONG;
+
+		long result = 0L;
+		for (int row = 0; row < rowCount; ++row) {
+			if (isPresent(column, row)) {
+				result = Math.addExact(result, getLong(column, row));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the min of the present values of a numeric column or NaN if no row has a value
+	 *
+	 * @param column
+	 *
+	 * @return
+	 */
+	public double min(int column)
+	{
+		double result = Double.NaN;
+		for (int row = 0; row < rowCount; ++row) {
+			if (isPresent(column, row)) {
+				double value = getDouble(column, row);
+				if (Double.isNaN(result) || value < result) {
+					result = value;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the max of the present values of a numeric column or NaN if no row has a value
+	 *
+	 * @param column
+	 *
+	 * @return
+	 */
+	public double max(int column)
+	{
+		double result = Double.NaN;
+		for (int row = 0; row < rowCount; ++row) {
+			if (isPresent(column, row)) {
+				double value = getDouble(column, row);
+				if (Double.isNaN(result) || value > result) {
+					result = value;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Collects rows column wise and encodes them as block
+	 */
+	public static class Builder
+	{
+
+		private final int rowCount;
+		private final List<Integer> nameIds = new ArrayList<>();
+		private final List<Byte> kinds = new ArrayList<>();
+		private final List<Object[]> columns = new ArrayList<>();
+
+		public Builder(int rowCount)
+		{
+			assert rowCount >= 0;
+
+			this.rowCount = rowCount;
+		}
+
+		/**
+		 * Adds a column - all non null values have to be of the kind
+		 *
+		 * @param nameId
+		 * @param kind
+		 * @param values one per row, null for absent values
+		 */
+		public void addColumn(int nameId, byte kind, Object[] values)
+		{
+			assert nameId >= 0;
+			assert kind >= KIND_INT && kind <= KIND_STRING;
+			assert values != null;
+			assert values.length == rowCount;
+
+			nameIds.add(nameId);
+			kinds.add(kind);
+			columns.add(values);
+		}
+
+		public ByteBuffer build()
+		{
+			int bitmapSize = (rowCount + 7) / 8;
+
+			List<byte[][]> encodedStrings = new ArrayList<>();
+			long size = 8;
+			for (int c = 0; c < columns.size(); ++c) {
+
+				size += 9 + bitmapSize;
+				byte kind = kinds.get(c);
+
+				if (kind == KIND_STRING) {
+					Object[] values = columns.get(c);
+					byte[][] encoded = new byte[rowCount][];
+					size += (rowCount + 1) * Integer.BYTES;
+					for (int row = 0; row < rowCount; ++row) {
+						if (values[row] != null) {
+							encoded[row] = values[row].toString().getBytes(StandardCharsets.UTF_8);
+							size += encoded[row].length;
+						}
+					}
+					encodedStrings.add(encoded);
+				} else {
+					size += getValuesSize(kind, bitmapSize);
+					encodedStrings.add(null);
+				}
+			}
+
+			if (size > Integer.MAX_VALUE) {
+				throw new IllegalStateException("Column block of " + size + " bytes is too large");
+			}
+
+			ByteBuffer result = ByteBuffer.allocate((int) size);
+			result.putInt(rowCount);
+			result.putInt(columns.size());
+
+			for (int c = 0; c < columns.size(); ++c) {
+
+				Object[] values = columns.get(c);
+				byte kind = kinds.get(c);
+				int lengthPosition = result.position() + 5;
+
+				result.putInt(nameIds.get(c));
+				result.put(kind);
+				result.putInt(0);
+				int start = result.position();
+
+				// presence bitmap
+				for (int i = 0; i < bitmapSize; ++i) {
+					int bits = 0;
+					for (int bit = 0; bit < 8 && i * 8 + bit < rowCount; ++bit) {
+						if (values[i * 8 + bit] != null) {
+							bits |= 1 << bit;
+						}
+					}
+					result.put((byte) bits);
+				}
+
+				if (kind == KIND_INT) {
+					for (Object value : values) {
+						result.putInt(value != null ? (Integer) value : 0);
+					}
+				} else if (kind == KIND_LONG) {
+					for (Object value : values) {
+						result.putLong(value != null ? (Long) value : 0L);
+					}
+				} else if (kind == KIND_FLOAT) {
+					for (Object value : values) {
+						result.putFloat(value != null ? (Float) value : 0.0f);
+					}
+				} else if (kind == KIND_DOUBLE) {
+					for (Object value : values) {
+						result.putDouble(value != null ? (Double) value : 0.0);
+					}
+				} else if (kind == KIND_BOOLEAN) {
+					for (int i = 0; i < bitmapSize; ++i) {
+						int bits = 0;
+						for (int bit = 0; bit < 8 && i * 8 + bit < rowCount; ++bit) {
+							if (Boolean.TRUE.equals(values[i * 8 + bit])) {
+								bits |= 1 << bit;
+							}
+						}
+						result.put((byte) bits);
+					}
+				} else {
+					byte[][] encoded = encodedStrings.get(c);
+					int offset = 0;
+					for (int row = 0; row < rowCount; ++row) {
+						result.putInt(offset);
+						if (encoded[row] != null) {
+							offset += encoded[row].length;
+						}
+					}
+					result.putInt(offset);
+					for (byte[] value : encoded) {
+						if (value != null) {
+							result.put(value);
+						}
+					}
+				}
+
+				result.putInt(lengthPosition, result.position() - start);
+			}
+
+			return result.flip();
+		}
+
+		private long getValuesSize(byte kind, int bitmapSize)
+		{
+			if (kind == KIND_INT || kind == KIND_FLOAT) {
+				return (long) rowCount * 4;
+			}
+			if (kind == KIND_LONG || kind == KIND_DOUBLE) {
+				return (long) rowCount * 8;
+			}
+
+			return bitmapSize;
+
+		}
+	}
+}
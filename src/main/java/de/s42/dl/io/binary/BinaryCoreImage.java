@@ -0,0 +1,238 @@
+// <editor-fold desc="The MIT License" defaultstate="collapsed">
+/*
+ * The MIT License
+ * 
+ * Copyright 2022 Studio 42 GmbH ( https://www.s42m.de ).
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+//</editor-fold>
+package de.s42.dl.io.binary;
+
+import de.s42.dl.DLAnnotationFactory;
+import de.s42.dl.DLInstance;
+import de.s42.dl.DLModule;
+import de.s42.dl.DLPragma;
+import de.s42.dl.DLType;
+import de.s42.dl.core.BaseDLCore;
+import de.s42.dl.exceptions.InvalidInstance;
+import de.s42.dl.instances.DefaultDLInstance;
+import de.s42.dl.util.DLHelper;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Binary image of the state of a core - annotation factories, pragmas, types with hierarchy, attributes and
+ * annotations, enums, aliases and exported DL instances. Loading an image defines this state in a single pass over the
+ * binary opcodes without lexing or parsing HRF.
+ * <p>
+ * Java implemented parts (resolvers, DLType implementations and their parents, exported java objects, factories and
+ * pragmas without public default constructor) are not contained. They are provided by the core the image is loaded
+ * into (like DefaultCore) - definitions already contained in that core are kept.
+ * <p>
+ * Layout: int signature, int image version, int settings flags followed by an uncompressed DLB stream.
+ *
+ * @author Benjamin Schiller
+ */
+public final class BinaryCoreImage
+{
+
+	public final static int VERSION = 1;
+
+	public final static int HEADER_SIZE = 12;
+
+	/**
+	 * Settings flags of the core
+	 */
+	public final static int ALLOW_DEFINE_TYPES = 1;
+	public final static int ALLOW_DEFINE_ANNOTATION_FACTORIES = 2;
+	public final static int ALLOW_DEFINE_PRAGMAS = 4;
+	public final static int ALLOW_USE_PRAGMAS = 8;
+	public final static int ALLOW_USE_ASSERTS = 16;
+	public final static int ALLOW_REQUIRE = 32;
+
+	private BinaryCoreImage()
+	{
+		// never instantiated
+	}
+
+	public static void write(BaseDLCore core, Path file) throws IOException
+	{
+		assert core != null;
+		assert file != null;
+
+		write(core, new BufferedOutputStream(Files.newOutputStream(file)));
+	}
+
+	/**
+	 * Writes the image of the core - out gets closed
+	 *
+	 * @param core
+	 * @param out
+	 *
+	 * @throws IOException
+	 */
+	public static void write(BaseDLCore core, OutputStream out) throws IOException
+	{
+		assert core != null;
+		assert out != null;
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(DLHelper.BIN_IMAGE_SIGNATURE);
+		header.putInt(VERSION);
+		header.putInt(getFlags(core));
+		out.write(header.array());
+
+		try (BinaryDLWriter writer = new BinaryDLWriter(out, core)) {
+
+			for (String name : core.getAnnotationFactoryNames()) {
+				DLAnnotationFactory factory = core.getAnnotationFactory(name).orElseThrow();
+				writer.writeAnnotationFactory(name, factory);
+			}
+
+			for (DLPragma pragma : core.getPragmas()) {
+				if (BinaryDLWriter.hasDefaultConstructor(pragma)) {
+					writer.write(pragma);
+				}
+			}
+
+			for (DLType type : core.getTypes()) {
+				writer.write(type);
+			}
+
+			for (Map.Entry<String, String> alias : core.getAnnotationFactoryAliases().entrySet()) {
+				writer.writeAlias(alias.getKey(), alias.getValue());
+			}
+
+			for (Map.Entry<String, String> alias : core.getTypeAliases().entrySet()) {
+				writer.writeAlias(alias.getKey(), alias.getValue());
+			}
+
+			for (Map.Entry<String, String> alias : core.getPragmaAliases().entrySet()) {
+				writer.writeAlias(alias.getKey(), alias.getValue());
+			}
+
+			// exported java objects are bound to their core and not written
+			for (DLInstance instance : core.getExported()) {
+				if (instance.getClass() == DefaultDLInstance.class) {
+					writer.write(instance);
+				}
+			}
+		}
+	}
+
+	public static DLModule load(BaseDLCore core, Path file) throws IOException
+	{
+		assert core != null;
+		assert file != null;
+
+		return load(core, ByteBuffer.wrap(Files.readAllBytes(file)));
+	}
+
+	/**
+	 * Defines the state of the image in the core and returns the module containing the defined types and exported
+	 * instances
+	 *
+	 * @param core
+	 * @param image
+	 *
+	 * @return
+	 *
+	 * @throws IOException
+	 */
+	public static DLModule load(BaseDLCore core, ByteBuffer image) throws IOException
+	{
+		assert core != null;
+		assert image != null;
+
+		ByteBuffer in = image.duplicate();
+
+		if (in.remaining() < HEADER_SIZE) {
+			throw new IOException("Image corrupted - could not read enough bytes for header");
+		}
+
+		int signature = in.getInt();
+		if (signature != DLHelper.BIN_IMAGE_SIGNATURE) {
+			throw new IOException("Invalid image signature " + signature + " has to be " + DLHelper.BIN_IMAGE_SIGNATURE);
+		}
+
+		int version = in.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported image version " + version);
+		}
+
+		int flags = in.getInt();
+
+		DLModule module;
+		try (BinaryDLReader reader = new BinaryDLReader(in, core)) {
+			module = reader.readModule();
+		}
+
+		try {
+			for (DLInstance instance : module.getChildren()) {
+				if (!core.hasExported(instance.getName())) {
+					core.addExported(instance);
+				}
+			}
+		} catch (InvalidInstance ex) {
+			throw new IOException("Error exporting instance - " + ex.getMessage(), ex);
+		}
+
+		// settings are applied last as they may disallow the definitions above
+		core.setAllowDefineTypes((flags & ALLOW_DEFINE_TYPES) != 0);
+		core.setAllowDefineAnnotationsFactories((flags & ALLOW_DEFINE_ANNOTATION_FACTORIES) != 0);
+		core.setAllowDefinePragmas((flags & ALLOW_DEFINE_PRAGMAS) != 0);
+		core.setAllowUsePragmas((flags & ALLOW_USE_PRAGMAS) != 0);
+		core.setAllowUseAsserts((flags & ALLOW_USE_ASSERTS) != 0);
+		core.setAllowRequire((flags & ALLOW_REQUIRE) != 0);
+
+		return module;
+	}
+
+	static int getFlags(BaseDLCore core)
+	{
+		int flags = 0;
+
+		if (core.isAllowDefineTypes()) {
+			flags |= ALLOW_DEFINE_TYPES;
+		}
+		if (core.isAllowDefineAnnotationFactories()) {
+			flags |= ALLOW_DEFINE_ANNOTATION_FACTORIES;
+		}
+		if (core.isAllowDefinePragmas()) {
+			flags |= ALLOW_DEFINE_PRAGMAS;
+		}
+		if (core.isAllowUsePragmas()) {
+			flags |= ALLOW_USE_PRAGMAS;
+		}
+		if (core.isAllowUseAsserts()) {
+			flags |= ALLOW_USE_ASSERTS;
+		}
+		if (core.isAllowRequire()) {
+			flags |= ALLOW_REQUIRE;
+		}
+
+		return flags;
+	}
+}
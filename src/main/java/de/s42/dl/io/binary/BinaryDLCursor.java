@@ -0,0 +1,625 @@
+// <editor-fold desc="The MIT License" defaultstate="collapsed">
+/*
+ * The MIT License
+ * 
+ * Copyright 2022 Studio 42 GmbH ( https://www.s42m.de ).
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+//</editor-fold>
+package de.s42.dl.io.binary;
+
+import de.s42.dl.DLCore;
+import de.s42.dl.DLInstance;
+import de.s42.dl.parser.DefaultParsingProcessor;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Scans the top level instances of a binary module without creating instances. The cursor is a reusable view of the
+ * current instance - its attribute values are kept unboxed in slots indexed by their symbol id. Only instances
+ * requested by {@link #materialize()} get created. Instances with children, instance attributes or arrays are created
+ * while reading as their nested content has no flat view - their own attributes are accessible as well.
+ *
+ * @author Benjamin Schiller
+ */
+public class BinaryDLCursor
+{
+
+	protected final static byte VALUE_INT = 1;
+	protected final static byte VALUE_LONG = 2;
+	protected final static byte VALUE_FLOAT = 3;
+	protected final static byte VALUE_DOUBLE = 4;
+	protected final static byte VALUE_BOOLEAN = 5;
+	protected final static byte VALUE_BYTE = 6;
+	protected final static byte VALUE_SHORT = 7;
+	protected final static byte VALUE_CHAR = 8;
+	protected final static byte VALUE_OBJECT = 9;
+	protected final static byte VALUE_PACKED = 10;
+
+	/**
+	 * Receives the opcodes - type definitions and symbols are processed as usual, instance events fill the slots
+	 */
+	protected static class CursorProcessor extends DefaultParsingProcessor
+	{
+
+		protected int type;
+		protected String name;
+
+		/**
+		 * Slots by symbol id - a slot is set if its generation is the generation of the current instance
+		 */
+		protected int generation;
+		protected int[] generations = new int[64];
+		protected byte[] kinds = new byte[64];
+		protected long[] primitives = new long[64];
+		protected Object[] objects = new Object[64];
+
+		/**
+		 * Symbol ids of the set slots in order of setting
+		 */
+		protected int[] setIds = new int[16];
+		protected int setCount;
+
+		/**
+		 * True if the current instance is created by the super processor as it has nested content
+		 */
+		protected boolean forwarding;
+		protected DLInstance materialized;
+		protected boolean complete;
+
+		protected CursorProcessor(DLCore core)
+		{
+			super(core);
+
+			setRetainInstances(false);
+		}
+
+		protected void begin(int typeId, String instanceName)
+		{
+			type = typeId;
+			name = instanceName;
+			generation++;
+			setCount = 0;
+			materialized = null;
+			complete = false;
+		}
+
+		@Override
+		public void beginAnonymousInstance(int typeId) throws IOException
+		{
+			if (forwarding) {
+				super.beginAnonymousInstance(typeId);
+				return;
+			}
+
+			begin(typeId, null);
+		}
+
+		@Override
+		public void beginInstance(int typeId, String name) throws IOException
+		{
+			if (forwarding) {
+				super.beginInstance(typeId, name);
+				return;
+			}
+
+			begin(typeId, name);
+		}
+
+		@Override
+		public void endInstance() throws IOException
+		{
+			if (!forwarding) {
+				complete = true;
+				return;
+			}
+
+			boolean topLevel = frames.isEmpty() && (currentInstance != null);
+
+			super.endInstance();
+
+			if (topLevel) {
+				materialized = getLastInstance();
+				forwarding = false;
+				complete = true;
+			}
+		}
+
+		/**
+		 * Creates the current instance in the super processor with the slot values set so far
+		 *
+		 * @throws IOException
+		 */
+		protected void beginForwarding() throws IOException
+		{
+			if (forwarding) {
+				return;
+			}
+
+			// set before beginning as beginning ends the current instance
+			forwarding = true;
+
+			if (name != null) {
+				super.beginInstance(type, name);
+			} else {
+				super.beginAnonymousInstance(type);
+			}
+
+			for (int i = 0; i < setCount; ++i) {
+
+				int id = setIds[i];
+
+				if (kinds[id] == VALUE_PACKED) {
+					super.setPackedValue(id, objects[id]);
+				} else {
+					super.setValue(id, getSlotValue(id));
+				}
+			}
+		}
+
+		protected DLInstance materialize() throws IOException
+		{
+			if (materialized == null) {
+				beginForwarding();
+				endInstance();
+			}
+
+			return materialized;
+		}
+
+		@Override
+		public void beginChildren() throws IOException
+		{
+			beginForwarding();
+			super.beginChildren();
+		}
+
+		@Override
+		public void beginInstanceAttribute(int nameId) throws IOException
+		{
+			beginForwarding();
+			super.beginInstanceAttribute(nameId);
+		}
+
+		@Override
+		public void beginArrayAttribute(int nameId, int kind) throws IOException
+		{
+			beginForwarding();
+			super.beginArrayAttribute(nameId, kind);
+		}
+
+		/**
+		 * Returns true if the value is an attribute of the current top level instance
+		 *
+		 * @param nameId
+		 *
+		 * @return
+		 */
+		protected boolean isTopLevelValue(int nameId)
+		{
+			return nameId > 0 && (!forwarding || frames.isEmpty());
+		}
+
+		protected void setSlot(int nameId, byte kind, long primitive, Object object)
+		{
+			assert nameId > 0;
+
+			if (nameId >= generations.length) {
+				int length = Math.max(nameId + 1, generations.length * 2);
+				generations = Arrays.copyOf(generations, length);
+				kinds = Arrays.copyOf(kinds, length);
+				primitives = Arrays.copyOf(primitives, length);
+				objects = Arrays.copyOf(objects, length);
+			}
+
+			if (generations[nameId] != generation) {
+				generations[nameId] = generation;
+
+				if (setCount == setIds.length) {
+					setIds = Arrays.copyOf(setIds, setCount * 2);
+				}
+				setIds[setCount++] = nameId;
+			}
+
+			kinds[nameId] = kind;
+			primitives[nameId] = primitive;
+			objects[nameId] = object;
+		}
+
+		protected boolean isSet(int nameId)
+		{
+			return nameId > 0 && nameId < generations.length && generations[nameId] == generation;
+		}
+
+		protected Object getSlotValue(int nameId)
+		{
+			if (!isSet(nameId)) {
+				return null;
+			}
+
+			long primitive = primitives[nameId];
+			byte kind = kinds[nameId];
+
+			if (kind == VALUE_INT) {
+				return (int) primitive;
+			} else if (kind == VALUE_LONG) {
+				return primitive;
+			} else if (kind == VALUE_FLOAT) {
+				return (float) Double.longBitsToDouble(primitive);
+			} else if (kind == VALUE_DOUBLE) {
+				return Double.longBitsToDouble(primitive);
+			} else if (kind == VALUE_BOOLEAN) {
+				return primitive != 0;
+			} else if (kind == VALUE_BYTE) {
+				return (byte) primitive;
+			} else if (kind == VALUE_SHORT) {
+				return (short) primitive;
+			} else if (kind == VALUE_CHAR) {
+				return (char) primitive;
+			}
+
+			return objects[nameId];
+		}
+
+		protected void setPrimitive(int nameId, byte kind, long value) throws IOException
+		{
+			if (isTopLevelValue(nameId)) {
+				setSlot(nameId, kind, value, null);
+			}
+
+			if (forwarding) {
+				forwardPrimitive(nameId, kind, value);
+			}
+		}
+
+		protected void forwardPrimitive(int nameId, byte kind, long value) throws IOException
+		{
+			if (kind == VALUE_INT) {
+				super.setValue(nameId, (int) value);
+			} else if (kind == VALUE_LONG) {
+				super.setValue(nameId, value);
+			} else if (kind == VALUE_FLOAT) {
+				super.setValue(nameId, (float) Double.longBitsToDouble(value));
+			} else if (kind == VALUE_DOUBLE) {
+				super.setValue(nameId, Double.longBitsToDouble(value));
+			} else if (kind == VALUE_BOOLEAN) {
+				super.setValue(nameId, value != 0);
+			} else if (kind == VALUE_BYTE) {
+				super.setValue(nameId, (byte) value);
+			} else if (kind == VALUE_SHORT) {
+				super.setValue(nameId, (short) value);
+			} else {
+				super.setValue(nameId, (char) value);
+			}
+		}
+
+		@Override
+		public void setIntAttribute(int nameId, int value) throws IOException
+		{
+			setPrimitive(nameId, VALUE_INT, value);
+		}
+
+		@Override
+		public void setLongAttribute(int nameId, long value) throws IOException
+		{
+			setPrimitive(nameId, VALUE_LONG, value);
+		}
+
+		@Override
+		public void setFloatAttribute(int nameId, float value) throws IOException
+		{
+			setPrimitive(nameId, VALUE_FLOAT, Double.doubleToRawLongBits(value));
+		}
+
+		@Override
+		public void setDoubleAttribute(int nameId, double value) throws IOException
+		{
+			setPrimitive(nameId, VALUE_DOUBLE, Double.doubleToRawLongBits(value));
+		}
+
+		@Override
+		public void setBooleanAttribute(int nameId, boolean value) throws IOException
+		{
+			setPrimitive(nameId, VALUE_BOOLEAN, value ? 1 : 0);
+		}
+
+		@Override
+		public void setByteAttribute(int nameId, byte value) throws IOException
+		{
+			setPrimitive(nameId, VALUE_BYTE, value);
+		}
+
+		@Override
+		public void setShortAttribute(int nameId, short value) throws IOException
+		{
+			setPrimitive(nameId, VALUE_SHORT, value);
+		}
+
+		@Override
+		public void setCharAttribute(int nameId, char value) throws IOException
+		{
+			setPrimitive(nameId, VALUE_CHAR, value);
+		}
+
+		@Override
+		protected void setValue(int nameId, Object value) throws IOException
+		{
+			if (isTopLevelValue(nameId)) {
+				setSlot(nameId, VALUE_OBJECT, 0, value);
+			}
+
+			if (forwarding) {
+				super.setValue(nameId, value);
+			}
+		}
+
+		@Override
+		protected void setPackedValue(int nameId, Object value) throws IOException
+		{
+			if (isTopLevelValue(nameId)) {
+				setSlot(nameId, VALUE_PACKED, 0, value);
+			}
+
+			if (forwarding) {
+				super.setPackedValue(nameId, value);
+			}
+		}
+	}
+
+	protected final BinaryDLReader reader;
+	protected final CursorProcessor processor;
+
+	/**
+	 * True if the cursor is located on an instance
+	 */
+	protected boolean valid;
+
+	/**
+	 * The cursor has to be used from the start of the reader's stream as symbols get defined in the cursor
+	 *
+	 * @param reader
+	 * @param core
+	 */
+	public BinaryDLCursor(BinaryDLReader reader, DLCore core)
+	{
+		assert reader != null;
+		assert core != null;
+
+		this.reader = reader;
+		processor = new CursorProcessor(core);
+	}
+
+	/**
+	 * Moves to the next top level instance
+	 *
+	 * @return false if the end of the stream is reached
+	 *
+	 * @throws IOException
+	 */
+	public boolean next() throws IOException
+	{
+		processor.complete = false;
+
+		while (!processor.complete) {
+			if (!reader.readNextOpcode(processor)) {
+				valid = false;
+				return false;
+			}
+		}
+
+		valid = true;
+		return true;
+	}
+
+	/**
+	 * Creates the current instance - repeated calls return the same instance
+	 *
+	 * @return
+	 *
+	 * @throws IOException
+	 */
+	public DLInstance materialize() throws IOException
+	{
+		assertValid();
+
+		return processor.materialize();
+	}
+
+	protected void assertValid()
+	{
+		if (!valid) {
+			throw new IllegalStateException("Cursor is not located on an instance");
+		}
+	}
+
+	/**
+	 * Returns the id of the symbol or -1 if it is not defined yet - symbols are defined before their first use
+	 *
+	 * @param symbol
+	 *
+	 * @return
+	 */
+	public int getSymbolId(String symbol)
+	{
+		assert symbol != null;
+
+		return processor.getSymbolId(symbol);
+	}
+
+	public String getSymbol(int id) throws IOException
+	{
+		return processor.getSymbol(id);
+	}
+
+	/**
+	 * Returns the symbol id of the name of the type of the current instance
+	 *
+	 * @return
+	 */
+	public int getType()
+	{
+		assertValid();
+
+		return processor.type;
+	}
+
+	public String getTypeName() throws IOException
+	{
+		return getSymbol(getType());
+	}
+
+	public String getName()
+	{
+		assertValid();
+
+		return processor.name;
+	}
+
+	public boolean has(int nameId)
+	{
+		assertValid();
+
+		return processor.isSet(nameId);
+	}
+
+	/**
+	 * Returns the value of the attribute - numbers are converted, 0 is returned if the attribute is not set
+	 *
+	 * @param nameId
+	 *
+	 * @return
+	 */
+	public long getLong(int nameId)
+	{
+		assertValid();
+
+		if (!processor.isSet(nameId)) {
+			return 0L;
+		}
+
+		byte kind = processor.kinds[nameId];
+
+		if (kind == VALUE_FLOAT || kind == VALUE_DOUBLE) {
+			return (long) Double.longBitsToDouble(processor.primitives[nameId]);
+		}
+
+		if (kind == VALUE_OBJECT || kind == VALUE_PACKED) {
+			if (processor.objects[nameId] instanceof Number number) {
+				return number.longValue();
+			}
+			throw new IllegalStateException("Attribute " + nameId + " is not a number");
+		}
+
+		return processor.primitives[nameId];
+	}
+
+	public int getInt(int nameId)
+	{
+		return (int) getLong(nameId);
+	}
+
+	/**
+	 * Returns the value of the attribute - numbers are converted, 0.0 is returned if the attribute is not set
+	 *
+	 * @param nameId
+	 *
+	 * @return
+	 */
+	public double getDouble(int nameId)
+	{
+		assertValid();
+
+		if (!processor.isSet(nameId)) {
+			return 0.0;
+		}
+
+		byte kind = processor.kinds[nameId];
+
+		if (kind == VALUE_FLOAT || kind == VALUE_DOUBLE) {
+			return Double.longBitsToDouble(processor.primitives[nameId]);
+		}
+
+		if (kind == VALUE_OBJECT || kind == VALUE_PACKED) {
+			if (processor.objects[nameId] instanceof Number number) {
+				return number.doubleValue();
+			}
+			throw new IllegalStateException("Attribute " + nameId + " is not a number");
+		}
+
+		return processor.primitives[nameId];
+	}
+
+	public float getFloat(int nameId)
+	{
+		return (float) getDouble(nameId);
+	}
+
+	/**
+	 * Returns the value of the attribute - false is returned if the attribute is not set
+	 *
+	 * @param nameId
+	 *
+	 * @return
+	 */
+	public boolean getBoolean(int nameId)
+	{
+		assertValid();
+
+		if (!processor.isSet(nameId)) {
+			return false;
+		}
+
+		if (processor.kinds[nameId] == VALUE_OBJECT) {
+			return Boolean.TRUE.equals(processor.objects[nameId]);
+		}
+
+		return processor.primitives[nameId] != 0;
+	}
+
+	/**
+	 * Returns the string value of the attribute or null if it is not set
+	 *
+	 * @param nameId
+	 *
+	 * @return
+	 */
+	public String getString(int nameId)
+	{
+		assertValid();
+
+		Object value = processor.getSlotValue(nameId);
+
+		return (value != null) ? value.toString() : null;
+	}
+
+	/**
+	 * Returns the boxed value of the attribute or null if it is not set
+	 *
+	 * @param nameId
+	 *
+	 * @return
+	 */
+	public Object get(int nameId)
+	{
+		assertValid();
+
+		return processor.getSlotValue(nameId);
+	}
+}
@@ -31,21 +31,32 @@ import de.s42.dl.DLCore;
 import de.s42.dl.DLEntity;
 import de.s42.dl.DLInstance;
 import de.s42.dl.DLModule;
+import de.s42.dl.DLType;
 import de.s42.dl.io.DLReader;
+import de.s42.dl.parser.DLParsingProcessor;
 import de.s42.dl.parser.DefaultParsingProcessor;
 import de.s42.dl.parser.Opcode;
 import static de.s42.dl.parser.Opcode.*;
 import de.s42.dl.util.DLHelper;
 import java.io.IOException;
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
 
 /**
+ * Reads binary DL streams. The version given in BeginModule selects the decoder - V1 (all fixed 4 byte ints) and V2
+ * (1 byte opcodes, varints and zigzag, see {@link BinaryParsingProcessorV2}) are supported.
+ * Large uncompressed files are read in mapped windows (see {@link MappedWindows}), so their size is not limited to 2 GB.
  *
  * @author Benjamin Schiller
  */
@@ -57,18 +68,138 @@ public class BinaryDLReader implements DLReader
 	 */
 	public final static long LOAD_TOTAL_FILE_MAX_SIZE = 1000000L;
 
-	protected final ByteBuffer in;
+	/**
+	 * Max size of an opcode with its fixed size arguments - windows get remapped if less is remaining
+	 */
+	public final static int MAX_OPCODE_HEADER_SIZE = 32;
+
+	/**
+	 * Default size of the buffer refilled from a channel - it only grows temporarily for larger values
+	 */
+	public final static int DEFAULT_STREAM_BUFFER_SIZE = 1 << 16;
+
+	protected ByteBuffer in;
+
+	/**
+	 * Source of the following blocks if reading a block compressed container or null
+	 */
+	protected final BlockInflater blocks;
+
+	/**
+	 * Source of the following windows if reading a large uncompressed file or null
+	 */
+	protected final MappedWindows windows;
+
+	/**
+	 * Source of the stream if reading from a channel or null - in gets refilled from it
+	 */
+	protected final ReadableByteChannel channel;
+	protected final int streamBufferSize;
+	protected boolean channelEnded;
+
+	/**
+	 * Offset of in in the file if reading windows
+	 */
+	protected long windowOffset;
+
+	/**
+	 * Position of the signature in in if reading a given buffer
+	 */
+	protected final int streamStart;
+
+	/**
+	 * Module index for random access - gets loaded on first use
+	 */
+	protected BinaryModuleIndex index;
+	protected boolean indexLoaded;
+
+	/**
+	 * True once the definitions of the index got replayed into the core
+	 */
+	protected boolean definitionsRead;
+
+	/**
+	 * Last opcode read - is null while replaying rows of a column block
+	 */
+	protected Opcode lastOpcode;
+
+	/**
+	 * Version of the stream for random access - gets read on first use
+	 */
+	protected int streamVersion = -1;
 	protected final DefaultParsingProcessor processor;
 	protected final DLCore core;
 
-	protected final byte[] buf65536 = new byte[65536];
+	/**
+	 * Version of the stream - gets set by BeginModule, V1 is assumed until then
+	 */
+	protected int version = BinaryParsingProcessorV1.VERSION;
+
+	/**
+	 * True if the stream uses the compact encoding of V2
+	 */
+	protected boolean compact;
+
+	/**
+	 * True if binary values have been handed out as slices of in - a mapped in must not be unmapped then
+	 */
+	protected boolean slicesExposed;
+
+	/**
+	 * Column block whose rows get replayed as instances by the following opcode reads or null
+	 */
+	protected BinaryColumnBlock columnBlock;
+	protected int columnBlockType;
+	protected int columnBlockRow;
+
+	/**
+	 * True while readColumnBlock scans for the next column block - it gets handed out instead of being replayed
+	 */
+	protected boolean scanColumns;
+	protected BinaryColumnBlock scannedColumnBlock;
 
 	public BinaryDLReader(Path file, DLCore core) throws IOException
+	{
+		this(file, core, MappedWindows.DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Uncompressed files larger than LOAD_TOTAL_FILE_MAX_SIZE are read in mapped windows of windowSize
+	 *
+	 * @param file
+	 * @param core
+	 * @param windowSize
+	 *
+	 * @throws IOException
+	 */
+	public BinaryDLReader(Path file, DLCore core, int windowSize) throws IOException
 	{
 		assert file != null;
 		assert core != null;
+		assert windowSize > 0;
+
+		streamStart = 0;
+		channel = null;
+		streamBufferSize = 0;
 
-		in = getDLBFileAsByteBuffer(file);
+		if (BlockInflater.isBlockContainer(file)) {
+			windows = null;
+			blocks = new BlockInflater(file);
+			in = blocks.nextBlock();
+
+			if (in == null) {
+				blocks.close();
+				throw new IOException("Block container " + file + " is empty");
+			}
+		} else if (!ZipHelper.isArchive(file) && file.toFile().length() > LOAD_TOTAL_FILE_MAX_SIZE) {
+			blocks = null;
+			windows = new MappedWindows(file, windowSize);
+			in = windows.map(0L, 0);
+		} else {
+			blocks = null;
+			windows = null;
+			in = getDLBFileAsByteBuffer(file);
+		}
 
 		validateSignature(in);
 
@@ -82,10 +213,60 @@ public class BinaryDLReader implements DLReader
 		assert core != null;
 
 		this.in = in;
+		blocks = null;
+		windows = null;
+		channel = null;
+		streamBufferSize = 0;
+		streamStart = in.position();
+
+		validateSignature(in);
 
+		processor = new DefaultParsingProcessor(core);
+		this.core = core;
+	}
+
+	public BinaryDLReader(InputStream in, DLCore core) throws IOException
+	{
+		this(Channels.newChannel(in), core, DEFAULT_STREAM_BUFFER_SIZE);
+	}
+
+	public BinaryDLReader(ReadableByteChannel channel, DLCore core) throws IOException
+	{
+		this(channel, core, DEFAULT_STREAM_BUFFER_SIZE);
+	}
+
+	/**
+	 * Reads the uncompressed stream from the (blocking) channel through a buffer of bufferSize which gets refilled as
+	 * needed. Top level instances are not retained in the module (see setRetainInstances), so streams of any length can
+	 * be consumed with read and ready in constant memory. Random access is not supported.
+	 *
+	 * @param channel
+	 * @param core
+	 * @param bufferSize
+	 *
+	 * @throws IOException
+	 */
+	public BinaryDLReader(ReadableByteChannel channel, DLCore core, int bufferSize) throws IOException
+	{
+		assert channel != null;
+		assert core != null;
+		assert bufferSize >= MAX_OPCODE_HEADER_SIZE;
+
+		this.channel = channel;
+		streamBufferSize = bufferSize;
+		blocks = null;
+		windows = null;
+		streamStart = 0;
+		in = ByteBuffer.allocate(bufferSize).limit(0);
+
+		fill(4);
+		if (in.remaining() < 4) {
+			throw new IOException("Stream is too short to contain a signature");
+		}
 		validateSignature(in);
 
 		processor = new DefaultParsingProcessor(core);
+		processor.setRetainInstances(false);
 		this.core = core;
 	}
 
@@ -197,45 +378,282 @@ public class BinaryDLReader implements DLReader
 		return in.get() == (byte) 1;
 	}
 
-	protected String readNextString() throws IOException
+	protected void requireRemaining(int count, String kind) throws IOException
 	{
-		int length = readNextInt();
+		if (in.remaining() < count) {
+			throw new IOException("Source corrupted - could not read enough bytes for next " + kind);
+		}
+	}
 
-		if (length >= buf65536.length) {
-			throw new IOException("String is to long max is " + buf65536.length);
+	protected void beginVersion(int version) throws IOException
+	{
+		if (version == BinaryParsingProcessorV1.VERSION) {
+			compact = false;
+		} else if (version == BinaryParsingProcessorV2.VERSION) {
+			compact = true;
+		} else {
+			throw new IOException("Unsupported binary version " + version);
 		}
 
-		int bc = in.remaining();
+		this.version = version;
+	}
 
-		if (bc < length) {
-			throw new IOException("Source corrupted - could not read enough bytes for next string " + bc + " instead of " + length);
+	protected int readNextCode() throws IOException
+	{
+		if (!compact) {
+			return readNextInt();
+		}
+
+		// end of stream reached
+		if (!in.hasRemaining()) {
+			return -1;
 		}
 
-		in.get(buf65536, 0, length);
-		return new String(buf65536, 0, length);
+		return in.get() & 0xFF;
 	}
 
-	protected byte[] readNextBinary() throws IOException
+	protected int readNextId() throws IOException
 	{
-		int length = readNextInt();
+		if (!compact) {
+			return readNextInt();
+		}
 
-		if (length >= buf65536.length) {
-			throw new IOException("Binary is to long max is " + buf65536.length);
+		return BinaryHelper.getVarInt(in);
+	}
+
+	protected int readNextLength() throws IOException
+	{
+		if (!compact) {
+			return readNextInt();
 		}
 
+		return BinaryHelper.getVarInt(in);
+	}
+
+	protected int readNextIntValue() throws IOException
+	{
+		if (!compact) {
+			return readNextInt();
+		}
+
+		return BinaryHelper.decodeZigZag(BinaryHelper.getVarInt(in));
+	}
+
+	protected long readNextLongValue() throws IOException
+	{
+		if (!compact) {
+			return readNextLong();
+		}
+
+		return BinaryHelper.decodeZigZag(BinaryHelper.getVarLong(in));
+	}
+
+	/**
+	 * Maps the next window starting at the current position if in has less than count bytes remaining and the file
+	 * has more
+	 *
+	 * @param count
+	 *
+	 * @throws IOException
+	 */
+	protected void ensureRemaining(int count) throws IOException
+	{
+		if (channel != null) {
+			fill(count);
+			return;
+		}
+
+		if (windows == null || in.remaining() >= count) {
+			return;
+		}
+
+		long offset = windowOffset + in.position();
+
+		// the window already reaches the end of the file
+		if (windowOffset + in.limit() >= windows.size()) {
+			return;
+		}
+
+		MappedByteBuffer previous = (MappedByteBuffer) in;
+
+		in = windows.map(offset, count);
+		windowOffset = offset;
+
+		if (!slicesExposed) {
+			MappedWindows.unmap(previous);
+		}
+	}
+
+	/**
+	 * Reads from the channel until in has count bytes remaining or the channel ends. The buffer grows for larger values
+	 * and shrinks back to streamBufferSize afterwards.
+	 *
+	 * @param count
+	 *
+	 * @throws IOException
+	 */
+	protected void fill(int count) throws IOException
+	{
+		assert count >= 0;
+
+		if (in.remaining() >= count || channelEnded) {
+			return;
+		}
+
+		int capacity = Math.max(count, streamBufferSize);
+
+		if (in.capacity() != capacity) {
+			in = ByteBuffer.allocate(capacity).put(in);
+		} else {
+			in.compact();
+		}
+
+		while (in.position() < count) {
+			if (channel.read(in) < 0) {
+				channelEnded = true;
+				break;
+			}
+		}
+
+		in.flip();
+	}
+
+	protected int readNextPackedLength(int elementSize) throws IOException
+	{
+		int length = readNextLength();
+
+		// packed arrays are decoded from in at once
+		ensureRemaining((int) Math.min(MappedWindows.MAX_WINDOW_SIZE, Math.max(0L, (long) length * elementSize)));
+
+		return length;
+	}
+
+	protected int readNextValueLength(String kind) throws IOException
+	{
+		int length = readNextLength();
+
+		if (length < 0) {
+			throw new IOException("Source corrupted - negative length " + length + " for next " + kind);
+		}
+
+		ensureRemaining(length);
+
 		int bc = in.remaining();
 
 		if (bc < length) {
-			throw new IOException("Source corrupted - could not read enough bytes for next binary " + bc + " instead of " + length);
+			throw new IOException("Source corrupted - could not read enough bytes for next " + kind + " " + bc + " instead of " + length);
+		}
+
+		return length;
+	}
+
+	/**
+	 * Decodes the UTF-8 string directly from in - heap buffers are decoded from their array, other buffers by the
+	 * charset decoder
+	 *
+	 * @return
+	 *
+	 * @throws IOException
+	 */
+	protected String readNextString() throws IOException
+	{
+		int length = readNextValueLength("string");
+		int position = in.position();
+
+		String result;
+		if (in.hasArray()) {
+			result = new String(in.array(), in.arrayOffset() + position, length, StandardCharsets.UTF_8);
+		} else {
+			result = StandardCharsets.UTF_8.decode(in.slice(position, length)).toString();
+		}
+
+		in.position(position + length);
+		return result;
+	}
+
+	/**
+	 * Returns the next binary value as read only slice of in - it is not copied
+	 *
+	 * @return
+	 *
+	 * @throws IOException
+	 */
+	protected ByteBuffer readNextBinary() throws IOException
+	{
+		int length = readNextValueLength("binary");
+		int position = in.position();
+
+		// the buffer of a stream gets reused
+		if (channel != null) {
+			ByteBuffer result = ByteBuffer.allocate(length).put(in.slice(position, length)).flip().asReadOnlyBuffer();
+			in.position(position + length);
+			return result;
+		}
+
+		ByteBuffer result = in.slice(position, length).asReadOnlyBuffer();
+		slicesExposed = true;
+
+		in.position(position + length);
+		return result;
+	}
+
+	/**
+	 * Reads a value of an annotation parameter or attribute default - see {@link BinaryHelper#getValueTag(java.lang.Object)}
+	 *
+	 * @return
+	 *
+	 * @throws IOException
+	 */
+	protected Object readNextTaggedValue() throws IOException
+	{
+		ensureRemaining(MAX_OPCODE_HEADER_SIZE);
+
+		int tag = readNextCode();
+
+		if (tag == BinaryHelper.VALUE_NULL) {
+			return null;
+		} else if (tag == BinaryHelper.VALUE_STRING) {
+			return readNextString();
+		} else if (tag == BinaryHelper.VALUE_LONG) {
+			return readNextLongValue();
+		} else if (tag == BinaryHelper.VALUE_DOUBLE) {
+			return readNextDouble();
+		} else if (tag == BinaryHelper.VALUE_BOOLEAN) {
+			return readNextBoolean();
 		}
 
-		in.get(buf65536, 0, length);
-		return Arrays.copyOf(buf65536, length);
+		throw new IOException("Source corrupted - unknown value tag " + tag);
 	}
 
 	public boolean readNextOpcode() throws IOException
 	{
-		int code = readNextInt();
+		return readNextOpcode(processor);
+	}
+
+	protected boolean readNextOpcode(DLParsingProcessor processor) throws IOException
+	{
+		// the rows of a column block are replayed one instance per call
+		if (columnBlock != null) {
+			lastOpcode = null;
+			readColumnRow(processor);
+			return true;
+		}
+
+		// continue with the next block - blocks always end at opcode boundaries
+		while (!in.hasRemaining() && blocks != null) {
+
+			ByteBuffer next = blocks.nextBlock();
+
+			if (next == null) {
+				break;
+			}
+
+			in = next;
+		}
+
+		ensureRemaining(MAX_OPCODE_HEADER_SIZE);
+
+		int code = readNextCode();
 
 		// end of stream reached
 		if (code == -1) {
@@ -243,53 +661,191 @@ public class BinaryDLReader implements DLReader
 		}
 
 		Opcode opcode = Opcode.valueOf(code);
+		lastOpcode = opcode;
 
 		if (opcode == BeginModule) {
-			int version = readNextInt();
+			// the version is always written in the V1 layout
+			beginVersion(readNextInt());
 			processor.beginModule();
 		} else if (opcode == EndModule) {
 			processor.endModule();
 		} else if (opcode == DefineSymbol) {
-			int id = readNextInt();
+			int id = readNextId();
 			String symbol = readNextString();
 			processor.defineSymbol(id, symbol);
 		} else if (opcode == BeginInstance) {
-			int type = readNextInt();
+			int type = readNextId();
 			String name = readNextString();
 			processor.beginInstance(type, name);
 		} else if (opcode == BeginAnonymousInstance) {
-			int type = readNextInt();
+			int type = readNextId();
 			processor.beginAnonymousInstance(type);
 		} else if (opcode == EndInstance) {
 			processor.endInstance();
+		} else if (opcode == BeginChildren) {
+			processor.beginChildren();
+		} else if (opcode == EndChildren) {
+			processor.endChildren();
+		} else if (opcode == BeginInstanceAttribute) {
+			int name = readNextId();
+			processor.beginInstanceAttribute(name);
+		} else if (opcode == BeginArrayAttribute) {
+			int name = readNextId();
+			int kind = readNextId();
+			processor.beginArrayAttribute(name, kind);
+		} else if (opcode == EndArray) {
+			processor.endArray();
+		} else if (opcode == SetIntArrayAttribute) {
+			int name = readNextId();
+			int[] value = BinaryHelper.getInts(in, readNextPackedLength(Integer.BYTES));
+			processor.setIntArrayAttribute(name, value);
+		} else if (opcode == SetLongArrayAttribute) {
+			int name = readNextId();
+			long[] value = BinaryHelper.getLongs(in, readNextPackedLength(Long.BYTES));
+			processor.setLongArrayAttribute(name, value);
+		} else if (opcode == SetFloatArrayAttribute) {
+			int name = readNextId();
+			float[] value = BinaryHelper.getFloats(in, readNextPackedLength(Float.BYTES));
+			processor.setFloatArrayAttribute(name, value);
+		} else if (opcode == SetDoubleArrayAttribute) {
+			int name = readNextId();
+			double[] value = BinaryHelper.getDoubles(in, readNextPackedLength(Double.BYTES));
+			processor.setDoubleArrayAttribute(name, value);
+		} else if (opcode == ModuleIndex) {
+			int length = readNextValueLength("module index");
+			int position = in.position();
+			processor.defineModuleIndex(in.slice(position, length).asReadOnlyBuffer());
+			in.position(position + length);
+		} else if (opcode == DefineExternType) {
+			int name = readNextId();
+			int className = readNextId();
+			processor.defineExternType(name, className);
+		} else if (opcode == DefineExternAnnotation) {
+			int name = readNextId();
+			int className = readNextId();
+			processor.defineExternAnnotation(name, className);
+		} else if (opcode == DefineExternPragma) {
+			int name = readNextId();
+			int className = readNextId();
+			processor.defineExternPragma(name, className);
+		} else if (opcode == DefineAlias) {
+			int alias = readNextId();
+			int name = readNextId();
+			processor.defineAlias(alias, name);
+		} else if (opcode == BeginType) {
+			int name = readNextId();
+			int flags = readNextId();
+			processor.beginType(name, flags);
+		} else if (opcode == BeginEnum) {
+			int name = readNextId();
+			processor.beginEnum(name);
+		} else if (opcode == AddEnumValue) {
+			String value = readNextString();
+			processor.addEnumValue(value);
+		} else if (opcode == AddParentType) {
+			int type = readNextId();
+			processor.addParentType(type);
+		} else if (opcode == AddContainedType) {
+			int type = readNextId();
+			processor.addContainedType(type);
+		} else if (opcode == BeginTypeAttribute) {
+			int name = readNextId();
+			int type = readNextId();
+			Object defaultValue = readNextTaggedValue();
+			processor.beginTypeAttribute(name, type, defaultValue);
+		} else if (opcode == EndTypeAttribute) {
+			processor.endTypeAttribute();
+		} else if (opcode == AddAnnotation) {
+			int name = readNextId();
+			int count = readNextLength();
+			if (count < 0) {
+				throw new IOException("Source corrupted - negative annotation parameter count " + count);
+			}
+			Object[] parameters = new Object[count];
+			for (int i = 0; i < count; ++i) {
+				parameters[i] = readNextTaggedValue();
+			}
+			processor.addAnnotation(name, parameters);
+		} else if (opcode == EndType) {
+			processor.endType();
 		} else if (opcode == SetBinaryAttribute) {
-			int name = readNextInt();
-			byte[] value = readNextBinary();
+			int name = readNextId();
+			ByteBuffer value = readNextBinary();
 			processor.setBinaryAttribute(name, value);
 		} else if (opcode == SetStringAttribute) {
-			int name = readNextInt();
+			int name = readNextId();
 			String value = readNextString();
 			processor.setStringAttribute(name, value);
 		} else if (opcode == SetFloatAttribute) {
-			int name = readNextInt();
+			int name = readNextId();
 			float value = readNextFloat();
 			processor.setFloatAttribute(name, value);
 		} else if (opcode == SetDoubleAttribute) {
-			int name = readNextInt();
+			int name = readNextId();
 			double value = readNextDouble();
 			processor.setDoubleAttribute(name, value);
 		} else if (opcode == SetIntAttribute) {
-			int name = readNextInt();
-			int value = readNextInt();
+			int name = readNextId();
+			int value = readNextIntValue();
 			processor.setIntAttribute(name, value);
 		} else if (opcode == SetLongAttribute) {
-			int name = readNextInt();
-			long value = readNextLong();
+			int name = readNextId();
+			long value = readNextLongValue();
 			processor.setLongAttribute(name, value);
 		} else if (opcode == SetBooleanAttribute) {
-			int name = readNextInt();
+			int name = readNextId();
 			boolean value = readNextBoolean();
 			processor.setBooleanAttribute(name, value);
+		} else if (opcode == SetByteAttribute) {
+			int name = readNextId();
+			requireRemaining(Byte.BYTES, "byte");
+			processor.setByteAttribute(name, in.get());
+		} else if (opcode == SetShortAttribute) {
+			int name = readNextId();
+			requireRemaining(Short.BYTES, "short");
+			processor.setShortAttribute(name, in.getShort());
+		} else if (opcode == SetCharAttribute) {
+			int name = readNextId();
+			requireRemaining(Character.BYTES, "char");
+			processor.setCharAttribute(name, in.getChar());
+		} else if (opcode == SetUUIDAttribute) {
+			int name = readNextId();
+			requireRemaining(2 * Long.BYTES, "UUID");
+			processor.setUUIDAttribute(name, new UUID(in.getLong(), in.getLong()));
+		} else if (opcode == SetDateAttribute) {
+			int name = readNextId();
+			requireRemaining(Long.BYTES, "date");
+			processor.setDateAttribute(name, in.getLong());
+		} else if (opcode == SetEnumAttribute) {
+			int name = readNextId();
+			int enumType = readNextId();
+			int ordinal = readNextId();
+			processor.setEnumAttribute(name, enumType, ordinal);
+		} else if (opcode == SetPathAttribute) {
+			int name = readNextId();
+			String value = readNextString();
+			processor.setPathAttribute(name, value);
+		} else if (opcode == SetSymbolAttribute) {
+			int name = readNextId();
+			int value = readNextId();
+			processor.setSymbolAttribute(name, value);
+		} else if (opcode == ColumnBlock) {
+			int type = readNextId();
+			BinaryColumnBlock block = new BinaryColumnBlock(readNextBinary());
+			if (scanColumns) {
+				String[] columnNames = new String[block.getColumnCount()];
+				for (int c = 0; c < columnNames.length; ++c) {
+					int nameId = block.getColumnNameId(c);
+					columnNames[c] = (nameId != BinaryColumnBlock.NAME_COLUMN) ? this.processor.getSymbol(nameId) : null;
+				}
+				block.resolveNames(this.processor.getSymbol(type), columnNames);
+				scannedColumnBlock = block;
+			} else if (block.getRowCount() > 0) {
+				columnBlock = block;
+				columnBlockType = type;
+				columnBlockRow = 0;
+				readColumnRow(processor);
+			}
 		} else {
 			throw new IOException("Source corrupted - unknown opcode " + code);
 		}
@@ -297,6 +853,420 @@ public class BinaryDLReader implements DLReader
 		return true;
 	}
 
+	/**
+	 * Replays the next row of the current column block as instance
+	 *
+	 * @param processor
+	 *
+	 * @throws IOException
+	 */
+	protected void readColumnRow(DLParsingProcessor processor) throws IOException
+	{
+		assert processor != null;
+		assert columnBlock != null;
+
+		BinaryColumnBlock block = columnBlock;
+		int row = columnBlockRow++;
+
+		if (columnBlockRow == block.getRowCount()) {
+			columnBlock = null;
+		}
+
+		int nameColumn = block.findNameColumn();
+		String name = (nameColumn >= 0) ? block.getString(nameColumn, row) : null;
+
+		if (name != null) {
+			processor.beginInstance(columnBlockType, name);
+		} else {
+			processor.beginAnonymousInstance(columnBlockType);
+		}
+
+		for (int c = 0; c < block.getColumnCount(); ++c) {
+
+			int nameId = block.getColumnNameId(c);
+
+			if (nameId == BinaryColumnBlock.NAME_COLUMN || !block.isPresent(c, row)) {
+				continue;
+			}
+
+			byte kind = block.getColumnKind(c);
+
+			if (kind == BinaryColumnBlock.KIND_INT) {
+				processor.setIntAttribute(nameId, block.getInt(c, row));
+			} else if (kind == BinaryColumnBlock.KIND_LONG) {
+				processor.setLongAttribute(nameId, block.getLong(c, row));
+			} else if (kind == BinaryColumnBlock.KIND_FLOAT) {
+				processor.setFloatAttribute(nameId, block.getFloat(c, row));
+			} else if (kind == BinaryColumnBlock.KIND_DOUBLE) {
+				processor.setDoubleAttribute(nameId, block.getDouble(c, row));
+			} else if (kind == BinaryColumnBlock.KIND_BOOLEAN) {
+				processor.setBooleanAttribute(nameId, block.getBoolean(c, row));
+			} else {
+				processor.setStringAttribute(nameId, block.getString(c, row));
+			}
+		}
+
+		processor.endInstance();
+	}
+
+	/**
+	 * Reads up to the next column block without creating instances for its rows - allows to aggregate columns without
+	 * materializing instances. Instances before the block are read as usual.
+	 *
+	 * @return the next column block with resolved names or null if the end of the stream is reached
+	 *
+	 * @throws IOException
+	 */
+	public BinaryColumnBlock readColumnBlock() throws IOException
+	{
+		scanColumns = true;
+
+		try {
+			while (scannedColumnBlock == null && readNextOpcode()) {
+				// scan
+			}
+
+			return scannedColumnBlock;
+		} finally {
+			scannedColumnBlock = null;
+			scanColumns = false;
+		}
+	}
+
+	/**
+	 * Moves in to the given offset of the stream (0 is the start of the signature)
+	 *
+	 * @param offset
+	 *
+	 * @throws IOException
+	 */
+	protected void seek(long offset) throws IOException
+	{
+		assert offset >= 0;
+
+		if (blocks != null) {
+			int blockIndex = blocks.getBlockIndex(offset);
+			in = blocks.readBlock(blockIndex);
+			in.position((int) (offset - blocks.getBlockStart(blockIndex)));
+		} else if (windows != null) {
+			// the previous window is not unmapped as it gets restored after random access
+			in = windows.map(offset, MAX_OPCODE_HEADER_SIZE);
+			windowOffset = offset;
+		} else {
+			if (offset > in.limit() - streamStart) {
+				throw new IOException("Offset " + offset + " is out of the stream");
+			}
+			in.position((int) (streamStart + offset));
+		}
+	}
+
+	protected long getStreamLength()
+	{
+		if (blocks != null) {
+			return blocks.getLength();
+		}
+
+		if (windows != null) {
+			return windows.size();
+		}
+
+		return in.limit() - streamStart;
+	}
+
+	@FunctionalInterface
+	protected interface RandomAccess<ResultType>
+	{
+
+		public ResultType read() throws IOException;
+	}
+
+	/**
+	 * Executes the random access and restores the sequential reading position afterwards
+	 *
+	 * @param <ResultType>
+	 * @param access
+	 *
+	 * @return
+	 *
+	 * @throws IOException
+	 */
+	protected <ResultType> ResultType readRandom(RandomAccess<ResultType> access) throws IOException
+	{
+		assert access != null;
+
+		if (channel != null) {
+			throw new IOException("Random access is not supported when reading from a channel");
+		}
+
+		ByteBuffer sequentialIn = in;
+		int sequentialPosition = in.position();
+		long sequentialWindowOffset = windowOffset;
+		int sequentialVersion = version;
+		BinaryColumnBlock sequentialColumnBlock = columnBlock;
+		int sequentialColumnBlockType = columnBlockType;
+		int sequentialColumnBlockRow = columnBlockRow;
+		columnBlock = null;
+
+		try {
+			// the version has to be known to decode opcodes
+			if (streamVersion == -1) {
+				seek(4);
+				if (readNextInt() != BeginModule.code) {
+					throw new IOException("Source corrupted - stream does not start with BeginModule");
+				}
+				streamVersion = readNextInt();
+			}
+			beginVersion(streamVersion);
+
+			return access.read();
+		} finally {
+			in = sequentialIn;
+			in.position(sequentialPosition);
+			windowOffset = sequentialWindowOffset;
+			beginVersion(sequentialVersion);
+			columnBlock = sequentialColumnBlock;
+			columnBlockType = sequentialColumnBlockType;
+			columnBlockRow = sequentialColumnBlockRow;
+		}
+	}
+
+	/**
+	 * Returns the module index or null if the stream was written without index
+	 *
+	 * @return
+	 *
+	 * @throws IOException
+	 */
+	public BinaryModuleIndex getIndex() throws IOException
+	{
+		if (indexLoaded) {
+			return index;
+		}
+
+		index = readRandom(() -> {
+
+			long length = getStreamLength();
+
+			if (length < BinaryModuleIndex.TRAILER_SIZE) {
+				return null;
+			}
+
+			seek(length - BinaryModuleIndex.TRAILER_SIZE);
+			ensureRemaining(BinaryModuleIndex.TRAILER_SIZE);
+			long indexOffset = in.getLong();
+
+			if (in.getInt() != DLHelper.BIN_INDEX_SIGNATURE) {
+				return null;
+			}
+
+			seek(indexOffset);
+			if (readNextCode() != ModuleIndex.code) {
+				throw new IOException("Source corrupted - no module index at offset " + indexOffset);
+			}
+			int indexLength = readNextValueLength("module index");
+
+			return BinaryModuleIndex.fromBytes(in.slice(in.position(), indexLength));
+		});
+		indexLoaded = true;
+
+		return index;
+	}
+
+	public boolean hasIndex() throws IOException
+	{
+		return getIndex() != null;
+	}
+
+	protected BinaryModuleIndex getRequiredIndex() throws IOException
+	{
+		BinaryModuleIndex result = getIndex();
+
+		if (result == null) {
+			throw new IOException("Random access requires a module index - write it with BinaryDLWriter.setIndexed(true)");
+		}
+
+		return result;
+	}
+
+	/**
+	 * Defines the types, enums, extern definitions and aliases of the module in the core using the module index - is
+	 * done once before instances are read randomly, so they can be read in a core not knowing the types of the module
+	 *
+	 * @throws IOException if the stream has no module index
+	 */
+	public void readDefinitions() throws IOException
+	{
+		BinaryModuleIndex moduleIndex = getRequiredIndex();
+
+		if (definitionsRead) {
+			return;
+		}
+
+		readRandom(() -> {
+
+			DefaultParsingProcessor randomProcessor = createRandomAccessProcessor(moduleIndex);
+
+			for (long offset : moduleIndex.getDefinitions()) {
+
+				seek(offset);
+				columnBlock = null;
+
+				// a definition ends with its own opcode or with EndType - symbols may be defined before
+				do {
+					if (!readNextOpcode(randomProcessor)) {
+						throw new IOException("Source corrupted - no definition at offset " + offset);
+					}
+				} while (lastOpcode != DefineExternType
+					&& lastOpcode != DefineExternAnnotation
+					&& lastOpcode != DefineExternPragma
+					&& lastOpcode != DefineAlias
+					&& lastOpcode != EndType);
+			}
+
+			return null;
+		});
+
+		definitionsRead = true;
+	}
+
+	/**
+	 * Creates a processor knowing all symbols of the module
+	 *
+	 * @param index
+	 *
+	 * @return
+	 *
+	 * @throws IOException
+	 */
+	protected DefaultParsingProcessor createRandomAccessProcessor(BinaryModuleIndex index) throws IOException
+	{
+		assert index != null;
+
+		DefaultParsingProcessor result = new DefaultParsingProcessor(core);
+		result.setRetainInstances(false);
+		result.beginModule();
+
+		for (Map.Entry<Integer, String> symbol : index.getSymbols().entrySet()) {
+			result.defineSymbol(symbol.getKey(), symbol.getValue());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Reads the instance at the given offset - all rows if a column block is located there
+	 *
+	 * @param randomProcessor
+	 * @param offset
+	 *
+	 * @return
+	 *
+	 * @throws IOException
+	 */
+	protected List<DLInstance> readInstancesAt(DefaultParsingProcessor randomProcessor, long offset) throws IOException
+	{
+		assert randomProcessor != null;
+
+		seek(offset);
+		columnBlock = null;
+		List<DLInstance> result = new ArrayList<>();
+
+		do {
+			randomProcessor.setLastInstance(null);
+
+			while (randomProcessor.getLastInstance() == null) {
+				if (!readNextOpcode(randomProcessor)) {
+					throw new IOException("Source corrupted - no instance at offset " + offset);
+				}
+			}
+
+			result.add(randomProcessor.getLastInstance());
+		} while (columnBlock != null);
+
+		return result;
+	}
+
+	/**
+	 * Reads the top level instance with the given name using the module index
+	 *
+	 * @param name
+	 *
+	 * @return the instance or null if the module has no top level instance with the name
+	 *
+	 * @throws IOException if the stream has no module index
+	 */
+	public DLInstance readInstance(String name) throws IOException
+	{
+		assert name != null;
+
+		BinaryModuleIndex moduleIndex = getRequiredIndex();
+		long offset = moduleIndex.getOffset(name);
+
+		readDefinitions();
+
+		if (offset < 0) {
+			return null;
+		}
+
+		return readRandom(() -> {
+
+			for (DLInstance instance : readInstancesAt(createRandomAccessProcessor(moduleIndex), offset)) {
+				if (name.equals(instance.getName())) {
+					return instance;
+				}
+			}
+
+			throw new IOException("Source corrupted - no instance " + name + " at offset " + offset);
+		});
+	}
+
+	/**
+	 * Reads all top level instances of the given type (or derived types) in stream order using the module index
+	 *
+	 * @param type
+	 *
+	 * @return
+	 *
+	 * @throws IOException if the stream has no module index
+	 */
+	public List<DLInstance> readInstances(DLType type) throws IOException
+	{
+		assert type != null;
+
+		BinaryModuleIndex moduleIndex = getRequiredIndex();
+
+		readDefinitions();
+
+		List<Long> offsets = new ArrayList<>();
+		for (String typeName : moduleIndex.getTypeNames()) {
+
+			Optional<DLType> candidate = core.getType(typeName);
+
+			if (candidate.isPresent() && type.isAssignableFrom(candidate.orElseThrow())) {
+				offsets.addAll(moduleIndex.getOffsets(typeName));
+			}
+		}
+		Collections.sort(offsets);
+
+		return readRandom(() -> {
+
+			DefaultParsingProcessor randomProcessor = createRandomAccessProcessor(moduleIndex);
+			List<DLInstance> result = new ArrayList<>();
+
+			long previousOffset = -1;
+			for (long offset : offsets) {
+
+				// all rows of a column block share its offset
+				if (offset != previousOffset) {
+					result.addAll(readInstancesAt(randomProcessor, offset));
+					previousOffset = offset;
+				}
+			}
+
+			return result;
+		});
+	}
+
 	@Override
 	public <DLEntityType extends DLEntity> DLEntityType read() throws IOException
 	{
@@ -306,8 +1276,8 @@ public class BinaryDLReader implements DLReader
 			return (DLEntityType) instance;
 		}
 
-		while (readNextOpcode()
-			&& (instance == null)) {
+		// stop right after the opcode completing an instance - a column block replays a row per opcode
+		while (instance == null && readNextOpcode()) {
 			instance = processor.getLastInstance();
 		}
 
@@ -319,15 +1289,42 @@ public class BinaryDLReader implements DLReader
 		return null;
 	}
 
+	/**
+	 * Reads the rest of the stream into the module - instances already handed out by read are only contained if
+	 * retaining instances was active
+	 *
+	 * @return
+	 *
+	 * @throws IOException
+	 */
 	@Override
 	public DLModule readModule() throws IOException
 	{
+		processor.setRetainInstances(true);
+
 		while (readNextOpcode()) {
 		}
 
 		return processor.getModule();
 	}
 
+	/**
+	 * Reads the rest of the stream into the given processor instead of the own one - e.g. a
+	 * {@link de.s42.dl.parser.BeanParsingProcessor} to create java objects without creating instances. Symbols are
+	 * defined in the processor receiving them, so the stream has to be read into the processor from its start.
+	 *
+	 * @param target
+	 *
+	 * @throws IOException
+	 */
+	public void readInto(DLParsingProcessor target) throws IOException
+	{
+		assert target != null;
+
+		while (readNextOpcode(target)) {
+		}
+	}
+
 	@Override
 	public <ObjectType> ObjectType readObject() throws IOException
 	{
@@ -348,29 +1345,52 @@ public class BinaryDLReader implements DLReader
 			return true;
 		}
 
-		while (readNextOpcode()
-			&& (instance == null)) {
+		// stop right after the opcode completing an instance - a column block replays a row per opcode
+		while (instance == null && readNextOpcode()) {
 			instance = processor.getLastInstance();
 		}
 
 		return instance != null;
 	}
 
+	public int getVersion()
+	{
+		return version;
+	}
+
+	public boolean isRetainInstances()
+	{
+		return processor.isRetainInstances();
+	}
+
+	/**
+	 * Set to false to not add the top level instances to the module - see read
+	 *
+	 * @param retainInstances
+	 */
+	public void setRetainInstances(boolean retainInstances)
+	{
+		processor.setRetainInstances(retainInstances);
+	}
+
 	@Override
 	public void close() throws IOException
 	{
-		// good to know for handling mapped byte buffers - https://stackoverflow.com/questions/25238110/how-to-properly-close-mappedbytebuffer
-		if (in instanceof MappedByteBuffer) {
-			try {
-				Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
-				Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
-				unsafeField.setAccessible(true);
-				Object unsafe = unsafeField.get(null);
-				Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
-				invokeCleaner.invoke(unsafe, in);
-			} catch (ClassNotFoundException | IllegalAccessException | IllegalArgumentException | NoSuchFieldException | NoSuchMethodException | SecurityException | InvocationTargetException ex) {
-				throw new IOException("Error closing MappedByteBuffer - " + ex.getMessage(), ex);
-			}
+		if (blocks != null) {
+			blocks.close();
+		}
+
+		if (windows != null) {
+			windows.close();
+		}
+
+		if (channel != null) {
+			channel.close();
+		}
+
+		// the mapping is left to the gc if binary slices of it are still referenced by instances
+		if (in instanceof MappedByteBuffer mapped && !slicesExposed) {
+			MappedWindows.unmap(mapped);
 		}
 	}
 }
@@ -25,25 +25,43 @@
 //</editor-fold>
 package de.s42.dl.io.binary;
 
-import de.s42.base.uuid.UUIDHelper;
+import de.s42.dl.DLAnnotation;
+import de.s42.dl.DLAnnotationFactory;
+import de.s42.dl.DLAttribute;
 import de.s42.dl.DLCore;
+import de.s42.dl.DLEnum;
 import de.s42.dl.DLInstance;
+import de.s42.dl.DLModule;
 import de.s42.dl.DLPragma;
 import de.s42.dl.DLType;
+import de.s42.dl.annotations.DLAnnotated;
+import de.s42.dl.annotations.persistence.DontPersistDLAnnotation;
+import de.s42.dl.annotations.types.JavaDLAnnotation;
 import de.s42.dl.exceptions.DLException;
 import de.s42.dl.io.DLWriter;
+import de.s42.dl.parser.DLParsingProcessor;
+import de.s42.dl.types.DefaultDLEnum;
+import de.s42.dl.types.DefaultDLType;
 import de.s42.dl.util.DLHelper;
 import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 /**
  *
@@ -54,42 +72,128 @@ public class BinaryDLWriter implements DLWriter
 {
 
 	//private final static Logger log = LogManager.getLogger(BinaryDLWriter.class.getName());
+	/**
+	 * Version of the binary format written if not given explicitly
+	 */
+	public final static int DEFAULT_VERSION = BinaryParsingProcessorV2.VERSION;
+
+	/**
+	 * Longer string values are always written inline
+	 */
+	public final static int MAX_DICTIONARY_VALUE_LENGTH = 256;
+
+	/**
+	 * Limits the memory used to track string values which did not recur yet
+	 */
+	public final static int MAX_DICTIONARY_CANDIDATES = 1 << 16;
+
 	protected final OutputStream out;
+	protected final PositionOutputStream positionOut;
+
+	/**
+	 * Set instead of out if written through a channel - see {@link ChannelParsingProcessorV1}
+	 */
+	protected final WritableByteChannel channel;
+	protected final ChannelParsingProcessorV1 channelProcessor;
+
 	protected final DLCore core;
-	protected final BinaryParsingProcessorV1 processor;
+	protected final DLParsingProcessor processor;
+
+	/**
+	 * If true a module index is written on close, allowing random access with BinaryDLReader.readInstance
+	 */
+	protected boolean indexed;
+	protected final BinaryModuleIndex index = new BinaryModuleIndex();
 
 	protected final Map<String, Integer> symbols = new HashMap<>();
 	protected int nextSymbolId = 0;
 
+	/**
+	 * If true string values are written as symbols once they recur
+	 */
+	protected boolean valueDictionary = true;
+
+	/**
+	 * String values written once - they become symbols on their next occurrence
+	 */
+	protected final Set<String> dictionaryCandidates = new HashSet<>();
+
+	/**
+	 * Max count of rows per column block - 0 writes all instances row wise
+	 */
+	protected int columnBlockSize;
+
+	/**
+	 * Top level instances of one type waiting to be written as column block
+	 */
+	protected final List<DLInstance> columnRows = new ArrayList<>();
+
+	/**
+	 * Names of the types, annotation factories and pragmas already written - each gets defined once per stream
+	 */
+	protected final Set<String> writtenTypes = new HashSet<>();
+	protected final Set<String> writtenAnnotations = new HashSet<>();
+	protected final Set<String> writtenPragmas = new HashSet<>();
+
 	public BinaryDLWriter(Path file, DLCore core) throws IOException
 	{
 		this(file, core, true);
 	}
 
 	public BinaryDLWriter(Path file, DLCore core, boolean compress) throws IOException
+	{
+		this(file, core, compress, DEFAULT_VERSION);
+	}
+
+	public BinaryDLWriter(Path file, DLCore core, boolean compress, int version) throws IOException
+	{
+		this(file, core, compress, version, BlockDeflaterOutputStream.DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Compressed files are written as block compressed containers (see {@link BlockDeflaterOutputStream}) with blocks
+	 * cut after the first top level instance reaching blockSize
+	 *
+	 * @param file
+	 * @param core
+	 * @param compress
+	 * @param version
+	 * @param blockSize
+	 *
+	 * @throws IOException
+	 */
+	public BinaryDLWriter(Path file, DLCore core, boolean compress, int version, int blockSize) throws IOException
 	{
 		assert file != null;
 		assert core != null;
+		assert blockSize > 0;
 
 		this.core = core;
 
 		if (compress) {
-			out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
-			((ZipOutputStream) out).putNextEntry(new ZipEntry("data.dlb"));
 			// @improvement do we need to allow setting the compression level?
 			// https://docs.oracle.com/javase/8/docs/api/java/util/zip/Deflater.html
-			//((ZipOutputStream)out).setLevel(compressionLevel);
+			out = new BlockDeflaterOutputStream(new BufferedOutputStream(Files.newOutputStream(file)), blockSize);
 		} else {
 			out = new BufferedOutputStream(Files.newOutputStream(file));
 		}
 
-		writeSignature(out);
+		positionOut = new PositionOutputStream(out);
 
-		processor = new BinaryParsingProcessorV1(out);
+		writeSignature(positionOut);
+
+		processor = createProcessor(positionOut, version);
+		channel = null;
+		channelProcessor = null;
 		processor.beginModule();
 	}
 
 	public BinaryDLWriter(OutputStream out, DLCore core) throws IOException
+	{
+		this(out, core, DEFAULT_VERSION);
+	}
+
+	public BinaryDLWriter(OutputStream out, DLCore core, int version) throws IOException
 	{
 		assert out != null;
 		assert core != null;
@@ -97,12 +201,99 @@ public class BinaryDLWriter implements DLWriter
 		this.core = core;
 		this.out = out;
 
-		writeSignature(out);
+		positionOut = new PositionOutputStream(out);
+
+		writeSignature(positionOut);
+
+		processor = createProcessor(positionOut, version);
+		channel = null;
+		channelProcessor = null;
+		processor.beginModule();
+	}
+
+	public BinaryDLWriter(WritableByteChannel channel, DLCore core) throws IOException
+	{
+		this(channel, core, ChannelParsingProcessorV1.DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Writes uncompressed version 1 through a {@link ChannelParsingProcessorV1} which encodes into a direct buffer of
+	 * the given size. The channel gets closed on close.
+	 *
+	 * @param channel
+	 * @param core
+	 * @param bufferSize
+	 *
+	 * @throws IOException
+	 */
+	public BinaryDLWriter(WritableByteChannel channel, DLCore core, int bufferSize) throws IOException
+	{
+		assert channel != null;
+		assert core != null;
+
+		this.core = core;
+		this.channel = channel;
+
+		out = null;
+		positionOut = null;
+
+		channelProcessor = new ChannelParsingProcessorV1(channel, bufferSize);
+		processor = channelProcessor;
+
+		channelProcessor.writeSignature(DLHelper.BIN_SIGNATURE);
+		processor.beginModule();
+	}
+
+	/**
+	 * Emits the written entities as events of the given processor - allows to feed any processor from instances.
+	 * Random access indexes are not supported as positions are unknown.
+	 *
+	 * @param processor
+	 * @param core
+	 *
+	 * @throws IOException
+	 */
+	public BinaryDLWriter(DLParsingProcessor processor, DLCore core) throws IOException
+	{
+		assert processor != null;
+		assert core != null;
+
+		this.core = core;
+		this.processor = processor;
+
+		out = null;
+		positionOut = null;
+		channel = null;
+		channelProcessor = null;
 
-		processor = new BinaryParsingProcessorV1(out);
 		processor.beginModule();
 	}
 
+	/**
+	 * Creates the processor encoding the given version of the binary format
+	 *
+	 * @param out
+	 * @param version
+	 *
+	 * @return
+	 *
+	 * @throws IOException if the version is not supported
+	 */
+	public static DLParsingProcessor createProcessor(OutputStream out, int version) throws IOException
+	{
+		assert out != null;
+
+		if (version == BinaryParsingProcessorV1.VERSION) {
+			return new BinaryParsingProcessorV1(out);
+		}
+
+		if (version == BinaryParsingProcessorV2.VERSION) {
+			return new BinaryParsingProcessorV2(out);
+		}
+
+		throw new IOException("Unsupported binary version " + version);
+	}
+
 	private void writeSignature(OutputStream out) throws IOException
 	{
 		assert out != null;
@@ -113,22 +304,274 @@ public class BinaryDLWriter implements DLWriter
 		out.write(buf.array());
 	}
 
+	/**
+	 * Pragmas are written as extern definitions of their class
+	 *
+	 * @param pragma
+	 *
+	 * @throws IOException
+	 */
 	@Override
 	public void write(DLPragma pragma) throws IOException
 	{
 		assert pragma != null;
-		
-		// @todo
-		throw new UnsupportedOperationException("Not implemented yet");
+
+		if (!writtenPragmas.add(pragma.getName())) {
+			return;
+		}
+
+		long offset = getPosition();
+
+		processor.defineExternPragma(getOrMapSymbol(pragma.getName()), getOrMapSymbol(pragma.getClass().getName()));
+
+		index.addDefinition(offset);
 	}
 
+	/**
+	 * Writes the type definition - types it depends on (parents, contained types, attribute types) and the factories
+	 * of its annotations are written before if they are not written yet
+	 *
+	 * @param type
+	 *
+	 * @throws IOException
+	 */
 	@Override
 	public void write(DLType type) throws IOException
 	{
 		assert type != null;
-		
-		// @todo
-		throw new UnsupportedOperationException("Not implemented yet");
+
+		// generic types are resolved by their canonical name when reading - just write their generic parameters
+		if (type.isGenericType()) {
+			for (DLType genericType : type.getGenericTypes()) {
+				write(genericType);
+			}
+			return;
+		}
+
+		if (!writtenTypes.add(type.getCanonicalName())) {
+			return;
+		}
+
+		if (type instanceof DLEnum dlEnum) {
+			writeEnum(dlEnum);
+			return;
+		}
+
+		// types implemented in java are defined from their class
+		String externClassName = getExternClassName(type);
+		if (externClassName != null) {
+			long offset = getPosition();
+			processor.defineExternType(getOrMapSymbol(type.getName()), getOrMapSymbol(externClassName));
+			index.addDefinition(offset);
+			return;
+		}
+
+		// dependencies
+		for (DLType parent : type.getOwnParents()) {
+			write(parent);
+		}
+		for (DLType contained : type.getOwnContainedTypes()) {
+			write(contained);
+		}
+		for (DLAttribute attribute : type.getOwnAttributes()) {
+			write(attribute.getType());
+			writeAnnotationFactories(attribute);
+		}
+		writeAnnotationFactories(type);
+
+		int flags = 0;
+		if (type.isAbstract()) {
+			flags |= DLParsingProcessor.TYPE_ABSTRACT;
+		} else if (type.isFinal()) {
+			flags |= DLParsingProcessor.TYPE_FINAL;
+		}
+		if (type.isDynamic()) {
+			flags |= DLParsingProcessor.TYPE_DYNAMIC;
+		}
+
+		long offset = getPosition();
+
+		processor.beginType(getOrMapSymbol(type.getName()), flags);
+
+		writeAnnotations(type);
+
+		for (DLType parent : type.getOwnParents()) {
+			processor.addParentType(getOrMapSymbol(parent.getCanonicalName()));
+		}
+
+		for (DLType contained : type.getOwnContainedTypes()) {
+			processor.addContainedType(getOrMapSymbol(contained.getCanonicalName()));
+		}
+
+		for (DLAttribute attribute : type.getOwnAttributes()) {
+
+			Object defaultValue = attribute.getDefaultValue();
+
+			if (defaultValue instanceof DLInstance
+				|| defaultValue instanceof Collection
+				|| (defaultValue != null && defaultValue.getClass().isArray())) {
+				throw new IOException("Default value of attribute " + attribute.getName() + " in type " + type.getName() + " can not be written");
+			}
+
+			processor.beginTypeAttribute(
+				getOrMapSymbol(attribute.getName()),
+				getOrMapSymbol(attribute.getType().getCanonicalName()),
+				defaultValue
+			);
+			writeAnnotations(attribute);
+			processor.endTypeAttribute();
+		}
+
+		processor.endType();
+
+		index.addDefinition(offset);
+	}
+
+	protected void writeEnum(DLEnum<?> type) throws IOException
+	{
+		assert type != null;
+
+		// enums backed by java enums are defined from their class
+		if (type.getJavaDataType().isEnum()) {
+			long offset = getPosition();
+			processor.defineExternType(getOrMapSymbol(type.getName()), getOrMapSymbol(type.getJavaDataType().getName()));
+			index.addDefinition(offset);
+			return;
+		}
+
+		writeAnnotationFactories(type);
+
+		long offset = getPosition();
+
+		processor.beginEnum(getOrMapSymbol(type.getName()));
+
+		writeAnnotations(type);
+
+		for (Object value : type.getValues()) {
+			processor.addEnumValue(value.toString());
+		}
+
+		processor.endType();
+
+		index.addDefinition(offset);
+	}
+
+	/**
+	 * Returns the class the type gets defined from or null if the type is defined in DL
+	 *
+	 * @param type
+	 *
+	 * @return
+	 */
+	protected String getExternClassName(DLType type)
+	{
+		assert type != null;
+
+		// special DLType implementations like the primitive types
+		if (type.getClass() != DefaultDLType.class && type.getClass() != DefaultDLEnum.class) {
+			return type.getClass().getName();
+		}
+
+		// types created from java classes
+		if (type.hasAnnotation(JavaDLAnnotation.class)) {
+			return type.getJavaDataType().getName();
+		}
+
+		return null;
+	}
+
+	protected void writeAnnotations(DLAnnotated annotated) throws IOException
+	{
+		assert annotated != null;
+
+		for (DLAnnotation annotation : annotated.getAnnotations()) {
+			processor.addAnnotation(getOrMapSymbol(annotation.getName()), annotation.getFlatParameters());
+		}
+	}
+
+	/**
+	 * Writes the annotation factories used by annotated as extern definitions - see writeAnnotationFactory
+	 *
+	 * @param annotated
+	 *
+	 * @throws IOException
+	 */
+	protected void writeAnnotationFactories(DLAnnotated annotated) throws IOException
+	{
+		assert annotated != null;
+
+		for (DLAnnotation annotation : annotated.getAnnotations()) {
+
+			DLAnnotationFactory factory = core.getAnnotationFactory(annotation.getName()).orElse(null);
+
+			if (factory != null) {
+				writeAnnotationFactory(annotation.getName(), factory);
+			}
+		}
+	}
+
+	/**
+	 * Writes the annotation factory as extern definition of its class. Factories without public default constructor
+	 * (like the ones of contract expressions) can not be instantiated when reading and are skipped
+	 *
+	 * @param name
+	 * @param factory
+	 *
+	 * @throws IOException
+	 */
+	public void writeAnnotationFactory(String name, DLAnnotationFactory factory) throws IOException
+	{
+		assert name != null;
+		assert factory != null;
+
+		if (!hasDefaultConstructor(factory) || !writtenAnnotations.add(name)) {
+			return;
+		}
+
+		long offset = getPosition();
+
+		processor.defineExternAnnotation(getOrMapSymbol(name), getOrMapSymbol(factory.getClass().getName()));
+
+		index.addDefinition(offset);
+	}
+
+	/**
+	 * Extern definitions are instantiated by the public default constructor of their class
+	 *
+	 * @param object
+	 *
+	 * @return
+	 */
+	public static boolean hasDefaultConstructor(Object object)
+	{
+		assert object != null;
+
+		try {
+			object.getClass().getConstructor();
+			return true;
+		} catch (NoSuchMethodException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Writes alias for the type, annotation factory or pragma name
+	 *
+	 * @param alias
+	 * @param name
+	 *
+	 * @throws IOException
+	 */
+	public void writeAlias(String alias, String name) throws IOException
+	{
+		assert alias != null;
+		assert name != null;
+
+		long offset = getPosition();
+
+		processor.defineAlias(getOrMapSymbol(alias), getOrMapSymbol(name));
+
+		index.addDefinition(offset);
 	}
 
 	@Override
@@ -166,9 +609,183 @@ public class BinaryDLWriter implements DLWriter
 	{
 		assert instance != null;
 
+		// a module is written as its defined types and its top level instances
+		if (instance instanceof DLModule module) {
+			for (DLType type : module.getDefinedTypes()) {
+				write(type);
+			}
+			for (DLInstance child : module.getChildren()) {
+				writeTopLevelInstance(child);
+			}
+			return;
+		}
+
+		writeTopLevelInstance(instance);
+	}
+
+	protected void writeTopLevelInstance(DLInstance instance) throws IOException
+	{
+		assert instance != null;
+
+		if (columnBlockSize > 0 && isColumnar(instance)) {
+
+			if (!columnRows.isEmpty() && columnRows.get(0).getType() != instance.getType()) {
+				writeColumnBlock();
+			}
+
+			columnRows.add(instance);
+
+			if (columnRows.size() >= columnBlockSize) {
+				writeColumnBlock();
+			}
+
+			return;
+		}
+
+		writeColumnBlock();
+		writeRowInstance(instance);
+	}
+
+	protected void writeRowInstance(DLInstance instance) throws IOException
+	{
+		assert instance != null;
+
+		long offset = getPosition();
+
+		writeInstance(instance);
+
+		index.addInstance(getOrMapSymbol(instance.getType().getName()), instance.getName(), offset);
+
+		markBoundary();
+	}
+
+	/**
+	 * Instances can be stored in column blocks if they have no children and only values storable in columns - see
+	 * {@link BinaryColumnBlock#getKind(java.lang.Object)}
+	 *
+	 * @param instance
+	 *
+	 * @return
+	 */
+	protected boolean isColumnar(DLInstance instance)
+	{
+		assert instance != null;
+
+		if (instance.hasChildren()) {
+			return false;
+		}
+
+		for (String attributeName : instance.getAttributeNames()) {
+
+			Object value = instance.get(attributeName);
+
+			if (value != null
+				&& isPersisted(instance.getType(), attributeName)
+				&& BinaryColumnBlock.getKind(value) == 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	protected boolean isPersisted(DLType type, String attributeName)
+	{
+		assert type != null;
+		assert attributeName != null;
+
+		DLAttribute attribute = type.getAttribute(attributeName).orElse(null);
+
+		// may be null on special types like maps
+		return (attribute == null) || !attribute.hasAnnotation(DontPersistDLAnnotation.class);
+	}
+
+	/**
+	 * Writes the pending column rows as one column block. If an attribute has values of different kinds the rows are
+	 * written row wise
+	 *
+	 * @throws IOException
+	 */
+	protected void writeColumnBlock() throws IOException
+	{
+		if (columnRows.isEmpty()) {
+			return;
+		}
+
+		List<DLInstance> rows = new ArrayList<>(columnRows);
+		columnRows.clear();
+
+		DLType type = rows.get(0).getType();
+
+		Map<String, Byte> kinds = new LinkedHashMap<>();
+		for (DLInstance row : rows) {
+			for (String attributeName : row.getAttributeNames()) {
+
+				Object value = row.get(attributeName);
+
+				if (value == null || !isPersisted(type, attributeName)) {
+					continue;
+				}
+
+				Byte kind = kinds.putIfAbsent(attributeName, BinaryColumnBlock.getKind(value));
+
+				if (kind != null && kind != BinaryColumnBlock.getKind(value)) {
+					for (DLInstance rowInstance : rows) {
+						writeRowInstance(rowInstance);
+					}
+					return;
+				}
+			}
+		}
+
+		int typeId = getOrMapSymbol(type.getName());
+		BinaryColumnBlock.Builder builder = new BinaryColumnBlock.Builder(rows.size());
+
+		Object[] names = new Object[rows.size()];
+		for (int i = 0; i < names.length; ++i) {
+			names[i] = rows.get(i).getName();
+		}
+		builder.addColumn(BinaryColumnBlock.NAME_COLUMN, BinaryColumnBlock.KIND_STRING, names);
+
+		for (Map.Entry<String, Byte> column : kinds.entrySet()) {
+
+			Object[] values = new Object[rows.size()];
+			for (int i = 0; i < values.length; ++i) {
+				values[i] = rows.get(i).get(column.getKey());
+			}
+			builder.addColumn(getOrMapSymbol(column.getKey()), column.getValue(), values);
+		}
+
+		long offset = getPosition();
+
+		processor.defineColumnBlock(typeId, builder.build());
+
+		for (DLInstance row : rows) {
+			index.addInstance(typeId, row.getName(), offset);
+		}
+
+		markBoundary();
+	}
+
+	/**
+	 * Top level instances are the points where blocks of compressed containers may end
+	 *
+	 * @throws IOException
+	 */
+	protected void markBoundary() throws IOException
+	{
+		if (out instanceof BlockDeflaterOutputStream blockOut) {
+			blockOut.markBoundary();
+		}
+	}
+
+	protected void writeInstance(DLInstance instance) throws IOException
+	{
+		assert instance != null;
+
 		//log.debug("write", instance);
-		String typeName = instance.getType().getName();
-		int nameId = getOrMapSymbol(typeName);
+		DLType type = instance.getType();
+		int nameId = getOrMapSymbol(type.getName());
 
 		String instanceName = instance.getName();
 		if (instanceName != null) {
@@ -179,44 +796,391 @@ public class BinaryDLWriter implements DLWriter
 
 		for (String attributeName : instance.getAttributeNames()) {
 
-			int attributeNameId = getOrMapSymbol(attributeName);
+			DLAttribute attribute = type.getAttribute(attributeName).orElse(null);
+
+			// Ignore attribute that shall not be persisted (may be null on special types like maps)
+			if ((attribute != null) && attribute.hasAnnotation(DontPersistDLAnnotation.class)) {
+				continue;
+			}
 
 			Object value = instance.get(attributeName);
 
-			if (value != null) {
-
-				if (value instanceof Float float1) {
-					processor.setFloatAttribute(attributeNameId, float1);
-				} else if (value instanceof Double double1) {
-					processor.setDoubleAttribute(attributeNameId, double1);
-				} else if (value instanceof Integer integer) {
-					processor.setIntAttribute(attributeNameId, integer);
-				} else if (value instanceof Long long1) {
-					processor.setLongAttribute(attributeNameId, long1);
-				} else if (value instanceof Boolean boolean1) {
-					processor.setBooleanAttribute(attributeNameId, boolean1);
-				} else if (value instanceof UUID uuid) {
-					processor.setBinaryAttribute(attributeNameId, UUIDHelper.toBytes(uuid));
-				} else {
-					processor.setStringAttribute(attributeNameId, "" + value);
-				}
+			if (value == null) {
+				continue;
+			}
+
+			int attributeNameId = getOrMapSymbol(attributeName);
+
+			// values of enum attributes are written as ordinals
+			if ((attribute != null)
+				&& (attribute.getType() instanceof DLEnum<?> enumType)
+				&& writeEnumValue(attributeNameId, enumType, value)) {
+				continue;
 			}
+
+			writeValue(attributeNameId, value);
+		}
+
+		if (instance.hasChildren()) {
+
+			processor.beginChildren();
+
+			for (DLInstance child : instance.getChildren()) {
+				writeInstance(child);
+			}
+
+			processor.endChildren();
 		}
 
 		processor.endInstance();
 	}
 
+	/**
+	 * Writes the value as attribute nameId of the current instance or as next element of the current array if nameId
+	 * is 0. Primitive arrays and boxed numeric arrays without null elements are written packed, other arrays, lists
+	 * and sets as element streams.
+	 *
+	 * @param nameId
+	 * @param value
+	 *
+	 * @throws IOException
+	 */
+	protected void writeValue(int nameId, Object value) throws IOException
+	{
+		assert nameId >= 0;
+		assert value != null;
+
+		if (value instanceof DLInstance dlInstance) {
+			// array elements are just begun
+			if (nameId > 0) {
+				processor.beginInstanceAttribute(nameId);
+			}
+			writeInstance(dlInstance);
+		} else if (value instanceof Float float1) {
+			processor.setFloatAttribute(nameId, float1);
+		} else if (value instanceof Double double1) {
+			processor.setDoubleAttribute(nameId, double1);
+		} else if (value instanceof Integer integer) {
+			processor.setIntAttribute(nameId, integer);
+		} else if (value instanceof Long long1) {
+			processor.setLongAttribute(nameId, long1);
+		} else if (value instanceof Boolean boolean1) {
+			processor.setBooleanAttribute(nameId, boolean1);
+		} else if (value instanceof Byte byte1) {
+			processor.setByteAttribute(nameId, byte1);
+		} else if (value instanceof Short short1) {
+			processor.setShortAttribute(nameId, short1);
+		} else if (value instanceof Character character) {
+			processor.setCharAttribute(nameId, character);
+		} else if (value instanceof UUID uuid) {
+			processor.setUUIDAttribute(nameId, uuid);
+		} else if (value instanceof Date date && date.getClass() == Date.class) {
+			processor.setDateAttribute(nameId, date.getTime());
+		} else if (value instanceof Path path) {
+			processor.setPathAttribute(nameId, path.toString());
+		} else if (value instanceof Enum<?> enumValue && writeEnumValue(nameId, enumValue)) {
+			// written as ordinal of its DLEnum
+		} else if (value instanceof ByteBuffer buffer) {
+			processor.setBinaryAttribute(nameId, buffer);
+		} else if (value instanceof byte[] bytes) {
+			processor.setBinaryAttribute(nameId, bytes);
+		} else if (value instanceof int[] ints) {
+			processor.setIntArrayAttribute(nameId, ints);
+		} else if (value instanceof long[] longs) {
+			processor.setLongArrayAttribute(nameId, longs);
+		} else if (value instanceof float[] floats) {
+			processor.setFloatArrayAttribute(nameId, floats);
+		} else if (value instanceof double[] doubles) {
+			processor.setDoubleArrayAttribute(nameId, doubles);
+		} else if (value instanceof Integer[] ints && !containsNull(ints)) {
+			processor.setIntArrayAttribute(nameId, Arrays.stream(ints).mapToInt(Integer::intValue).toArray());
+		} else if (value instanceof Long[] longs && !containsNull(longs)) {
+			processor.setLongArrayAttribute(nameId, Arrays.stream(longs).mapToLong(Long::longValue).toArray());
+		} else if (value instanceof Float[] floats && !containsNull(floats)) {
+			float[] unboxed = new float[floats.length];
+			for (int i = 0; i < floats.length; ++i) {
+				unboxed[i] = floats[i];
+			}
+			processor.setFloatArrayAttribute(nameId, unboxed);
+		} else if (value instanceof Double[] doubles && !containsNull(doubles)) {
+			processor.setDoubleArrayAttribute(nameId, Arrays.stream(doubles).mapToDouble(Double::doubleValue).toArray());
+		} else if (value instanceof Object[] array) {
+			writeElements(nameId, DLParsingProcessor.COLLECTION_ARRAY, Arrays.asList(array));
+		} else if (value instanceof List list) {
+			writeElements(nameId, DLParsingProcessor.COLLECTION_LIST, list);
+		} else if (value instanceof Set set) {
+			writeElements(nameId, DLParsingProcessor.COLLECTION_SET, set);
+		} else {
+			writeString(nameId, "" + value);
+		}
+	}
+
+	/**
+	 * Writes the string inline on its first occurrence and as symbol from its second occurrence on if the value
+	 * dictionary is active
+	 *
+	 * @param nameId
+	 * @param value
+	 *
+	 * @throws IOException
+	 */
+	protected void writeString(int nameId, String value) throws IOException
+	{
+		assert nameId >= 0;
+		assert value != null;
+
+		if (valueDictionary && value.length() <= MAX_DICTIONARY_VALUE_LENGTH) {
+
+			Integer symbolId = symbols.get(value);
+
+			if (symbolId == null && dictionaryCandidates.remove(value)) {
+				symbolId = getOrMapSymbol(value);
+			}
+
+			if (symbolId != null) {
+				processor.setSymbolAttribute(nameId, symbolId);
+				return;
+			}
+
+			if (dictionaryCandidates.size() < MAX_DICTIONARY_CANDIDATES) {
+				dictionaryCandidates.add(value);
+			}
+		}
+
+		processor.setStringAttribute(nameId, value);
+	}
+
+	/**
+	 * Writes the java enum value as ordinal if the core knows its DLEnum
+	 *
+	 * @param nameId
+	 * @param value
+	 *
+	 * @return false if the enum is not defined in the core
+	 *
+	 * @throws IOException
+	 */
+	protected boolean writeEnumValue(int nameId, Enum<?> value) throws IOException
+	{
+		assert nameId >= 0;
+		assert value != null;
+
+		if (core.getType(value.getDeclaringClass()).orElse(null) instanceof DLEnum<?> enumType) {
+			return writeEnumValue(nameId, enumType, value);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Writes the value as ordinal of the enum type - the enum gets defined in the stream before if not written yet
+	 *
+	 * @param nameId
+	 * @param enumType
+	 * @param value
+	 *
+	 * @return false if the value is not contained in the enum
+	 *
+	 * @throws IOException
+	 */
+	protected boolean writeEnumValue(int nameId, DLEnum<?> enumType, Object value) throws IOException
+	{
+		assert nameId >= 0;
+		assert enumType != null;
+		assert value != null;
+
+		int ordinal;
+		if (value instanceof Enum<?> enumValue && enumType.getJavaDataType() == enumValue.getDeclaringClass()) {
+			ordinal = enumValue.ordinal();
+		} else {
+			ordinal = enumType.getValues().indexOf(value);
+		}
+
+		if (ordinal < 0) {
+			return false;
+		}
+
+		write(enumType);
+		processor.setEnumAttribute(nameId, getOrMapSymbol(enumType.getName()), ordinal);
+
+		return true;
+	}
+
+	protected void writeElements(int nameId, int kind, Collection<?> elements) throws IOException
+	{
+		assert nameId >= 0;
+		assert elements != null;
+
+		processor.beginArrayAttribute(nameId, kind);
+
+		for (Object element : elements) {
+
+			if (element == null) {
+				throw new IOException("Null elements can not be written");
+			}
+
+			writeValue(0, element);
+		}
+
+		processor.endArray();
+	}
+
+	private static boolean containsNull(Object[] array)
+	{
+		for (Object element : array) {
+			if (element == null) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
 	@Override
 	public void close() throws IOException
 	{
-		try (out) {
+		try (out; channel) {
+			writeColumnBlock();
 			processor.endModule();
+
+			if (indexed) {
+				writeIndex();
+			}
+
+			if (channelProcessor != null) {
+				channelProcessor.flush();
+			}
+		}
+	}
+
+	/**
+	 * Returns the position in the uncompressed stream
+	 *
+	 * @return
+	 */
+	protected long getPosition()
+	{
+		if (channelProcessor != null) {
+			return channelProcessor.getPosition();
+		}
+
+		// positions are unknown if writing to a given processor
+		if (positionOut == null) {
+			return 0;
+		}
+
+		return positionOut.getPosition();
+	}
+
+	protected void writeIndex() throws IOException
+	{
+		for (Map.Entry<String, Integer> symbol : symbols.entrySet()) {
+			index.addSymbol(symbol.getValue(), symbol.getKey());
+		}
+
+		long indexOffset = getPosition();
+		processor.defineModuleIndex(ByteBuffer.wrap(index.toBytes(indexOffset)));
+	}
+
+	public boolean isValueDictionary()
+	{
+		return valueDictionary;
+	}
+
+	/**
+	 * Set to false to write all string values inline
+	 *
+	 * @param valueDictionary
+	 */
+	public void setValueDictionary(boolean valueDictionary)
+	{
+		this.valueDictionary = valueDictionary;
+	}
+
+	public int getColumnBlockSize()
+	{
+		return columnBlockSize;
+	}
+
+	/**
+	 * Set to a count of rows to write consecutive top level instances of the same type column wise - see
+	 * {@link BinaryColumnBlock}. The rows are kept until their block gets written, so they must not be modified after
+	 * they got written.
+	 *
+	 * @param columnBlockSize 0 writes all instances row wise
+	 *
+	 * @throws IOException
+	 */
+	public void setColumnBlockSize(int columnBlockSize) throws IOException
+	{
+		assert columnBlockSize >= 0;
+
+		writeColumnBlock();
+		this.columnBlockSize = columnBlockSize;
+	}
+
+	public boolean isIndexed()
+	{
+		return indexed;
+	}
+
+	/**
+	 * Set to true to write a module index on close - see {@link BinaryModuleIndex}
+	 *
+	 * @param indexed
+	 */
+	public void setIndexed(boolean indexed)
+	{
+		assert !indexed || out != null || channel != null : "Writing to a given processor does not support indexes";
+
+		this.indexed = indexed;
+	}
+
+	/**
+	 * Tracks the position in the uncompressed stream for the module index
+	 */
+	protected static class PositionOutputStream extends FilterOutputStream
+	{
+
+		protected long position;
+
+		protected PositionOutputStream(OutputStream out)
+		{
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			out.write(b);
+			position++;
+		}
+
+		@Override
+		public void write(byte[] data, int offset, int length) throws IOException
+		{
+			out.write(data, offset, length);
+			position += length;
+		}
+
+		public long getPosition()
+		{
+			return position;
 		}
 	}
 
 	@Override
 	public void flush() throws IOException
 	{
-		out.flush();
+		writeColumnBlock();
+
+		if (channelProcessor != null) {
+			channelProcessor.flush();
+			return;
+		}
+
+		if (out != null) {
+			out.flush();
+		}
 	}
 }
@@ -0,0 +1,443 @@
+// <editor-fold desc="The MIT License" defaultstate="collapsed">
+/*
+ * The MIT License
+ * 
+ * Copyright 2022 Studio 42 GmbH ( https://www.s42m.de ).
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+//</editor-fold>
+package de.s42.dl.io.binary;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Helpers for the compact encodings of the binary format - LEB128 varints and zigzag for signed values. See
+ * https://en.wikipedia.org/wiki/LEB128 and https://protobuf.dev/programming-guides/encoding/#signed-ints
+ *
+ * @author Benjamin Schiller
+ */
+public final class BinaryHelper
+{
+
+	/**
+	 * Max bytes a varint encoded int can take
+	 */
+	public final static int MAX_VARINT_LENGTH = 5;
+
+	/**
+	 * Max bytes a varint encoded long can take
+	 */
+	public final static int MAX_VARLONG_LENGTH = 10;
+
+	/**
+	 * Size of the scratch buffers packed arrays are written through in chunks
+	 */
+	public final static int PACKED_CHUNK_SIZE = 8192;
+
+	/**
+	 * Tags of the values of annotation parameters and attribute defaults
+	 */
+	public final static int VALUE_NULL = 0;
+	public final static int VALUE_STRING = 1;
+	public final static int VALUE_LONG = 2;
+	public final static int VALUE_DOUBLE = 3;
+	public final static int VALUE_BOOLEAN = 4;
+
+	private BinaryHelper()
+	{
+		// never instantiated
+	}
+
+	public static int encodeZigZag(int value)
+	{
+		return (value << 1) ^ (value >> 31);
+	}
+
+	public static long encodeZigZag(long value)
+	{
+		return (value << 1) ^ (value >> 63);
+	}
+
+	public static int decodeZigZag(int value)
+	{
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	public static long decodeZigZag(long value)
+	{
+		return (value >>> 1) ^ -(value & 1L);
+	}
+
+	/**
+	 * Returns the tag a value is written with - integral numbers are written as long, other numbers as double and all
+	 * other values as their string representation
+	 *
+	 * @param value
+	 *
+	 * @return
+	 */
+	public static int getValueTag(Object value)
+	{
+		if (value == null) {
+			return VALUE_NULL;
+		}
+
+		if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			return VALUE_LONG;
+		}
+
+		if (value instanceof Double || value instanceof Float) {
+			return VALUE_DOUBLE;
+		}
+
+		if (value instanceof Boolean) {
+			return VALUE_BOOLEAN;
+		}
+
+		return VALUE_STRING;
+	}
+
+	/**
+	 * Writes the value as unsigned LEB128 varint
+	 *
+	 * @param buf
+	 * @param value
+	 */
+	public static void putVarInt(ByteBuffer buf, int value)
+	{
+		assert buf != null;
+
+		while ((value & ~0x7F) != 0) {
+			buf.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buf.put((byte) value);
+	}
+
+	/**
+	 * Writes the value as unsigned LEB128 varint
+	 *
+	 * @param buf
+	 * @param value
+	 */
+	public static void putVarLong(ByteBuffer buf, long value)
+	{
+		assert buf != null;
+
+		while ((value & ~0x7FL) != 0L) {
+			buf.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buf.put((byte) value);
+	}
+
+	/**
+	 * Reads an unsigned LEB128 varint
+	 *
+	 * @param buf
+	 *
+	 * @return
+	 *
+	 * @throws IOException if the varint is longer than 5 bytes or the buffer ends in between
+	 */
+	public static int getVarInt(ByteBuffer buf) throws IOException
+	{
+		assert buf != null;
+
+		int result = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+
+			if (!buf.hasRemaining()) {
+				throw new IOException("Source corrupted - could not read enough bytes for next varint");
+			}
+
+			byte b = buf.get();
+			result |= (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0) {
+				return result;
+			}
+		}
+
+		throw new IOException("Source corrupted - varint is longer than " + MAX_VARINT_LENGTH + " bytes");
+	}
+
+	/**
+	 * Reads an unsigned LEB128 varint
+	 *
+	 * @param buf
+	 *
+	 * @return
+	 *
+	 * @throws IOException if the varint is longer than 10 bytes or the buffer ends in between
+	 */
+	public static long getVarLong(ByteBuffer buf) throws IOException
+	{
+		assert buf != null;
+
+		long result = 0L;
+		for (int shift = 0; shift < 70; shift += 7) {
+
+			if (!buf.hasRemaining()) {
+				throw new IOException("Source corrupted - could not read enough bytes for next varlong");
+			}
+
+			byte b = buf.get();
+			result |= (long) (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0) {
+				return result;
+			}
+		}
+
+		throw new IOException("Source corrupted - varlong is longer than " + MAX_VARLONG_LENGTH + " bytes");
+	}
+
+	/**
+	 * Writes the values as packed block of big endian ints through the heap buffer chunk
+	 *
+	 * @param out
+	 * @param chunk
+	 * @param values
+	 *
+	 * @throws IOException
+	 */
+	public static void putInts(OutputStream out, ByteBuffer chunk, int[] values) throws IOException
+	{
+		assert out != null;
+		assert chunk != null;
+		assert chunk.hasArray();
+		assert values != null;
+
+		int perChunk = chunk.capacity() / Integer.BYTES;
+		for (int offset = 0; offset < values.length; offset += perChunk) {
+			int count = Math.min(values.length - offset, perChunk);
+			chunk.clear();
+			chunk.asIntBuffer().put(values, offset, count);
+			out.write(chunk.array(), chunk.arrayOffset(), count * Integer.BYTES);
+		}
+	}
+
+	/**
+	 * Writes the values as packed block of big endian longs through the heap buffer chunk
+	 *
+	 * @param out
+	 * @param chunk
+	 * @param values
+	 *
+	 * @throws IOException
+	 */
+	public static void putLongs(OutputStream out, ByteBuffer chunk, long[] values) throws IOException
+	{
+		assert out != null;
+		assert chunk != null;
+		assert chunk.hasArray();
+		assert values != null;
+
+		int perChunk = chunk.capacity() / Long.BYTES;
+		for (int offset = 0; offset < values.length; offset += perChunk) {
+			int count = Math.min(values.length - offset, perChunk);
+			chunk.clear();
+			chunk.asLongBuffer().put(values, offset, count);
+			out.write(chunk.array(), chunk.arrayOffset(), count * Long.BYTES);
+		}
+	}
+
+	/**
+	 * Writes the values as packed block of big endian floats through the heap buffer chunk
+	 *
+	 * @param out
+	 * @param chunk
+	 * @param values
+	 *
+	 * @throws IOException
+	 */
+	public static void putFloats(OutputStream out, ByteBuffer chunk, float[] values) throws IOException
+	{
+		assert out != null;
+		assert chunk != null;
+		assert chunk.hasArray();
+		assert values != null;
+
+		int perChunk = chunk.capacity() / Float.BYTES;
+		for (int offset = 0; offset < values.length; offset += perChunk) {
+			int count = Math.min(values.length - offset, perChunk);
+			chunk.clear();
+			chunk.asFloatBuffer().put(values, offset, count);
+			out.write(chunk.array(), chunk.arrayOffset(), count * Float.BYTES);
+		}
+	}
+
+	/**
+	 * Writes the values as packed block of big endian doubles through the heap buffer chunk
+	 *
+	 * @param out
+	 * @param chunk
+	 * @param values
+	 *
+	 * @throws IOException
+	 */
+	public static void putDoubles(OutputStream out, ByteBuffer chunk, double[] values) throws IOException
+	{
+		assert out != null;
+		assert chunk != null;
+		assert chunk.hasArray();
+		assert values != null;
+
+		int perChunk = chunk.capacity() / Double.BYTES;
+		for (int offset = 0; offset < values.length; offset += perChunk) {
+			int count = Math.min(values.length - offset, perChunk);
+			chunk.clear();
+			chunk.asDoubleBuffer().put(values, offset, count);
+			out.write(chunk.array(), chunk.arrayOffset(), count * Double.BYTES);
+		}
+	}
+
+	/**
+	 * Reads a packed block of length big endian ints using a bulk view of the buffer
+	 *
+	 * @param buf
+	 * @param length
+	 *
+	 * @return
+	 *
+	 * @throws IOException if the buffer does not contain enough bytes
+	 */
+	public static int[] getInts(ByteBuffer buf, int length) throws IOException
+	{
+		assert buf != null;
+
+		int byteLength = checkPackedLength(buf, length, Integer.BYTES);
+		int[] result = new int[length];
+		buf.asIntBuffer().get(result);
+		buf.position(buf.position() + byteLength);
+		return result;
+	}
+
+	/**
+	 * Reads a packed block of length big endian longs using a bulk view of the buffer
+	 *
+	 * @param buf
+	 * @param length
+	 *
+	 * @return
+	 *
+	 * @throws IOException if the buffer does not contain enough bytes
+	 */
+	public static long[] getLongs(ByteBuffer buf, int length) throws IOException
+	{
+		assert buf != null;
+
+		int byteLength = checkPackedLength(buf, length, Long.BYTES);
+		long[] result = new long[length];
+		buf.asLongBuffer().get(result);
+		buf.position(buf.position() + byteLength);
+		return result;
+	}
+
+	/**
+	 * Reads a packed block of length big endian floats using a bulk view of the buffer
+	 *
+	 * @param buf
+	 * @param length
+	 *
+	 * @return
+	 *
+	 * @throws IOException if the buffer does not contain enough bytes
+	 */
+	public static float[] getFloats(ByteBuffer buf, int length) throws IOException
+	{
+		assert buf != null;
+
+		int byteLength = checkPackedLength(buf, length, Float.BYTES);
+		float[] result = new float[length];
+		buf.asFloatBuffer().get(result);
+		buf.position(buf.position() + byteLength);
+		return result;
+	}
+
+	/**
+	 * Reads a packed block of length big endian doubles using a bulk view of the buffer
+	 *
+	 * @param buf
+	 * @param length
+	 *
+	 * @return
+	 *
+	 * @throws IOException if the buffer does not contain enough bytes
+	 */
+	public static double[] getDoubles(ByteBuffer buf, int length) throws IOException
+	{
+		assert buf != null;
+
+		int byteLength = checkPackedLength(buf, length, Double.BYTES);
+		double[] result = new double[length];
+		buf.asDoubleBuffer().get(result);
+		buf.position(buf.position() + byteLength);
+		return result;
+	}
+
+	/**
+	 * Writes the remaining bytes of value without changing its position - direct buffers are copied through the heap
+	 * buffer chunk
+	 *
+	 * @param out
+	 * @param chunk
+	 * @param value
+	 *
+	 * @throws IOException
+	 */
+	public static void putBuffer(OutputStream out, ByteBuffer chunk, ByteBuffer value) throws IOException
+	{
+		assert out != null;
+		assert chunk != null;
+		assert chunk.hasArray();
+		assert value != null;
+
+		if (value.hasArray()) {
+			out.write(value.array(), value.arrayOffset() + value.position(), value.remaining());
+			return;
+		}
+
+		ByteBuffer source = value.duplicate();
+		while (source.hasRemaining()) {
+			int count = Math.min(source.remaining(), chunk.capacity());
+			source.get(chunk.array(), chunk.arrayOffset(), count);
+			out.write(chunk.array(), chunk.arrayOffset(), count);
+		}
+	}
+
+	private static int checkPackedLength(ByteBuffer buf, int length, int elementSize) throws IOException
+	{
+		if (length < 0) {
+			throw new IOException("Source corrupted - negative packed array length " + length);
+		}
+
+		long byteLength = (long) length * elementSize;
+
+		if (buf.remaining() < byteLength) {
+			throw new IOException("Source corrupted - could not read enough bytes for next packed array " + buf.remaining() + " instead of " + byteLength);
+		}
+
+		return (int) byteLength;
+	}
+}
@@ -0,0 +1,532 @@
+// <editor-fold desc="The MIT License" defaultstate="collapsed">
+/*
+ * The MIT License
+ * 
+ * Copyright 2022 Studio 42 GmbH ( https://www.s42m.de ).
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+//</editor-fold>
+package de.s42.dl.io.binary;
+
+import de.s42.dl.DLAnnotationFactory;
+import de.s42.dl.DLInstance;
+import de.s42.dl.DLModule;
+import de.s42.dl.DLPragma;
+import de.s42.dl.DLType;
+import de.s42.dl.core.BaseDLCore;
+import de.s42.dl.exceptions.DLException;
+import de.s42.dl.language.DLVersion;
+import de.s42.dl.parser.DLLexer;
+import de.s42.dl.parser.Utf8CharStream;
+import de.s42.dl.util.DLHelper;
+import de.s42.log.LogManager;
+import de.s42.log.Logger;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.antlr.v4.runtime.Token;
+
+/**
+ * Opt-in on-disk cache of parsed HRF modules. The result of parsing a module - the types, annotation factories and
+ * aliases it defined and its top level instances - is stored as DLB keyed by the SHA-256 of the content, the cache
+ * and binary format versions and the settings of the core. Parsing the same content again loads the DLB instead of
+ * lexing and parsing HRF. Changed content gets a new key, old entries are evicted by least recent use when the cache
+ * exceeds its size or entry limits.
+ * <p>
+ * Just modules whose effect is completely contained in the DLB are stored: no require, pragma, assert or reference,
+ * no attributes of the module itself and no changes of the core besides definitions of types, aliases and extern
+ * annotation factories.
+ * <p>
+ * Layout: int signature, int cache version, int count and UTF names of the types the module defined followed by an
+ * uncompressed DLB stream.
+ *
+ * @author Benjamin Schiller
+ */
+public class BinaryModuleCache
+{
+
+	private final static Logger log = LogManager.getLogger(BinaryModuleCache.class.getName());
+
+	public final static int VERSION = 2;
+
+	public final static int HEADER_SIZE = 12;
+
+	public final static String FILE_EXTENSION = ".dlc";
+
+	public final static long DEFAULT_MAX_SIZE = 64L * 1024L * 1024L;
+
+	public final static int DEFAULT_MAX_ENTRIES = 1024;
+
+	/**
+	 * Version of DL the entries are created with - another version may read or define things differently
+	 */
+	protected final static byte[] DL_VERSION = DLVersion.getVersion().getBytes(StandardCharsets.UTF_8);
+
+	/**
+	 * Parses the module if it is not cached
+	 */
+	@FunctionalInterface
+	public interface ModuleParser
+	{
+
+		public DLModule parse() throws DLException, IOException;
+	}
+
+	/**
+	 * State of a core before parsing a module - allows to detect the changes of the module
+	 */
+	protected static class CoreState
+	{
+
+		protected final Set<DLType> types;
+		protected final Set<String> annotationFactoryNames;
+		protected final Map<String, String> aliases;
+		protected final int pragmaCount;
+		protected final int exportedCount;
+		protected final int flags;
+
+		protected CoreState(BaseDLCore core)
+		{
+			assert core != null;
+
+			types = new HashSet<>(core.getTypes());
+			annotationFactoryNames = new HashSet<>(core.getAnnotationFactoryNames());
+			aliases = getAliases(core);
+			pragmaCount = core.getPragmas().size();
+			exportedCount = core.getExported().size();
+			flags = BinaryCoreImage.getFlags(core);
+		}
+
+		protected static Map<String, String> getAliases(BaseDLCore core)
+		{
+			Map<String, String> aliases = new HashMap<>();
+			aliases.putAll(core.getAnnotationFactoryAliases());
+			aliases.putAll(core.getTypeAliases());
+			aliases.putAll(core.getPragmaAliases());
+			return aliases;
+		}
+	}
+
+	protected final Path directory;
+	protected final long maxSize;
+	protected final int maxEntries;
+
+	public BinaryModuleCache(Path directory)
+	{
+		this(directory, DEFAULT_MAX_SIZE, DEFAULT_MAX_ENTRIES);
+	}
+
+	public BinaryModuleCache(Path directory, long maxSize, int maxEntries)
+	{
+		assert directory != null;
+		assert maxSize > 0;
+		assert maxEntries > 0;
+
+		this.directory = directory;
+		this.maxSize = maxSize;
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Returns the cached module of the file or parses it with parser and caches the result if possible
+	 *
+	 * @param core
+	 * @param moduleId
+	 * @param file
+	 * @param parser
+	 *
+	 * @return
+	 *
+	 * @throws DLException
+	 * @throws IOException
+	 */
+	public DLModule parse(BaseDLCore core, String moduleId, Path file, ModuleParser parser) throws DLException, IOException
+	{
+		assert core != null;
+		assert moduleId != null;
+		assert file != null;
+		assert parser != null;
+
+		ByteBuffer content = map(file);
+		String key = createKey(core, content);
+
+		Optional<DLModule> cached = load(core, moduleId, key);
+		if (cached.isPresent()) {
+			return cached.orElseThrow();
+		}
+
+		CoreState state = new CoreState(core);
+
+		DLModule module = parser.parse();
+
+		if (isCacheable(core, module, state, content)) {
+			store(core, module, state, key);
+		}
+
+		return module;
+	}
+
+	/**
+	 * Creates the key of the content in the core
+	 *
+	 * @param core
+	 * @param content
+	 *
+	 * @return
+	 */
+	public String createKey(BaseDLCore core, ByteBuffer content)
+	{
+		assert core != null;
+		assert content != null;
+
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+			ByteBuffer settings = ByteBuffer.allocate(12);
+			settings.putInt(VERSION);
+			settings.putInt(BinaryDLWriter.DEFAULT_VERSION);
+			settings.putInt(BinaryCoreImage.getFlags(core));
+			digest.update(settings.array());
+			digest.update(DL_VERSION);
+			digest.update(core.getClass().getName().getBytes());
+			digest.update(content.duplicate());
+
+			return HexFormat.of().formatHex(digest.digest());
+		} catch (NoSuchAlgorithmException ex) {
+			throw new RuntimeException("SHA-256 is not available - " + ex.getMessage(), ex);
+		}
+	}
+
+	/**
+	 * Loads the cached module into the core
+	 *
+	 * @param core
+	 * @param moduleId
+	 * @param key
+	 *
+	 * @return the module or empty if it is not cached
+	 *
+	 * @throws DLException
+	 */
+	public Optional<DLModule> load(BaseDLCore core, String moduleId, String key) throws DLException
+	{
+		assert core != null;
+		assert moduleId != null;
+		assert key != null;
+
+		Path entry = getEntry(key);
+
+		if (!Files.isRegularFile(entry)) {
+			return Optional.empty();
+		}
+
+		try {
+			byte[] data = Files.readAllBytes(entry);
+			ByteArrayInputStream bytes = new ByteArrayInputStream(data);
+			DataInputStream in = new DataInputStream(bytes);
+
+			if (data.length < HEADER_SIZE || in.readInt() != DLHelper.BIN_CACHE_SIGNATURE || in.readInt() != VERSION) {
+				throw new IOException("Invalid header");
+			}
+
+			int definedTypeCount = in.readInt();
+			List<String> definedTypeNames = new ArrayList<>(definedTypeCount);
+			for (int i = 0; i < definedTypeCount; ++i) {
+				definedTypeNames.add(in.readUTF());
+			}
+
+			int offset = data.length - bytes.available();
+
+			DLModule cached;
+			try (BinaryDLReader reader = new BinaryDLReader(ByteBuffer.wrap(data, offset, data.length - offset).slice(), core)) {
+				cached = reader.readModule();
+			}
+
+			// The DLB also defines the types the module depends on - just the types defined by the module are listed
+			DLModule module = core.createModule(moduleId);
+			for (String name : definedTypeNames) {
+				module.addDefinedType(core.getType(name).orElseThrow(() -> {
+					return new IOException("Defined type '" + name + "' is missing");
+				}));
+			}
+			for (DLInstance child : cached.getChildren()) {
+				module.addChild(child);
+			}
+
+			// Marks the entry as recently used
+			Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+
+			return Optional.of(module);
+		} catch (IOException ex) {
+			log.warn("Removing unreadable cache entry", entry, "-", ex.getMessage());
+			invalidate(key);
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Returns true if the effect of parsing the module in the core can be restored from the DLB
+	 *
+	 * @param core
+	 * @param module
+	 * @param state state of the core before parsing
+	 * @param content
+	 *
+	 * @return
+	 */
+	protected boolean isCacheable(BaseDLCore core, DLModule module, CoreState state, ByteBuffer content)
+	{
+		assert core != null;
+		assert module != null;
+		assert state != null;
+		assert content != null;
+
+		if (!module.getAttributes().isEmpty()
+			|| core.getPragmas().size() != state.pragmaCount
+			|| core.getExported().size() != state.exportedCount
+			|| BinaryCoreImage.getFlags(core) != state.flags) {
+			return false;
+		}
+
+		for (String name : core.getAnnotationFactoryNames()) {
+			if (!state.annotationFactoryNames.contains(name)
+				&& !BinaryDLWriter.hasDefaultConstructor(core.getAnnotationFactory(name).orElseThrow())) {
+				return false;
+			}
+		}
+
+		// Requires, pragmas, asserts and references depend on the state outside of the content
+		DLLexer lexer = new DLLexer(new Utf8CharStream(content.duplicate(), module.getName()));
+		lexer.removeErrorListeners();
+
+		for (Token token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) {
+
+			int type = token.getType();
+
+			if (type == DLLexer.KEYWORD_REQUIRE
+				|| type == DLLexer.KEYWORD_PRAGMA
+				|| type == DLLexer.KEYWORD_ASSERT
+				|| type == DLLexer.REF) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Stores the definitions the module made in the core and its instances
+	 *
+	 * @param core
+	 * @param module
+	 * @param state state of the core before parsing
+	 * @param key
+	 *
+	 * @throws IOException
+	 */
+	protected void store(BaseDLCore core, DLModule module, CoreState state, String key) throws IOException
+	{
+		assert core != null;
+		assert module != null;
+		assert state != null;
+		assert key != null;
+
+		Files.createDirectories(directory);
+
+		Path temp = Files.createTempFile(directory, key, ".tmp");
+
+		try {
+			try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+
+				DataOutputStream header = new DataOutputStream(out);
+				header.writeInt(DLHelper.BIN_CACHE_SIGNATURE);
+				header.writeInt(VERSION);
+				header.writeInt(module.getDefinedTypes().size());
+				for (DLType type : module.getDefinedTypes()) {
+					header.writeUTF(type.getName());
+				}
+				header.flush();
+
+				try (BinaryDLWriter writer = new BinaryDLWriter(out, core)) {
+
+					for (String name : core.getAnnotationFactoryNames()) {
+						if (!state.annotationFactoryNames.contains(name)) {
+							DLAnnotationFactory factory = core.getAnnotationFactory(name).orElseThrow();
+							writer.writeAnnotationFactory(name, factory);
+						}
+					}
+
+					for (DLType type : core.getTypes()) {
+						if (!state.types.contains(type)) {
+							writer.write(type);
+						}
+					}
+
+					for (Map.Entry<String, String> alias : CoreState.getAliases(core).entrySet()) {
+						if (!state.aliases.containsKey(alias.getKey())) {
+							writer.writeAlias(alias.getKey(), alias.getValue());
+						}
+					}
+
+					for (DLInstance instance : module.getChildren()) {
+						writer.write(instance);
+					}
+				}
+			}
+
+			try {
+				Files.move(temp, getEntry(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(temp, getEntry(key), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+
+		evict();
+	}
+
+	/**
+	 * Removes the least recently used entries until the cache is within its size and entry limits
+	 *
+	 * @throws IOException
+	 */
+	public void evict() throws IOException
+	{
+		List<Path> entries = getEntries();
+
+		long size = 0;
+		Map<Path, FileTime> lastUsed = new HashMap<>();
+		for (Path entry : entries) {
+			size += Files.size(entry);
+			lastUsed.put(entry, Files.getLastModifiedTime(entry));
+		}
+
+		entries.sort(Comparator.comparing(lastUsed::get));
+
+		int count = entries.size();
+		for (Path entry : entries) {
+
+			if (size <= maxSize && count <= maxEntries) {
+				return;
+			}
+
+			size -= Files.size(entry);
+			count--;
+			Files.deleteIfExists(entry);
+		}
+	}
+
+	/**
+	 * Removes the entry of the key
+	 *
+	 * @param key
+	 */
+	public void invalidate(String key)
+	{
+		assert key != null;
+
+		try {
+			Files.deleteIfExists(getEntry(key));
+		} catch (IOException ex) {
+			log.warn("Could not remove cache entry", key, "-", ex.getMessage());
+		}
+	}
+
+	/**
+	 * Removes all entries
+	 *
+	 * @throws IOException
+	 */
+	public void clear() throws IOException
+	{
+		for (Path entry : getEntries()) {
+			Files.deleteIfExists(entry);
+		}
+	}
+
+	public List<Path> getEntries() throws IOException
+	{
+		List<Path> entries = new ArrayList<>();
+
+		if (!Files.isDirectory(directory)) {
+			return entries;
+		}
+
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + FILE_EXTENSION)) {
+			for (Path entry : stream) {
+				entries.add(entry);
+			}
+		}
+
+		return entries;
+	}
+
+	protected Path getEntry(String key)
+	{
+		return directory.resolve(key + FILE_EXTENSION);
+	}
+
+	protected static ByteBuffer map(Path file) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	public Path getDirectory()
+	{
+		return directory;
+	}
+
+	public long getMaxSize()
+	{
+		return maxSize;
+	}
+
+	public int getMaxEntries()
+	{
+		return maxEntries;
+	}
+}
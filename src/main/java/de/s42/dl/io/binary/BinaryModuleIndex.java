@@ -0,0 +1,269 @@
+// <editor-fold desc="The MIT License" defaultstate="collapsed">
+/*
+ * The MIT License
+ * 
+ * Copyright 2022 Studio 42 GmbH ( https://www.s42m.de ).
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+//</editor-fold>
+package de.s42.dl.io.binary;
+
+import de.s42.dl.util.DLHelper;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the top level instances of a binary module - maps instance names and type symbols to the stream offsets of
+ * the instances. It also contains all symbols and the offsets of the top level definitions (types, enums, extern
+ * definitions and aliases), so an instance can be read without reading the stream before it. The
+ * index is written as payload of the ModuleIndex opcode at the end of the stream and ends with a trailer (offset of
+ * the ModuleIndex opcode and signature), so it can be found from the end of the stream.
+ *
+ * @author Benjamin Schiller
+ */
+public class BinaryModuleIndex
+{
+
+	public final static int TRAILER_SIZE = 12;
+
+	protected final Map<Integer, String> symbols = new HashMap<>();
+	protected final Map<String, Long> offsetsByName = new HashMap<>();
+	protected final Map<Integer, List<Long>> offsetsByType = new LinkedHashMap<>();
+
+	// write order of the instances
+	protected final List<Long> offsets = new ArrayList<>();
+	protected final List<Integer> types = new ArrayList<>();
+	protected final List<String> names = new ArrayList<>();
+
+	// offsets of the definitions in write order
+	protected final List<Long> definitions = new ArrayList<>();
+
+	public void addSymbol(int id, String symbol)
+	{
+		assert id > 0;
+		assert symbol != null;
+
+		symbols.put(id, symbol);
+	}
+
+	/**
+	 * Adds a top level instance
+	 *
+	 * @param type symbol id of the type
+	 * @param name may be null for anonymous instances
+	 * @param offset
+	 */
+	public void addInstance(int type, String name, long offset)
+	{
+		assert type > 0;
+		assert offset >= 0;
+
+		offsets.add(offset);
+		types.add(type);
+		names.add(name);
+
+		if (name != null) {
+			offsetsByName.put(name, offset);
+		}
+		offsetsByType.computeIfAbsent(type, (t) -> new ArrayList<>()).add(offset);
+	}
+
+	/**
+	 * Adds a top level definition - it is replayed before instances are read randomly
+	 *
+	 * @param offset
+	 */
+	public void addDefinition(long offset)
+	{
+		assert offset >= 0;
+
+		definitions.add(offset);
+	}
+
+	public List<Long> getDefinitions()
+	{
+		return Collections.unmodifiableList(definitions);
+	}
+
+	/**
+	 * Returns the offset of the instance with the given name or -1 if it is not contained
+	 *
+	 * @param name
+	 *
+	 * @return
+	 */
+	public long getOffset(String name)
+	{
+		assert name != null;
+
+		return offsetsByName.getOrDefault(name, -1L);
+	}
+
+	/**
+	 * Returns the offsets of the instances of the type with the given name in stream order
+	 *
+	 * @param typeName
+	 *
+	 * @return
+	 */
+	public List<Long> getOffsets(String typeName)
+	{
+		assert typeName != null;
+
+		for (Map.Entry<Integer, List<Long>> entry : offsetsByType.entrySet()) {
+			if (typeName.equals(symbols.get(entry.getKey()))) {
+				return Collections.unmodifiableList(entry.getValue());
+			}
+		}
+
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Returns the names of all types which have top level instances
+	 *
+	 * @return
+	 */
+	public List<String> getTypeNames()
+	{
+		List<String> result = new ArrayList<>();
+
+		for (Integer type : offsetsByType.keySet()) {
+			result.add(symbols.get(type));
+		}
+
+		return result;
+	}
+
+	public Map<Integer, String> getSymbols()
+	{
+		return Collections.unmodifiableMap(symbols);
+	}
+
+	public int getInstanceCount()
+	{
+		return offsets.size();
+	}
+
+	/**
+	 * Encodes the index including the trailer
+	 *
+	 * @param indexOffset offset of the ModuleIndex opcode in the stream
+	 *
+	 * @return
+	 *
+	 * @throws IOException
+	 */
+	public byte[] toBytes(long indexOffset) throws IOException
+	{
+		assert indexOffset >= 0;
+
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(data);
+
+		out.writeInt(symbols.size());
+		for (Map.Entry<Integer, String> symbol : symbols.entrySet()) {
+			byte[] symbolData = symbol.getValue().getBytes(StandardCharsets.UTF_8);
+			out.writeInt(symbol.getKey());
+			out.writeInt(symbolData.length);
+			out.write(symbolData);
+		}
+
+		out.writeInt(offsets.size());
+		for (int i = 0; i < offsets.size(); ++i) {
+			String name = names.get(i);
+			byte[] nameData = (name != null) ? name.getBytes(StandardCharsets.UTF_8) : new byte[0];
+			out.writeInt(types.get(i));
+			out.writeInt(nameData.length);
+			out.write(nameData);
+			out.writeLong(offsets.get(i));
+		}
+
+		out.writeInt(definitions.size());
+		for (long definition : definitions) {
+			out.writeLong(definition);
+		}
+
+		out.writeLong(indexOffset);
+		out.writeInt(DLHelper.BIN_INDEX_SIGNATURE);
+
+		return data.toByteArray();
+	}
+
+	/**
+	 * Decodes the index from the remaining bytes of data (as given by toBytes)
+	 *
+	 * @param data
+	 *
+	 * @return
+	 *
+	 * @throws IOException
+	 */
+	public static BinaryModuleIndex fromBytes(ByteBuffer data) throws IOException
+	{
+		assert data != null;
+
+		BinaryModuleIndex index = new BinaryModuleIndex();
+
+		try {
+			int symbolCount = data.getInt();
+			for (int i = 0; i < symbolCount; ++i) {
+				int id = data.getInt();
+				index.addSymbol(id, readString(data));
+			}
+
+			int instanceCount = data.getInt();
+			for (int i = 0; i < instanceCount; ++i) {
+				int type = data.getInt();
+				String name = readString(data);
+				long offset = data.getLong();
+				index.addInstance(type, name.isEmpty() ? null : name, offset);
+			}
+
+			// indices written before definitions were indexed end with the trailer here
+			if (data.remaining() > TRAILER_SIZE) {
+				int definitionCount = data.getInt();
+				for (int i = 0; i < definitionCount; ++i) {
+					index.addDefinition(data.getLong());
+				}
+			}
+		} catch (RuntimeException ex) {
+			throw new IOException("Source corrupted - invalid module index - " + ex.getMessage(), ex);
+		}
+
+		return index;
+	}
+
+	private static String readString(ByteBuffer data)
+	{
+		byte[] bytes = new byte[data.getInt()];
+		data.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -30,9 +30,11 @@ import de.s42.dl.parser.Opcode;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 
 /**
  *
@@ -53,6 +55,8 @@ public class BinaryParsingProcessorV1 implements DLParsingProcessor
 	private final ByteBuffer buf9 = ByteBuffer.wrap(new byte[9]);
 	private final ByteBuffer buf12 = ByteBuffer.wrap(new byte[12]);
 	private final ByteBuffer buf16 = ByteBuffer.wrap(new byte[16]);
+	private final ByteBuffer buf24 = ByteBuffer.wrap(new byte[24]);
+	private final ByteBuffer chunk = ByteBuffer.wrap(new byte[BinaryHelper.PACKED_CHUNK_SIZE]);
 
 	public BinaryParsingProcessorV1(OutputStream out)
 	{
@@ -94,7 +98,7 @@ public class BinaryParsingProcessorV1 implements DLParsingProcessor
 			throw new RuntimeException("Symbol " + symbol + " is already defined");
 		}
 
-		byte[] symbolData = symbol.getBytes();
+		byte[] symbolData = symbol.getBytes(StandardCharsets.UTF_8);
 		ByteBuffer buf = buf12;
 		buf.rewind();
 		buf.putInt(Opcode.DefineSymbol.code);
@@ -122,7 +126,7 @@ public class BinaryParsingProcessorV1 implements DLParsingProcessor
 		assert type > 0;
 		assert name != null;
 
-		byte[] symbolData = name.getBytes();
+		byte[] symbolData = name.getBytes(StandardCharsets.UTF_8);
 		ByteBuffer buf = buf12;
 		buf.rewind();
 		buf.putInt(Opcode.BeginInstance.code);
@@ -142,12 +146,64 @@ public class BinaryParsingProcessorV1 implements DLParsingProcessor
 	}
 
 	@Override
-	public void setStringAttribute(int name, String value) throws IOException
+	public void beginChildren() throws IOException
+	{
+		ByteBuffer buf = buf4;
+		buf.rewind();
+		buf.putInt(Opcode.BeginChildren.code);
+		out.write(buf.array());
+	}
+
+	@Override
+	public void endChildren() throws IOException
+	{
+		ByteBuffer buf = buf4;
+		buf.rewind();
+		buf.putInt(Opcode.EndChildren.code);
+		out.write(buf.array());
+	}
+
+	@Override
+	public void beginInstanceAttribute(int name) throws IOException
 	{
 		assert name > 0;
+
+		ByteBuffer buf = buf8;
+		buf.rewind();
+		buf.putInt(Opcode.BeginInstanceAttribute.code);
+		buf.putInt(name);
+		out.write(buf.array());
+	}
+
+	@Override
+	public void beginArrayAttribute(int name, int kind) throws IOException
+	{
+		assert name >= 0;
+
+		ByteBuffer buf = buf12;
+		buf.rewind();
+		buf.putInt(Opcode.BeginArrayAttribute.code);
+		buf.putInt(name);
+		buf.putInt(kind);
+		out.write(buf.array());
+	}
+
+	@Override
+	public void endArray() throws IOException
+	{
+		ByteBuffer buf = buf4;
+		buf.rewind();
+		buf.putInt(Opcode.EndArray.code);
+		out.write(buf.array());
+	}
+
+	@Override
+	public void setStringAttribute(int name, String value) throws IOException
+	{
+		assert name >= 0;
 		assert value != null : "Value for attribute " + name + " is null";
 
-		byte[] valueData = value.getBytes();
+		byte[] valueData = value.getBytes(StandardCharsets.UTF_8);
 		ByteBuffer buf = buf12;
 		buf.rewind();
 		buf.putInt(Opcode.SetStringAttribute.code);
@@ -160,7 +216,7 @@ public class BinaryParsingProcessorV1 implements DLParsingProcessor
 	@Override
 	public void setBooleanAttribute(int name, boolean value) throws IOException
 	{
-		assert name > 0;
+		assert name >= 0;
 
 		ByteBuffer buf = buf9;
 		buf.rewind();
@@ -170,10 +226,118 @@ public class BinaryParsingProcessorV1 implements DLParsingProcessor
 		out.write(buf.array());
 	}
 
+	@Override
+	public void setByteAttribute(int name, byte value) throws IOException
+	{
+		assert name >= 0;
+
+		ByteBuffer buf = buf9;
+		buf.rewind();
+		buf.putInt(Opcode.SetByteAttribute.code);
+		buf.putInt(name);
+		buf.put(value);
+		out.write(buf.array());
+	}
+
+	@Override
+	public void setShortAttribute(int name, short value) throws IOException
+	{
+		assert name >= 0;
+
+		ByteBuffer buf = buf12;
+		buf.rewind();
+		buf.putInt(Opcode.SetShortAttribute.code);
+		buf.putInt(name);
+		buf.putShort(value);
+		out.write(buf.array(), 0, buf.position());
+	}
+
+	@Override
+	public void setCharAttribute(int name, char value) throws IOException
+	{
+		assert name >= 0;
+
+		ByteBuffer buf = buf12;
+		buf.rewind();
+		buf.putInt(Opcode.SetCharAttribute.code);
+		buf.putInt(name);
+		buf.putChar(value);
+		out.write(buf.array(), 0, buf.position());
+	}
+
+	@Override
+	public void setUUIDAttribute(int name, UUID value) throws IOException
+	{
+		assert name >= 0;
+		assert value != null;
+
+		ByteBuffer buf = buf24;
+		buf.rewind();
+		buf.putInt(Opcode.SetUUIDAttribute.code);
+		buf.putInt(name);
+		buf.putLong(value.getMostSignificantBits());
+		buf.putLong(value.getLeastSignificantBits());
+		out.write(buf.array());
+	}
+
+	@Override
+	public void setDateAttribute(int name, long value) throws IOException
+	{
+		assert name >= 0;
+
+		ByteBuffer buf = buf16;
+		buf.rewind();
+		buf.putInt(Opcode.SetDateAttribute.code);
+		buf.putInt(name);
+		buf.putLong(value);
+		out.write(buf.array());
+	}
+
+	@Override
+	public void setEnumAttribute(int name, int enumType, int ordinal) throws IOException
+	{
+		assert name >= 0;
+		assert enumType > 0;
+		assert ordinal >= 0;
+
+		ByteBuffer buf = buf16;
+		buf.rewind();
+		buf.putInt(Opcode.SetEnumAttribute.code);
+		buf.putInt(name);
+		buf.putInt(enumType);
+		buf.putInt(ordinal);
+		out.write(buf.array());
+	}
+
+	@Override
+	public void setPathAttribute(int name, String value) throws IOException
+	{
+		assert name >= 0;
+		assert value != null;
+
+		byte[] valueData = value.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buf = buf12;
+		buf.rewind();
+		buf.putInt(Opcode.SetPathAttribute.code);
+		buf.putInt(name);
+		buf.putInt(valueData.length);
+		out.write(buf.array());
+		out.write(valueData);
+	}
+
+	@Override
+	public void setSymbolAttribute(int name, int value) throws IOException
+	{
+		assert name >= 0;
+		assert value > 0;
+
+		writeNamePair(Opcode.SetSymbolAttribute, name, value);
+	}
+
 	@Override
 	public void setDoubleAttribute(int name, double value) throws IOException
 	{
-		assert name > 0;
+		assert name >= 0;
 
 		ByteBuffer buf = buf16;
 		buf.rewind();
@@ -186,7 +350,7 @@ public class BinaryParsingProcessorV1 implements DLParsingProcessor
 	@Override
 	public void setFloatAttribute(int name, float value) throws IOException
 	{
-		assert name > 0;
+		assert name >= 0;
 
 		ByteBuffer buf = buf12;
 		buf.rewind();
@@ -199,7 +363,7 @@ public class BinaryParsingProcessorV1 implements DLParsingProcessor
 	@Override
 	public void setIntAttribute(int name, int value) throws IOException
 	{
-		assert name > 0;
+		assert name >= 0;
 
 		ByteBuffer buf = buf12;
 		buf.rewind();
@@ -212,7 +376,7 @@ public class BinaryParsingProcessorV1 implements DLParsingProcessor
 	@Override
 	public void setLongAttribute(int name, long value) throws IOException
 	{
-		assert name > 0;
+		assert name >= 0;
 
 		ByteBuffer buf = buf16;
 		buf.rewind();
@@ -225,7 +389,7 @@ public class BinaryParsingProcessorV1 implements DLParsingProcessor
 	@Override
 	public void setBinaryAttribute(int name, byte[] value) throws IOException
 	{
-		assert name > 0;
+		assert name >= 0;
 		assert value != null;
 
 		setBinaryAttribute(name, value, 0, value.length);
@@ -234,9 +398,9 @@ public class BinaryParsingProcessorV1 implements DLParsingProcessor
 	@Override
 	public void setBinaryAttribute(int name, byte[] value, int index, int length) throws IOException
 	{
-		assert name > 0;
+		assert name >= 0;
 		assert index >= 0;
-		assert length > 0;
+		assert length >= 0;
 		assert index + length <= value.length;
 		assert value != null;
 
@@ -249,6 +413,277 @@ public class BinaryParsingProcessorV1 implements DLParsingProcessor
 		out.write(value, index, length);
 	}
 
+	@Override
+	public void setBinaryAttribute(int name, ByteBuffer value) throws IOException
+	{
+		assert name >= 0;
+		assert value != null;
+
+		ByteBuffer buf = buf12;
+		buf.rewind();
+		buf.putInt(Opcode.SetBinaryAttribute.code);
+		buf.putInt(name);
+		buf.putInt(value.remaining());
+		out.write(buf.array());
+		BinaryHelper.putBuffer(out, chunk, value);
+	}
+
+	@Override
+	public void setIntArrayAttribute(int name, int[] value) throws IOException
+	{
+		assert name >= 0;
+		assert value != null;
+
+		ByteBuffer buf = buf12;
+		buf.rewind();
+		buf.putInt(Opcode.SetIntArrayAttribute.code);
+		buf.putInt(name);
+		buf.putInt(value.length);
+		out.write(buf.array());
+		BinaryHelper.putInts(out, chunk, value);
+	}
+
+	@Override
+	public void setLongArrayAttribute(int name, long[] value) throws IOException
+	{
+		assert name >= 0;
+		assert value != null;
+
+		ByteBuffer buf = buf12;
+		buf.rewind();
+		buf.putInt(Opcode.SetLongArrayAttribute.code);
+		buf.putInt(name);
+		buf.putInt(value.length);
+		out.write(buf.array());
+		BinaryHelper.putLongs(out, chunk, value);
+	}
+
+	@Override
+	public void setFloatArrayAttribute(int name, float[] value) throws IOException
+	{
+		assert name >= 0;
+		assert value != null;
+
+		ByteBuffer buf = buf12;
+		buf.rewind();
+		buf.putInt(Opcode.SetFloatArrayAttribute.code);
+		buf.putInt(name);
+		buf.putInt(value.length);
+		out.write(buf.array());
+		BinaryHelper.putFloats(out, chunk, value);
+	}
+
+	@Override
+	public void setDoubleArrayAttribute(int name, double[] value) throws IOException
+	{
+		assert name >= 0;
+		assert value != null;
+
+		ByteBuffer buf = buf12;
+		buf.rewind();
+		buf.putInt(Opcode.SetDoubleArrayAttribute.code);
+		buf.putInt(name);
+		buf.putInt(value.length);
+		out.write(buf.array());
+		BinaryHelper.putDoubles(out, chunk, value);
+	}
+
+	@Override
+	public void defineModuleIndex(ByteBuffer data) throws IOException
+	{
+		assert data != null;
+
+		ByteBuffer buf = buf8;
+		buf.rewind();
+		buf.putInt(Opcode.ModuleIndex.code);
+		buf.putInt(data.remaining());
+		out.write(buf.array());
+		BinaryHelper.putBuffer(out, chunk, data);
+	}
+
+	@Override
+	public void defineColumnBlock(int type, ByteBuffer data) throws IOException
+	{
+		assert type > 0;
+		assert data != null;
+
+		writeNamePair(Opcode.ColumnBlock, type, data.remaining());
+		BinaryHelper.putBuffer(out, chunk, data);
+	}
+
+	@Override
+	public void defineExternType(int name, int className) throws IOException
+	{
+		assert name > 0;
+		assert className > 0;
+
+		writeNamePair(Opcode.DefineExternType, name, className);
+	}
+
+	@Override
+	public void defineExternAnnotation(int name, int className) throws IOException
+	{
+		assert name > 0;
+		assert className > 0;
+
+		writeNamePair(Opcode.DefineExternAnnotation, name, className);
+	}
+
+	@Override
+	public void defineExternPragma(int name, int className) throws IOException
+	{
+		assert name > 0;
+		assert className > 0;
+
+		writeNamePair(Opcode.DefineExternPragma, name, className);
+	}
+
+	@Override
+	public void defineAlias(int alias, int name) throws IOException
+	{
+		assert alias > 0;
+		assert name > 0;
+
+		writeNamePair(Opcode.DefineAlias, alias, name);
+	}
+
+	@Override
+	public void beginType(int name, int flags) throws IOException
+	{
+		assert name > 0;
+		assert flags >= 0;
+
+		writeNamePair(Opcode.BeginType, name, flags);
+	}
+
+	@Override
+	public void beginEnum(int name) throws IOException
+	{
+		assert name > 0;
+
+		writeName(Opcode.BeginEnum, name);
+	}
+
+	@Override
+	public void addEnumValue(String value) throws IOException
+	{
+		assert value != null;
+
+		byte[] valueData = value.getBytes(StandardCharsets.UTF_8);
+		writeName(Opcode.AddEnumValue, valueData.length);
+		out.write(valueData);
+	}
+
+	@Override
+	public void addParentType(int type) throws IOException
+	{
+		assert type > 0;
+
+		writeName(Opcode.AddParentType, type);
+	}
+
+	@Override
+	public void addContainedType(int type) throws IOException
+	{
+		assert type > 0;
+
+		writeName(Opcode.AddContainedType, type);
+	}
+
+	@Override
+	public void beginTypeAttribute(int name, int type, Object defaultValue) throws IOException
+	{
+		assert name > 0;
+		assert type > 0;
+
+		writeNamePair(Opcode.BeginTypeAttribute, name, type);
+		writeTaggedValue(defaultValue);
+	}
+
+	@Override
+	public void endTypeAttribute() throws IOException
+	{
+		ByteBuffer buf = buf4;
+		buf.rewind();
+		buf.putInt(Opcode.EndTypeAttribute.code);
+		out.write(buf.array());
+	}
+
+	@Override
+	public void addAnnotation(int name, Object[] parameters) throws IOException
+	{
+		assert name > 0;
+		assert parameters != null;
+
+		writeNamePair(Opcode.AddAnnotation, name, parameters.length);
+
+		for (Object parameter : parameters) {
+			writeTaggedValue(parameter);
+		}
+	}
+
+	@Override
+	public void endType() throws IOException
+	{
+		ByteBuffer buf = buf4;
+		buf.rewind();
+		buf.putInt(Opcode.EndType.code);
+		out.write(buf.array());
+	}
+
+	private void writeName(Opcode opcode, int name) throws IOException
+	{
+		ByteBuffer buf = buf8;
+		buf.rewind();
+		buf.putInt(opcode.code);
+		buf.putInt(name);
+		out.write(buf.array());
+	}
+
+	private void writeNamePair(Opcode opcode, int first, int second) throws IOException
+	{
+		ByteBuffer buf = buf12;
+		buf.rewind();
+		buf.putInt(opcode.code);
+		buf.putInt(first);
+		buf.putInt(second);
+		out.write(buf.array());
+	}
+
+	/**
+	 * Writes a 4 byte tag followed by the value - see {@link BinaryHelper#getValueTag(java.lang.Object)}
+	 *
+	 * @param value
+	 *
+	 * @throws IOException
+	 */
+	private void writeTaggedValue(Object value) throws IOException
+	{
+		int tag = BinaryHelper.getValueTag(value);
+
+		ByteBuffer buf = buf16;
+		buf.rewind();
+		buf.putInt(tag);
+
+		if (tag == BinaryHelper.VALUE_STRING) {
+			byte[] valueData = value.toString().getBytes(StandardCharsets.UTF_8);
+			buf.putInt(valueData.length);
+			out.write(buf.array(), 0, buf.position());
+			out.write(valueData);
+			return;
+		}
+
+		if (tag == BinaryHelper.VALUE_LONG) {
+			buf.putLong(((Number) value).longValue());
+		} else if (tag == BinaryHelper.VALUE_DOUBLE) {
+			buf.putDouble(((Number) value).doubleValue());
+		} else if (tag == BinaryHelper.VALUE_BOOLEAN) {
+			buf.put((Boolean) value ? (byte) 1 : (byte) 0);
+		}
+
+		out.write(buf.array(), 0, buf.position());
+	}
+
 	public int getSymbolId(String symbol)
 	{
 		assert symbol != null;
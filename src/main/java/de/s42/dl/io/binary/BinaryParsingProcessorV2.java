@@ -0,0 +1,651 @@
+// <editor-fold desc="The MIT License" defaultstate="collapsed">
+/*
+ * The MIT License
+ * 
+ * Copyright 2022 Studio 42 GmbH ( https://www.s42m.de ).
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+//</editor-fold>
+package de.s42.dl.io.binary;
+
+import static de.s42.dl.io.binary.BinaryHelper.*;
+import de.s42.dl.parser.DLParsingProcessor;
+import de.s42.dl.parser.Opcode;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Compact version of the binary format. Opcodes are written as 1 byte, symbol ids and lengths as LEB128 varints and
+ * ints and longs as zigzag varints. Floats, doubles and booleans keep their fixed size. Strings are encoded in UTF-8.
+ * Primitive arrays are written as packed fixed size blocks to allow bulk reading.
+ * The BeginModule opcode is still written in the V1 layout (4 byte opcode and 4 byte version), so a reader can select
+ * the decoder from the version before switching to the compact layout.
+ *
+ * @author Benjamin Schiller
+ */
+public class BinaryParsingProcessorV2 implements DLParsingProcessor
+{
+
+	public final static int VERSION = 2;
+
+	protected final OutputStream out;
+
+	protected Map<Integer, String> symbolsById = new HashMap<>();
+	protected Map<String, Integer> symbolsBySymbol = new HashMap<>();
+
+	// opcode (1) + symbol id (max 5) + value (max 16 for UUIDs) fits in 32 bytes
+	private final ByteBuffer buf = ByteBuffer.wrap(new byte[32]);
+	private final ByteBuffer chunk = ByteBuffer.wrap(new byte[PACKED_CHUNK_SIZE]);
+
+	public BinaryParsingProcessorV2(OutputStream out)
+	{
+		assert out != null;
+
+		this.out = out;
+	}
+
+	private ByteBuffer beginOpcode(Opcode opcode)
+	{
+		ByteBuffer b = buf;
+		b.clear();
+		b.put((byte) opcode.code);
+		return b;
+	}
+
+	private void flushOpcode(ByteBuffer b) throws IOException
+	{
+		out.write(b.array(), 0, b.position());
+	}
+
+	@Override
+	public void beginModule() throws IOException
+	{
+		ByteBuffer b = buf;
+		b.clear();
+		b.putInt(Opcode.BeginModule.code);
+		b.putInt(VERSION);
+		flushOpcode(b);
+	}
+
+	@Override
+	public void endModule() throws IOException
+	{
+		flushOpcode(beginOpcode(Opcode.EndModule));
+	}
+
+	@Override
+	public void defineSymbol(int id, String symbol) throws IOException
+	{
+		assert id > 0;
+		assert symbol != null;
+
+		if (symbolsById.put(id, symbol) != null) {
+			throw new RuntimeException("Symbol " + id + " is already defined");
+		}
+
+		if (symbolsBySymbol.put(symbol, id) != null) {
+			throw new RuntimeException("Symbol " + symbol + " is already defined");
+		}
+
+		byte[] symbolData = symbol.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer b = beginOpcode(Opcode.DefineSymbol);
+		putVarInt(b, id);
+		putVarInt(b, symbolData.length);
+		flushOpcode(b);
+		out.write(symbolData);
+	}
+
+	@Override
+	public void beginAnonymousInstance(int type) throws IOException
+	{
+		assert type > 0;
+
+		ByteBuffer b = beginOpcode(Opcode.BeginAnonymousInstance);
+		putVarInt(b, type);
+		flushOpcode(b);
+	}
+
+	@Override
+	public void beginInstance(int type, String name) throws IOException
+	{
+		assert type > 0;
+		assert name != null;
+
+		byte[] nameData = name.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer b = beginOpcode(Opcode.BeginInstance);
+		putVarInt(b, type);
+		putVarInt(b, nameData.length);
+		flushOpcode(b);
+		out.write(nameData);
+	}
+
+	@Override
+	public void endInstance() throws IOException
+	{
+		flushOpcode(beginOpcode(Opcode.EndInstance));
+	}
+
+	@Override
+	public void beginChildren() throws IOException
+	{
+		flushOpcode(beginOpcode(Opcode.BeginChildren));
+	}
+
+	@Override
+	public void endChildren() throws IOException
+	{
+		flushOpcode(beginOpcode(Opcode.EndChildren));
+	}
+
+	@Override
+	public void beginInstanceAttribute(int name) throws IOException
+	{
+		assert name > 0;
+
+		ByteBuffer b = beginOpcode(Opcode.BeginInstanceAttribute);
+		putVarInt(b, name);
+		flushOpcode(b);
+	}
+
+	@Override
+	public void beginArrayAttribute(int name, int kind) throws IOException
+	{
+		assert name >= 0;
+		assert kind >= 0;
+
+		ByteBuffer b = beginOpcode(Opcode.BeginArrayAttribute);
+		putVarInt(b, name);
+		putVarInt(b, kind);
+		flushOpcode(b);
+	}
+
+	@Override
+	public void endArray() throws IOException
+	{
+		flushOpcode(beginOpcode(Opcode.EndArray));
+	}
+
+	@Override
+	public void setStringAttribute(int name, String value) throws IOException
+	{
+		assert name >= 0;
+		assert value != null : "Value for attribute " + name + " is null";
+
+		byte[] valueData = value.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer b = beginOpcode(Opcode.SetStringAttribute);
+		putVarInt(b, name);
+		putVarInt(b, valueData.length);
+		flushOpcode(b);
+		out.write(valueData);
+	}
+
+	@Override
+	public void setBooleanAttribute(int name, boolean value) throws IOException
+	{
+		assert name >= 0;
+
+		ByteBuffer b = beginOpcode(Opcode.SetBooleanAttribute);
+		putVarInt(b, name);
+		b.put(value ? (byte) 1 : (byte) 0);
+		flushOpcode(b);
+	}
+
+	@Override
+	public void setByteAttribute(int name, byte value) throws IOException
+	{
+		assert name >= 0;
+
+		ByteBuffer b = beginOpcode(Opcode.SetByteAttribute);
+		putVarInt(b, name);
+		b.put(value);
+		flushOpcode(b);
+	}
+
+	@Override
+	public void setShortAttribute(int name, short value) throws IOException
+	{
+		assert name >= 0;
+
+		ByteBuffer b = beginOpcode(Opcode.SetShortAttribute);
+		putVarInt(b, name);
+		b.putShort(value);
+		flushOpcode(b);
+	}
+
+	@Override
+	public void setCharAttribute(int name, char value) throws IOException
+	{
+		assert name >= 0;
+
+		ByteBuffer b = beginOpcode(Opcode.SetCharAttribute);
+		putVarInt(b, name);
+		b.putChar(value);
+		flushOpcode(b);
+	}
+
+	@Override
+	public void setUUIDAttribute(int name, UUID value) throws IOException
+	{
+		assert name >= 0;
+		assert value != null;
+
+		ByteBuffer b = beginOpcode(Opcode.SetUUIDAttribute);
+		putVarInt(b, name);
+		b.putLong(value.getMostSignificantBits());
+		b.putLong(value.getLeastSignificantBits());
+		flushOpcode(b);
+	}
+
+	@Override
+	public void setDateAttribute(int name, long value) throws IOException
+	{
+		assert name >= 0;
+
+		ByteBuffer b = beginOpcode(Opcode.SetDateAttribute);
+		putVarInt(b, name);
+		b.putLong(value);
+		flushOpcode(b);
+	}
+
+	@Override
+	public void setEnumAttribute(int name, int enumType, int ordinal) throws IOException
+	{
+		assert name >= 0;
+		assert enumType > 0;
+		assert ordinal >= 0;
+
+		ByteBuffer b = beginOpcode(Opcode.SetEnumAttribute);
+		putVarInt(b, name);
+		putVarInt(b, enumType);
+		putVarInt(b, ordinal);
+		flushOpcode(b);
+	}
+
+	@Override
+	public void setPathAttribute(int name, String value) throws IOException
+	{
+		assert name >= 0;
+		assert value != null;
+
+		byte[] valueData = value.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer b = beginOpcode(Opcode.SetPathAttribute);
+		putVarInt(b, name);
+		putVarInt(b, valueData.length);
+		flushOpcode(b);
+		out.write(valueData);
+	}
+
+	@Override
+	public void setSymbolAttribute(int name, int value) throws IOException
+	{
+		assert name >= 0;
+		assert value > 0;
+
+		writeNamePair(Opcode.SetSymbolAttribute, name, value);
+	}
+
+	@Override
+	public void setDoubleAttribute(int name, double value) throws IOException
+	{
+		assert name >= 0;
+
+		ByteBuffer b = beginOpcode(Opcode.SetDoubleAttribute);
+		putVarInt(b, name);
+		b.putDouble(value);
+		flushOpcode(b);
+	}
+
+	@Override
+	public void setFloatAttribute(int name, float value) throws IOException
+	{
+		assert name >= 0;
+
+		ByteBuffer b = beginOpcode(Opcode.SetFloatAttribute);
+		putVarInt(b, name);
+		b.putFloat(value);
+		flushOpcode(b);
+	}
+
+	@Override
+	public void setIntAttribute(int name, int value) throws IOException
+	{
+		assert name >= 0;
+
+		ByteBuffer b = beginOpcode(Opcode.SetIntAttribute);
+		putVarInt(b, name);
+		putVarInt(b, encodeZigZag(value));
+		flushOpcode(b);
+	}
+
+	@Override
+	public void setLongAttribute(int name, long value) throws IOException
+	{
+		assert name >= 0;
+
+		ByteBuffer b = beginOpcode(Opcode.SetLongAttribute);
+		putVarInt(b, name);
+		putVarLong(b, encodeZigZag(value));
+		flushOpcode(b);
+	}
+
+	@Override
+	public void setBinaryAttribute(int name, byte[] value) throws IOException
+	{
+		assert name >= 0;
+		assert value != null;
+
+		setBinaryAttribute(name, value, 0, value.length);
+	}
+
+	@Override
+	public void setBinaryAttribute(int name, byte[] value, int index, int length) throws IOException
+	{
+		assert name >= 0;
+		assert index >= 0;
+		assert length >= 0;
+		assert index + length <= value.length;
+		assert value != null;
+
+		ByteBuffer b = beginOpcode(Opcode.SetBinaryAttribute);
+		putVarInt(b, name);
+		putVarInt(b, length);
+		flushOpcode(b);
+		out.write(value, index, length);
+	}
+
+	@Override
+	public void setBinaryAttribute(int name, ByteBuffer value) throws IOException
+	{
+		assert name >= 0;
+		assert value != null;
+
+		ByteBuffer b = beginOpcode(Opcode.SetBinaryAttribute);
+		putVarInt(b, name);
+		putVarInt(b, value.remaining());
+		flushOpcode(b);
+		putBuffer(out, chunk, value);
+	}
+
+	@Override
+	public void setIntArrayAttribute(int name, int[] value) throws IOException
+	{
+		assert name >= 0;
+		assert value != null;
+
+		ByteBuffer b = beginOpcode(Opcode.SetIntArrayAttribute);
+		putVarInt(b, name);
+		putVarInt(b, value.length);
+		flushOpcode(b);
+		putInts(out, chunk, value);
+	}
+
+	@Override
+	public void setLongArrayAttribute(int name, long[] value) throws IOException
+	{
+		assert name >= 0;
+		assert value != null;
+
+		ByteBuffer b = beginOpcode(Opcode.SetLongArrayAttribute);
+		putVarInt(b, name);
+		putVarInt(b, value.length);
+		flushOpcode(b);
+		putLongs(out, chunk, value);
+	}
+
+	@Override
+	public void setFloatArrayAttribute(int name, float[] value) throws IOException
+	{
+		assert name >= 0;
+		assert value != null;
+
+		ByteBuffer b = beginOpcode(Opcode.SetFloatArrayAttribute);
+		putVarInt(b, name);
+		putVarInt(b, value.length);
+		flushOpcode(b);
+		putFloats(out, chunk, value);
+	}
+
+	@Override
+	public void setDoubleArrayAttribute(int name, double[] value) throws IOException
+	{
+		assert name >= 0;
+		assert value != null;
+
+		ByteBuffer b = beginOpcode(Opcode.SetDoubleArrayAttribute);
+		putVarInt(b, name);
+		putVarInt(b, value.length);
+		flushOpcode(b);
+		putDoubles(out, chunk, value);
+	}
+
+	@Override
+	public void defineModuleIndex(ByteBuffer data) throws IOException
+	{
+		assert data != null;
+
+		ByteBuffer b = beginOpcode(Opcode.ModuleIndex);
+		putVarInt(b, data.remaining());
+		flushOpcode(b);
+		putBuffer(out, chunk, data);
+	}
+
+	@Override
+	public void defineColumnBlock(int type, ByteBuffer data) throws IOException
+	{
+		assert type > 0;
+		assert data != null;
+
+		writeNamePair(Opcode.ColumnBlock, type, data.remaining());
+		putBuffer(out, chunk, data);
+	}
+
+	@Override
+	public void defineExternType(int name, int className) throws IOException
+	{
+		assert name > 0;
+		assert className > 0;
+
+		writeNamePair(Opcode.DefineExternType, name, className);
+	}
+
+	@Override
+	public void defineExternAnnotation(int name, int className) throws IOException
+	{
+		assert name > 0;
+		assert className > 0;
+
+		writeNamePair(Opcode.DefineExternAnnotation, name, className);
+	}
+
+	@Override
+	public void defineExternPragma(int name, int className) throws IOException
+	{
+		assert name > 0;
+		assert className > 0;
+
+		writeNamePair(Opcode.DefineExternPragma, name, className);
+	}
+
+	@Override
+	public void defineAlias(int alias, int name) throws IOException
+	{
+		assert alias > 0;
+		assert name > 0;
+
+		writeNamePair(Opcode.DefineAlias, alias, name);
+	}
+
+	@Override
+	public void beginType(int name, int flags) throws IOException
+	{
+		assert name > 0;
+		assert flags >= 0;
+
+		writeNamePair(Opcode.BeginType, name, flags);
+	}
+
+	@Override
+	public void beginEnum(int name) throws IOException
+	{
+		assert name > 0;
+
+		ByteBuffer b = beginOpcode(Opcode.BeginEnum);
+		putVarInt(b, name);
+		flushOpcode(b);
+	}
+
+	@Override
+	public void addEnumValue(String value) throws IOException
+	{
+		assert value != null;
+
+		byte[] valueData = value.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer b = beginOpcode(Opcode.AddEnumValue);
+		putVarInt(b, valueData.length);
+		flushOpcode(b);
+		out.write(valueData);
+	}
+
+	@Override
+	public void addParentType(int type) throws IOException
+	{
+		assert type > 0;
+
+		ByteBuffer b = beginOpcode(Opcode.AddParentType);
+		putVarInt(b, type);
+		flushOpcode(b);
+	}
+
+	@Override
+	public void addContainedType(int type) throws IOException
+	{
+		assert type > 0;
+
+		ByteBuffer b = beginOpcode(Opcode.AddContainedType);
+		putVarInt(b, type);
+		flushOpcode(b);
+	}
+
+	@Override
+	public void beginTypeAttribute(int name, int type, Object defaultValue) throws IOException
+	{
+		assert name > 0;
+		assert type > 0;
+
+		writeNamePair(Opcode.BeginTypeAttribute, name, type);
+		writeTaggedValue(defaultValue);
+	}
+
+	@Override
+	public void endTypeAttribute() throws IOException
+	{
+		flushOpcode(beginOpcode(Opcode.EndTypeAttribute));
+	}
+
+	@Override
+	public void addAnnotation(int name, Object[] parameters) throws IOException
+	{
+		assert name > 0;
+		assert parameters != null;
+
+		writeNamePair(Opcode.AddAnnotation, name, parameters.length);
+
+		for (Object parameter : parameters) {
+			writeTaggedValue(parameter);
+		}
+	}
+
+	@Override
+	public void endType() throws IOException
+	{
+		flushOpcode(beginOpcode(Opcode.EndType));
+	}
+
+	private void writeNamePair(Opcode opcode, int first, int second) throws IOException
+	{
+		ByteBuffer b = beginOpcode(opcode);
+		putVarInt(b, first);
+		putVarInt(b, second);
+		flushOpcode(b);
+	}
+
+	/**
+	 * Writes a 1 byte tag followed by the value - see {@link BinaryHelper#getValueTag(java.lang.Object)}
+	 *
+	 * @param value
+	 *
+	 * @throws IOException
+	 */
+	private void writeTaggedValue(Object value) throws IOException
+	{
+		int tag = getValueTag(value);
+
+		ByteBuffer b = buf;
+		b.clear();
+		b.put((byte) tag);
+
+		if (tag == VALUE_STRING) {
+			byte[] valueData = value.toString().getBytes(StandardCharsets.UTF_8);
+			putVarInt(b, valueData.length);
+			flushOpcode(b);
+			out.write(valueData);
+			return;
+		}
+
+		if (tag == VALUE_LONG) {
+			putVarLong(b, encodeZigZag(((Number) value).longValue()));
+		} else if (tag == VALUE_DOUBLE) {
+			b.putDouble(((Number) value).doubleValue());
+		} else if (tag == VALUE_BOOLEAN) {
+			b.put((Boolean) value ? (byte) 1 : (byte) 0);
+		}
+
+		flushOpcode(b);
+	}
+
+	public int getSymbolId(String symbol)
+	{
+		assert symbol != null;
+
+		Integer id = symbolsBySymbol.get(symbol);
+
+		if (id == null) {
+			return -1;
+		}
+
+		return id;
+	}
+
+	public Map<Integer, String> getSymbolsById()
+	{
+		return Collections.unmodifiableMap(symbolsById);
+	}
+
+	public Map<String, Integer> getSymbolsBySymbol()
+	{
+		return Collections.unmodifiableMap(symbolsBySymbol);
+	}
+}
@@ -0,0 +1,214 @@
+// <editor-fold desc="The MIT License" defaultstate="collapsed">
+/*
+ * The MIT License
+ * 
+ * Copyright 2022 Studio 42 GmbH ( https://www.s42m.de ).
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+//</editor-fold>
+package de.s42.dl.io.binary;
+
+import de.s42.dl.util.DLHelper;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a block compressed container. The data is split into independently deflated blocks which are listed in an
+ * index at the end of the stream, so blocks can be inflated in parallel and in any order (see {@link BlockInflater}).
+ * Blocks are only cut at boundaries marked with {@link #markBoundary()} once they reached the block size - this keeps
+ * opcodes from spanning blocks.
+ *
+ * Layout: header (signature, version, block size), deflated blocks, index (per block offset, compressed length and
+ * length), trailer (block count, index offset, signature).
+ *
+ * @author Benjamin Schiller
+ */
+public class BlockDeflaterOutputStream extends OutputStream
+{
+
+	public final static int VERSION = 1;
+
+	public final static int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+	public final static int HEADER_SIZE = 12;
+
+	public final static int INDEX_ENTRY_SIZE = 16;
+
+	public final static int TRAILER_SIZE = 16;
+
+	protected final OutputStream out;
+	protected final int blockSize;
+	protected final Deflater deflater;
+
+	protected byte[] block;
+	protected int blockLength;
+	protected final byte[] compressed = new byte[65536];
+
+	protected long position;
+	protected int blockCount;
+	protected final ByteArrayOutputStream indexData = new ByteArrayOutputStream();
+	protected final DataOutputStream index = new DataOutputStream(indexData);
+
+	protected boolean closed;
+
+	public BlockDeflaterOutputStream(OutputStream out) throws IOException
+	{
+		this(out, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	public BlockDeflaterOutputStream(OutputStream out, int blockSize) throws IOException
+	{
+		this(out, blockSize, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	public BlockDeflaterOutputStream(OutputStream out, int blockSize, int level) throws IOException
+	{
+		assert out != null;
+		assert blockSize > 0;
+
+		this.out = out;
+		this.blockSize = blockSize;
+		deflater = new Deflater(level);
+		block = new byte[blockSize];
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(DLHelper.BIN_BLOCKS_SIGNATURE);
+		header.putInt(VERSION);
+		header.putInt(blockSize);
+		out.write(header.array());
+		position = HEADER_SIZE;
+	}
+
+	@Override
+	public void write(int b) throws IOException
+	{
+		ensureCapacity(1);
+		block[blockLength++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] data, int offset, int length) throws IOException
+	{
+		assert data != null;
+
+		ensureCapacity(length);
+		System.arraycopy(data, offset, block, blockLength, length);
+		blockLength += length;
+	}
+
+	private void ensureCapacity(int length) throws IOException
+	{
+		if (closed) {
+			throw new IOException("Stream is closed");
+		}
+
+		// a block may exceed the block size until the next boundary
+		if (blockLength + length > block.length) {
+			block = Arrays.copyOf(block, Math.max(block.length * 2, blockLength + length));
+		}
+	}
+
+	/**
+	 * Marks a position where the current block may end - it gets written if it reached the block size
+	 *
+	 * @throws IOException
+	 */
+	public void markBoundary() throws IOException
+	{
+		if (blockLength >= blockSize) {
+			writeBlock();
+		}
+	}
+
+	protected void writeBlock() throws IOException
+	{
+		deflater.reset();
+		deflater.setInput(block, 0, blockLength);
+		deflater.finish();
+
+		int compressedLength = 0;
+		while (!deflater.finished()) {
+			int count = deflater.deflate(compressed);
+			out.write(compressed, 0, count);
+			compressedLength += count;
+		}
+
+		index.writeLong(position);
+		index.writeInt(compressedLength);
+		index.writeInt(blockLength);
+
+		position += compressedLength;
+		blockCount++;
+		blockLength = 0;
+
+		// release grown blocks
+		if (block.length > blockSize) {
+			block = new byte[blockSize];
+		}
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if (closed) {
+			return;
+		}
+
+		try (out) {
+
+			if (blockLength > 0) {
+				writeBlock();
+			}
+
+			long indexOffset = position;
+			indexData.writeTo(out);
+
+			ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+			trailer.putInt(blockCount);
+			trailer.putLong(indexOffset);
+			trailer.putInt(DLHelper.BIN_BLOCKS_SIGNATURE);
+			out.write(trailer.array());
+		} finally {
+			closed = true;
+			deflater.end();
+		}
+	}
+
+	public int getBlockSize()
+	{
+		return blockSize;
+	}
+
+	public int getBlockCount()
+	{
+		return blockCount;
+	}
+}
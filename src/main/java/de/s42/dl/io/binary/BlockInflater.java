@@ -0,0 +1,296 @@
+// <editor-fold desc="The MIT License" defaultstate="collapsed">
+/*
+ * The MIT License
+ * 
+ * Copyright 2022 Studio 42 GmbH ( https://www.s42m.de ).
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+//</editor-fold>
+package de.s42.dl.io.binary;
+
+import de.s42.dl.util.DLHelper;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads block compressed containers written by {@link BlockDeflaterOutputStream}. Blocks can be read randomly with
+ * readBlock or sequentially with nextBlock. nextBlock inflates the following blocks in parallel on a ForkJoinPool, so
+ * at most readAhead blocks plus the current one are held in memory.
+ *
+ * @author Benjamin Schiller
+ */
+public class BlockInflater implements Closeable
+{
+
+	protected final FileChannel channel;
+	protected final ForkJoinPool pool;
+	protected final int readAhead;
+
+	protected final int blockSize;
+	protected final long[] offsets;
+	protected final int[] compressedLengths;
+	protected final int[] lengths;
+
+	/**
+	 * Offsets of the blocks in the inflated stream
+	 */
+	protected final long[] starts;
+	protected final long length;
+
+	protected final Deque<ForkJoinTask<ByteBuffer>> pending = new ArrayDeque<>();
+	protected int nextBlock;
+
+	public BlockInflater(Path file) throws IOException
+	{
+		this(file, ForkJoinPool.commonPool(), Math.max(2, ForkJoinPool.commonPool().getParallelism()));
+	}
+
+	public BlockInflater(Path file, ForkJoinPool pool, int readAhead) throws IOException
+	{
+		assert file != null;
+		assert pool != null;
+		assert readAhead > 0;
+
+		this.pool = pool;
+		this.readAhead = readAhead;
+
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+
+		try {
+			ByteBuffer header = read(0, BlockDeflaterOutputStream.HEADER_SIZE);
+
+			if (header.getInt() != DLHelper.BIN_BLOCKS_SIGNATURE) {
+				throw new IOException("Invalid block container signature");
+			}
+
+			int version = header.getInt();
+			if (version != BlockDeflaterOutputStream.VERSION) {
+				throw new IOException("Unsupported block container version " + version);
+			}
+
+			blockSize = header.getInt();
+
+			ByteBuffer trailer = read(channel.size() - BlockDeflaterOutputStream.TRAILER_SIZE, BlockDeflaterOutputStream.TRAILER_SIZE);
+			int blockCount = trailer.getInt();
+			long indexOffset = trailer.getLong();
+
+			if (trailer.getInt() != DLHelper.BIN_BLOCKS_SIGNATURE || blockCount < 0) {
+				throw new IOException("Source corrupted - invalid block container trailer");
+			}
+
+			ByteBuffer index = read(indexOffset, blockCount * BlockDeflaterOutputStream.INDEX_ENTRY_SIZE);
+			offsets = new long[blockCount];
+			compressedLengths = new int[blockCount];
+			lengths = new int[blockCount];
+
+			starts = new long[blockCount];
+			long start = 0;
+			for (int i = 0; i < blockCount; ++i) {
+				offsets[i] = index.getLong();
+				compressedLengths[i] = index.getInt();
+				lengths[i] = index.getInt();
+				starts[i] = start;
+				start += lengths[i];
+			}
+			length = start;
+		} catch (IOException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	public static boolean isBlockContainer(Path file)
+	{
+		assert file != null;
+
+		return Files.isRegularFile(file)
+			&& DLHelper.getIntFileSignature(file) == DLHelper.BIN_BLOCKS_SIGNATURE;
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException
+	{
+		if (position < 0 || position + length > channel.size()) {
+			throw new IOException("Source corrupted - could not read " + length + " bytes at " + position);
+		}
+
+		ByteBuffer result = ByteBuffer.allocate(length);
+
+		while (result.hasRemaining()) {
+			// positional reads are safe to be done concurrently
+			if (channel.read(result, position + result.position()) < 0) {
+				throw new IOException("Source corrupted - unexpected end of file");
+			}
+		}
+
+		result.flip();
+		return result;
+	}
+
+	/**
+	 * Reads and inflates the block with the given index
+	 *
+	 * @param index
+	 *
+	 * @return
+	 *
+	 * @throws IOException
+	 */
+	public ByteBuffer readBlock(int index) throws IOException
+	{
+		assert index >= 0 && index < offsets.length;
+
+		ByteBuffer compressed = read(offsets[index], compressedLengths[index]);
+		byte[] result = new byte[lengths[index]];
+
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(compressed.array(), 0, compressedLengths[index]);
+
+			int length = 0;
+			while (length < result.length) {
+				int count = inflater.inflate(result, length, result.length - length);
+				if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+					break;
+				}
+				length += count;
+			}
+
+			if (length != result.length) {
+				throw new IOException("Source corrupted - block " + index + " has " + length + " bytes instead of " + result.length);
+			}
+		} catch (DataFormatException ex) {
+			throw new IOException("Source corrupted - error inflating block " + index + " - " + ex.getMessage(), ex);
+		} finally {
+			inflater.end();
+		}
+
+		return ByteBuffer.wrap(result);
+	}
+
+	/**
+	 * Returns the next block in order or null if all blocks have been read. The following blocks get inflated in
+	 * parallel.
+	 *
+	 * @return
+	 *
+	 * @throws IOException
+	 */
+	public ByteBuffer nextBlock() throws IOException
+	{
+		while (pending.size() < readAhead && nextBlock < offsets.length) {
+			int index = nextBlock++;
+			pending.add(pool.submit(() -> readBlock(index)));
+		}
+
+		ForkJoinTask<ByteBuffer> task = pending.poll();
+
+		if (task == null) {
+			return null;
+		}
+
+		try {
+			return task.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while inflating block", ex);
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof IOException ioEx) {
+				throw ioEx;
+			}
+			throw new IOException("Error inflating block - " + ex.getCause().getMessage(), ex.getCause());
+		}
+	}
+
+	/**
+	 * Returns the index of the block containing the given offset of the inflated stream
+	 *
+	 * @param offset
+	 *
+	 * @return
+	 *
+	 * @throws IOException if the offset is out of the stream
+	 */
+	public int getBlockIndex(long offset) throws IOException
+	{
+		if (offset < 0 || offset >= length) {
+			throw new IOException("Offset " + offset + " is out of the stream length " + length);
+		}
+
+		int index = Arrays.binarySearch(starts, offset);
+
+		// not a block start -> the insertion point is behind the containing block
+		if (index < 0) {
+			index = -index - 2;
+		}
+
+		return index;
+	}
+
+	public long getBlockStart(int index)
+	{
+		assert index >= 0 && index < starts.length;
+
+		return starts[index];
+	}
+
+	/**
+	 * Returns the length of the inflated stream
+	 *
+	 * @return
+	 */
+	public long getLength()
+	{
+		return length;
+	}
+
+	public int getBlockCount()
+	{
+		return offsets.length;
+	}
+
+	public int getBlockSize()
+	{
+		return blockSize;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		for (ForkJoinTask<ByteBuffer> task : pending) {
+			task.cancel(false);
+		}
+		pending.clear();
+
+		channel.close();
+	}
+}
@@ -0,0 +1,811 @@
+// <editor-fold desc="The MIT License" defaultstate="collapsed">
+/*
+ * The MIT License
+ * 
+ * Copyright 2022 Studio 42 GmbH ( https://www.s42m.de ).
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+//</editor-fold>
+package de.s42.dl.io.binary;
+
+import de.s42.dl.parser.DLParsingProcessor;
+import de.s42.dl.parser.Opcode;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Writes the same format as {@link BinaryParsingProcessorV1} but encodes directly into one large reusable (direct)
+ * buffer which is flushed into a channel. Strings are encoded into the buffer without temporary arrays, payloads not
+ * fitting into the buffer are written together with it as gathering write. The channel has to be blocking.
+ *
+ * @author Benjamin Schiller
+ */
+public class ChannelParsingProcessorV1 implements DLParsingProcessor, Flushable
+{
+
+	public final static int VERSION = BinaryParsingProcessorV1.VERSION;
+
+	public final static int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * The buffer has to hold at least the largest fixed size opcode
+	 */
+	public final static int MIN_BUFFER_SIZE = 64;
+
+	/**
+	 * Upper bound of UTF-8 bytes per char - surrogate pairs take 4 bytes for 2 chars
+	 */
+	protected final static int MAX_UTF8_BYTES_PER_CHAR = 3;
+
+	protected final WritableByteChannel channel;
+	protected final ByteBuffer buffer;
+
+	/**
+	 * Bytes already written into the channel
+	 */
+	protected long flushed;
+
+	protected Map<Integer, String> symbolsById = new HashMap<>();
+	protected Map<String, Integer> symbolsBySymbol = new HashMap<>();
+
+	private final ByteBuffer[] gather = new ByteBuffer[2];
+
+	public ChannelParsingProcessorV1(WritableByteChannel channel)
+	{
+		this(channel, ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE));
+	}
+
+	public ChannelParsingProcessorV1(WritableByteChannel channel, int bufferSize)
+	{
+		this(channel, ByteBuffer.allocateDirect(bufferSize));
+	}
+
+	/**
+	 * The given buffer is cleared and used as encoding buffer - allows to reuse one buffer for several processors
+	 *
+	 * @param channel
+	 * @param buffer
+	 */
+	public ChannelParsingProcessorV1(WritableByteChannel channel, ByteBuffer buffer)
+	{
+		assert channel != null;
+		assert buffer != null;
+		assert buffer.capacity() >= MIN_BUFFER_SIZE : "Buffer capacity has to be at least " + MIN_BUFFER_SIZE;
+		assert !buffer.isReadOnly();
+
+		this.channel = channel;
+		this.buffer = buffer.clear();
+	}
+
+	/**
+	 * Writes the file signature which precedes the module
+	 *
+	 * @param signature
+	 *
+	 * @throws IOException
+	 */
+	public void writeSignature(int signature) throws IOException
+	{
+		ensureRemaining(4);
+		buffer.putInt(signature);
+	}
+
+	@Override
+	public void beginModule() throws IOException
+	{
+		ensureRemaining(8);
+		buffer.putInt(Opcode.BeginModule.code);
+		buffer.putInt(VERSION);
+	}
+
+	@Override
+	public void endModule() throws IOException
+	{
+		writeOpcode(Opcode.EndModule);
+	}
+
+	@Override
+	public void defineSymbol(int id, String symbol) throws IOException
+	{
+		assert id > 0;
+		assert symbol != null;
+
+		if (symbolsById.put(id, symbol) != null) {
+			throw new RuntimeException("Symbol " + id + " is already defined");
+		}
+
+		if (symbolsBySymbol.put(symbol, id) != null) {
+			throw new RuntimeException("Symbol " + symbol + " is already defined");
+		}
+
+		writeName(Opcode.DefineSymbol, id);
+		writeString(symbol);
+	}
+
+	@Override
+	public void beginAnonymousInstance(int type) throws IOException
+	{
+		assert type > 0;
+
+		writeName(Opcode.BeginAnonymousInstance, type);
+	}
+
+	@Override
+	public void beginInstance(int type, String name) throws IOException
+	{
+		assert type > 0;
+		assert name != null;
+
+		writeName(Opcode.BeginInstance, type);
+		writeString(name);
+	}
+
+	@Override
+	public void endInstance() throws IOException
+	{
+		writeOpcode(Opcode.EndInstance);
+	}
+
+	@Override
+	public void beginChildren() throws IOException
+	{
+		writeOpcode(Opcode.BeginChildren);
+	}
+
+	@Override
+	public void endChildren() throws IOException
+	{
+		writeOpcode(Opcode.EndChildren);
+	}
+
+	@Override
+	public void beginInstanceAttribute(int name) throws IOException
+	{
+		assert name > 0;
+
+		writeName(Opcode.BeginInstanceAttribute, name);
+	}
+
+	@Override
+	public void beginArrayAttribute(int name, int kind) throws IOException
+	{
+		assert name >= 0;
+
+		writeNamePair(Opcode.BeginArrayAttribute, name, kind);
+	}
+
+	@Override
+	public void endArray() throws IOException
+	{
+		writeOpcode(Opcode.EndArray);
+	}
+
+	@Override
+	public void setStringAttribute(int name, String value) throws IOException
+	{
+		assert name >= 0;
+		assert value != null : "Value for attribute " + name + " is null";
+
+		writeName(Opcode.SetStringAttribute, name);
+		writeString(value);
+	}
+
+	@Override
+	public void setBooleanAttribute(int name, boolean value) throws IOException
+	{
+		assert name >= 0;
+
+		ensureRemaining(9);
+		buffer.putInt(Opcode.SetBooleanAttribute.code);
+		buffer.putInt(name);
+		buffer.put(value ? (byte) 1 : (byte) 0);
+	}
+
+	@Override
+	public void setByteAttribute(int name, byte value) throws IOException
+	{
+		assert name >= 0;
+
+		ensureRemaining(9);
+		buffer.putInt(Opcode.SetByteAttribute.code);
+		buffer.putInt(name);
+		buffer.put(value);
+	}
+
+	@Override
+	public void setShortAttribute(int name, short value) throws IOException
+	{
+		assert name >= 0;
+
+		ensureRemaining(10);
+		buffer.putInt(Opcode.SetShortAttribute.code);
+		buffer.putInt(name);
+		buffer.putShort(value);
+	}
+
+	@Override
+	public void setCharAttribute(int name, char value) throws IOException
+	{
+		assert name >= 0;
+
+		ensureRemaining(10);
+		buffer.putInt(Opcode.SetCharAttribute.code);
+		buffer.putInt(name);
+		buffer.putChar(value);
+	}
+
+	@Override
+	public void setUUIDAttribute(int name, UUID value) throws IOException
+	{
+		assert name >= 0;
+		assert value != null;
+
+		ensureRemaining(24);
+		buffer.putInt(Opcode.SetUUIDAttribute.code);
+		buffer.putInt(name);
+		buffer.putLong(value.getMostSignificantBits());
+		buffer.putLong(value.getLeastSignificantBits());
+	}
+
+	@Override
+	public void setDateAttribute(int name, long value) throws IOException
+	{
+		assert name >= 0;
+
+		ensureRemaining(16);
+		buffer.putInt(Opcode.SetDateAttribute.code);
+		buffer.putInt(name);
+		buffer.putLong(value);
+	}
+
+	@Override
+	public void setEnumAttribute(int name, int enumType, int ordinal) throws IOException
+	{
+		assert name >= 0;
+		assert enumType > 0;
+		assert ordinal >= 0;
+
+		ensureRemaining(16);
+		buffer.putInt(Opcode.SetEnumAttribute.code);
+		buffer.putInt(name);
+		buffer.putInt(enumType);
+		buffer.putInt(ordinal);
+	}
+
+	@Override
+	public void setPathAttribute(int name, String value) throws IOException
+	{
+		assert name >= 0;
+		assert value != null;
+
+		writeName(Opcode.SetPathAttribute, name);
+		writeString(value);
+	}
+
+	@Override
+	public void setSymbolAttribute(int name, int value) throws IOException
+	{
+		assert name >= 0;
+		assert value > 0;
+
+		writeNamePair(Opcode.SetSymbolAttribute, name, value);
+	}
+
+	@Override
+	public void setDoubleAttribute(int name, double value) throws IOException
+	{
+		assert name >= 0;
+
+		ensureRemaining(16);
+		buffer.putInt(Opcode.SetDoubleAttribute.code);
+		buffer.putInt(name);
+		buffer.putDouble(value);
+	}
+
+	@Override
+	public void setFloatAttribute(int name, float value) throws IOException
+	{
+		assert name >= 0;
+
+		ensureRemaining(12);
+		buffer.putInt(Opcode.SetFloatAttribute.code);
+		buffer.putInt(name);
+		buffer.putFloat(value);
+	}
+
+	@Override
+	public void setIntAttribute(int name, int value) throws IOException
+	{
+		assert name >= 0;
+
+		writeNamePair(Opcode.SetIntAttribute, name, value);
+	}
+
+	@Override
+	public void setLongAttribute(int name, long value) throws IOException
+	{
+		assert name >= 0;
+
+		ensureRemaining(16);
+		buffer.putInt(Opcode.SetLongAttribute.code);
+		buffer.putInt(name);
+		buffer.putLong(value);
+	}
+
+	@Override
+	public void setBinaryAttribute(int name, byte[] value) throws IOException
+	{
+		assert name >= 0;
+		assert value != null;
+
+		setBinaryAttribute(name, value, 0, value.length);
+	}
+
+	@Override
+	public void setBinaryAttribute(int name, byte[] value, int index, int length) throws IOException
+	{
+		assert name >= 0;
+		assert value != null;
+		assert index >= 0;
+		assert length >= 0;
+		assert index + length <= value.length;
+
+		setBinaryAttribute(name, ByteBuffer.wrap(value, index, length));
+	}
+
+	@Override
+	public void setBinaryAttribute(int name, ByteBuffer value) throws IOException
+	{
+		assert name >= 0;
+		assert value != null;
+
+		writeNamePair(Opcode.SetBinaryAttribute, name, value.remaining());
+		writePayload(value);
+	}
+
+	@Override
+	public void setIntArrayAttribute(int name, int[] value) throws IOException
+	{
+		assert name >= 0;
+		assert value != null;
+
+		writeNamePair(Opcode.SetIntArrayAttribute, name, value.length);
+
+		int offset = 0;
+		while (offset < value.length) {
+			ensureRemaining(Integer.BYTES);
+			int count = Math.min(buffer.remaining() / Integer.BYTES, value.length - offset);
+			buffer.asIntBuffer().put(value, offset, count);
+			buffer.position(buffer.position() + count * Integer.BYTES);
+			offset += count;
+		}
+	}
+
+	@Override
+	public void setLongArrayAttribute(int name, long[] value) throws IOException
+	{
+		assert name >= 0;
+		assert value != null;
+
+		writeNamePair(Opcode.SetLongArrayAttribute, name, value.length);
+
+		int offset = 0;
+		while (offset < value.length) {
+			ensureRemaining(Long.BYTES);
+			int count = Math.min(buffer.remaining() / Long.BYTES, value.length - offset);
+			buffer.asLongBuffer().put(value, offset, count);
+			buffer.position(buffer.position() + count * Long.BYTES);
+			offset += count;
+		}
+	}
+
+	@Override
+	public void setFloatArrayAttribute(int name, float[] value) throws IOException
+	{
+		assert name >= 0;
+		assert value != null;
+
+		writeNamePair(Opcode.SetFloatArrayAttribute, name, value.length);
+
+		int offset = 0;
+		while (offset < value.length) {
+			ensureRemaining(Float.BYTES);
+			int count = Math.min(buffer.remaining() / Float.BYTES, value.length - offset);
+			buffer.asFloatBuffer().put(value, offset, count);
+			buffer.position(buffer.position() + count * Float.BYTES);
+			offset += count;
+		}
+	}
+
+	@Override
+	public void setDoubleArrayAttribute(int name, double[] value) throws IOException
+	{
+		assert name >= 0;
+		assert value != null;
+
+		writeNamePair(Opcode.SetDoubleArrayAttribute, name, value.length);
+
+		int offset = 0;
+		while (offset < value.length) {
+			ensureRemaining(Double.BYTES);
+			int count = Math.min(buffer.remaining() / Double.BYTES, value.length - offset);
+			buffer.asDoubleBuffer().put(value, offset, count);
+			buffer.position(buffer.position() + count * Double.BYTES);
+			offset += count;
+		}
+	}
+
+	@Override
+	public void defineModuleIndex(ByteBuffer data) throws IOException
+	{
+		assert data != null;
+
+		writeName(Opcode.ModuleIndex, data.remaining());
+		writePayload(data);
+	}
+
+	@Override
+	public void defineColumnBlock(int type, ByteBuffer data) throws IOException
+	{
+		assert type > 0;
+		assert data != null;
+
+		writeNamePair(Opcode.ColumnBlock, type, data.remaining());
+		writePayload(data);
+	}
+
+	@Override
+	public void defineExternType(int name, int className) throws IOException
+	{
+		assert name > 0;
+		assert className > 0;
+
+		writeNamePair(Opcode.DefineExternType, name, className);
+	}
+
+	@Override
+	public void defineExternAnnotation(int name, int className) throws IOException
+	{
+		assert name > 0;
+		assert className > 0;
+
+		writeNamePair(Opcode.DefineExternAnnotation, name, className);
+	}
+
+	@Override
+	public void defineExternPragma(int name, int className) throws IOException
+	{
+		assert name > 0;
+		assert className > 0;
+
+		writeNamePair(Opcode.DefineExternPragma, name, className);
+	}
+
+	@Override
+	public void defineAlias(int alias, int name) throws IOException
+	{
+		assert alias > 0;
+		assert name > 0;
+
+		writeNamePair(Opcode.DefineAlias, alias, name);
+	}
+
+	@Override
+	public void beginType(int name, int flags) throws IOException
+	{
+		assert name > 0;
+		assert flags >= 0;
+
+		writeNamePair(Opcode.BeginType, name, flags);
+	}
+
+	@Override
+	public void beginEnum(int name) throws IOException
+	{
+		assert name > 0;
+
+		writeName(Opcode.BeginEnum, name);
+	}
+
+	@Override
+	public void addEnumValue(String value) throws IOException
+	{
+		assert value != null;
+
+		writeOpcode(Opcode.AddEnumValue);
+		writeString(value);
+	}
+
+	@Override
+	public void addParentType(int type) throws IOException
+	{
+		assert type > 0;
+
+		writeName(Opcode.AddParentType, type);
+	}
+
+	@Override
+	public void addContainedType(int type) throws IOException
+	{
+		assert type > 0;
+
+		writeName(Opcode.AddContainedType, type);
+	}
+
+	@Override
+	public void beginTypeAttribute(int name, int type, Object defaultValue) throws IOException
+	{
+		assert name > 0;
+		assert type > 0;
+
+		writeNamePair(Opcode.BeginTypeAttribute, name, type);
+		writeTaggedValue(defaultValue);
+	}
+
+	@Override
+	public void endTypeAttribute() throws IOException
+	{
+		writeOpcode(Opcode.EndTypeAttribute);
+	}
+
+	@Override
+	public void addAnnotation(int name, Object[] parameters) throws IOException
+	{
+		assert name > 0;
+		assert parameters != null;
+
+		writeNamePair(Opcode.AddAnnotation, name, parameters.length);
+
+		for (Object parameter : parameters) {
+			writeTaggedValue(parameter);
+		}
+	}
+
+	@Override
+	public void endType() throws IOException
+	{
+		writeOpcode(Opcode.EndType);
+	}
+
+	/**
+	 * Writes the buffered data into the channel
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void flush() throws IOException
+	{
+		buffer.flip();
+
+		while (buffer.hasRemaining()) {
+			flushed += channel.write(buffer);
+		}
+
+		buffer.clear();
+	}
+
+	/**
+	 * Returns the position in the written stream including the not yet flushed data
+	 *
+	 * @return
+	 */
+	public long getPosition()
+	{
+		return flushed + buffer.position();
+	}
+
+	protected void ensureRemaining(int count) throws IOException
+	{
+		assert count <= buffer.capacity();
+
+		if (buffer.remaining() < count) {
+			flush();
+		}
+	}
+
+	private void writeOpcode(Opcode opcode) throws IOException
+	{
+		ensureRemaining(4);
+		buffer.putInt(opcode.code);
+	}
+
+	private void writeName(Opcode opcode, int name) throws IOException
+	{
+		ensureRemaining(8);
+		buffer.putInt(opcode.code);
+		buffer.putInt(name);
+	}
+
+	private void writeNamePair(Opcode opcode, int first, int second) throws IOException
+	{
+		ensureRemaining(12);
+		buffer.putInt(opcode.code);
+		buffer.putInt(first);
+		buffer.putInt(second);
+	}
+
+	/**
+	 * Writes a 4 byte tag followed by the value - see {@link BinaryHelper#getValueTag(java.lang.Object)}
+	 *
+	 * @param value
+	 *
+	 * @throws IOException
+	 */
+	private void writeTaggedValue(Object value) throws IOException
+	{
+		int tag = BinaryHelper.getValueTag(value);
+
+		ensureRemaining(12);
+		buffer.putInt(tag);
+
+		if (tag == BinaryHelper.VALUE_STRING) {
+			writeString(value.toString());
+		} else if (tag == BinaryHelper.VALUE_LONG) {
+			buffer.putLong(((Number) value).longValue());
+		} else if (tag == BinaryHelper.VALUE_DOUBLE) {
+			buffer.putDouble(((Number) value).doubleValue());
+		} else if (tag == BinaryHelper.VALUE_BOOLEAN) {
+			buffer.put((Boolean) value ? (byte) 1 : (byte) 0);
+		}
+	}
+
+	/**
+	 * Writes the UTF-8 length and data of the string. The data is encoded directly behind a length placeholder which
+	 * gets patched afterwards. Only strings which could exceed the whole buffer are encoded into an array.
+	 *
+	 * @param value
+	 *
+	 * @throws IOException
+	 */
+	private void writeString(String value) throws IOException
+	{
+		long maxLength = Integer.BYTES + (long) value.length() * MAX_UTF8_BYTES_PER_CHAR;
+
+		if (maxLength > buffer.capacity()) {
+			byte[] data = value.getBytes(StandardCharsets.UTF_8);
+			ensureRemaining(Integer.BYTES);
+			buffer.putInt(data.length);
+			writePayload(ByteBuffer.wrap(data));
+			return;
+		}
+
+		ensureRemaining((int) maxLength);
+
+		int lengthPosition = buffer.position();
+		buffer.position(lengthPosition + Integer.BYTES);
+		encodeUTF8(value);
+		buffer.putInt(lengthPosition, buffer.position() - lengthPosition - Integer.BYTES);
+	}
+
+	/**
+	 * Encodes like {@link String#getBytes(java.nio.charset.Charset)} with UTF-8 - unpaired surrogates become '?'
+	 *
+	 * @param value
+	 */
+	private void encodeUTF8(String value)
+	{
+		ByteBuffer buf = buffer;
+		int length = value.length();
+
+		for (int i = 0; i < length; ++i) {
+
+			char c = value.charAt(i);
+
+			if (c < 0x80) {
+				buf.put((byte) c);
+			} else if (c < 0x800) {
+				buf.put((byte) (0xC0 | (c >> 6)));
+				buf.put((byte) (0x80 | (c & 0x3F)));
+			} else if (Character.isSurrogate(c)) {
+				if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+					int codePoint = Character.toCodePoint(c, value.charAt(++i));
+					buf.put((byte) (0xF0 | (codePoint >> 18)));
+					buf.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+					buf.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+					buf.put((byte) (0x80 | (codePoint & 0x3F)));
+				} else {
+					buf.put((byte) '?');
+				}
+			} else {
+				buf.put((byte) (0xE0 | (c >> 12)));
+				buf.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+				buf.put((byte) (0x80 | (c & 0x3F)));
+			}
+		}
+	}
+
+	/**
+	 * Copies small payloads into the buffer - larger ones are written together with the buffered data in one gathering
+	 * write if the channel supports it
+	 *
+	 * @param data is not modified
+	 *
+	 * @throws IOException
+	 */
+	private void writePayload(ByteBuffer data) throws IOException
+	{
+		ByteBuffer payload = data.duplicate();
+
+		if (payload.remaining() <= buffer.remaining()) {
+			buffer.put(payload);
+			return;
+		}
+
+		buffer.flip();
+
+		if (channel instanceof GatheringByteChannel gathering) {
+
+			ByteBuffer[] sources = gather;
+			sources[0] = buffer;
+			sources[1] = payload;
+			long total = buffer.remaining() + (long) payload.remaining();
+
+			while (total > 0) {
+				long written = gathering.write(sources);
+				flushed += written;
+				total -= written;
+			}
+
+			sources[1] = null;
+		} else {
+
+			while (buffer.hasRemaining()) {
+				flushed += channel.write(buffer);
+			}
+
+			while (payload.hasRemaining()) {
+				flushed += channel.write(payload);
+			}
+		}
+
+		buffer.clear();
+	}
+
+	public int getSymbolId(String symbol)
+	{
+		assert symbol != null;
+
+		Integer id = symbolsBySymbol.get(symbol);
+
+		if (id == null) {
+			return -1;
+		}
+
+		return id;
+	}
+
+	public Map<Integer, String> getSymbolsById()
+	{
+		return Collections.unmodifiableMap(symbolsById);
+	}
+
+	public Map<String, Integer> getSymbolsBySymbol()
+	{
+		return Collections.unmodifiableMap(symbolsBySymbol);
+	}
+}
@@ -0,0 +1,148 @@
+// <editor-fold desc="The MIT License" defaultstate="collapsed">
+/*
+ * The MIT License
+ * 
+ * Copyright 2022 Studio 42 GmbH ( https://www.s42m.de ).
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+//</editor-fold>
+package de.s42.dl.io.binary;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Maps windows of a file at long offsets - allows to read files larger than the 2 GB a single MappedByteBuffer can
+ * cover. A window may be larger than the window size if a single value requires it.
+ *
+ * @author Benjamin Schiller
+ */
+public class MappedWindows implements Closeable
+{
+
+	/**
+	 * Largest window a MappedByteBuffer can cover
+	 */
+	public final static int MAX_WINDOW_SIZE = Integer.MAX_VALUE - 8;
+
+	public final static int DEFAULT_WINDOW_SIZE = 1 << 30;
+
+	protected final FileChannel channel;
+	protected final long size;
+	protected final int windowSize;
+
+	public MappedWindows(Path file) throws IOException
+	{
+		this(file, DEFAULT_WINDOW_SIZE);
+	}
+
+	public MappedWindows(Path file, int windowSize) throws IOException
+	{
+		assert file != null;
+		assert windowSize > 0;
+
+		this.windowSize = windowSize;
+
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		size = channel.size();
+	}
+
+	/**
+	 * Maps the window starting at offset with at least minLength bytes (or up to the end of the file)
+	 *
+	 * @param offset
+	 * @param minLength
+	 *
+	 * @return
+	 *
+	 * @throws IOException
+	 */
+	public MappedByteBuffer map(long offset, int minLength) throws IOException
+	{
+		assert offset >= 0;
+		assert minLength >= 0;
+
+		if (offset > size) {
+			throw new IOException("Offset " + offset + " is beyond the file size " + size);
+		}
+
+		long length = Math.min(Math.max(windowSize, minLength), size - offset);
+
+		if (length > MAX_WINDOW_SIZE) {
+			length = MAX_WINDOW_SIZE;
+		}
+
+		return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+	}
+
+	/**
+	 * Releases the mapping at once instead of waiting for the gc - the buffer and all its slices must not be accessed
+	 * afterwards
+	 *
+	 * @param buffer
+	 *
+	 * @throws IOException
+	 */
+	public static void unmap(MappedByteBuffer buffer) throws IOException
+	{
+		assert buffer != null;
+
+		// good to know for handling mapped byte buffers - https://stackoverflow.com/questions/25238110/how-to-properly-close-mappedbytebuffer
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+			unsafeField.setAccessible(true);
+			Object unsafe = unsafeField.get(null);
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			invokeCleaner.invoke(unsafe, buffer);
+		} catch (ClassNotFoundException | IllegalAccessException | IllegalArgumentException | NoSuchFieldException | NoSuchMethodException | SecurityException | InvocationTargetException ex) {
+			throw new IOException("Error closing MappedByteBuffer - " + ex.getMessage(), ex);
+		}
+	}
+
+	public long size()
+	{
+		return size;
+	}
+
+	public int getWindowSize()
+	{
+		return windowSize;
+	}
+
+	/**
+	 * Mapped windows stay valid after closing
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+}
@@ -27,11 +27,19 @@ package de.s42.dl.io.hrf;
 
 import de.s42.dl.*;
 import de.s42.dl.exceptions.DLException;
+import de.s42.dl.exceptions.InvalidInstance;
 import de.s42.dl.io.DLReader;
+import de.s42.dl.parser.DLHrfIncrementalParser;
 import de.s42.dl.parser.DLHrfParsing;
+import de.s42.dl.parser.DLParser.RequireContext;
+import de.s42.dl.parser.Utf8CharStream;
+import de.s42.dl.parser2.DLHrfParsing2;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  *
@@ -40,11 +48,75 @@ import java.util.Iterator;
 public class HrfDLReader implements DLReader
 {
 
+	/**
+	 * Collects the top level instances and required modules of the module in the order they are completed
+	 */
+	protected class ReaderParsing extends DLHrfParsing
+	{
+
+		public ReaderParsing(DLCore core, DLModule module)
+		{
+			super(core, module);
+		}
+
+		@Override
+		protected void addChild(DLInstance parent, DLInstance child) throws InvalidInstance
+		{
+			assert parent != null;
+			assert child != null;
+
+			if (parent == module) {
+				pending.add(child);
+
+				if (!retainInstances) {
+					return;
+				}
+			}
+
+			super.addChild(parent, child);
+		}
+
+		@Override
+		public void enterRequire(RequireContext ctx)
+		{
+			int childCount = module.getChildCount();
+
+			super.enterRequire(ctx);
+
+			if (module.getChildCount() > childCount) {
+				pending.add(module.getChild(childCount));
+			}
+		}
+
+		protected boolean walkNext() throws DLException
+		{
+			try {
+				return parser.walkNext();
+			} catch (RuntimeException ex) {
+				throw toDLException(ex);
+			}
+		}
+	}
+
 	protected Iterator<DLInstance> instances;
 	protected DLModule module;
 	protected final DLCore core;
 	protected final Path file;
 
+	/**
+	 * Top level entities which are complete but not read yet - used when reading incrementally
+	 */
+	protected final Deque<DLInstance> pending = new ArrayDeque<>();
+	protected ReaderParsing parsing;
+	protected DLHrfIncrementalParser parser;
+	protected boolean parsed;
+
+	/**
+	 * If false top level instances are not added to the module when reading incrementally - allows to read large
+	 * files in constant memory
+	 */
+	protected boolean retainInstances = true;
+
 	/**
 	 * This reader is reading the DL Human Readable Format.
 	 *
@@ -61,55 +133,101 @@ public class HrfDLReader implements DLReader
 		this.file = file;
 	}
 
+	protected String getModuleId()
+	{
+		return file.toAbsolutePath().normalize().toString();
+	}
+
 	protected synchronized void readIntern() throws IOException, DLException
 	{
-		if (module != null) {
+		if (parsed) {
+			return;
+		}
+
+		// Finish reading incrementally if already started
+		if (parser != null) {
+			while (parsing.walkNext()) {
+
+				// Not retained instances are not kept for reading
+				if (!retainInstances) {
+					pending.clear();
+				}
+			}
+			parsed = true;
 			return;
 		}
 
 		// Use default parser for parsing the file contents
-		module = DLHrfParsing.parse(
+		module = DLHrfParsing2.parse(
 			core,
-			file.toAbsolutePath().normalize().toString(),
+			getModuleId(),
 			file
 		);
+		parsed = true;
+		instances = module.getChildren().iterator();
 	}
 
-	protected synchronized void readInternIterator() throws IOException, DLException
+	/**
+	 * Makes sure a top level entity is available to read if the data contains more - parses just as much of the file
+	 * as needed if the module was not read completely yet
+	 *
+	 * @return true if an entity can be read
+	 *
+	 * @throws IOException
+	 * @throws DLException
+	 */
+	protected synchronized boolean readNext() throws IOException, DLException
 	{
-		readIntern();
+		// Read from the completely read module
+		if (parsed && parser == null) {
+			return instances.hasNext();
+		}
 
-		instances = module.getChildren().iterator();
+		if (parser == null) {
+			module = core.createModule(getModuleId());
+			parsing = new ReaderParsing(core, module);
+			parser = new DLHrfIncrementalParser(parsing, module, Utf8CharStream.fromPath(file));
+		}
+
+		while (pending.isEmpty() && !parsed) {
+			if (!parsing.walkNext()) {
+				parsed = true;
+			}
+		}
+
+		return !pending.isEmpty();
 	}
 
 	@Override
 	public Object readObject() throws IOException, DLException
 	{
-		readIntern();
-
 		return ((DLInstance) read()).toJavaObject();
 	}
 
 	@Override
-	public <DLEntityType extends DLEntity> DLEntityType read() throws IOException, DLException
+	public synchronized <DLEntityType extends DLEntity> DLEntityType read() throws IOException, DLException
 	{
-		readInternIterator();
+		if (!readNext()) {
+			throw new NoSuchElementException("No more entities in " + file);
+		}
+
+		if (parser == null) {
+			return (DLEntityType) instances.next();
+		}
 
-		return (DLEntityType) instances.next();
+		return (DLEntityType) pending.poll();
 	}
 
 	@Override
 	public boolean ready() throws IOException, DLException
 	{
-		readInternIterator();
-
-		return instances.hasNext();
+		return readNext();
 	}
 
 	@Override
 	public void close() throws IOException
 	{
-		// nothing to do -> the file was closed after reading into a String
+		// nothing to do -> the file is mapped and unmapped by the garbage collection
 	}
 
 	public DLCore getCore()
@@ -117,6 +235,15 @@ public class HrfDLReader implements DLReader
 		return core;
 	}
 
+	/**
+	 * Reads the remaining data into the module - if instances are not retained the module does not contain the top
+	 * level instances read incrementally
+	 *
+	 * @return
+	 *
+	 * @throws IOException
+	 * @throws DLException
+	 */
 	@Override
 	public DLModule readModule() throws IOException, DLException
 	{
@@ -124,4 +251,14 @@ public class HrfDLReader implements DLReader
 
 		return module;
 	}
+
+	public boolean isRetainInstances()
+	{
+		return retainInstances;
+	}
+
+	public void setRetainInstances(boolean retainInstances)
+	{
+		this.retainInstances = retainInstances;
+	}
 }
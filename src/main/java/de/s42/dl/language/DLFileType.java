@@ -44,7 +44,7 @@ public enum DLFileType
 	 */
 	BIN("dlb"),
 	/**
-	 * Compressed Binary Format (Zip Container for BIN)
+	 * Compressed Binary Format (Block compressed container for BIN, Zip Containers are still read)
 	 */
 	BINCOMPRESSED("dla");
 
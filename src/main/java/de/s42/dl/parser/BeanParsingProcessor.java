@@ -0,0 +1,594 @@
+// <editor-fold desc="The MIT License" defaultstate="collapsed">
+/*
+ * The MIT License
+ * 
+ * Copyright 2022 Studio 42 GmbH ( https://www.s42m.de ).
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+//</editor-fold>
+package de.s42.dl.parser;
+
+import de.s42.base.beans.BeanHelper;
+import de.s42.base.beans.BeanInfo;
+import de.s42.base.beans.BeanProperty;
+import de.s42.base.beans.InvalidBean;
+import de.s42.base.conversion.ConversionHelper;
+import de.s42.dl.DLAttribute;
+import de.s42.dl.DLCore;
+import de.s42.dl.DLType;
+import de.s42.dl.exceptions.DLException;
+import de.s42.dl.types.DLContainer;
+import de.s42.dl.validation.ValidationResult;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates the java objects of the instances directly - no DLInstance gets created. Each bean is created at
+ * beginInstance, its properties are written per attribute with accessors cached per type and attribute symbol and it
+ * is validated against its type at endInstance. Types with instance validators are validated by converting the bean
+ * with {@link DLType#fromJavaObject(java.lang.Object)}. Symbols and type definitions are handled like in
+ * DefaultParsingProcessor.
+ *
+ * @author Benjamin Schiller
+ */
+public class BeanParsingProcessor extends DefaultParsingProcessor
+{
+
+	/**
+	 * Writes one property of beans of a type
+	 */
+	protected static class BeanAccessor
+	{
+
+		protected final String name;
+
+		/**
+		 * Property of the bean or null if the bean is a map
+		 */
+		protected final BeanProperty<Object, Object> property;
+
+		protected final Class valueClass;
+
+		protected BeanAccessor(String name, BeanProperty<Object, Object> property)
+		{
+			assert name != null;
+
+			this.name = name;
+			this.property = property;
+			this.valueClass = (property != null) ? ConversionHelper.wrapPrimitives(property.getPropertyClass()) : Object.class;
+		}
+
+		protected void write(Object bean, Object value) throws InvalidBean
+		{
+			assert bean != null;
+
+			if (property == null) {
+				((Map) bean).put(name, value);
+				return;
+			}
+
+			if (value != null && !valueClass.isInstance(value)) {
+				value = ConversionHelper.convert(value, valueClass);
+			}
+
+			property.write(bean, value);
+		}
+	}
+
+	/**
+	 * Precomputed data to create and validate beans of a type
+	 */
+	protected static class BeanMapping
+	{
+
+		protected final DLType type;
+		protected final BeanInfo<Object> info;
+		protected final boolean map;
+
+		/**
+		 * Property getting the instance name or null
+		 */
+		protected final BeanProperty<Object, Object> nameProperty;
+
+		/**
+		 * Accessors by attribute symbol - get added on first use
+		 */
+		protected final Map<Integer, BeanAccessor> accessors = new HashMap<>();
+
+		/**
+		 * Attributes of the type with the properties to validate their values
+		 */
+		protected final List<DLAttribute> validatedAttributes = new ArrayList<>();
+		protected final List<BeanProperty<Object, Object>> validatedProperties = new ArrayList<>();
+
+		/**
+		 * True if the type or one of its parents has instance validators
+		 */
+		protected final boolean validateInstance;
+
+		protected BeanMapping(DLType type) throws InvalidBean
+		{
+			assert type != null;
+
+			this.type = type;
+			info = BeanHelper.getBeanInfo(type.getJavaDataType());
+			map = Map.class.isAssignableFrom(type.getJavaDataType());
+
+			BeanProperty<Object, Object> property = info.getProperty("name").orElse(null);
+			nameProperty = (property != null && property.canWrite()) ? property : null;
+
+			for (DLAttribute attribute : type.getAttributes()) {
+
+				property = info.getProperty(attribute.getName()).orElse(null);
+
+				if (property != null && property.canRead()) {
+					validatedAttributes.add(attribute);
+					validatedProperties.add(property);
+				}
+			}
+
+			boolean instanceValidators = !type.getInstanceValidators().isEmpty();
+			for (DLType parent : type.getParents()) {
+				instanceValidators |= !parent.getInstanceValidators().isEmpty();
+			}
+			validateInstance = instanceValidators;
+		}
+
+		protected BeanAccessor createAccessor(String name) throws IOException
+		{
+			assert name != null;
+
+			if (map) {
+				return new BeanAccessor(name, null);
+			}
+
+			BeanProperty<Object, Object> property = info.getProperty(name).orElse(null);
+
+			if (property == null || !property.canWrite()) {
+				throw new IOException("Java type " + type.getJavaDataType().getName() + " of type " + type.getName() + " has no writable property " + name);
+			}
+
+			return new BeanAccessor(name, property);
+		}
+	}
+
+	/**
+	 * A bean between beginInstance and endInstance
+	 */
+	protected static class BeanInstance
+	{
+
+		protected final Object bean;
+		protected final BeanMapping mapping;
+		protected final String name;
+
+		protected BeanInstance(Object bean, BeanMapping mapping, String name)
+		{
+			assert bean != null;
+			assert mapping != null;
+
+			this.bean = bean;
+			this.mapping = mapping;
+			this.name = name;
+		}
+	}
+
+	protected static class BeanFrame
+	{
+
+		/**
+		 * Owning bean - is null for arrays nested in arrays
+		 */
+		protected final BeanInstance instance;
+
+		/**
+		 * Name of the attribute the next bean (or the array) gets assigned to or null if the frame collects children
+		 * or is nested in another array
+		 */
+		protected final String attribute;
+
+		/**
+		 * Collected elements if the frame is an array or null
+		 */
+		protected final List<Object> elements;
+
+		protected final int kind;
+
+		protected BeanFrame(BeanInstance instance, String attribute)
+		{
+			assert instance != null;
+
+			this.instance = instance;
+			this.attribute = attribute;
+			this.elements = null;
+			this.kind = -1;
+		}
+
+		protected BeanFrame(BeanInstance instance, String attribute, int kind)
+		{
+			this.instance = instance;
+			this.attribute = attribute;
+			this.elements = new ArrayList<>();
+			this.kind = kind;
+		}
+	}
+
+	protected final Map<DLType, BeanMapping> mappings = new HashMap<>();
+	protected final Deque<BeanFrame> beanFrames = new ArrayDeque<>();
+	protected final List<Object> beans = new ArrayList<>();
+	protected BeanInstance currentBean;
+	protected Object lastBean;
+
+	public BeanParsingProcessor(DLCore core)
+	{
+		super(core);
+	}
+
+	@Override
+	public void beginModule() throws IOException
+	{
+		super.beginModule();
+
+		beanFrames.clear();
+		beans.clear();
+		currentBean = null;
+		lastBean = null;
+	}
+
+	@Override
+	public void endModule() throws IOException
+	{
+		endInstance();
+
+		if (!beanFrames.isEmpty()) {
+			throw new IOException("Module ended with " + beanFrames.size() + " unclosed parent instances");
+		}
+
+		super.endModule();
+	}
+
+	protected BeanMapping getMapping(DLType type) throws IOException
+	{
+		assert type != null;
+
+		BeanMapping mapping = mappings.get(type);
+
+		if (mapping == null) {
+			try {
+				mapping = new BeanMapping(type);
+			} catch (InvalidBean ex) {
+				throw new IOException("Error mapping java type of type " + type.getName() + " - " + ex.getMessage(), ex);
+			}
+			mappings.put(type, mapping);
+		}
+
+		return mapping;
+	}
+
+	protected void beginBean(int typeId, String name) throws IOException
+	{
+		assert typeId > 0;
+
+		endInstance();
+
+		BeanMapping mapping = getMapping(getDefinedType(typeId));
+
+		try {
+			Object bean = mapping.type.createJavaInstance();
+
+			if (name != null && mapping.nameProperty != null) {
+				mapping.nameProperty.write(bean, name);
+			}
+
+			currentBean = new BeanInstance(bean, mapping, name);
+		} catch (DLException | InvalidBean ex) {
+			throw new IOException("Error creating bean of type " + mapping.type.getName() + " - " + ex.getMessage(), ex);
+		}
+	}
+
+	@Override
+	public void beginAnonymousInstance(int typeId) throws IOException
+	{
+		assert typeId > 0;
+
+		beginBean(typeId, null);
+	}
+
+	@Override
+	public void beginInstance(int typeId, String name) throws IOException
+	{
+		assert typeId > 0;
+		assert name != null;
+
+		beginBean(typeId, name);
+	}
+
+	/**
+	 * Validates the attribute values of the bean and the bean itself if its type has instance validators
+	 *
+	 * @param instance
+	 *
+	 * @throws IOException
+	 */
+	protected void validate(BeanInstance instance) throws IOException
+	{
+		assert instance != null;
+
+		BeanMapping mapping = instance.mapping;
+
+		try {
+			ValidationResult result = new ValidationResult();
+
+			for (int i = 0; i < mapping.validatedAttributes.size(); ++i) {
+				mapping.validatedAttributes.get(i).validateValue(mapping.validatedProperties.get(i).read(instance.bean), result);
+			}
+
+			if (!result.isValid()) {
+				throw new IOException("Error validating bean " + instance.name + " of type " + mapping.type.getName() + " - " + result.toMessage());
+			}
+
+			if (mapping.validateInstance) {
+				mapping.type.fromJavaObject(instance.bean);
+			}
+		} catch (DLException | InvalidBean ex) {
+			throw new IOException("Error validating bean " + instance.name + " of type " + mapping.type.getName() + " - " + ex.getMessage(), ex);
+		}
+	}
+
+	@Override
+	public void endInstance() throws IOException
+	{
+		if (currentBean == null) {
+			return;
+		}
+
+		BeanInstance instance = currentBean;
+		BeanFrame parent = beanFrames.peek();
+
+		validate(instance);
+
+		// top level bean
+		if (parent == null) {
+			if (retainInstances) {
+				beans.add(instance.bean);
+			}
+			lastBean = instance.bean;
+			currentBean = null;
+		} // array element
+		else if (parent.elements != null) {
+			parent.elements.add(instance.bean);
+			currentBean = null;
+		} // bean attribute -> continue with the parent
+		else if (parent.attribute != null) {
+			beanFrames.pop();
+			currentBean = parent.instance;
+			setBeanValue(parent.instance, parent.attribute, instance.bean);
+		} // child
+		else {
+			Object parentBean = parent.instance.bean;
+			if (parentBean instanceof DLContainer container) {
+				container.addChild(instance.name, instance.bean);
+			} else if (parentBean instanceof Map map) {
+				map.put(instance.name, instance.bean);
+			}
+			currentBean = null;
+		}
+	}
+
+	@Override
+	public void beginChildren() throws IOException
+	{
+		if (currentBean == null) {
+			throw new IOException("No current instance active");
+		}
+
+		beanFrames.push(new BeanFrame(currentBean, null));
+		currentBean = null;
+	}
+
+	@Override
+	public void endChildren() throws IOException
+	{
+		endInstance();
+
+		BeanFrame parent = beanFrames.poll();
+
+		if (parent == null || parent.attribute != null || parent.elements != null) {
+			throw new IOException("No children active");
+		}
+
+		currentBean = parent.instance;
+	}
+
+	@Override
+	public void beginInstanceAttribute(int nameId) throws IOException
+	{
+		assert nameId > 0;
+
+		if (currentBean == null) {
+			throw new IOException("No current instance active");
+		}
+
+		beanFrames.push(new BeanFrame(currentBean, getSymbol(nameId)));
+		currentBean = null;
+	}
+
+	@Override
+	public void beginArrayAttribute(int nameId, int kind) throws IOException
+	{
+		assert nameId >= 0;
+
+		// array nested in the active array
+		if (nameId == 0) {
+
+			endInstance();
+
+			BeanFrame parent = beanFrames.peek();
+
+			if (parent == null || parent.elements == null) {
+				throw new IOException("No array active");
+			}
+
+			beanFrames.push(new BeanFrame(null, null, kind));
+			return;
+		}
+
+		if (currentBean == null) {
+			throw new IOException("No current instance active");
+		}
+
+		beanFrames.push(new BeanFrame(currentBean, getSymbol(nameId), kind));
+		currentBean = null;
+	}
+
+	@Override
+	public void endArray() throws IOException
+	{
+		endInstance();
+
+		BeanFrame frame = beanFrames.peek();
+
+		if (frame == null || frame.elements == null) {
+			throw new IOException("No array active");
+		}
+
+		beanFrames.pop();
+
+		Object value;
+		if (frame.kind == COLLECTION_ARRAY) {
+			value = frame.elements.toArray();
+		} else if (frame.kind == COLLECTION_LIST) {
+			value = frame.elements;
+		} else if (frame.kind == COLLECTION_SET) {
+			value = new LinkedHashSet<>(frame.elements);
+		} else {
+			throw new IOException("Unknown collection kind " + frame.kind);
+		}
+
+		// nested array -> is an element of the enclosing array
+		if (frame.attribute == null) {
+			beanFrames.peek().elements.add(value);
+			return;
+		}
+
+		currentBean = frame.instance;
+		setBeanValue(frame.instance, frame.attribute, value);
+	}
+
+	protected void setBeanValue(BeanInstance instance, String name, Object value) throws IOException
+	{
+		assert instance != null;
+		assert name != null;
+
+		try {
+			instance.mapping.createAccessor(name).write(instance.bean, value);
+		} catch (InvalidBean | RuntimeException ex) {
+			throw new IOException("Error setting " + name + " of bean of type " + instance.mapping.type.getName() + " - " + ex.getMessage(), ex);
+		}
+	}
+
+	@Override
+	protected void setValue(int nameId, Object value) throws IOException
+	{
+		assert nameId >= 0;
+		assert value != null;
+
+		if (nameId == 0) {
+
+			endInstance();
+
+			BeanFrame frame = beanFrames.peek();
+
+			if (frame == null || frame.elements == null) {
+				throw new IOException("No array active");
+			}
+
+			frame.elements.add(value);
+			return;
+		}
+
+		if (currentBean == null) {
+			throw new IOException("No current instance active");
+		}
+
+		BeanMapping mapping = currentBean.mapping;
+		BeanAccessor accessor = mapping.accessors.get(nameId);
+
+		if (accessor == null) {
+			accessor = mapping.createAccessor(getSymbol(nameId));
+			mapping.accessors.put(nameId, accessor);
+		}
+
+		try {
+			accessor.write(currentBean.bean, value);
+		} catch (InvalidBean | RuntimeException ex) {
+			throw new IOException("Error setting " + accessor.name + " of bean of type " + mapping.type.getName() + " - " + ex.getMessage(), ex);
+		}
+	}
+
+	@Override
+	protected void setPackedValue(int nameId, Object value) throws IOException
+	{
+		assert nameId >= 0;
+		assert value != null;
+
+		if (nameId > 0 && currentBean != null) {
+
+			DLAttribute attribute = getAttribute(currentBean.mapping.type, nameId);
+
+			if (attribute != null) {
+				try {
+					value = attribute.getType().read(value);
+				} catch (DLException ex) {
+					throw new IOException("Error converting packed array of attribute " + attribute.getName() + " - " + ex.getMessage(), ex);
+				}
+			}
+		}
+
+		setValue(nameId, value);
+	}
+
+	/**
+	 * Returns the top level beans - they are only collected if retainInstances is true
+	 *
+	 * @return
+	 */
+	public List<Object> getBeans()
+	{
+		return Collections.unmodifiableList(beans);
+	}
+
+	public Object getLastBean()
+	{
+		return lastBean;
+	}
+
+	public void setLastBean(Object lastBean)
+	{
+		this.lastBean = lastBean;
+	}
+}
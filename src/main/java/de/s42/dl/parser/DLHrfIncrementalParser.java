@@ -0,0 +1,222 @@
+// <editor-fold desc="The MIT License" defaultstate="collapsed">
+/*
+ * The MIT License
+ * 
+ * Copyright 2022 Studio 42 GmbH ( https://www.s42m.de ).
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+//</editor-fold>
+package de.s42.dl.parser;
+
+import de.s42.dl.DLModule;
+import de.s42.dl.parser.DLParser.DeclarationContext;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.UnbufferedTokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+
+/**
+ * Parses DL HRF declaration by declaration and walks each declaration with the given parsing right after it was
+ * parsed. The parse tree of a declaration and its tokens are not referenced anymore once it was walked - so the
+ * memory needed besides the created module is bound by the largest top level declaration instead of the whole data.
+ * In contrast to {@link DLHrfParsing#walk(DLHrfParsing, DLModule, CharStream)} the declarations before a syntax error
+ * are already applied when the error is thrown.
+ *
+ * @author Benjamin Schiller
+ */
+public class DLHrfIncrementalParser
+{
+
+	/**
+	 * Hands just the tokens of the default channel to the parser as UnbufferedTokenStream does not filter channels
+	 */
+	protected static class DefaultChannelTokenSource implements TokenSource
+	{
+
+		protected final TokenSource source;
+
+		public DefaultChannelTokenSource(TokenSource source)
+		{
+			assert source != null;
+
+			this.source = source;
+		}
+
+		@Override
+		public Token nextToken()
+		{
+			Token token = source.nextToken();
+
+			while (token.getChannel() != Token.DEFAULT_CHANNEL && token.getType() != Token.EOF) {
+				token = source.nextToken();
+			}
+
+			return token;
+		}
+
+		@Override
+		public int getLine()
+		{
+			return source.getLine();
+		}
+
+		@Override
+		public int getCharPositionInLine()
+		{
+			return source.getCharPositionInLine();
+		}
+
+		@Override
+		public CharStream getInputStream()
+		{
+			return source.getInputStream();
+		}
+
+		@Override
+		public String getSourceName()
+		{
+			return source.getSourceName();
+		}
+
+		@Override
+		public void setTokenFactory(TokenFactory<?> factory)
+		{
+			source.setTokenFactory(factory);
+		}
+
+		@Override
+		public TokenFactory<?> getTokenFactory()
+		{
+			return source.getTokenFactory();
+		}
+	}
+
+	protected final DLHrfParsing parsing;
+	protected final DLModule module;
+	protected final UnbufferedTokenStream<Token> tokens;
+	protected final DLParser parser;
+	protected final DLHrfParsingErrorHandler errorHandler;
+	protected final ParseTreeWalker walker = new ParseTreeWalker();
+
+	public DLHrfIncrementalParser(DLHrfParsing parsing, DLModule module, CharStream data)
+	{
+		assert parsing != null;
+		assert module != null;
+		assert data != null;
+
+		this.parsing = parsing;
+		this.module = module;
+
+		errorHandler = new DLHrfParsingErrorHandler(parsing, module);
+
+		// Setup lexer
+		DLLexer lexer = new DLLexer(data);
+		lexer.removeErrorListeners();
+		lexer.addErrorListener(errorHandler);
+
+		// Setup parser - does not keep the tokens of walked declarations
+		tokens = new UnbufferedTokenStream<>(new DefaultChannelTokenSource(lexer));
+		parser = new DLParser(tokens);
+		parser.removeErrorListeners();
+	}
+
+	/**
+	 * Parses and walks the next declaration
+	 *
+	 * @return false if the end of data was reached
+	 *
+	 * @throws DLHrfParsingException
+	 */
+	public boolean walkNext() throws DLHrfParsingException
+	{
+		if (tokens.LA(1) == Token.EOF) {
+			return false;
+		}
+
+		walker.walk(parsing, parseDeclaration());
+
+		return true;
+	}
+
+	/**
+	 * Parses and walks all remaining declarations
+	 *
+	 * @throws DLHrfParsingException
+	 */
+	public void walkAll() throws DLHrfParsingException
+	{
+		while (walkNext()) {
+			// walk the declarations
+		}
+	}
+
+	/**
+	 * Parses the next declaration with SLL prediction and falls back to LL like DLHrfParsing.parseData
+	 *
+	 * @return
+	 */
+	protected DeclarationContext parseDeclaration()
+	{
+		int marker = tokens.mark();
+		int start = tokens.index();
+
+		try {
+			parser.setErrorHandler(new BailErrorStrategy());
+			parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+
+			try {
+				return parser.declaration();
+			} catch (ParseCancellationException ex) {
+
+				DLHrfParsing.countLLFallback();
+
+				// Rewinds the tokens of this declaration
+				tokens.seek(start);
+				parser.addErrorListener(errorHandler);
+				parser.setErrorHandler(new DefaultErrorStrategy());
+				parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+
+				try {
+					return parser.declaration();
+				} finally {
+					parser.removeErrorListeners();
+				}
+			}
+		} finally {
+			tokens.release(marker);
+		}
+	}
+
+	public DLHrfParsing getParsing()
+	{
+		return parsing;
+	}
+
+	public DLModule getModule()
+	{
+		return module;
+	}
+}
@@ -31,10 +31,17 @@ import de.s42.dl.exceptions.*;
 import de.s42.dl.attributes.DefaultDLAttribute;
 import de.s42.dl.types.DefaultDLType;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
 import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
 import org.antlr.v4.runtime.misc.Pair;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 import static de.s42.dl.parser.DLHrfParsingErrorHandler.*;
 import de.s42.dl.parser.DLParser.*;
@@ -56,6 +63,23 @@ public class DLHrfParsing extends DLParserBaseListener
 {
 
 	//private final static Logger log = LogManager.getLogger(DLHrfParsing.class.getName());
+	/**
+	 * Counts the parses which had to fall back from SLL to LL prediction
+	 */
+	private final static AtomicLong LL_FALLBACK_COUNT = new AtomicLong();
+
+	/**
+	 * Sample used in warmUp - just has to be syntactically valid as it is not interpreted
+	 */
+	protected final static String WARM_UP_DATA
+		= "require \"module.dl\"; pragma disableRequire; alias A B; extern type E alias F; "
+		+ "abstract dynamic type T @length(1, max : 5) extends U, V contains W { "
+		+ "String s @required : \"s\"; Array<Integer> a; Integer i : -1; } "
+		+ "enum N { X, Y, } extern annotation a : @b & !(@c | @d); "
+		+ "assert (1 + 2 * 3 ^ 4 - 5 / 6 > 0) & $ref.path == true | false != x ~= \"y\" : \"message\"; "
+		+ "T t @unique { s : \"text\"; Integer i : 0x10, 0b1, 07, 1.5e3; U { } W w; a : $?ref; } "
+		+ "value : 1 <= 2, 3 >= 4, 5 < 6, 7 > 8;";
+
 	/**
 	 * Defines the minimal initial capacity size of assignable lists (aligned to ArrayList.DEFAULT_CAPACITY) - should
 	 * allow java to reuse the lists better
@@ -651,7 +675,7 @@ public class DLHrfParsing extends DLParserBaseListener
 				if (currentAttributeAssignmentInstances.peek() != currentInstance) {
 
 					//log.debug("enterInstanceDefinition addChild " + currentInstance.getName() + " "  + instance.getName());
-					currentInstance.addChild(instance);
+					addChild(currentInstance, instance);
 				}
 			} catch (DLException | RuntimeException ex) {
 				throw new InvalidInstance(createErrorMessage(module, "Error adding child", ex, ctx), ex);
@@ -669,6 +693,22 @@ public class DLHrfParsing extends DLParserBaseListener
 		}
 	}
 
+	/**
+	 * Adds the defined instance as child of its parent - the module is the parent of top level instances
+	 *
+	 * @param parent
+	 * @param child
+	 *
+	 * @throws InvalidInstance
+	 */
+	protected void addChild(DLInstance parent, DLInstance child) throws InvalidInstance
+	{
+		assert parent != null;
+		assert child != null;
+
+		parent.addChild(child);
+	}
+
 	@Override
 	public void exitInstanceDefinition(InstanceDefinitionContext ctx)
 	{
@@ -1464,7 +1504,7 @@ public class DLHrfParsing extends DLParserBaseListener
 		assert moduleId != null;
 		assert data != null;
 
-		return parse(core, moduleId, CharStreams.fromPath(data));
+		return parse(core, moduleId, Utf8CharStream.fromPath(data));
 	}
 
 	public static DLModule parse(DLCore core, String moduleId, InputStream data) throws DLException, IOException
@@ -1486,29 +1526,43 @@ public class DLHrfParsing extends DLParserBaseListener
 		try {
 			return parseDirect(core, moduleId, data);
 		} catch (RuntimeException ex) {
+			throw toDLException(ex);
+		}
+	}
 
-			// @todo this whole block is ugly compatibility code - remove soon
-			if (ex.getCause() instanceof DLException dlEx) {
+	/**
+	 * Returns the DLException causing the parsing error ex - ex is rethrown if it is not caused by a DLException
+	 *
+	 * @param ex
+	 *
+	 * @return
+	 */
+	@SuppressWarnings("deprecation")
+	protected static DLException toDLException(RuntimeException ex)
+	{
+		assert ex != null;
 
-				if (ex instanceof ParserException && dlEx instanceof DLParserException) {
+		// @todo this whole block is ugly compatibility code - remove soon
+		if (ex.getCause() instanceof DLException dlEx) {
 
-					ParserException pEx = (ParserException) ex;
-					DLParserException dlPEx = (DLParserException) dlEx;
+			if (ex instanceof ParserException && dlEx instanceof DLParserException) {
 
-					dlPEx.setEndLine(pEx.getEndLine());
-					dlPEx.setEndOffset(pEx.getEndOffset());
-					dlPEx.setEndPosition(pEx.getEndPosition());
-					dlPEx.setStartLine(pEx.getStartLine());
-					dlPEx.setStartOffset(pEx.getStartOffset());
-					dlPEx.setStartPosition(pEx.getStartPosition());
-				}
+				ParserException pEx = (ParserException) ex;
+				DLParserException dlPEx = (DLParserException) dlEx;
 
-				throw dlEx;
+				dlPEx.setEndLine(pEx.getEndLine());
+				dlPEx.setEndOffset(pEx.getEndOffset());
+				dlPEx.setEndPosition(pEx.getEndPosition());
+				dlPEx.setStartLine(pEx.getStartLine());
+				dlPEx.setStartOffset(pEx.getStartOffset());
+				dlPEx.setStartPosition(pEx.getStartPosition());
 			}
 
-			// Otherwise just forward ex
-			throw ex;
+			return dlEx;
 		}
+
+		// Otherwise just forward ex
+		throw ex;
 	}
 
 	public static DLModule parseDirect(DLCore core, String moduleId, CharStream data) throws DLHrfParsingException
@@ -1524,24 +1578,142 @@ public class DLHrfParsing extends DLParserBaseListener
 			throw new DLHrfParsingException("Error creating module - " + ex.getMessage(), ex);
 		}
 
-		DLHrfParsing parsing = new DLHrfParsing(core, module);
+		walk(new DLHrfParsing(core, module), module, data);
+
+		return module;
+	}
+
+	/**
+	 * Parses the data declaration by declaration and walks each declaration right away - the parse tree of the whole
+	 * data is never built. Declarations before a syntax error are already applied to the core and module.
+	 *
+	 * @param core
+	 * @param moduleId
+	 * @param data
+	 *
+	 * @return
+	 *
+	 * @throws DLException
+	 */
+	public static DLModule parseIncremental(DLCore core, String moduleId, CharStream data) throws DLException
+	{
+		assert core != null;
+		assert moduleId != null;
+		assert data != null;
+
+		DLModule module = core.createModule(moduleId);
+
+		try {
+			new DLHrfIncrementalParser(new DLHrfParsing(core, module), module, data).walkAll();
+		} catch (RuntimeException ex) {
+			throw toDLException(ex);
+		}
+
+		return module;
+	}
+
+	/**
+	 * Parses the data and walks the parse tree with parsing
+	 *
+	 * @param parsing
+	 * @param module
+	 * @param data
+	 *
+	 * @throws DLHrfParsingException
+	 */
+	protected static void walk(DLHrfParsing parsing, DLModule module, CharStream data) throws DLHrfParsingException
+	{
+		assert parsing != null;
+		assert module != null;
+		assert data != null;
 
 		// Setup lexer
 		DLLexer lexer = new DLLexer(data);
 		lexer.removeErrorListeners();
 		lexer.addErrorListener(new DLHrfParsingErrorHandler(parsing, module));
 
-		// Setup parser
-		DLParser parser = new DLParser(new CommonTokenStream(lexer));
-		parser.removeErrorListeners();
-		parser.addErrorListener(new DLHrfParsingErrorHandler(parsing, module));
-
 		// Parse module
-		DataContext root = parser.data();
+		DataContext root = parseData(new CommonTokenStream(lexer), new DLHrfParsingErrorHandler(parsing, module));
 		ParseTreeWalker walker = new ParseTreeWalker();
 		walker.walk(parsing, root);
+	}
 
-		return module;
+	/**
+	 * Parses the tokens in two stages - the fast SLL prediction bails out on the first syntax error, only then the
+	 * tokens are parsed again with full LL prediction which reports the errors to errorListener. Both stages share the
+	 * static DFA cache of DLParser.
+	 *
+	 * @param tokens
+	 * @param errorListener
+	 *
+	 * @return
+	 */
+	protected static DataContext parseData(TokenStream tokens, ANTLRErrorListener errorListener)
+	{
+		assert tokens != null;
+		assert errorListener != null;
+
+		DLParser parser = new DLParser(tokens);
+		parser.removeErrorListeners();
+		parser.setErrorHandler(new BailErrorStrategy());
+		parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+
+		try {
+			return parser.data();
+		} catch (ParseCancellationException ex) {
+
+			countLLFallback();
+
+			// Rewinds the tokens
+			parser.reset();
+			parser.addErrorListener(errorListener);
+			parser.setErrorHandler(new DefaultErrorStrategy());
+			parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+
+			return parser.data();
+		}
+	}
+
+	/**
+	 * Primes the shared lexer and parser DFA caches with a sample covering the DL syntax - call it once at startup to
+	 * take the DFA construction cost out of the first parsed modules
+	 */
+	public static void warmUp()
+	{
+		warmUp(WARM_UP_DATA);
+	}
+
+	/**
+	 * Primes the shared lexer and parser DFA caches with the given data - no core or module is involved
+	 *
+	 * @param data representative DL HRF data, it should be free of syntax errors
+	 */
+	public static void warmUp(String data)
+	{
+		assert data != null;
+
+		DLLexer lexer = new DLLexer(CharStreams.fromString(data));
+		lexer.removeErrorListeners();
+
+		DLParser parser = new DLParser(new CommonTokenStream(lexer));
+		parser.removeErrorListeners();
+		parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+		parser.data();
+	}
+
+	protected static void countLLFallback()
+	{
+		LL_FALLBACK_COUNT.incrementAndGet();
+	}
+
+	/**
+	 * Returns how often the SLL stage failed and the module had to be parsed with full LL prediction since startup
+	 *
+	 * @return
+	 */
+	public static long getLLFallbackCount()
+	{
+		return LL_FALLBACK_COUNT.get();
 	}
 
 }
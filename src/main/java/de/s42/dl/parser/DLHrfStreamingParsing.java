@@ -0,0 +1,199 @@
+// <editor-fold desc="The MIT License" defaultstate="collapsed">
+/*
+ * The MIT License
+ * 
+ * Copyright 2022 Studio 42 GmbH ( https://www.s42m.de ).
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+//</editor-fold>
+package de.s42.dl.parser;
+
+import de.s42.dl.DLCore;
+import de.s42.dl.DLInstance;
+import de.s42.dl.DLModule;
+import de.s42.dl.DLType;
+import de.s42.dl.exceptions.DLException;
+import de.s42.dl.exceptions.InvalidInstance;
+import de.s42.dl.io.DLWriter;
+import de.s42.dl.io.binary.BinaryDLWriter;
+import de.s42.dl.parser.DLParser.InstanceDefinitionContext;
+import de.s42.dl.parser.DLParser.TypeDefinitionContext;
+import java.io.IOException;
+import java.util.List;
+import org.antlr.v4.runtime.CharStream;
+
+/**
+ * Parses HRF and hands each top level instance to a writer as soon as it is complete instead of adding it to the
+ * module. Types defined in the module are written before the first instance following their definition. So
+ * transcoding and custom consumers only hold the current top level instance and its parse tree - references to
+ * previous top level instances can not be resolved unless instances are retained.
+ *
+ * @author Benjamin Schiller
+ */
+public class DLHrfStreamingParsing extends DLHrfParsing
+{
+
+	protected final DLWriter target;
+
+	/**
+	 * If true top level instances are also added to the module
+	 */
+	protected boolean retainInstances;
+
+	/**
+	 * Count of the defined types of the module already written to target
+	 */
+	protected int writtenTypeCount;
+
+	public DLHrfStreamingParsing(DLCore core, DLModule module, DLWriter target)
+	{
+		super(core, module);
+
+		assert target != null;
+
+		this.target = target;
+	}
+
+	@Override
+	protected void addChild(DLInstance parent, DLInstance child) throws InvalidInstance
+	{
+		assert parent != null;
+		assert child != null;
+
+		if (parent == module && !retainInstances) {
+			return;
+		}
+
+		super.addChild(parent, child);
+	}
+
+	@Override
+	public void exitInstanceDefinition(InstanceDefinitionContext ctx)
+	{
+		assert ctx != null;
+
+		// top level instances have the module as parent and are not assigned to an attribute of the module
+		boolean topLevel = (instances.peek() == module) && (currentAttributeAssignmentInstances.peek() != module);
+
+		super.exitInstanceDefinition(ctx);
+
+		if (topLevel) {
+			try {
+				writeDefinedTypes();
+				target.write(lastInstance);
+			} catch (IOException ex) {
+				throw new DLHrfParsingException("Error writing instance - " + ex.getMessage(), module, ctx, ex);
+			}
+		}
+	}
+
+	@Override
+	public void exitTypeDefinition(TypeDefinitionContext ctx)
+	{
+		assert ctx != null;
+
+		super.exitTypeDefinition(ctx);
+
+		try {
+			writeDefinedTypes();
+		} catch (IOException ex) {
+			throw new DLHrfParsingException("Error writing type - " + ex.getMessage(), module, ctx, ex);
+		}
+	}
+
+	protected void writeDefinedTypes() throws IOException
+	{
+		List<DLType> definedTypes = module.getDefinedTypes();
+
+		while (writtenTypeCount < definedTypes.size()) {
+			target.write(definedTypes.get(writtenTypeCount));
+			writtenTypeCount++;
+		}
+	}
+
+	public boolean isRetainInstances()
+	{
+		return retainInstances;
+	}
+
+	public void setRetainInstances(boolean retainInstances)
+	{
+		this.retainInstances = retainInstances;
+	}
+
+	/**
+	 * Parses the data and writes its types and top level instances to target - target does not get closed
+	 *
+	 * @param core
+	 * @param moduleId
+	 * @param data
+	 * @param target
+	 *
+	 * @return the module without top level instances
+	 *
+	 * @throws DLException
+	 * @throws IOException
+	 */
+	public static DLModule parse(DLCore core, String moduleId, CharStream data, DLWriter target) throws DLException, IOException
+	{
+		assert core != null;
+		assert moduleId != null;
+		assert data != null;
+		assert target != null;
+
+		DLModule module = core.createModule(moduleId);
+
+		try {
+			new DLHrfIncrementalParser(new DLHrfStreamingParsing(core, module, target), module, data).walkAll();
+		} catch (DLHrfParsingException ex) {
+			if (ex.getCause() instanceof IOException ioEx) {
+				throw ioEx;
+			}
+			throw toDLException(ex);
+		} catch (RuntimeException ex) {
+			throw toDLException(ex);
+		}
+
+		return module;
+	}
+
+	/**
+	 * Parses the data and emits its types and top level instances as events of the processor - from beginModule to
+	 * endModule
+	 *
+	 * @param core
+	 * @param moduleId
+	 * @param data
+	 * @param processor
+	 *
+	 * @return the module without top level instances
+	 *
+	 * @throws DLException
+	 * @throws IOException
+	 */
+	public static DLModule parse(DLCore core, String moduleId, CharStream data, DLParsingProcessor processor) throws DLException, IOException
+	{
+		assert processor != null;
+
+		try (BinaryDLWriter writer = new BinaryDLWriter(processor, core)) {
+			return parse(core, moduleId, data, writer);
+		}
+	}
+}
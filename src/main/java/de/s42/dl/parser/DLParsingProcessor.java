@@ -26,6 +26,8 @@
 package de.s42.dl.parser;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
 
 /**
  *
@@ -34,6 +36,36 @@ import java.io.IOException;
 public interface DLParsingProcessor
 {
 
+	/**
+	 * Kind of collection given in beginArrayAttribute - results in an Object[]
+	 */
+	public final static int COLLECTION_ARRAY = 0;
+
+	/**
+	 * Kind of collection given in beginArrayAttribute - results in a List
+	 */
+	public final static int COLLECTION_LIST = 1;
+
+	/**
+	 * Kind of collection given in beginArrayAttribute - results in a Set
+	 */
+	public final static int COLLECTION_SET = 2;
+
+	/**
+	 * Flag given in beginType - the type is abstract
+	 */
+	public final static int TYPE_ABSTRACT = 1;
+
+	/**
+	 * Flag given in beginType - the type is final
+	 */
+	public final static int TYPE_FINAL = 2;
+
+	/**
+	 * Flag given in beginType - the type is dynamic
+	 */
+	public final static int TYPE_DYNAMIC = 4;
+
 	public void beginModule() throws IOException;
 
 	public void endModule() throws IOException;
@@ -46,6 +78,38 @@ public interface DLParsingProcessor
 
 	public void endInstance() throws IOException;
 
+	/**
+	 * All instances begun until endChildren are added as children of the current instance
+	 *
+	 * @throws IOException
+	 */
+	public void beginChildren() throws IOException;
+
+	public void endChildren() throws IOException;
+
+	/**
+	 * The next instance begun is set as value of the attribute name of the current instance once it ends
+	 *
+	 * @param name
+	 *
+	 * @throws IOException
+	 */
+	public void beginInstanceAttribute(int name) throws IOException;
+
+	/**
+	 * All values set with name 0 and all instances begun until endArray are collected as elements. The resulting
+	 * collection gets set as value of the attribute name of the current instance or as next element of the enclosing
+	 * array if name is 0
+	 *
+	 * @param name
+	 * @param kind one of COLLECTION_ARRAY, COLLECTION_LIST or COLLECTION_SET
+	 *
+	 * @throws IOException
+	 */
+	public void beginArrayAttribute(int name, int kind) throws IOException;
+
+	public void endArray() throws IOException;
+
 	public void setStringAttribute(int name, String value) throws IOException;
 
 	public void setIntAttribute(int name, int value) throws IOException;
@@ -58,7 +122,185 @@ public interface DLParsingProcessor
 
 	public void setBooleanAttribute(int name, boolean value) throws IOException;
 
+	public void setByteAttribute(int name, byte value) throws IOException;
+
+	public void setShortAttribute(int name, short value) throws IOException;
+
+	public void setCharAttribute(int name, char value) throws IOException;
+
+	public void setUUIDAttribute(int name, UUID value) throws IOException;
+
+	/**
+	 * Sets a java.util.Date
+	 *
+	 * @param name
+	 * @param value milliseconds since the epoch
+	 *
+	 * @throws IOException
+	 */
+	public void setDateAttribute(int name, long value) throws IOException;
+
+	/**
+	 * Sets the value with the given ordinal of the DLEnum enumType - see {@link de.s42.dl.DLEnum#getValues()}
+	 *
+	 * @param name
+	 * @param enumType symbol of the name of the enum
+	 * @param ordinal
+	 *
+	 * @throws IOException
+	 */
+	public void setEnumAttribute(int name, int enumType, int ordinal) throws IOException;
+
+	/**
+	 * Sets a java.nio.file.Path
+	 *
+	 * @param name
+	 * @param value
+	 *
+	 * @throws IOException
+	 */
+	public void setPathAttribute(int name, String value) throws IOException;
+
+	/**
+	 * Sets the string defined as symbol value as value - writers define recurring string values once as symbol
+	 *
+	 * @param name
+	 * @param value
+	 *
+	 * @throws IOException
+	 */
+	public void setSymbolAttribute(int name, int value) throws IOException;
+
 	public void setBinaryAttribute(int name, byte[] data) throws IOException;
 
 	public void setBinaryAttribute(int name, byte[] data, int index, int length) throws IOException;
+
+	/**
+	 * The remaining bytes of data are the value - data may be a read only slice of the source, so it is not copied
+	 *
+	 * @param name
+	 * @param data
+	 *
+	 * @throws IOException
+	 */
+	public void setBinaryAttribute(int name, ByteBuffer data) throws IOException;
+
+	/**
+	 * Index of the module for random access - see BinaryModuleIndex. data is only valid during the call
+	 *
+	 * @param data
+	 *
+	 * @throws IOException
+	 */
+	public void defineModuleIndex(ByteBuffer data) throws IOException;
+
+	/**
+	 * Top level instances of the type stored column wise - see BinaryColumnBlock. Readers replay the rows as
+	 * instances, so only writers receive it. data is only valid during the call
+	 *
+	 * @param type
+	 * @param data
+	 *
+	 * @throws IOException
+	 */
+	public void defineColumnBlock(int type, ByteBuffer data) throws IOException;
+
+	public void setIntArrayAttribute(int name, int[] value) throws IOException;
+
+	public void setLongArrayAttribute(int name, long[] value) throws IOException;
+
+	public void setFloatArrayAttribute(int name, float[] value) throws IOException;
+
+	public void setDoubleArrayAttribute(int name, double[] value) throws IOException;
+
+	/**
+	 * Defines the type name from the java class className (a DLType implementation, an enum or any other class) if
+	 * the core does not contain the type yet
+	 *
+	 * @param name
+	 * @param className
+	 *
+	 * @throws IOException
+	 */
+	public void defineExternType(int name, int className) throws IOException;
+
+	/**
+	 * Defines the annotation factory name from the java class className if the core does not contain it yet
+	 *
+	 * @param name
+	 * @param className
+	 *
+	 * @throws IOException
+	 */
+	public void defineExternAnnotation(int name, int className) throws IOException;
+
+	/**
+	 * Defines the pragma name from the java class className if the core does not contain it yet
+	 *
+	 * @param name
+	 * @param className
+	 *
+	 * @throws IOException
+	 */
+	public void defineExternPragma(int name, int className) throws IOException;
+
+	/**
+	 * Defines alias for the type, annotation factory or pragma name
+	 *
+	 * @param alias
+	 * @param name
+	 *
+	 * @throws IOException
+	 */
+	public void defineAlias(int alias, int name) throws IOException;
+
+	/**
+	 * Parents, contained types, attributes and annotations until endType belong to the type
+	 *
+	 * @param name
+	 * @param flags combination of TYPE_ABSTRACT, TYPE_FINAL and TYPE_DYNAMIC
+	 *
+	 * @throws IOException
+	 */
+	public void beginType(int name, int flags) throws IOException;
+
+	/**
+	 * Values and annotations until endType belong to the enum
+	 *
+	 * @param name
+	 *
+	 * @throws IOException
+	 */
+	public void beginEnum(int name) throws IOException;
+
+	public void addEnumValue(String value) throws IOException;
+
+	public void addParentType(int type) throws IOException;
+
+	public void addContainedType(int type) throws IOException;
+
+	/**
+	 * Annotations until endTypeAttribute belong to the attribute
+	 *
+	 * @param name
+	 * @param type canonical name of the attribute type (may contain generics like Array&lt;Integer&gt;)
+	 * @param defaultValue String, Long, Double, Boolean or null - it is read by the attribute type
+	 *
+	 * @throws IOException
+	 */
+	public void beginTypeAttribute(int name, int type, Object defaultValue) throws IOException;
+
+	public void endTypeAttribute() throws IOException;
+
+	/**
+	 * Adds the annotation to the current type attribute or type
+	 *
+	 * @param name
+	 * @param parameters String, Long, Double, Boolean or null values
+	 *
+	 * @throws IOException
+	 */
+	public void addAnnotation(int name, Object[] parameters) throws IOException;
+
+	public void endType() throws IOException;
 }
@@ -28,7 +28,9 @@ package de.s42.dl.parser;
 import de.s42.log.LogManager;
 import de.s42.log.Logger;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.UUID;
 
 /**
  *
@@ -79,6 +81,36 @@ public class DebugParsingProcessor implements DLParsingProcessor
 		log.debug("EndInstance");
 	}
 
+	@Override
+	public void beginChildren() throws IOException
+	{
+		log.debug("BeginChildren");
+	}
+
+	@Override
+	public void endChildren() throws IOException
+	{
+		log.debug("EndChildren");
+	}
+
+	@Override
+	public void beginInstanceAttribute(int name) throws IOException
+	{
+		log.debug("BeginInstanceAttribute", name);
+	}
+
+	@Override
+	public void beginArrayAttribute(int name, int kind) throws IOException
+	{
+		log.debug("BeginArrayAttribute", name, kind);
+	}
+
+	@Override
+	public void endArray() throws IOException
+	{
+		log.debug("EndArray");
+	}
+
 	@Override
 	public void setStringAttribute(int name, String value) throws IOException
 	{
@@ -91,6 +123,54 @@ public class DebugParsingProcessor implements DLParsingProcessor
 		log.debug("SetBooleanAttribute", name, value);
 	}
 
+	@Override
+	public void setByteAttribute(int name, byte value) throws IOException
+	{
+		log.debug("SetByteAttribute", name, value);
+	}
+
+	@Override
+	public void setShortAttribute(int name, short value) throws IOException
+	{
+		log.debug("SetShortAttribute", name, value);
+	}
+
+	@Override
+	public void setCharAttribute(int name, char value) throws IOException
+	{
+		log.debug("SetCharAttribute", name, value);
+	}
+
+	@Override
+	public void setUUIDAttribute(int name, UUID value) throws IOException
+	{
+		log.debug("SetUUIDAttribute", name, value);
+	}
+
+	@Override
+	public void setDateAttribute(int name, long value) throws IOException
+	{
+		log.debug("SetDateAttribute", name, value);
+	}
+
+	@Override
+	public void setEnumAttribute(int name, int enumType, int ordinal) throws IOException
+	{
+		log.debug("SetEnumAttribute", name, enumType, ordinal);
+	}
+
+	@Override
+	public void setPathAttribute(int name, String value) throws IOException
+	{
+		log.debug("SetPathAttribute", name, value);
+	}
+
+	@Override
+	public void setSymbolAttribute(int name, int value) throws IOException
+	{
+		log.debug("SetSymbolAttribute", name, value);
+	}
+
 	@Override
 	public void setDoubleAttribute(int name, double value) throws IOException
 	{
@@ -126,4 +206,124 @@ public class DebugParsingProcessor implements DLParsingProcessor
 	{
 		log.debug("setBinaryAttribute", name, Arrays.toString(value), index, length);
 	}
+
+	@Override
+	public void setBinaryAttribute(int name, ByteBuffer value) throws IOException
+	{
+		log.debug("setBinaryAttribute", name, value);
+	}
+
+	@Override
+	public void defineModuleIndex(ByteBuffer data) throws IOException
+	{
+		log.debug("DefineModuleIndex", data);
+	}
+
+	@Override
+	public void defineColumnBlock(int type, ByteBuffer data) throws IOException
+	{
+		log.debug("ColumnBlock", type, data.remaining());
+	}
+
+	@Override
+	public void setIntArrayAttribute(int name, int[] value) throws IOException
+	{
+		log.debug("SetIntArrayAttribute", name, Arrays.toString(value));
+	}
+
+	@Override
+	public void setLongArrayAttribute(int name, long[] value) throws IOException
+	{
+		log.debug("SetLongArrayAttribute", name, Arrays.toString(value));
+	}
+
+	@Override
+	public void setFloatArrayAttribute(int name, float[] value) throws IOException
+	{
+		log.debug("SetFloatArrayAttribute", name, Arrays.toString(value));
+	}
+
+	@Override
+	public void setDoubleArrayAttribute(int name, double[] value) throws IOException
+	{
+		log.debug("SetDoubleArrayAttribute", name, Arrays.toString(value));
+	}
+
+	@Override
+	public void defineExternType(int name, int className) throws IOException
+	{
+		log.debug("DefineExternType", name, className);
+	}
+
+	@Override
+	public void defineExternAnnotation(int name, int className) throws IOException
+	{
+		log.debug("DefineExternAnnotation", name, className);
+	}
+
+	@Override
+	public void defineExternPragma(int name, int className) throws IOException
+	{
+		log.debug("DefineExternPragma", name, className);
+	}
+
+	@Override
+	public void defineAlias(int alias, int name) throws IOException
+	{
+		log.debug("DefineAlias", alias, name);
+	}
+
+	@Override
+	public void beginType(int name, int flags) throws IOException
+	{
+		log.debug("BeginType", name, flags);
+	}
+
+	@Override
+	public void beginEnum(int name) throws IOException
+	{
+		log.debug("BeginEnum", name);
+	}
+
+	@Override
+	public void addEnumValue(String value) throws IOException
+	{
+		log.debug("AddEnumValue", value);
+	}
+
+	@Override
+	public void addParentType(int type) throws IOException
+	{
+		log.debug("AddParentType", type);
+	}
+
+	@Override
+	public void addContainedType(int type) throws IOException
+	{
+		log.debug("AddContainedType", type);
+	}
+
+	@Override
+	public void beginTypeAttribute(int name, int type, Object defaultValue) throws IOException
+	{
+		log.debug("BeginTypeAttribute", name, type, defaultValue);
+	}
+
+	@Override
+	public void endTypeAttribute() throws IOException
+	{
+		log.debug("EndTypeAttribute");
+	}
+
+	@Override
+	public void addAnnotation(int name, Object[] parameters) throws IOException
+	{
+		log.debug("AddAnnotation", name, Arrays.toString(parameters));
+	}
+
+	@Override
+	public void endType() throws IOException
+	{
+		log.debug("EndType");
+	}
 }
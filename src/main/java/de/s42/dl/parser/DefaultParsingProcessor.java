@@ -25,16 +25,35 @@
 //</editor-fold>
 package de.s42.dl.parser;
 
+import de.s42.dl.DLAnnotationFactory;
+import de.s42.dl.DLAttribute;
 import de.s42.dl.DLCore;
+import de.s42.dl.DLEnum;
 import de.s42.dl.DLInstance;
 import de.s42.dl.DLModule;
+import de.s42.dl.DLPragma;
 import de.s42.dl.DLType;
+import de.s42.dl.annotations.DLAnnotated;
+import de.s42.dl.attributes.DefaultDLAttribute;
 import de.s42.dl.exceptions.DLException;
 import de.s42.dl.exceptions.InvalidInstance;
+import de.s42.dl.types.DefaultDLType;
+import de.s42.dl.validation.ValidationResult;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 /**
  *
@@ -43,6 +62,13 @@ import java.util.Map;
 public class DefaultParsingProcessor implements DLParsingProcessor
 {
 
+	/**
+	 * Symbol ids are dense as writers map them incrementally - larger ids are treated as corrupted source
+	 */
+	public final static int MAX_SYMBOL_ID = 1 << 24;
+
+	protected final static int INITIAL_SYMBOL_CAPACITY = 256;
+
 	//private final static Logger log = LogManager.getLogger(DefaultParsingProcessor.class.getName());
 	protected final DLCore core;
 
@@ -51,8 +77,153 @@ public class DefaultParsingProcessor implements DLParsingProcessor
 	protected DLInstance currentInstance;
 	protected DLInstance lastInstance;
 
+	/**
+	 * Type (or enum) currently defined between beginType and endType
+	 */
+	protected DLType currentType;
+
+	/**
+	 * Attribute of the current type defined between beginTypeAttribute and endTypeAttribute
+	 */
+	protected DefaultDLAttribute currentTypeAttribute;
+
+	/**
+	 * True if the current type was already defined in the core - its definition is skipped then, so a module can be
+	 * read into the core it was written from
+	 */
+	protected boolean skipTypeDefinition;
+
+	/**
+	 * Definition of the skipped type as given by the stream - it has to match the type defined in the core
+	 */
+	protected SkippedType skippedType;
+
+	/**
+	 * Parents of the current instance - either collecting children, collecting array elements or waiting for an
+	 * instance attribute value
+	 */
+	protected final Deque<Frame> frames = new ArrayDeque<>();
+
+	/**
+	 * If false top level instances are only handed out as last instance and not added to the module - allows to read
+	 * streams of any length in constant memory
+	 */
+	protected boolean retainInstances = true;
+
 	protected final Map<String, Integer> idBySymbol = new HashMap<>();
-	protected final Map<Integer, String> symbolById = new HashMap<>();
+
+	/**
+	 * Symbols indexed by their id
+	 */
+	protected String[] symbols = new String[INITIAL_SYMBOL_CAPACITY];
+
+	/**
+	 * Types resolved from the symbol with the same id or null if not resolved yet
+	 */
+	protected DLType[] types = new DLType[INITIAL_SYMBOL_CAPACITY];
+
+	/**
+	 * Attributes resolved from the symbol with the same id in the type attributeOwners contains at the id
+	 */
+	protected DLAttribute[] attributes = new DLAttribute[INITIAL_SYMBOL_CAPACITY];
+	protected DLType[] attributeOwners = new DLType[INITIAL_SYMBOL_CAPACITY];
+
+	protected static class SkippedType
+	{
+
+		protected final Set<String> parents = new HashSet<>();
+		protected final Set<String> containedTypes = new HashSet<>();
+
+		/**
+		 * Canonical type names of the attributes by their name
+		 */
+		protected final Map<String, String> attributes = new HashMap<>();
+		protected final List<String> enumValues = new ArrayList<>();
+
+		/**
+		 * True if the kind or the flags of the type already differ
+		 */
+		protected boolean differs;
+
+		protected boolean matches(DLType type)
+		{
+			assert type != null;
+
+			if (differs) {
+				return false;
+			}
+
+			Set<String> ownParents = new HashSet<>();
+			for (DLType parent : type.getOwnParents()) {
+				ownParents.add(parent.getCanonicalName());
+			}
+
+			Set<String> ownContainedTypes = new HashSet<>();
+			for (DLType contained : type.getOwnContainedTypes()) {
+				ownContainedTypes.add(contained.getCanonicalName());
+			}
+
+			Map<String, String> ownAttributes = new HashMap<>();
+			for (DLAttribute attribute : type.getOwnAttributes()) {
+				ownAttributes.put(attribute.getName(), attribute.getType().getCanonicalName());
+			}
+
+			if (type instanceof DLEnum) {
+				List<String> ownValues = new ArrayList<>();
+				for (Object value : ((DLEnum) type).getValues()) {
+					ownValues.add(value.toString());
+				}
+
+				if (!ownValues.equals(enumValues)) {
+					return false;
+				}
+			}
+
+			return ownParents.equals(parents)
+				&& ownContainedTypes.equals(containedTypes)
+				&& ownAttributes.equals(attributes);
+		}
+	}
+
+	protected static class Frame
+	{
+
+		/**
+		 * Owning instance - is null for arrays nested in arrays
+		 */
+		protected final DLInstance instance;
+
+		/**
+		 * Name of the attribute the next instance (or the array) gets assigned to or null if the frame collects
+		 * children or is nested in another array
+		 */
+		protected final String attribute;
+
+		/**
+		 * Collected elements if the frame is an array or null
+		 */
+		protected final List<Object> elements;
+
+		protected final int kind;
+
+		protected Frame(DLInstance instance, String attribute)
+		{
+			assert instance != null;
+
+			this.instance = instance;
+			this.attribute = attribute;
+			this.elements = null;
+			this.kind = -1;
+		}
+
+		protected Frame(DLInstance instance, String attribute, int kind)
+		{
+			this.instance = instance;
+			this.attribute = attribute;
+			this.elements = new ArrayList<>();
+			this.kind = kind;
+		}
+	}
 
 	public DefaultParsingProcessor(DLCore core)
 	{
@@ -67,7 +238,15 @@ public class DefaultParsingProcessor implements DLParsingProcessor
 		try {
 			module = core.createModule();
 			idBySymbol.clear();
-			symbolById.clear();
+			Arrays.fill(symbols, null);
+			Arrays.fill(types, null);
+			Arrays.fill(attributes, null);
+			Arrays.fill(attributeOwners, null);
+			frames.clear();
+			currentType = null;
+			currentTypeAttribute = null;
+			skipTypeDefinition = false;
+			skippedType = null;
 		} catch (DLException ex) {
 			throw new IOException("Could not begin module - " + ex.getMessage(), ex);
 		}
@@ -76,7 +255,13 @@ public class DefaultParsingProcessor implements DLParsingProcessor
 	@Override
 	public void endModule() throws IOException
 	{
-		// do nothing
+		if (!frames.isEmpty()) {
+			throw new IOException("Module ended with " + frames.size() + " unclosed parent instances");
+		}
+
+		if (currentType != null) {
+			throw new IOException("Module ended with unclosed type " + currentType.getName());
+		}
 	}
 
 	@Override
@@ -85,20 +270,52 @@ public class DefaultParsingProcessor implements DLParsingProcessor
 		assert id > 0;
 		assert symbol != null;
 
-		if (symbolById.put(id, symbol) != null) {
+		if (id > MAX_SYMBOL_ID) {
+			throw new IOException("Source corrupted - symbol id " + id + " exceeds " + MAX_SYMBOL_ID);
+		}
+
+		if (id >= symbols.length) {
+			int capacity = Math.max(id + 1, symbols.length * 2);
+			symbols = Arrays.copyOf(symbols, capacity);
+			types = Arrays.copyOf(types, capacity);
+			attributes = Arrays.copyOf(attributes, capacity);
+			attributeOwners = Arrays.copyOf(attributeOwners, capacity);
+		}
+
+		// redefining the same symbol is allowed as random access predefines all symbols of a module
+		String oldSymbol = symbols[id];
+		if (oldSymbol != null && !oldSymbol.equals(symbol)) {
 			throw new IOException("Symbol " + id + " is already defined");
 		}
+		symbols[id] = symbol;
 
-		if (idBySymbol.put(symbol, id) != null) {
+		Integer oldId = idBySymbol.put(symbol, id);
+		if (oldId != null && oldId != id) {
 			throw new IOException("Symbol " + symbol + " is already defined");
 		}
 	}
 
-	protected String getSymbol(int id) throws IOException
+	/**
+	 * Returns the id of the symbol or -1 if it is not defined
+	 *
+	 * @param symbol
+	 *
+	 * @return
+	 */
+	public int getSymbolId(String symbol)
+	{
+		assert symbol != null;
+
+		Integer id = idBySymbol.get(symbol);
+
+		return (id != null) ? id : -1;
+	}
+
+	public String getSymbol(int id) throws IOException
 	{
 		assert id > 0;
 
-		String symbol = symbolById.get(id);
+		String symbol = (id < symbols.length) ? symbols[id] : null;
 
 		if (symbol == null) {
 			throw new IOException("Symbol with id " + id + " is not defined");
@@ -114,17 +331,7 @@ public class DefaultParsingProcessor implements DLParsingProcessor
 
 		endInstance();
 
-		String typeName = getSymbol(typeId);
-
-		if (!core.hasType(typeName)) {
-			throw new IOException("Type " + typeName + " is not contained in core");
-		}
-
-		DLType type = core.getType(typeName).orElseThrow(() -> {
-			return new IOException("Error getting type '" + typeName + "'");
-		});
-
-		currentInstance = core.createInstance(type);
+		currentInstance = core.createInstance(getDefinedType(typeId));
 	}
 
 	@Override
@@ -135,38 +342,75 @@ public class DefaultParsingProcessor implements DLParsingProcessor
 
 		endInstance();
 
-		String typeName = symbolById.get(typeId);
+		currentInstance = core.createInstance(getDefinedType(typeId), name);
+	}
 
-		if (!core.hasType(typeName)) {
-			throw new IOException("Type " + typeName + " is not contained in core");
+	@Override
+	public void endInstance() throws IOException
+	{
+		if (currentInstance == null) {
+			return;
 		}
 
-		DLType type = core.getType(typeName).orElseThrow(() -> {
-			return new IOException("Error getting type '" + typeName + "'");
-		});
+		DLInstance instance = currentInstance;
+		Frame parent = frames.peek();
 
-		currentInstance = core.createInstance(type, name);
+		try {
+			// top level instance
+			if (parent == null) {
+				if (retainInstances) {
+					module.addChild(instance);
+				}
+				lastInstance = instance;
+				currentInstance = null;
+			} // array element
+			else if (parent.elements != null) {
+				parent.elements.add(instance);
+				currentInstance = null;
+			} // instance attribute -> continue with the parent
+			else if (parent.attribute != null) {
+				frames.pop();
+				parent.instance.set(parent.attribute, instance);
+				currentInstance = parent.instance;
+			} // child
+			else {
+				parent.instance.addChild(instance);
+				currentInstance = null;
+			}
+		} catch (InvalidInstance ex) {
+			throw new IOException(ex);
+		}
 	}
 
 	@Override
-	public void endInstance() throws IOException
+	public void beginChildren() throws IOException
 	{
-		if (currentInstance != null) {
-			try {
-				module.addChild(currentInstance);
-			} catch (InvalidInstance ex) {
-				throw new IOException(ex);
-			}
-			lastInstance = currentInstance;
-			currentInstance = null;
+		if (currentInstance == null) {
+			throw new IOException("No current instance active");
 		}
+
+		frames.push(new Frame(currentInstance, null));
+		currentInstance = null;
 	}
 
 	@Override
-	public void setStringAttribute(int nameId, String value) throws IOException
+	public void endChildren() throws IOException
+	{
+		endInstance();
+
+		Frame parent = frames.poll();
+
+		if (parent == null || parent.attribute != null || parent.elements != null) {
+			throw new IOException("No children active");
+		}
+
+		currentInstance = parent.instance;
+	}
+
+	@Override
+	public void beginInstanceAttribute(int nameId) throws IOException
 	{
 		assert nameId > 0;
-		assert value != null;
 
 		if (currentInstance == null) {
 			throw new IOException("No current instance active");
@@ -174,13 +418,29 @@ public class DefaultParsingProcessor implements DLParsingProcessor
 
 		String name = getSymbol(nameId);
 
-		currentInstance.set(name, value);
+		frames.push(new Frame(currentInstance, name));
+		currentInstance = null;
 	}
 
 	@Override
-	public void setBooleanAttribute(int nameId, boolean value) throws IOException
+	public void beginArrayAttribute(int nameId, int kind) throws IOException
 	{
-		assert nameId > 0;
+		assert nameId >= 0;
+
+		// array nested in the active array
+		if (nameId == 0) {
+
+			endInstance();
+
+			Frame parent = frames.peek();
+
+			if (parent == null || parent.elements == null) {
+				throw new IOException("No array active");
+			}
+
+			frames.push(new Frame(null, null, kind));
+			return;
+		}
 
 		if (currentInstance == null) {
 			throw new IOException("No current instance active");
@@ -188,97 +448,800 @@ public class DefaultParsingProcessor implements DLParsingProcessor
 
 		String name = getSymbol(nameId);
 
-		currentInstance.set(name, value);
+		frames.push(new Frame(currentInstance, name, kind));
+		currentInstance = null;
 	}
 
 	@Override
-	public void setDoubleAttribute(int nameId, double value) throws IOException
+	public void endArray() throws IOException
 	{
-		assert nameId > 0;
+		endInstance();
+
+		Frame frame = frames.peek();
+
+		if (frame == null || frame.elements == null) {
+			throw new IOException("No array active");
+		}
+
+		frames.pop();
+
+		Object value;
+		if (frame.kind == COLLECTION_ARRAY) {
+			value = frame.elements.toArray();
+		} else if (frame.kind == COLLECTION_LIST) {
+			value = frame.elements;
+		} else if (frame.kind == COLLECTION_SET) {
+			value = new LinkedHashSet<>(frame.elements);
+		} else {
+			throw new IOException("Unknown collection kind " + frame.kind);
+		}
+
+		// nested array -> is an element of the enclosing array
+		if (frame.attribute == null) {
+			frames.peek().elements.add(value);
+			return;
+		}
+
+		currentInstance = frame.instance;
+		currentInstance.set(frame.attribute, value);
+	}
+
+	/**
+	 * Sets the value as attribute of the current instance or adds it as element of the active array if nameId is 0
+	 *
+	 * @param nameId
+	 * @param value
+	 *
+	 * @throws IOException
+	 */
+	protected void setValue(int nameId, Object value) throws IOException
+	{
+		assert nameId >= 0;
+		assert value != null;
+
+		if (nameId == 0) {
+
+			endInstance();
+
+			Frame frame = frames.peek();
+
+			if (frame == null || frame.elements == null) {
+				throw new IOException("No array active");
+			}
+
+			frame.elements.add(value);
+			return;
+		}
 
 		if (currentInstance == null) {
 			throw new IOException("No current instance active");
 		}
 
+		// stored by name without resolving the attribute - see getAttribute
 		String name = getSymbol(nameId);
 
 		currentInstance.set(name, value);
 	}
 
+	/**
+	 * Sets a packed primitive array - it gets converted by the type of the attribute if the attribute is defined in
+	 * the type of the current instance (e.g. int[] to Integer[] for Array&lt;Integer&gt;)
+	 *
+	 * @param nameId
+	 * @param value
+	 *
+	 * @throws IOException
+	 */
+	protected void setPackedValue(int nameId, Object value) throws IOException
+	{
+		assert nameId >= 0;
+		assert value != null;
+
+		if (nameId > 0 && currentInstance != null) {
+
+			DLAttribute attribute = getAttribute(currentInstance.getType(), nameId);
+
+			if (attribute != null) {
+				try {
+					value = attribute.getType().read(value);
+				} catch (DLException ex) {
+					throw new IOException("Error converting packed array of attribute " + attribute.getName() + " - " + ex.getMessage(), ex);
+				}
+			}
+		}
+
+		setValue(nameId, value);
+	}
+
+	@Override
+	public void setStringAttribute(int nameId, String value) throws IOException
+	{
+		assert nameId >= 0;
+		assert value != null;
+
+		setValue(nameId, value);
+	}
+
+	@Override
+	public void setBooleanAttribute(int nameId, boolean value) throws IOException
+	{
+		assert nameId >= 0;
+
+		setValue(nameId, value);
+	}
+
+	@Override
+	public void setByteAttribute(int nameId, byte value) throws IOException
+	{
+		assert nameId >= 0;
+
+		setValue(nameId, value);
+	}
+
+	@Override
+	public void setShortAttribute(int nameId, short value) throws IOException
+	{
+		assert nameId >= 0;
+
+		setValue(nameId, value);
+	}
+
+	@Override
+	public void setCharAttribute(int nameId, char value) throws IOException
+	{
+		assert nameId >= 0;
+
+		setValue(nameId, value);
+	}
+
+	@Override
+	public void setUUIDAttribute(int nameId, UUID value) throws IOException
+	{
+		assert nameId >= 0;
+		assert value != null;
+
+		setValue(nameId, value);
+	}
+
+	@Override
+	public void setDateAttribute(int nameId, long value) throws IOException
+	{
+		assert nameId >= 0;
+
+		setValue(nameId, new Date(value));
+	}
+
+	@Override
+	public void setEnumAttribute(int nameId, int enumTypeId, int ordinal) throws IOException
+	{
+		assert nameId >= 0;
+		assert enumTypeId > 0;
+
+		if (!(getDefinedType(enumTypeId) instanceof DLEnum<?> enumType)) {
+			throw new IOException("Type " + getSymbol(enumTypeId) + " is not an enum");
+		}
+
+		List<?> values = enumType.getValues();
+
+		if (ordinal < 0 || ordinal >= values.size()) {
+			throw new IOException("Ordinal " + ordinal + " is not contained in enum " + enumType.getName());
+		}
+
+		setValue(nameId, values.get(ordinal));
+	}
+
+	@Override
+	public void setPathAttribute(int nameId, String value) throws IOException
+	{
+		assert nameId >= 0;
+		assert value != null;
+
+		setValue(nameId, Path.of(value));
+	}
+
+	/**
+	 * All values of a symbol share the same String instance
+	 *
+	 * @param nameId
+	 * @param valueId
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void setSymbolAttribute(int nameId, int valueId) throws IOException
+	{
+		assert nameId >= 0;
+		assert valueId > 0;
+
+		setValue(nameId, getSymbol(valueId));
+	}
+
+	@Override
+	public void setDoubleAttribute(int nameId, double value) throws IOException
+	{
+		assert nameId >= 0;
+
+		setValue(nameId, value);
+	}
+
 	@Override
 	public void setFloatAttribute(int nameId, float value) throws IOException
+	{
+		assert nameId >= 0;
+
+		setValue(nameId, value);
+	}
+
+	@Override
+	public void setIntAttribute(int nameId, int value) throws IOException
+	{
+		assert nameId >= 0;
+
+		setValue(nameId, value);
+	}
+
+	@Override
+	public void setLongAttribute(int nameId, long value) throws IOException
+	{
+		assert nameId >= 0;
+
+		setValue(nameId, value);
+	}
+
+	@Override
+	public void setBinaryAttribute(int nameId, byte[] value) throws IOException
+	{
+		assert nameId >= 0;
+		assert value != null;
+
+		setValue(nameId, value);
+	}
+
+	@Override
+	public void setBinaryAttribute(int nameId, byte[] value, int index, int length) throws IOException
+	{
+		assert nameId >= 0;
+		assert value != null;
+		assert index >= 0;
+		assert length >= 0;
+
+		value = Arrays.copyOfRange(value, index, index + length);
+
+		setValue(nameId, value);
+	}
+
+	@Override
+	public void setBinaryAttribute(int nameId, ByteBuffer value) throws IOException
+	{
+		assert nameId >= 0;
+		assert value != null;
+
+		setValue(nameId, value);
+	}
+
+	/**
+	 * The index is only used for random access by the readers
+	 *
+	 * @param data
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void defineModuleIndex(ByteBuffer data) throws IOException
+	{
+		// ignored
+	}
+
+	/**
+	 * Column blocks are replayed row wise by the readers
+	 *
+	 * @param type
+	 * @param data
+	 *
+	 * @throws IOException always
+	 */
+	@Override
+	public void defineColumnBlock(int type, ByteBuffer data) throws IOException
+	{
+		throw new IOException("Column blocks have to be replayed as instances");
+	}
+
+	@Override
+	public void setIntArrayAttribute(int nameId, int[] value) throws IOException
+	{
+		assert nameId >= 0;
+		assert value != null;
+
+		setPackedValue(nameId, value);
+	}
+
+	@Override
+	public void setLongArrayAttribute(int nameId, long[] value) throws IOException
+	{
+		assert nameId >= 0;
+		assert value != null;
+
+		setPackedValue(nameId, value);
+	}
+
+	@Override
+	public void setFloatArrayAttribute(int nameId, float[] value) throws IOException
+	{
+		assert nameId >= 0;
+		assert value != null;
+
+		setPackedValue(nameId, value);
+	}
+
+	@Override
+	public void setDoubleArrayAttribute(int nameId, double[] value) throws IOException
+	{
+		assert nameId >= 0;
+		assert value != null;
+
+		setPackedValue(nameId, value);
+	}
+
+	@Override
+	public void defineExternType(int nameId, int classNameId) throws IOException
 	{
 		assert nameId > 0;
+		assert classNameId > 0;
 
-		if (currentInstance == null) {
-			throw new IOException("No current instance active");
+		String name = getSymbol(nameId);
+		String className = getSymbol(classNameId);
+
+		// check before loading any class of the stream
+		if (!core.isAllowDefineTypes()) {
+			throw new IOException("Not allowed to define types in core - extern type '" + name + "'");
+		}
+
+		// allows to have multiple extern definitions of a type like in HRF
+		if (core.hasType(name)) {
+			module.addDefinedType(core.getType(name).orElseThrow());
+			return;
 		}
 
+		try {
+			Class typeClass = Class.forName(className, false, core.getClassLoader());
+
+			DLType type = core.defineType(core.createType(typeClass));
+
+			if (!type.getName().equals(name)) {
+				core.defineAliasForType(name, type);
+			}
+
+			module.addDefinedType(type);
+		} catch (ClassNotFoundException ex) {
+			throw new IOException("Class not found for type '" + name + "' - " + ex.getMessage(), ex);
+		} catch (DLException ex) {
+			throw new IOException("Error defining extern type '" + name + "' - " + ex.getMessage(), ex);
+		}
+	}
+
+	@Override
+	public void defineExternAnnotation(int nameId, int classNameId) throws IOException
+	{
+		assert nameId > 0;
+		assert classNameId > 0;
+
 		String name = getSymbol(nameId);
+		String className = getSymbol(classNameId);
 
-		currentInstance.set(name, value);
+		// check before loading any class of the stream
+		if (!core.isAllowDefineAnnotationFactories()) {
+			throw new IOException("Not allowed to define annotations in core - extern annotation '" + name + "'");
+		}
+
+		if (core.hasAnnotationFactory(name)) {
+			return;
+		}
+
+		try {
+			DLAnnotationFactory factory = Class.forName(className, false, core.getClassLoader())
+				.asSubclass(DLAnnotationFactory.class)
+				.getConstructor()
+				.newInstance();
+			core.defineAnnotationFactory(factory, name);
+		} catch (ReflectiveOperationException | RuntimeException ex) {
+			throw new IOException("Error instantiating annotation factory '" + name + "' - " + ex.getMessage(), ex);
+		} catch (DLException ex) {
+			throw new IOException("Error defining extern annotation '" + name + "' - " + ex.getMessage(), ex);
+		}
 	}
 
 	@Override
-	public void setIntAttribute(int nameId, int value) throws IOException
+	public void defineExternPragma(int nameId, int classNameId) throws IOException
 	{
 		assert nameId > 0;
+		assert classNameId > 0;
 
-		if (currentInstance == null) {
-			throw new IOException("No current instance active");
+		String name = getSymbol(nameId);
+		String className = getSymbol(classNameId);
+
+		// check before loading any class of the stream
+		if (!core.isAllowDefinePragmas()) {
+			throw new IOException("Not allowed to define pragmas in core - extern pragma '" + name + "'");
+		}
+
+		if (core.hasPragma(name)) {
+			return;
 		}
 
+		try {
+			DLPragma pragma = Class.forName(className, false, core.getClassLoader())
+				.asSubclass(DLPragma.class)
+				.getConstructor()
+				.newInstance();
+
+			// the pragma may already be defined by its default name
+			if (core.hasPragma(pragma.getName())) {
+				pragma = core.getPragma(pragma.getName()).orElseThrow();
+			} else {
+				core.definePragma(pragma);
+			}
+
+			if (!pragma.getName().equals(name)) {
+				core.defineAliasForPragma(name, pragma);
+			}
+		} catch (ReflectiveOperationException | RuntimeException ex) {
+			throw new IOException("Error instantiating pragma '" + name + "' - " + ex.getMessage(), ex);
+		} catch (DLException ex) {
+			throw new IOException("Error defining extern pragma '" + name + "' - " + ex.getMessage(), ex);
+		}
+	}
+
+	@Override
+	public void defineAlias(int aliasId, int nameId) throws IOException
+	{
+		assert aliasId > 0;
+		assert nameId > 0;
+
+		String alias = getSymbol(aliasId);
 		String name = getSymbol(nameId);
 
-		currentInstance.set(name, value);
+		try {
+			if (core.hasType(name)) {
+
+				DLType type = core.getType(name).orElseThrow();
+
+				// the alias is already mapped to the type
+				if (core.getType(alias).orElse(null) == type) {
+					return;
+				}
+
+				core.defineAliasForType(alias, type);
+			} else if (core.hasAnnotationFactory(name)) {
+
+				// the alias is already mapped to the annotation factory
+				if (core.getAnnotationFactory(alias).orElse(null) == core.getAnnotationFactory(name).orElseThrow()) {
+					return;
+				}
+
+				core.defineAliasForAnnotationFactory(alias, name);
+			} else if (core.hasPragma(name)) {
+
+				DLPragma pragma = core.getPragma(name).orElseThrow();
+
+				// the alias is already mapped to the pragma
+				if (core.getPragma(alias).orElse(null) == pragma) {
+					return;
+				}
+
+				core.defineAliasForPragma(alias, pragma);
+			} else {
+				throw new IOException("Alias target '" + name + "' is neither a type, annotation or pragma");
+			}
+		} catch (DLException ex) {
+			throw new IOException("Error defining alias '" + alias + "' - " + ex.getMessage(), ex);
+		}
 	}
 
 	@Override
-	public void setLongAttribute(int nameId, long value) throws IOException
+	public void beginType(int nameId, int flags) throws IOException
 	{
 		assert nameId > 0;
+		assert flags >= 0;
 
-		if (currentInstance == null) {
-			throw new IOException("No current instance active");
+		if (currentType != null) {
+			throw new IOException("Type " + currentType.getName() + " is not ended");
 		}
 
 		String name = getSymbol(nameId);
 
-		currentInstance.set(name, value);
+		try {
+			DLType type = core.getType(name).orElse(null);
+
+			// a defined type is kept if the definition in the stream is the same - checked in endType
+			if (type != null && !type.isDeclaration()) {
+				currentType = type;
+				skipTypeDefinition = true;
+				skippedType = new SkippedType();
+				skippedType.differs = (type instanceof DLEnum)
+					|| type.isAbstract() != ((flags & TYPE_ABSTRACT) != 0)
+					|| (!type.isAbstract() && type.isFinal() != ((flags & TYPE_FINAL) != 0))
+					|| type.isDynamic() != ((flags & TYPE_DYNAMIC) != 0);
+				return;
+			}
+
+			if (type == null) {
+				type = core.defineType(core.createType(name));
+			}
+
+			DefaultDLType defaultType = (DefaultDLType) type;
+
+			if ((flags & TYPE_ABSTRACT) != 0) {
+				defaultType.setAbstract(true);
+			} else if ((flags & TYPE_FINAL) != 0) {
+				defaultType.setFinal(true);
+			}
+
+			if ((flags & TYPE_DYNAMIC) != 0) {
+				defaultType.setDynamic(true);
+			}
+
+			currentType = type;
+		} catch (DLException ex) {
+			throw new IOException("Error defining type '" + name + "' - " + ex.getMessage(), ex);
+		}
 	}
 
 	@Override
-	public void setBinaryAttribute(int nameId, byte[] value) throws IOException
+	public void beginEnum(int nameId) throws IOException
 	{
 		assert nameId > 0;
+
+		if (currentType != null) {
+			throw new IOException("Type " + currentType.getName() + " is not ended");
+		}
+
+		String name = getSymbol(nameId);
+
+		// a defined enum is kept if the definition in the stream is the same - checked in endType
+		if (core.hasType(name)) {
+			currentType = core.getType(name).orElseThrow();
+			skipTypeDefinition = true;
+			skippedType = new SkippedType();
+			skippedType.differs = !(currentType instanceof DLEnum);
+			return;
+		}
+
+		try {
+			currentType = core.defineType(core.createEnum(name));
+		} catch (DLException ex) {
+			throw new IOException("Error defining enum '" + name + "' - " + ex.getMessage(), ex);
+		}
+	}
+
+	@Override
+	public void addEnumValue(String value) throws IOException
+	{
 		assert value != null;
 
-		if (currentInstance == null) {
-			throw new IOException("No current instance active");
+		if (skipTypeDefinition) {
+			skippedType.enumValues.add(value);
+			return;
+		}
+
+		if (!(currentType instanceof DLEnum)) {
+			throw new IOException("No enum active");
+		}
+
+		try {
+			((DLEnum) currentType).addValue(value);
+		} catch (DLException ex) {
+			throw new IOException("Error adding value '" + value + "' to enum " + currentType.getName() + " - " + ex.getMessage(), ex);
+		}
+	}
+
+	@Override
+	public void addParentType(int typeId) throws IOException
+	{
+		assert typeId > 0;
+
+		if (skipTypeDefinition) {
+			skippedType.parents.add(getSymbol(typeId));
+			return;
+		}
+
+		DefaultDLType type = getCurrentDefaultType();
+
+		DLType parent = getDefinedType(typeId);
+
+		if (parent.isFinal()) {
+			throw new IOException("Parent type " + parent.getCanonicalName() + " is final and can not be derived from in " + type.getCanonicalName());
+		}
+
+		type.addParent(parent);
+	}
+
+	@Override
+	public void addContainedType(int typeId) throws IOException
+	{
+		assert typeId > 0;
+
+		if (skipTypeDefinition) {
+			skippedType.containedTypes.add(getSymbol(typeId));
+			return;
 		}
 
+		DefaultDLType type = getCurrentDefaultType();
+
+		DLType contained = getDefinedType(typeId);
+
+		type.addContainedType(contained);
+	}
+
+	@Override
+	public void beginTypeAttribute(int nameId, int typeId, Object defaultValue) throws IOException
+	{
+		assert nameId > 0;
+		assert typeId > 0;
+
+		if (skipTypeDefinition) {
+			skippedType.attributes.put(getSymbol(nameId), getSymbol(typeId));
+			return;
+		}
+
+		DefaultDLType type = getCurrentDefaultType();
+
+		DLType attributeType = getDefinedType(typeId);
 		String name = getSymbol(nameId);
 
-		currentInstance.set(name, value);
+		try {
+			DefaultDLAttribute attribute = (DefaultDLAttribute) core.createAttribute(name, attributeType, type);
+
+			if (defaultValue != null && attributeType.isSimpleType() && !attributeType.isAbstract()) {
+				defaultValue = attributeType.read(defaultValue);
+			}
+
+			attribute.setDefaultValue(defaultValue);
+
+			currentTypeAttribute = attribute;
+		} catch (DLException ex) {
+			throw new IOException("Error defining attribute '" + name + "' of type " + type.getName() + " - " + ex.getMessage(), ex);
+		}
 	}
 
 	@Override
-	public void setBinaryAttribute(int nameId, byte[] value, int index, int length) throws IOException
+	public void endTypeAttribute() throws IOException
+	{
+		if (skipTypeDefinition) {
+			return;
+		}
+
+		if (currentTypeAttribute == null) {
+			throw new IOException("No type attribute active");
+		}
+
+		ValidationResult result = new ValidationResult();
+		if (!currentTypeAttribute.validate(result)) {
+			throw new IOException("Attribute '" + currentTypeAttribute.getName() + "' is not valid - " + result.toMessage());
+		}
+
+		currentTypeAttribute = null;
+	}
+
+	@Override
+	public void addAnnotation(int nameId, Object[] parameters) throws IOException
 	{
 		assert nameId > 0;
-		assert value != null;
-		assert index >= 0;
-		assert length > 0;
+		assert parameters != null;
 
-		if (currentInstance == null) {
-			throw new IOException("No current instance active");
+		if (currentType == null) {
+			throw new IOException("No type active");
+		}
+
+		if (skipTypeDefinition) {
+			return;
 		}
 
 		String name = getSymbol(nameId);
+		DLAnnotated container = (currentTypeAttribute != null) ? currentTypeAttribute : currentType;
 
-		value = Arrays.copyOfRange(value, index, index + length);
+		try {
+			core.createAnnotation(name, container, parameters);
+		} catch (DLException ex) {
+			throw new IOException("Error binding annotation @" + name + " - " + ex.getMessage(), ex);
+		}
+	}
 
-		currentInstance.set(name, value);
+	@Override
+	public void endType() throws IOException
+	{
+		if (currentType == null) {
+			throw new IOException("No type active");
+		}
+
+		if (currentTypeAttribute != null) {
+			throw new IOException("Attribute " + currentTypeAttribute.getName() + " is not ended");
+		}
+
+		// like in HRF a type may not be redefined differently
+		if (skipTypeDefinition && !skippedType.matches(currentType)) {
+			throw new IOException("Type '" + currentType.getCanonicalName() + "' is already defined differently in core");
+		}
+
+		ValidationResult result = new ValidationResult();
+		if (!skipTypeDefinition && !currentType.validate(result)) {
+			throw new IOException("Type '" + currentType.getCanonicalName() + "' is not valid - " + result.toMessage());
+		}
+
+		module.addDefinedType(currentType);
+		currentType = null;
+		skipTypeDefinition = false;
+		skippedType = null;
+	}
+
+	protected DefaultDLType getCurrentDefaultType() throws IOException
+	{
+		if (!(currentType instanceof DefaultDLType)) {
+			throw new IOException("No type active");
+		}
+
+		return (DefaultDLType) currentType;
+	}
+
+	/**
+	 * Resolves the type by its canonical name - generic types like Array&lt;Integer&gt; get resolved by the core. The
+	 * resolved type is cached per symbol
+	 *
+	 * @param typeId
+	 *
+	 * @return
+	 *
+	 * @throws IOException
+	 */
+	protected DLType getDefinedType(int typeId) throws IOException
+	{
+		assert typeId > 0;
+
+		String typeName = getSymbol(typeId);
+		DLType type = types[typeId];
+
+		if (type != null) {
+			return type;
+		}
+
+		type = core.getType(typeName).orElseThrow(() -> {
+			return new IOException("Type " + typeName + " is not contained in core");
+		});
+
+		// declarations get replaced by their definition
+		if (!type.isDeclaration()) {
+			types[typeId] = type;
+		}
+
+		return type;
+	}
+
+	/**
+	 * Resolves the attribute of the type by its name symbol - the last resolved attribute is cached per symbol. Used for
+	 * converting packed arrays, scalar values are set by name without resolving their attribute.
+	 *
+	 * @param type
+	 * @param nameId
+	 *
+	 * @return the attribute or null if the type does not define it
+	 *
+	 * @throws IOException
+	 */
+	protected DLAttribute getAttribute(DLType type, int nameId) throws IOException
+	{
+		assert type != null;
+		assert nameId > 0;
+
+		String name = getSymbol(nameId);
+
+		if (attributeOwners[nameId] == type) {
+			return attributes[nameId];
+		}
+
+		DLAttribute attribute = type.getAttribute(name).orElse(null);
+		attributes[nameId] = attribute;
+		attributeOwners[nameId] = type;
+
+		return attribute;
 	}
 
 	public DLModule getModule()
@@ -295,4 +1258,14 @@ public class DefaultParsingProcessor implements DLParsingProcessor
 	{
 		this.lastInstance = lastInstance;
 	}
+
+	public boolean isRetainInstances()
+	{
+		return retainInstances;
+	}
+
+	public void setRetainInstances(boolean retainInstances)
+	{
+		this.retainInstances = retainInstances;
+	}
 }
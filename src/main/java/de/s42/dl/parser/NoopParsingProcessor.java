@@ -26,6 +26,8 @@
 package de.s42.dl.parser;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
 
 /**
  *
@@ -68,6 +70,31 @@ public class NoopParsingProcessor implements DLParsingProcessor
 	{
 	}
 
+	@Override
+	public void beginChildren() throws IOException
+	{
+	}
+
+	@Override
+	public void endChildren() throws IOException
+	{
+	}
+
+	@Override
+	public void beginInstanceAttribute(int name) throws IOException
+	{
+	}
+
+	@Override
+	public void beginArrayAttribute(int name, int kind) throws IOException
+	{
+	}
+
+	@Override
+	public void endArray() throws IOException
+	{
+	}
+
 	@Override
 	public void setStringAttribute(int name, String value) throws IOException
 	{
@@ -78,6 +105,46 @@ public class NoopParsingProcessor implements DLParsingProcessor
 	{
 	}
 
+	@Override
+	public void setByteAttribute(int name, byte value) throws IOException
+	{
+	}
+
+	@Override
+	public void setShortAttribute(int name, short value) throws IOException
+	{
+	}
+
+	@Override
+	public void setCharAttribute(int name, char value) throws IOException
+	{
+	}
+
+	@Override
+	public void setUUIDAttribute(int name, UUID value) throws IOException
+	{
+	}
+
+	@Override
+	public void setDateAttribute(int name, long value) throws IOException
+	{
+	}
+
+	@Override
+	public void setEnumAttribute(int name, int enumType, int ordinal) throws IOException
+	{
+	}
+
+	@Override
+	public void setPathAttribute(int name, String value) throws IOException
+	{
+	}
+
+	@Override
+	public void setSymbolAttribute(int name, int value) throws IOException
+	{
+	}
+
 	@Override
 	public void setDoubleAttribute(int name, double value) throws IOException
 	{
@@ -107,4 +174,104 @@ public class NoopParsingProcessor implements DLParsingProcessor
 	public void setBinaryAttribute(int name, byte[] value, int index, int length) throws IOException
 	{
 	}
+
+	@Override
+	public void setBinaryAttribute(int name, ByteBuffer value) throws IOException
+	{
+	}
+
+	@Override
+	public void defineModuleIndex(ByteBuffer data) throws IOException
+	{
+	}
+
+	@Override
+	public void defineColumnBlock(int type, ByteBuffer data) throws IOException
+	{
+	}
+
+	@Override
+	public void setIntArrayAttribute(int name, int[] value) throws IOException
+	{
+	}
+
+	@Override
+	public void setLongArrayAttribute(int name, long[] value) throws IOException
+	{
+	}
+
+	@Override
+	public void setFloatArrayAttribute(int name, float[] value) throws IOException
+	{
+	}
+
+	@Override
+	public void setDoubleArrayAttribute(int name, double[] value) throws IOException
+	{
+	}
+
+	@Override
+	public void defineExternType(int name, int className) throws IOException
+	{
+	}
+
+	@Override
+	public void defineExternAnnotation(int name, int className) throws IOException
+	{
+	}
+
+	@Override
+	public void defineExternPragma(int name, int className) throws IOException
+	{
+	}
+
+	@Override
+	public void defineAlias(int alias, int name) throws IOException
+	{
+	}
+
+	@Override
+	public void beginType(int name, int flags) throws IOException
+	{
+	}
+
+	@Override
+	public void beginEnum(int name) throws IOException
+	{
+	}
+
+	@Override
+	public void addEnumValue(String value) throws IOException
+	{
+	}
+
+	@Override
+	public void addParentType(int type) throws IOException
+	{
+	}
+
+	@Override
+	public void addContainedType(int type) throws IOException
+	{
+	}
+
+	@Override
+	public void beginTypeAttribute(int name, int type, Object defaultValue) throws IOException
+	{
+	}
+
+	@Override
+	public void endTypeAttribute() throws IOException
+	{
+	}
+
+	@Override
+	public void addAnnotation(int name, Object[] parameters) throws IOException
+	{
+	}
+
+	@Override
+	public void endType() throws IOException
+	{
+	}
 }
@@ -43,30 +43,49 @@ public enum Opcode
 	SetFloatAttribute(11),
 	SetDoubleAttribute(12),
 	SetBooleanAttribute(13),
-	SetBinaryAttribute(14), /*
+	SetBinaryAttribute(14),
+	BeginChildren(15),
+	EndChildren(16),
+	BeginInstanceAttribute(17),
+	SetIntArrayAttribute(18),
+	SetLongArrayAttribute(19),
+	SetFloatArrayAttribute(20),
+	SetDoubleArrayAttribute(21),
+	BeginArrayAttribute(22),
+	EndArray(23),
+	ModuleIndex(24),
+	DefineExternType(25),
+	DefineExternAnnotation(26),
+	DefineExternPragma(27),
+	DefineAlias(28),
+	BeginType(29),
+	BeginEnum(30),
+	AddEnumValue(31),
+	AddParentType(32),
+	AddContainedType(33),
+	BeginTypeAttribute(34),
+	EndTypeAttribute(35),
+	AddAnnotation(36),
+	EndType(37),
+	SetByteAttribute(38),
+	SetShortAttribute(39),
+	SetCharAttribute(40),
+	SetUUIDAttribute(41),
+	SetDateAttribute(42),
+	SetEnumAttribute(43),
+	SetPathAttribute(44),
+	SetSymbolAttribute(45),
+	ColumnBlock(46), /*
 	Version(1),
 	DefineString(3),
-	DefineExternType(5),
-	DefineExternAnnotation(4),
-	DefineAlias(4),
-	BeginDefineType(3),
-	EndDefineType(3),
-	BeginDefineAttribute(6),
-	EndDefineAttribute(6),
-	BeginDefineEnum(4),
-	EndDefineEnum(5),
 	SetPragma(5),
-	BeginInstance(6),
-	EndInstance(7),
 	BeginAnnotation(7),
 	EndAnnotation(7),
-	BeginAttribute(6),
-	EndAttribute(6),
 	DefineParameter(6),*/;
 
 	public final int code;
 	
-	private final static Opcode[] opcodes = new Opcode[15];
+	private final static Opcode[] opcodes;
 
 	private Opcode(int code)
 	{
@@ -76,6 +95,12 @@ public enum Opcode
 	}
 	
 	static {
+		int maxCode = 0;
+		for (Opcode opcode : Opcode.values()) {
+			maxCode = Math.max(maxCode, opcode.code);
+		}
+
+		opcodes = new Opcode[maxCode + 1];
 		for (Opcode opcode : Opcode.values()) {
 			opcodes[opcode.code] = opcode;
 		}
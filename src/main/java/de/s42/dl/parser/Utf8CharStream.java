@@ -0,0 +1,443 @@
+// <editor-fold desc="The MIT License" defaultstate="collapsed">
+/*
+ * The MIT License
+ * 
+ * Copyright 2022 Studio 42 GmbH ( https://www.s42m.de ).
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+//</editor-fold>
+package de.s42.dl.parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+/**
+ * CharStream over UTF-8 encoded bytes - for example a memory mapped file. The content is not copied into the heap, it
+ * is served directly from the buffer with one byte per char as long as it is ASCII. Multi byte sequences are decoded
+ * lazily when they are read. Indices are code point indices like in CharStreams. Malformed sequences are read as
+ * U+FFFD - one for each maximal invalid part like in the String decoder.
+ *
+ * @author Benjamin Schiller
+ */
+public class Utf8CharStream implements CharStream
+{
+
+	/**
+	 * Distance in code points between the remembered byte offsets used for seeking in non ASCII content
+	 */
+	protected final static int CHECKPOINT_STRIDE = 64;
+
+	protected final static int REPLACEMENT_CHARACTER = 0xFFFD;
+
+	protected final ByteBuffer buffer;
+	protected final String sourceName;
+	protected final int byteLength;
+	protected final int size;
+	protected final boolean ascii;
+
+	/**
+	 * Code point index and byte offset of the current position
+	 */
+	protected int position;
+	protected int offset;
+
+	/**
+	 * Byte offsets of every CHECKPOINT_STRIDE-th code point up to the farthest position read so far
+	 */
+	protected int[] checkpoints = new int[16];
+	protected int checkpointCount = 1;
+
+	public Utf8CharStream(ByteBuffer buffer, String sourceName)
+	{
+		assert buffer != null;
+		assert sourceName != null;
+
+		this.buffer = buffer;
+		this.sourceName = sourceName;
+
+		byteLength = buffer.limit();
+
+		// Count the code points - malformed parts count as one each
+		int codePoints = 0;
+		boolean onlyAscii = true;
+		for (int i = 0; i < byteLength; i += sequenceLength(i)) {
+			if (buffer.get(i) < 0) {
+				onlyAscii = false;
+			}
+			codePoints++;
+		}
+
+		size = codePoints;
+		ascii = onlyAscii;
+	}
+
+	/**
+	 * Maps the file read only and creates a stream on it - the mapping stays valid after the channel is closed
+	 *
+	 * @param file
+	 *
+	 * @return
+	 *
+	 * @throws IOException
+	 */
+	public static Utf8CharStream fromPath(Path file) throws IOException
+	{
+		assert file != null;
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+			long length = channel.size();
+
+			if (length > Integer.MAX_VALUE) {
+				throw new IOException("File " + file + " is too large to be mapped");
+			}
+
+			return new Utf8CharStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, length), file.toString());
+		}
+	}
+
+	// <editor-fold desc="UTF-8" defaultstate="collapsed">
+	/**
+	 * Returns the length in bytes of the sequence starting at byteOffset. A malformed sequence is as long as its valid
+	 * prefix but at least one byte - like in the String decoder a stray continuation byte is a sequence of its own
+	 *
+	 * @param byteOffset
+	 *
+	 * @return
+	 */
+	protected int sequenceLength(int byteOffset)
+	{
+		int lead = buffer.get(byteOffset) & 0xFF;
+
+		if (lead < 0x80) {
+			return 1;
+		}
+
+		// Ranges of the second byte exclude overlongs and code points above U+10FFFF - surrogates are decoded as a whole
+		int length;
+		int min = 0x80;
+		int max = 0xBF;
+		if (lead >= 0xC2 && lead < 0xE0) {
+			length = 2;
+		} else if (lead >= 0xE0 && lead < 0xF0) {
+			length = 3;
+			if (lead == 0xE0) {
+				min = 0xA0;
+			}
+		} else if (lead >= 0xF0 && lead < 0xF5) {
+			length = 4;
+			if (lead == 0xF0) {
+				min = 0x90;
+			} else if (lead == 0xF4) {
+				max = 0x8F;
+			}
+		} else {
+			return 1;
+		}
+
+		int valid = 1;
+		while (valid < length && byteOffset + valid < byteLength) {
+
+			int b = buffer.get(byteOffset + valid) & 0xFF;
+
+			if (b < min || b > max) {
+				break;
+			}
+
+			min = 0x80;
+			max = 0xBF;
+			valid++;
+		}
+
+		return valid;
+	}
+
+	protected int nextOffset(int byteOffset)
+	{
+		if (ascii) {
+			return byteOffset + 1;
+		}
+
+		return byteOffset + sequenceLength(byteOffset);
+	}
+
+	protected int decode(int byteOffset)
+	{
+		int lead = buffer.get(byteOffset) & 0xFF;
+
+		if (lead < 0x80) {
+			return lead;
+		}
+
+		int length;
+		int codePoint;
+		if (lead >= 0xC0 && lead < 0xE0) {
+			length = 2;
+			codePoint = lead & 0x1F;
+		} else if (lead >= 0xE0 && lead < 0xF0) {
+			length = 3;
+			codePoint = lead & 0x0F;
+		} else if (lead >= 0xF0 && lead < 0xF8) {
+			length = 4;
+			codePoint = lead & 0x07;
+		} else {
+			return REPLACEMENT_CHARACTER;
+		}
+
+		if (sequenceLength(byteOffset) != length) {
+			return REPLACEMENT_CHARACTER;
+		}
+
+		for (int i = 1; i < length; ++i) {
+			codePoint = (codePoint << 6) | (buffer.get(byteOffset + i) & 0x3F);
+		}
+
+		if (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) {
+			return REPLACEMENT_CHARACTER;
+		}
+
+		return codePoint;
+	}
+
+	/**
+	 * Returns the byte offset of the code point index without moving the current position
+	 *
+	 * @param index
+	 *
+	 * @return
+	 */
+	protected int offsetOf(int index)
+	{
+		if (ascii) {
+			return index;
+		}
+
+		int current;
+		int currentOffset;
+
+		if (index >= position) {
+			current = position;
+			currentOffset = offset;
+		} else {
+			int checkpoint = index / CHECKPOINT_STRIDE;
+			current = checkpoint * CHECKPOINT_STRIDE;
+			currentOffset = checkpoints[checkpoint];
+		}
+
+		while (current < index) {
+			currentOffset = nextOffset(currentOffset);
+			current++;
+		}
+
+		return currentOffset;
+	}
+	// </editor-fold>
+
+	@Override
+	public void consume()
+	{
+		if (position >= size) {
+			throw new IllegalStateException("cannot consume EOF");
+		}
+
+		offset = nextOffset(offset);
+		position++;
+
+		// Remember the offsets of the code points passed first time for seeking back
+		if (!ascii && position % CHECKPOINT_STRIDE == 0 && position / CHECKPOINT_STRIDE == checkpointCount) {
+
+			if (checkpointCount == checkpoints.length) {
+				checkpoints = Arrays.copyOf(checkpoints, checkpointCount * 2);
+			}
+
+			checkpoints[checkpointCount++] = offset;
+		}
+	}
+
+	@Override
+	public int LA(int i)
+	{
+		if (i == 0) {
+			return 0;
+		}
+
+		if (i > 0) {
+
+			if (position + i - 1 >= size) {
+				return IntStream.EOF;
+			}
+
+			if (ascii) {
+				return buffer.get(position + i - 1);
+			}
+
+			int laOffset = offset;
+			for (int j = 1; j < i; ++j) {
+				laOffset = nextOffset(laOffset);
+			}
+
+			return decode(laOffset);
+		}
+
+		if (position + i < 0) {
+			return IntStream.EOF;
+		}
+
+		if (ascii) {
+			return buffer.get(position + i);
+		}
+
+		// Sequences can not be found reliably from their end - seek from the checkpoint before
+		return decode(offsetOf(position + i));
+	}
+
+	@Override
+	public int mark()
+	{
+		// The whole content is available - nothing to buffer
+		return -1;
+	}
+
+	@Override
+	public void release(int marker)
+	{
+		// The whole content is available - nothing to release
+	}
+
+	@Override
+	public int index()
+	{
+		return position;
+	}
+
+	@Override
+	public void seek(int index)
+	{
+		index = Math.max(0, Math.min(index, size));
+
+		if (ascii) {
+			position = index;
+			offset = index;
+			return;
+		}
+
+		// Seek backwards from the last checkpoint before index
+		if (index < position) {
+			int checkpoint = index / CHECKPOINT_STRIDE;
+			position = checkpoint * CHECKPOINT_STRIDE;
+			offset = checkpoints[checkpoint];
+		}
+
+		while (position < index) {
+			consume();
+		}
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public String getSourceName()
+	{
+		return sourceName;
+	}
+
+	@Override
+	public String getText(Interval interval)
+	{
+		assert interval != null;
+
+		int start = Math.max(0, interval.a);
+		int stop = Math.min(interval.b, size - 1);
+
+		if (start > stop) {
+			return "";
+		}
+
+		int startOffset = offsetOf(start);
+		int stopOffset = ascii ? stop + 1 : offsetOf(stop + 1);
+
+		byte[] bytes = new byte[stopOffset - startOffset];
+		buffer.get(startOffset, bytes);
+
+		return new String(bytes, ascii ? StandardCharsets.US_ASCII : StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the content as CharSequence - a view on the bytes if the content is ASCII, otherwise the decoded String
+	 *
+	 * @return
+	 */
+	public CharSequence asCharSequence()
+	{
+		if (!ascii) {
+			return getText(Interval.of(0, size - 1));
+		}
+
+		return new CharSequence()
+		{
+			@Override
+			public int length()
+			{
+				return byteLength;
+			}
+
+			@Override
+			public char charAt(int index)
+			{
+				return (char) buffer.get(index);
+			}
+
+			@Override
+			public CharSequence subSequence(int start, int end)
+			{
+				return getText(Interval.of(start, end - 1));
+			}
+
+			@Override
+			public String toString()
+			{
+				return getText(Interval.of(0, size - 1));
+			}
+		};
+	}
+
+	public boolean isAscii()
+	{
+		return ascii;
+	}
+
+	@Override
+	public String toString()
+	{
+		return getText(Interval.of(0, size - 1));
+	}
+}
@@ -207,19 +207,7 @@ public final class DLHrfExpressionParser
 		} else if (ctx.SYMBOL() != null) {
 			value = ctx.getText();
 		} else if (ctx.INTEGER_LITERAL() != null) {
-			// DLHrfParsing Allow hexadecimal numbers ad basic format in HRF DL 0x00... (#26)
-			String t = ctx.INTEGER_LITERAL().getText();
-			if (t.startsWith("0") && t.length() > 1) {
-				if (t.startsWith("0x")) {
-					value = Long.valueOf(t.substring(2), 16);
-				} else if (t.startsWith("0b")) {
-					value = Long.valueOf(t.substring(2), 2);
-				} else {
-					value = Long.valueOf(t.substring(1), 8);
-				}
-			} else {
-				value = Long.valueOf(t);
-			}
+			value = parseIntegerLiteral(ctx.INTEGER_LITERAL().getText());
 		} else if (ctx.FLOAT_LITERAL() != null) {
 			value = Double.valueOf(ctx.FLOAT_LITERAL().getText());
 		} else if (ctx.BOOLEAN_LITERAL() != null) {
@@ -255,6 +243,33 @@ public final class DLHrfExpressionParser
 		}
 	}
 
+	/**
+	 * Parses the text of an INTEGER_LITERAL - decimal, hexadecimal (0x), binary (0b) and octal (0) are supported
+	 *
+	 * @param t
+	 *
+	 * @return
+	 *
+	 * @throws NumberFormatException
+	 */
+	public static Long parseIntegerLiteral(String t) throws NumberFormatException
+	{
+		assert t != null;
+
+		// DLHrfParsing Allow hexadecimal numbers ad basic format in HRF DL 0x00... (#26)
+		if (t.startsWith("0") && t.length() > 1) {
+			if (t.startsWith("0x")) {
+				return Long.valueOf(t.substring(2), 16);
+			} else if (t.startsWith("0b")) {
+				return Long.valueOf(t.substring(2), 2);
+			} else {
+				return Long.valueOf(t.substring(1), 8);
+			}
+		}
+
+		return Long.valueOf(t);
+	}
+
 	public static String unescapeString(String stringValue)
 	{
 		assert stringValue != null;
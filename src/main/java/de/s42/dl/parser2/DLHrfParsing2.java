@@ -27,99 +27,778 @@ package de.s42.dl.parser2;
 
 import de.s42.dl.*;
 import de.s42.dl.exceptions.DLException;
-import de.s42.dl.instances.DefaultDLModule;
-import de.s42.dl.parser.DLLexer;
-import de.s42.dl.parser.DLParser;
-import de.s42.dl.parser.DLParserBaseListener;
+import de.s42.dl.parser.DLHrfParsing;
+import de.s42.dl.parser.Utf8CharStream;
+import de.s42.dl.parser.expression.DLHrfExpressionParser;
+import de.s42.dl.types.base.ArrayDLType;
+import de.s42.dl.validation.ValidationResult;
 import de.s42.log.LogManager;
 import de.s42.log.Logger;
-import org.antlr.v4.runtime.BufferedTokenStream;
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
-import org.antlr.v4.runtime.Token;
-import org.antlr.v4.runtime.TokenStream;
-import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 /**
- * This is a test implementation - PLEASE DO NOT USE THIS!
+ * Hand written single pass parser for the data subset of DL HRF. It reads requires, instance definitions and
+ * attribute assignments with literal values and creates the instances directly from the characters - no token
+ * stream and no parse tree are built. The data is scanned once before - modules leaving this subset anywhere (type,
+ * enum, annotation, pragma, alias and assert definitions, annotations, generics, references, operators, escaped
+ * strings) are parsed by {@link DLHrfParsing} right away and not twice. If the data contains an error - including
+ * failing requires - the module is parsed again by DLHrfParsing which supports the full language and reports all
+ * errors.
+ *
  * @author Benjamin Schiller
  */
-public class DLHrfParsing2 extends DLParserBaseListener
+public class DLHrfParsing2
 {
 
 	private final static Logger log = LogManager.getLogger(DLHrfParsing2.class.getName());
 
-	private final DefaultDLModule module;
-	private final DLCore core;
+	/**
+	 * Words the lexer never returns as SYMBOL
+	 */
+	protected final static Set<String> KEYWORDS = Set.of(
+		"annotation", "type", "extends", "contains", "extern", "require", "enum", "abstract", "alias", "final",
+		"pragma", "declare", "assert", "dynamic", "new", "copy", "scope", "package", "module", "namespace", "define",
+		"undef", "in", "contained", "and", "or", "not", "nand", "xor", "volatile", "atomic", "union", "struct",
+		"template", "class", "interface", "implements", "contract", "concept", "if", "private", "this", "throw",
+		"else", "import", "public", "protected", "throws", "break", "return", "case", "static", "try", "catch", "void",
+		"null", "lambda", "do", "while", "for", "default", "instanceof", "use", "unuse", "call", "clone", "select",
+		"when", "switch", "distinct"
+	);
 
-	public DLHrfParsing2(DLCore core, DefaultDLModule module)
+	protected final static int MAX_KEYWORD_LENGTH = 11;
+
+	/**
+	 * Signals that the data left the supported subset - leads to parsing the module with DLHrfParsing
+	 */
+	protected static class Bailout extends Exception
+	{
+
+		private static final long serialVersionUID = 1L;
+
+		public Bailout(String reason)
+		{
+			super(reason, null, false, false);
+		}
+	}
+
+	protected final DLCore core;
+	protected final DLModule module;
+	protected final CharSequence data;
+	protected final int length;
+	protected int position;
+
+	protected DLHrfParsing2(DLCore core, DLModule module, CharSequence data)
 	{
+		assert core != null;
+		assert module != null;
+		assert data != null;
+
 		this.core = core;
 		this.module = module;
+		this.data = data;
+		this.length = data.length();
 	}
 
-	@Override
-	public void enterTypeDefinition(DLParser.TypeDefinitionContext ctx)
+	// <editor-fold desc="Characters" defaultstate="collapsed">
+	protected static boolean isSymbolStart(char c)
 	{
-		log.debug("enterTypeDefinition", ctx.typeHeader().typeDefinitionName().getText());
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '#';
 	}
-	
-	
 
-	@Override
-	public void exitTypeDefinition(DLParser.TypeDefinitionContext ctx)
+	protected static boolean isSymbolPart(char c)
 	{
-		log.debug("exitTypeDefinition", ctx.typeHeader().typeDefinitionName().getText());
+		return isSymbolStart(c) || isDigit(c) || c == '-' || c == '.' || c == '$';
 	}
-	
-	public static DLModule parse(DLCore core, String moduleId, String data) throws DLException
+
+	protected static boolean isDigit(char c)
+	{
+		return c >= '0' && c <= '9';
+	}
+
+	protected static boolean isBoolean(String word)
+	{
+		return "true".equalsIgnoreCase(word) || "false".equalsIgnoreCase(word);
+	}
+
+	protected char peek()
+	{
+		return (position < length) ? data.charAt(position) : 0;
+	}
+
+	protected char peek(int offset)
+	{
+		return (position + offset < length) ? data.charAt(position + offset) : 0;
+	}
+
+	/**
+	 * Skips whitespaces, newlines and comments
+	 *
+	 * @throws Bailout if a multiline comment is not closed
+	 */
+	protected void skipHidden() throws Bailout
+	{
+		while (position < length) {
+
+			char c = data.charAt(position);
+
+			if (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+				position++;
+			} else if (c == '/' && peek(1) == '/') {
+				while (position < length && data.charAt(position) != '\n' && data.charAt(position) != '\r') {
+					position++;
+				}
+			} else if (c == '/' && peek(1) == '*') {
+				position += 2;
+				while (!(peek() == '*' && peek(1) == '/')) {
+					if (position >= length) {
+						throw new Bailout("Unclosed comment");
+					}
+					position++;
+				}
+				position += 2;
+			} else {
+				return;
+			}
+		}
+	}
+
+	protected void expect(char c) throws Bailout
 	{
-		DefaultDLModule module = (DefaultDLModule) core.createModule(moduleId);
+		skipHidden();
 
-		DLHrfParsing2 parsing = new DLHrfParsing2(core, module);
+		if (peek() != c || position >= length) {
+			throw new Bailout("Expected '" + c + "'");
+		}
+
+		position++;
+	}
+
+	/**
+	 * Scans the data without creating anything - modules not in the supported subset are not parsed directly. Errors
+	 * within the subset are left to the parse
+	 *
+	 * @param data
+	 *
+	 * @return false if the data contains definitions, annotations, references, generics, operators, escaped strings or
+	 * unclosed comments
+	 */
+	protected static boolean isDataSubset(CharSequence data)
+	{
+		assert data != null;
+
+		int length = data.length();
+		int position = 0;
+
+		while (position < length) {
+
+			char c = data.charAt(position);
+			char next = (position + 1 < length) ? data.charAt(position + 1) : 0;
+
+			if (c == '/' && next == '/') {
+				while (position < length && data.charAt(position) != '\n' && data.charAt(position) != '\r') {
+					position++;
+				}
+			} else if (c == '/' && next == '*') {
+				position += 2;
+				while (!(position + 1 < length && data.charAt(position) == '*' && data.charAt(position + 1) == '/')) {
+					if (position >= length) {
+						return false;
+					}
+					position++;
+				}
+				position += 2;
+			} else if (c == '"') {
+				position++;
+				while (position < length && data.charAt(position) != '"') {
+					c = data.charAt(position);
+					if (c == '\\' || c == '\n' || c == '\r') {
+						return false;
+					}
+					position++;
+				}
+				if (position >= length) {
+					return false;
+				}
+				position++;
+			} else if (isSymbolStart(c)) {
+				int start = position++;
+				while (position < length && isSymbolPart(data.charAt(position))) {
+					position++;
+				}
+				if (position - start <= MAX_KEYWORD_LENGTH) {
+					String word = data.subSequence(start, position).toString();
+					if (KEYWORDS.contains(word) && !"require".equals(word)) {
+						return false;
+					}
+				}
+			} else if (isDigit(c)) {
+				// Numbers including exponents like 1.5e+2
+				position++;
+				while (position < length) {
+					c = data.charAt(position);
+					if (isSymbolPart(c)
+						|| (c == '+' && (data.charAt(position - 1) == 'e' || data.charAt(position - 1) == 'E'))) {
+						position++;
+					} else {
+						break;
+					}
+				}
+			} else if (c == ' ' || c == '\t' || c == '\r' || c == '\n'
+				|| c == '{' || c == '}' || c == ';' || c == ':' || c == ',' || c == '-') {
+				position++;
+			} else {
+				return false;
+			}
+		}
+
+		return true;
+	}
+	// </editor-fold>
+
+	// <editor-fold desc="Literals" defaultstate="collapsed">
+	protected String readWord() throws Bailout
+	{
+		skipHidden();
+
+		if (position >= length || !isSymbolStart(data.charAt(position))) {
+			throw new Bailout("Expected symbol");
+		}
+
+		int start = position++;
+		while (position < length && isSymbolPart(data.charAt(position))) {
+			position++;
+		}
+
+		return data.subSequence(start, position).toString();
+	}
+
+	/**
+	 * Reads a SYMBOL - keywords and booleans are not symbols
+	 *
+	 * @return
+	 *
+	 * @throws Bailout
+	 */
+	protected String readSymbol() throws Bailout
+	{
+		String word = readWord();
+
+		if (KEYWORDS.contains(word) || isBoolean(word)) {
+			throw new Bailout("Unsupported keyword " + word);
+		}
+
+		return word;
+	}
+
+	protected String readString() throws Bailout
+	{
+		int start = position++;
 
-		// Setup lexer
-		DLLexer lexer = new DLLexer(CharStreams.fromString(data));
-		lexer.removeErrorListeners();
-		lexer.addErrorListener(new DLHrfParsing2ErrorHandler(parsing, module));
-		TokenStream tokens = new BufferedTokenStream(lexer);
+		while (position < length) {
 
-		// @test Iterate tokens from lexer
-		boolean justNewline = false;
+			char c = data.charAt(position);
+
+			if (c == '"') {
+				position++;
+				return DLHrfExpressionParser.unescapeString(data.subSequence(start, position).toString());
+			} // Escapes are left to DLHrfParsing
+			else if (c == '\\' || c == '\n' || c == '\r') {
+				break;
+			}
+
+			position++;
+		}
+
+		throw new Bailout("Unsupported string");
+	}
+
+	protected Object readNumber() throws Bailout
+	{
+		int start = position;
+
+		if (peek() == '-') {
+			position++;
+		}
+
+		if (!isDigit(peek())) {
+			throw new Bailout("Unsupported operator -");
+		}
+
+		boolean isFloat = false;
+
+		// Hexadecimal and binary
+		if (peek() == '0' && (peek(1) == 'x' || peek(1) == 'b')) {
+			position += 2;
+			while (position < length && Character.isLetterOrDigit(data.charAt(position))) {
+				position++;
+			}
+		} else {
+
+			while (isDigit(peek())) {
+				position++;
+			}
+
+			if (peek() == '.' && isDigit(peek(1))) {
+
+				isFloat = true;
+				position++;
+				while (isDigit(peek())) {
+					position++;
+				}
+
+				if ((peek() == 'e' || peek() == 'E')
+					&& (isDigit(peek(1)) || ((peek(1) == '-' || peek(1) == '+') && isDigit(peek(2))))) {
+					position += 2;
+					while (isDigit(peek())) {
+						position++;
+					}
+				}
+			}
+		}
+
+		// Tokens glued to numbers are split differently by the lexer
+		if (position < length && isSymbolPart(data.charAt(position))) {
+			throw new Bailout("Unsupported number");
+		}
+
+		String text = data.subSequence(start, position).toString();
+
+		try {
+			if (isFloat) {
+				return Double.valueOf(text);
+			}
+
+			// Leading zeros are read as octal by the lexer only if followed by 1-7
+			String digits = text.startsWith("-") ? text.substring(1) : text;
+			if (digits.length() > 1 && digits.startsWith("0") && !digits.matches("0([xb].*|[1-7]+)")) {
+				throw new Bailout("Unsupported number " + text);
+			}
+
+			return DLHrfExpressionParser.parseIntegerLiteral(text);
+		} catch (NumberFormatException ex) {
+			throw new Bailout("Invalid number " + text);
+		}
+	}
+	// </editor-fold>
+
+	protected void parseData() throws DLException, Bailout
+	{
 		while (true) {
-			Token token = tokens.LT(1);
-			log.info("TOKEN : " + token);
-			if (token.getType() == DLLexer.EOF) {
+
+			skipHidden();
+
+			if (position >= length) {
+				return;
+			}
+
+			String word = readWord();
+
+			if ("require".equals(word)) {
+				parseRequire();
+			} else if (KEYWORDS.contains(word) || isBoolean(word)) {
+				throw new Bailout("Unsupported keyword " + word);
+			} else {
+				parseStatement(module, word);
+			}
+		}
+	}
+
+	protected void parseRequire() throws Bailout
+	{
+		skipHidden();
+
+		String requiredModuleId;
+		if (peek() == '"') {
+			requiredModuleId = readString();
+		} else {
+			requiredModuleId = readSymbol();
+		}
+
+		expect(';');
+
+		// Errors are reported by DLHrfParsing
+		if (!core.isAllowRequire()) {
+			throw new Bailout("Not allowed to require in core");
+		}
+
+		// Requires are not repeated by a fallback as the core caches the required modules
+		try {
+
+			DLModule requiredModule = core.parse(requiredModuleId);
+
+			// Make sure a module that was already required is not added twice
+			if (!module.hasChild(requiredModule.getName())) {
+				module.addChild(requiredModule);
+			}
+
+		} catch (DLException | RuntimeException ex) {
+			throw new Bailout("Error requiring module '" + requiredModuleId + "' - " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Parses an attribute assignment or instance definition within owner starting with the already read word
+	 *
+	 * @param owner
+	 * @param word
+	 *
+	 * @throws Bailout
+	 */
+	protected void parseStatement(DLInstance owner, String word) throws DLException, Bailout
+	{
+		assert owner != null;
+		assert word != null;
+
+		if (KEYWORDS.contains(word) || isBoolean(word)) {
+			throw new Bailout("Unsupported keyword " + word);
+		}
+
+		skipHidden();
+
+		char c = peek();
+
+		if (c == ':') {
+			parseAttributeAssignment(owner, null, word);
+		} else if (c == '{' || c == ';') {
+			parseInstanceDefinition(owner, word, null, true);
+		} else if (isSymbolStart(c)) {
+
+			String second = readSymbol();
+
+			skipHidden();
+
+			c = peek();
+
+			if (c == ':') {
+				parseAttributeAssignment(owner, word, second);
+			} else if (c == '{' || c == ';') {
+				parseInstanceDefinition(owner, word, second, true);
+			} else {
+				throw new Bailout("Unsupported statement");
+			}
+		} else {
+			throw new Bailout("Unsupported statement");
+		}
+	}
+
+	protected DLInstance parseInstanceDefinition(DLInstance owner, String typeName, String name, boolean addToOwner) throws DLException, Bailout
+	{
+		assert owner != null;
+		assert typeName != null;
+
+		DLType type = core.getType(typeName, List.of()).orElseThrow(() -> {
+			return new Bailout("Type '" + typeName + "' is not defined");
+		});
+
+		if (type.isAbstract()) {
+			throw new Bailout("Type '" + typeName + "' is abstract");
+		}
+
+		DLInstance instance = core.createInstance(type, name);
+
+		// Instances assigned to attributes are not added as children
+		if (addToOwner) {
+			try {
+				owner.addChild(instance);
+			} catch (DLException | RuntimeException ex) {
+				throw new Bailout("Error adding child - " + ex.getMessage());
+			}
+		}
+
+		skipHidden();
+
+		if (peek() == ';') {
+			position++;
+		} else {
+
+			expect('{');
+
+			while (true) {
+
+				skipHidden();
+
+				if (position >= length) {
+					throw new Bailout("Unclosed instance");
+				}
+
+				if (peek() == '}') {
+					position++;
+					break;
+				}
+
+				parseStatement(instance, readWord());
+			}
+		}
+
+		ValidationResult result = new ValidationResult();
+		if (!instance.validate(result)) {
+			throw new Bailout("Error validating instance - " + result.toMessage());
+		}
+
+		return instance;
+	}
+
+	protected void parseAttributeAssignment(DLInstance owner, String givenTypeName, String attributeName) throws DLException, Bailout
+	{
+		assert owner != null;
+		assert attributeName != null;
+
+		expect(':');
+
+		List<Object> assignables = new ArrayList<>();
+
+		while (true) {
+
+			assignables.add(parseAssignable(owner));
+
+			skipHidden();
+
+			char c = peek();
+
+			if (c == ';') {
+				position++;
 				break;
+			} else if (c == ',') {
+				position++;
+				skipHidden();
+
+				// Trailing comma
+				if (peek() == ';') {
+					position++;
+					break;
+				}
+			} else {
+				throw new Bailout("Unsupported expression");
+			}
+		}
+
+		assignAttribute(owner, givenTypeName, attributeName, assignables.toArray());
+	}
+
+	protected Object parseAssignable(DLInstance owner) throws DLException, Bailout
+	{
+		assert owner != null;
+
+		skipHidden();
+
+		char c = peek();
+
+		if (c == '"') {
+			return readString();
+		} else if (c == '-' || isDigit(c)) {
+			return readNumber();
+		} else if (isSymbolStart(c)) {
+
+			String word = readWord();
+
+			if (isBoolean(word)) {
+				return "true".equals(word);
+			} else if (KEYWORDS.contains(word)) {
+				throw new Bailout("Unsupported keyword " + word);
 			}
-			else if (token.getType() == DLLexer.NEWLINE) {
-				justNewline = true;
-			}			
-			else if (justNewline && token.getType() == DLLexer.WHITESPACES) {
-				log.warn("WS at beginning of line : " + token);
+
+			skipHidden();
+
+			c = peek();
+
+			if (c == '{') {
+				return parseInstanceDefinition(owner, word, null, false);
+			} else if (isSymbolStart(c)) {
+
+				String name = readSymbol();
+
+				skipHidden();
+
+				if (peek() != '{') {
+					throw new Bailout("Unsupported instance assignment");
+				}
+
+				return parseInstanceDefinition(owner, word, name, false);
+			} else if (c == ';') {
+
+				// "T;" followed by ; or , could also be an anonymous instance
+				int mark = position++;
+				skipHidden();
+				char next = peek();
+				position = mark;
+
+				if (next == ';' || next == ',') {
+					throw new Bailout("Ambiguous assignment");
+				}
 			}
-			tokens.consume();
+
+			return word;
 		}
-		tokens.seek(0);
-		
-		// Setup parser
-		DLParser parser = new DLParser(new CommonTokenStream(lexer));
-		parser.removeErrorListeners();
-		parser.addErrorListener(new DLHrfParsing2ErrorHandler(parsing, module));
 
-		// Parse with treewalker
-		DLParser.DataContext root = parser.data();
-		ParseTreeWalker walker = new ParseTreeWalker();
+		throw new Bailout("Unsupported assignable");
+	}
+
+	/**
+	 * Assigns the assignables like DLHrfParsing.exitAttributeAssignment - any error leads to the fallback
+	 *
+	 * @param owner
+	 * @param givenTypeName
+	 * @param attributeName
+	 * @param assignables
+	 *
+	 * @throws Bailout
+	 */
+	protected void assignAttribute(DLInstance owner, String givenTypeName, String attributeName, Object[] assignables) throws Bailout
+	{
+		assert owner != null;
+		assert attributeName != null;
+		assert assignables != null;
+
+		// Prevent double definitions of same attribute name
+		if (owner.hasAttribute(attributeName)) {
+			throw new Bailout("Attribute '" + attributeName + "' is already defined");
+		}
+
+		DLType attributeType = owner
+			.getType()
+			.getAttribute(attributeName)
+			.map((attribute) -> {
+				return attribute.getType();
+			})
+			.orElse(null);
+
+		if (attributeType == null && !owner.getType().isDynamic()) {
+			throw new Bailout("Attribute '" + attributeName + "' is not contained");
+		}
+
+		if (givenTypeName != null) {
+
+			DLType givenAttributeType = core.getType(givenTypeName).orElseThrow(() -> {
+				return new Bailout("Type '" + givenTypeName + "' not contained");
+			});
+
+			if (attributeType != null && !attributeType.isAssignableFrom(givenAttributeType)) {
+				throw new Bailout("Type '" + attributeType + "' is not assignable from '" + givenAttributeType + "'");
+			}
+
+			if (attributeType == null) {
+				attributeType = givenAttributeType;
+			}
+		}
 
 		try {
-			walker.walk(parsing, root);
-		} catch (RuntimeException ex) {
-			if (ex.getCause() instanceof DLException) {
-				throw (DLException) ex.getCause();
+			if (attributeType != null) {
+
+				if (assignables.length == 1 && (assignables[0] instanceof DLInstance instance)) {
+
+					if (attributeType instanceof ArrayDLType arrayType) {
+
+						if (!arrayType.isComponenTypeAssignableOf(instance.getType())) {
+							throw new Bailout("Array component is not assignable");
+						}
+
+						owner.set(attributeName, arrayType.read(instance));
+					} else {
+
+						if (!attributeType.isAssignableFrom(instance.getType())) {
+							throw new Bailout("Instance is not assignable");
+						}
+
+						owner.set(attributeName, instance);
+					}
+				} else if (attributeType.canRead()) {
+					owner.set(attributeName, attributeType.read(assignables));
+				} else if (assignables.length == 1
+					&& (assignables[0] == null
+					|| attributeType.getJavaDataType().isAssignableFrom(assignables[0].getClass()))) {
+					owner.set(attributeName, assignables[0]);
+				} else {
+					throw new Bailout("Type '" + attributeType + "' can not read");
+				}
+			} else {
+				owner.set(attributeName, (assignables.length == 1) ? assignables[0] : assignables);
 			}
-			throw ex;
+		} catch (DLException | RuntimeException ex) {
+			throw new Bailout("Error assigning '" + attributeName + "' - " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Parses data with the hand written parser only
+	 *
+	 * @param core
+	 * @param moduleId
+	 * @param data
+	 *
+	 * @return the module or empty if data is not in the supported subset or contains errors
+	 *
+	 * @throws DLException
+	 */
+	public static Optional<DLModule> parseDirect(DLCore core, String moduleId, CharSequence data) throws DLException
+	{
+		assert core != null;
+		assert moduleId != null;
+		assert data != null;
+
+		if (!isDataSubset(data)) {
+			log.debug("Parsing module", moduleId, "with DLHrfParsing - it is not in the data subset");
+			return Optional.empty();
+		}
+
+		DLModule module = core.createModule(moduleId);
+
+		try {
+			new DLHrfParsing2(core, module, data).parseData();
+		} catch (Bailout ex) {
+			log.debug("Falling back to DLHrfParsing in module", moduleId, "-", ex.getMessage());
+			return Optional.empty();
+		}
+
+		return Optional.of(module);
+	}
+
+	/**
+	 * This method will parse the given data string as DL HRF return a freshly created module with the given
+	 * moduleId as name. Data which is not supported by the hand written parser is parsed by DLHrfParsing
+	 *
+	 * @param core
+	 * @param moduleId
+	 * @param data
+	 *
+	 * @return
+	 *
+	 * @throws DLException
+	 */
+	public static DLModule parse(DLCore core, String moduleId, String data) throws DLException
+	{
+		assert core != null;
+		assert moduleId != null;
+		assert data != null;
+
+		Optional<DLModule> module = parseDirect(core, moduleId, data);
+
+		if (module.isPresent()) {
+			return module.orElseThrow();
+		}
+
+		return DLHrfParsing.parse(core, moduleId, data);
+	}
+
+	public static DLModule parse(DLCore core, String moduleId, Path data) throws DLException, IOException
+	{
+		assert core != null;
+		assert moduleId != null;
+		assert data != null;
+
+		// The mapped file is read directly if it is ASCII
+		Utf8CharStream stream = Utf8CharStream.fromPath(data);
+
+		Optional<DLModule> module = parseDirect(core, moduleId, stream.asCharSequence());
+
+		if (module.isPresent()) {
+			return module.orElseThrow();
 		}
 
-		return module;
+		return DLHrfParsing.parse(core, moduleId, stream);
 	}
 }
@@ -65,6 +65,26 @@ public final class DLHelper
 
 	public static int BIN_SIGNATURE = 0x444C3432;
 
+	/**
+	 * Signature of block compressed DLB containers - see BlockDeflaterOutputStream
+	 */
+	public final static int BIN_BLOCKS_SIGNATURE = 0x444C4243;
+
+	/**
+	 * Signature ending binary module indices - see BinaryModuleIndex
+	 */
+	public final static int BIN_INDEX_SIGNATURE = 0x444C4958;
+
+	/**
+	 * Signature of binary core images - see BinaryCoreImage
+	 */
+	public final static int BIN_IMAGE_SIGNATURE = 0x444C494D;
+
+	/**
+	 * Signature of cached parsed modules - see BinaryModuleCache
+	 */
+	public final static int BIN_CACHE_SIGNATURE = 0x444C4343;
+
 	private final static Map<Class, Boolean> unescapedTypes = Map.ofEntries(
 		new AbstractMap.SimpleEntry<>(boolean.class, true),
 		new AbstractMap.SimpleEntry<>(float.class, true),
@@ -693,6 +713,9 @@ public final class DLHelper
 
 		if (isDLB(fileSignature)) {
 			return DLFileType.BIN;
+		} // Block compressed container
+		else if (fileSignature == BIN_BLOCKS_SIGNATURE) {
+			return DLFileType.BINCOMPRESSED;
 		} // Attention: All zips will be recognized as BINCOMPRESSED
 		else if (ZipHelper.isArchive(fileSignature)) {
 			return DLFileType.BINCOMPRESSED;
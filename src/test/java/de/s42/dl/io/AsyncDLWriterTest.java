@@ -0,0 +1,251 @@
+// <editor-fold desc="The MIT License" defaultstate="collapsed">
+/*
+ * The MIT License
+ * 
+ * Copyright 2022 Studio 42 GmbH ( https://www.s42m.de ).
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+//</editor-fold>
+package de.s42.dl.io;
+
+import de.s42.dl.DLInstance;
+import de.s42.dl.DLModule;
+import de.s42.dl.DLPragma;
+import de.s42.dl.DLType;
+import de.s42.dl.core.DefaultCore;
+import de.s42.dl.io.binary.BinaryDLReader;
+import de.s42.dl.io.binary.BinaryDLWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Benjamin Schiller
+ */
+public class AsyncDLWriterTest
+{
+
+	public static class Item
+	{
+
+		protected String name;
+
+		protected int value;
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public void setName(String name)
+		{
+			this.name = name;
+		}
+
+		public int getValue()
+		{
+			return value;
+		}
+
+		public void setValue(int value)
+		{
+			this.value = value;
+		}
+	}
+
+	@Test
+	public void validConcurrentProducers() throws Exception
+	{
+		DefaultCore core = new DefaultCore();
+		core.defineType(Item.class);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		try (AsyncDLWriter writer = new AsyncDLWriter(new BinaryDLWriter(out, core), 16, 8)) {
+
+			Thread[] producers = new Thread[4];
+			for (int p = 0; p < producers.length; ++p) {
+				int producer = p;
+				producers[p] = new Thread(() -> {
+					try {
+						for (int i = 0; i < 500; ++i) {
+							Item item = new Item();
+							item.setName("item" + producer + "_" + i);
+							item.setValue(i);
+							writer.write(item);
+						}
+					} catch (IOException ex) {
+						throw new RuntimeException(ex);
+					}
+				});
+				producers[p].start();
+			}
+
+			for (Thread producer : producers) {
+				producer.join();
+			}
+
+			writer.flushAsync().get();
+		}
+
+		try (BinaryDLReader reader = new BinaryDLReader(ByteBuffer.wrap(out.toByteArray()), core)) {
+
+			DLModule module = reader.readModule();
+			assertEquals(module.getChildCount(), 2000);
+
+			Set<String> names = new HashSet<>();
+			for (DLInstance instance : module.getChildren()) {
+				names.add(instance.getName());
+			}
+			assertEquals(names.size(), 2000);
+			assertTrue(names.contains("item3_499"));
+		}
+	}
+
+	public static class FailingWriter implements DLWriter
+	{
+
+		protected boolean closed;
+
+		@Override
+		public void write(DLPragma pragma) throws IOException
+		{
+			throw new IOException("Failing");
+		}
+
+		@Override
+		public void write(DLType type) throws IOException
+		{
+			throw new IOException("Failing");
+		}
+
+		@Override
+		public void write(DLInstance instance) throws IOException
+		{
+			throw new IOException("Failing");
+		}
+
+		@Override
+		public void write(Object instance) throws IOException
+		{
+			throw new IOException("Failing");
+		}
+
+		@Override
+		public void flush() throws IOException
+		{
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			closed = true;
+		}
+	}
+
+	@Test
+	public void invalidFailureIsReported() throws Exception
+	{
+		FailingWriter failing = new FailingWriter();
+		AsyncDLWriter writer = new AsyncDLWriter(failing);
+
+		writer.write(new Object());
+
+		try {
+			writer.flushAsync().get();
+			fail("Flush has to fail");
+		} catch (ExecutionException ex) {
+			assertEquals(ex.getCause().getMessage(), "Failing");
+		}
+
+		// following writes fail right away
+		assertThrows(IOException.class, () -> writer.write(new Object()));
+
+		// the decorated writer gets closed anyway
+		assertThrows(IOException.class, writer::close);
+		assertTrue(failing.closed);
+		assertThrows(IOException.class, () -> writer.write(new Object()));
+	}
+
+	public static class ErrorWriter extends FailingWriter
+	{
+
+		@Override
+		public void write(Object instance) throws IOException
+		{
+			throw new StackOverflowError("Too deep");
+		}
+	}
+
+	@Test
+	public void invalidErrorIsReported() throws Exception
+	{
+		ErrorWriter failing = new ErrorWriter();
+		AsyncDLWriter writer = new AsyncDLWriter(failing);
+
+		writer.write(new Object());
+
+		try {
+			writer.flushAsync().get(10, TimeUnit.SECONDS);
+			fail("Flush has to fail");
+		} catch (ExecutionException ex) {
+			assertTrue(ex.getCause().getCause() instanceof StackOverflowError);
+		}
+
+		// the writer thread keeps running and closes the decorated writer
+		assertThrows(IOException.class, writer::close);
+		assertTrue(failing.closed);
+	}
+
+	@Test
+	public void invalidEndedWriterThreadFailsFast() throws Exception
+	{
+		FailingWriter decorated = new FailingWriter();
+		AsyncDLWriter writer = new AsyncDLWriter(decorated, 1, 1);
+
+		writer.thread.interrupt();
+		writer.thread.join(10000);
+		assertFalse(writer.thread.isAlive());
+
+		// the decorated writer got closed by the ending thread
+		assertTrue(decorated.closed);
+
+		// neither blocks on the full queue nor waits for the ended thread
+		for (int i = 0; i < 3; ++i) {
+			assertThrows(IOException.class, () -> writer.write(new Object()));
+		}
+
+		try {
+			writer.flushAsync().get(10, TimeUnit.SECONDS);
+			fail("Flush has to fail");
+		} catch (ExecutionException ex) {
+			assertTrue(ex.getMessage().contains("interrupted"));
+		}
+
+		assertThrows(IOException.class, writer::close);
+	}
+}
@@ -0,0 +1,98 @@
+// <editor-fold desc="The MIT License" defaultstate="collapsed">
+/*
+ * The MIT License
+ * 
+ * Copyright 2022 Studio 42 GmbH ( https://www.s42m.de ).
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+//</editor-fold>
+package de.s42.dl.io.binary;
+
+import de.s42.dl.DLEnum;
+import de.s42.dl.DLInstance;
+import de.s42.dl.DLModule;
+import de.s42.dl.DLType;
+import de.s42.dl.core.DefaultCore;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Benjamin Schiller
+ */
+public class BinaryCoreImageTest
+{
+
+	@Test
+	public void validImageRestoresCoreWithoutParsing() throws Exception
+	{
+		DefaultCore core = new DefaultCore();
+		core.parse("BinaryCoreImageTest.validImageRestoresCoreWithoutParsing",
+			"enum Mode { fast, safe } "
+			+ "type Base { String name @required; } "
+			+ "type Lib extends Base { Mode mode : safe; Integer level @greaterEqual(1) : 2; } "
+			+ "alias Library Lib; "
+			+ "Lib lib @export { name : core; level : 3; }"
+		);
+		core.setAllowRequire(false);
+
+		Path image = Files.createTempFile("BinaryCoreImageTest", ".dlimage");
+		try {
+			core.exportImage(image);
+
+			DefaultCore restored = new DefaultCore();
+			restored.loadImage(image);
+
+			assertFalse(restored.isAllowRequire());
+
+			DLType lib = restored.getType("Lib").orElseThrow();
+			assertSame(restored.getType("Library").orElseThrow(), lib);
+			assertTrue(lib.isDerivedTypeOf(restored.getType("Base").orElseThrow()));
+			assertTrue(lib.getAttribute("name").orElseThrow().hasAnnotation("required"));
+			assertEquals(lib.getAttribute("mode").orElseThrow().getDefaultValue(), "safe");
+			assertEquals(lib.getAttribute("level").orElseThrow().getDefaultValue(), 2);
+			assertTrue(lib.getAttribute("level").orElseThrow().hasAnnotation("greaterEqual"));
+			assertEquals(((DLEnum) restored.getType("Mode").orElseThrow()).getValues(), List.of("fast", "safe"));
+
+			DLInstance exported = restored.getExported("lib").orElseThrow();
+			assertEquals(exported.getString("name"), "core");
+			assertEquals(exported.getInt("level"), 3);
+
+			// the restored core continues like the original one
+			DLModule module = restored.parse("BinaryCoreImageTest.validImageRestoresCoreWithoutParsing2",
+				"Library l { name : x; }"
+			);
+			assertSame(module.getChild(0).getType(), lib);
+		} finally {
+			Files.deleteIfExists(image);
+		}
+	}
+
+	@Test(expectedExceptions = IOException.class)
+	public void invalidImageSignature() throws Exception
+	{
+		BinaryCoreImage.load(new DefaultCore(), ByteBuffer.wrap(new byte[BinaryCoreImage.HEADER_SIZE]));
+	}
+}
@@ -0,0 +1,1093 @@
+// <editor-fold desc="The MIT License" defaultstate="collapsed">
+/*
+ * The MIT License
+ * 
+ * Copyright 2022 Studio 42 GmbH ( https://www.s42m.de ).
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+//</editor-fold>
+package de.s42.dl.io.binary;
+
+import de.s42.dl.DLCore;
+import de.s42.dl.DLEnum;
+import de.s42.dl.DLInstance;
+import de.s42.dl.DLModule;
+import de.s42.dl.DLType;
+import de.s42.dl.core.DefaultCore;
+import de.s42.dl.parser.DLParsingProcessor;
+import de.s42.dl.pragmas.AbstractDLPragma;
+import de.s42.dl.language.DLFileType;
+import de.s42.dl.pragmas.debug.LogPragma;
+import de.s42.dl.util.DLHelper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Benjamin Schiller
+ */
+public class BinaryDLTest
+{
+
+	public static class TestData
+	{
+
+		protected String name;
+
+		protected String stringValue;
+
+		protected int intValue;
+
+		protected long longValue;
+
+		protected double doubleValue;
+
+		protected boolean booleanValue;
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public void setName(String name)
+		{
+			this.name = name;
+		}
+
+		public String getStringValue()
+		{
+			return stringValue;
+		}
+
+		public void setStringValue(String stringValue)
+		{
+			this.stringValue = stringValue;
+		}
+
+		public int getIntValue()
+		{
+			return intValue;
+		}
+
+		public void setIntValue(int intValue)
+		{
+			this.intValue = intValue;
+		}
+
+		public long getLongValue()
+		{
+			return longValue;
+		}
+
+		public void setLongValue(long longValue)
+		{
+			this.longValue = longValue;
+		}
+
+		public double getDoubleValue()
+		{
+			return doubleValue;
+		}
+
+		public void setDoubleValue(double doubleValue)
+		{
+			this.doubleValue = doubleValue;
+		}
+
+		public boolean isBooleanValue()
+		{
+			return booleanValue;
+		}
+
+		public void setBooleanValue(boolean booleanValue)
+		{
+			this.booleanValue = booleanValue;
+		}
+	}
+
+	protected static TestData createTestData(int index)
+	{
+		TestData data = new TestData();
+		data.setName("data" + index);
+		data.setStringValue("Value äöü " + index);
+		data.setIntValue(-index * 1000);
+		data.setLongValue(Long.MAX_VALUE - index);
+		data.setDoubleValue(index * 0.5);
+		data.setBooleanValue(index % 2 == 0);
+		return data;
+	}
+
+	protected static byte[] writeTestData(DefaultCore core, int version, int count) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		try (BinaryDLWriter writer = new BinaryDLWriter(out, core, version)) {
+			for (int i = 0; i < count; ++i) {
+				writer.write(createTestData(i));
+			}
+		}
+
+		return out.toByteArray();
+	}
+
+	protected static void assertTestData(DLModule module, int count)
+	{
+		assertEquals(module.getChildCount(), count);
+
+		for (int i = 0; i < count; ++i) {
+
+			TestData expected = createTestData(i);
+			DLInstance instance = module.getChild(i);
+
+			assertEquals(instance.getName(), expected.getName());
+			assertEquals(instance.getString("stringValue"), expected.getStringValue());
+			assertEquals(instance.getInt("intValue"), expected.getIntValue());
+			assertEquals(instance.getLong("longValue"), expected.getLongValue());
+			assertEquals(instance.getDouble("doubleValue"), expected.getDoubleValue());
+			assertEquals(instance.getBoolean("booleanValue"), expected.isBooleanValue());
+		}
+	}
+
+	@Test
+	public void validRoundTripV2() throws Exception
+	{
+		DefaultCore core = new DefaultCore();
+		core.defineType(TestData.class);
+
+		byte[] data = writeTestData(core, BinaryParsingProcessorV2.VERSION, 10);
+
+		try (BinaryDLReader reader = new BinaryDLReader(ByteBuffer.wrap(data), core)) {
+			DLModule module = reader.readModule();
+			assertEquals(reader.getVersion(), BinaryParsingProcessorV2.VERSION);
+			assertTestData(module, 10);
+		}
+	}
+
+	@Test
+	public void validReadV1() throws Exception
+	{
+		DefaultCore core = new DefaultCore();
+		core.defineType(TestData.class);
+
+		byte[] data = writeTestData(core, BinaryParsingProcessorV1.VERSION, 10);
+
+		try (BinaryDLReader reader = new BinaryDLReader(ByteBuffer.wrap(data), core)) {
+			DLModule module = reader.readModule();
+			assertEquals(reader.getVersion(), BinaryParsingProcessorV1.VERSION);
+			assertEquals(module.getChildCount(), 10);
+			assertEquals(module.getChild(3).getLong("longValue"), Long.MAX_VALUE - 3);
+		}
+	}
+
+	@Test
+	public void validV2SmallerThanV1() throws Exception
+	{
+		DefaultCore core = new DefaultCore();
+		core.defineType(TestData.class);
+
+		byte[] dataV1 = writeTestData(core, BinaryParsingProcessorV1.VERSION, 100);
+		byte[] dataV2 = writeTestData(core, BinaryParsingProcessorV2.VERSION, 100);
+
+		assertTrue(dataV2.length < dataV1.length, "V2 (" + dataV2.length + ") has to be smaller than V1 (" + dataV1.length + ")");
+	}
+
+	@Test
+	public void validVarIntAndZigZag() throws Exception
+	{
+		ByteBuffer buf = ByteBuffer.allocate(64);
+
+		int[] ints = {0, 1, -1, 63, -64, 127, 128, Integer.MAX_VALUE, Integer.MIN_VALUE};
+		long[] longs = {0L, -1L, Long.MAX_VALUE, Long.MIN_VALUE};
+
+		for (int value : ints) {
+			buf.clear();
+			BinaryHelper.putVarInt(buf, BinaryHelper.encodeZigZag(value));
+			buf.flip();
+			assertEquals(BinaryHelper.decodeZigZag(BinaryHelper.getVarInt(buf)), value);
+		}
+
+		for (long value : longs) {
+			buf.clear();
+			BinaryHelper.putVarLong(buf, BinaryHelper.encodeZigZag(value));
+			buf.flip();
+			assertEquals(BinaryHelper.decodeZigZag(BinaryHelper.getVarLong(buf)), value);
+		}
+
+		// small values take 1 byte
+		buf.clear();
+		BinaryHelper.putVarInt(buf, BinaryHelper.encodeZigZag(-64));
+		assertEquals(buf.position(), 1);
+	}
+
+	@Test
+	public void validNestedRoundTrip() throws Exception
+	{
+		DLCore core = new DefaultCore();
+		DLModule module = core.parse("BinaryDLTest.validNestedRoundTrip",
+			"type Child contains Child { String value; Child single; } "
+			+ "type Parent contains Child { String title; Child single; } "
+			+ "Parent p1 { title : \"P1\"; single : Child s1 { value : \"S1\"; single : Child s11 { value : \"S11\"; }; }; "
+			+ "Child c1 { value : \"C1\"; Child c11 { value : \"C11\"; } } "
+			+ "Child { value : \"C2\"; } } "
+			+ "Parent p2 { title : \"P2\"; }"
+		);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (BinaryDLWriter writer = new BinaryDLWriter(out, core)) {
+			writer.write(module);
+		}
+
+		try (BinaryDLReader reader = new BinaryDLReader(ByteBuffer.wrap(out.toByteArray()), core)) {
+
+			// read delivers the top level instances only
+			DLInstance p1 = reader.read();
+			DLInstance p2 = reader.read();
+			assertNull(reader.read());
+
+			assertEquals(DLHelper.toString(p1), DLHelper.toString(module.getChild(0)));
+			assertEquals(DLHelper.toString(p2), DLHelper.toString(module.getChild(1)));
+			assertEquals(p1.getChildCount(), 2);
+			assertEquals(p1.getChild(0).getChildCount(), 1);
+			assertEquals(p1.getInstance("single").getInstance("single").getString("value"), "S11");
+		}
+	}
+
+	@Test
+	public void validArraysAndCollectionsRoundTrip() throws Exception
+	{
+		DLCore core = new DefaultCore();
+		DLModule module = core.parse("BinaryDLTest.validArraysAndCollectionsRoundTrip",
+			"type Child { String value; } "
+			+ "type T { Array<Integer> ints; Array<Double> doubles; Array<String> tags; Array<Child> childs; "
+			+ "List<Integer> list; Set<String> set; } "
+			+ "T t { ints : 1, -2, 3; doubles : 0.5, 1.5; tags : a, b; childs : Child { value : c1; }, Child { value : c2; }; "
+			+ "list : 4, 5; set : x, y; }"
+		);
+
+		DLInstance expected = module.getChild(0);
+
+		// primitive vectors are written packed regardless of their size
+		int[] vector = new int[10000];
+		for (int i = 0; i < vector.length; ++i) {
+			vector[i] = i * 31;
+		}
+		expected.set("vector", vector);
+		expected.set("nested", new Object[]{new long[]{1L, 2L}, new Object[]{"n1", 2}});
+
+		for (int version : new int[]{BinaryParsingProcessorV1.VERSION, BinaryParsingProcessorV2.VERSION}) {
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try (BinaryDLWriter writer = new BinaryDLWriter(out, core, version)) {
+				writer.write(expected);
+			}
+
+			try (BinaryDLReader reader = new BinaryDLReader(ByteBuffer.wrap(out.toByteArray()), core)) {
+
+				DLInstance t = reader.read();
+
+				assertEquals((Object[]) t.get("ints"), new Integer[]{1, -2, 3});
+				assertEquals((Object[]) t.get("doubles"), new Double[]{0.5, 1.5});
+				assertEquals((Object[]) t.get("tags"), new Object[]{"a", "b"});
+				assertEquals(((Object[]) t.get("childs")).length, 2);
+				assertEquals(((DLInstance) ((Object[]) t.get("childs"))[1]).getString("value"), "c2");
+				assertEquals(t.get("list"), expected.get("list"));
+				assertEquals(t.get("set"), expected.get("set"));
+				assertEquals((int[]) t.get("vector"), vector);
+
+				Object[] nested = (Object[]) t.get("nested");
+				assertEquals((long[]) nested[0], new long[]{1L, 2L});
+				assertEquals((Object[]) nested[1], new Object[]{"n1", 2});
+			}
+		}
+	}
+
+	@Test
+	public void validTypeDefinitionsBootstrapFreshCore() throws Exception
+	{
+		DLCore core = new DefaultCore();
+		DLModule module = core.parse("BinaryDLTest.validTypeDefinitionsBootstrapFreshCore",
+			"enum Color { red, green, blue } "
+			+ "abstract type Shape { String label @required; Color color : red; } "
+			+ "type Circle extends Shape { Double radius @greaterEqual(0.5) : 1.5; Array<Integer> tags; } "
+			+ "final dynamic type Group contains Shape { Integer count : 3; } "
+			+ "Group g { count : 1; Circle c1 { label : a; color : green; radius : 2.0; tags : 1, 2; } }"
+		);
+
+		for (int version : new int[]{BinaryParsingProcessorV1.VERSION, BinaryParsingProcessorV2.VERSION}) {
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try (BinaryDLWriter writer = new BinaryDLWriter(out, core, version)) {
+				writer.write(new LogPragma("binaryLog"));
+				writer.write(module);
+				writer.writeAlias("Kreis", "Circle");
+			}
+
+			// the fresh core only knows the base types and has to define the types from the stream
+			DLCore freshCore = new DefaultCore();
+			try (BinaryDLReader reader = new BinaryDLReader(ByteBuffer.wrap(out.toByteArray()), freshCore)) {
+
+				DLModule result = reader.readModule();
+
+				assertTrue(freshCore.hasPragma("binaryLog"));
+
+				DLType shape = freshCore.getType("Shape").orElseThrow();
+				DLType circle = freshCore.getType("Circle").orElseThrow();
+				DLType group = freshCore.getType("Group").orElseThrow();
+				DLEnum color = (DLEnum) freshCore.getType("Color").orElseThrow();
+
+				assertTrue(result.getDefinedTypes().containsAll(List.of(shape, circle, group, color)));
+				assertTrue(shape.isAbstract());
+				assertTrue(group.isFinal());
+				assertTrue(group.isDynamic());
+				assertTrue(circle.isDerivedTypeOf(shape));
+				assertTrue(group.getContainedTypes().contains(shape));
+				assertSame(freshCore.getType("Kreis").orElseThrow(), circle);
+				assertEquals(color.getValues(), List.of("red", "green", "blue"));
+				assertTrue(shape.getAttribute("label").orElseThrow().hasAnnotation("required"));
+				assertEquals(shape.getAttribute("color").orElseThrow().getDefaultValue(), "red");
+				assertEquals(circle.getAttribute("radius").orElseThrow().getDefaultValue(), 1.5);
+				assertTrue(circle.getAttribute("radius").orElseThrow().hasAnnotation("greaterEqual"));
+				assertEquals(circle.getAttribute("tags").orElseThrow().getType().getCanonicalName(), "Array<Integer>");
+				assertEquals(group.getAttribute("count").orElseThrow().getDefaultValue(), 3);
+
+				assertEquals(DLHelper.toString(result.getChild(0)), DLHelper.toString(module.getChild(0)));
+			}
+
+			// reading the module into the core it was written from keeps the defined types
+			try (BinaryDLReader reader = new BinaryDLReader(ByteBuffer.wrap(out.toByteArray()), core)) {
+				assertEquals(reader.readModule().getChildCount(), 1);
+			}
+		}
+	}
+
+	@Test
+	public void invalidTypeDefinedDifferentlyInCore() throws Exception
+	{
+		DLCore core = new DefaultCore();
+		DLModule module = core.parse("BinaryDLTest.invalidTypeDefinedDifferentlyInCore",
+			"enum Color { red, green } "
+			+ "type Base { String id; } "
+			+ "type T extends Base { String name; Color color; } "
+			+ "T t { name : a; color : green; }"
+		);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (BinaryDLWriter writer = new BinaryDLWriter(out, core, BinaryParsingProcessorV2.VERSION)) {
+			writer.write(module);
+		}
+
+		// the same definition is reused
+		DLCore sameCore = new DefaultCore();
+		sameCore.parse("BinaryDLTest.invalidTypeDefinedDifferentlyInCore.same",
+			"enum Color { red, green } type Base { String id; } type T extends Base { Color color; String name; }");
+		try (BinaryDLReader reader = new BinaryDLReader(ByteBuffer.wrap(out.toByteArray()), sameCore)) {
+			assertEquals(reader.readModule().getChild(0).getString("name"), "a");
+		}
+
+		// each differing definition is rejected
+		for (String definition : new String[]{
+			"enum Color { red, green } type Base { String id; } type T extends Base { Integer name; Color color; }",
+			"enum Color { red, green } type Base { String id; } type T extends Base { String title; Color color; }",
+			"enum Color { red, green } type Base { String id; } type T { String name; Color color; }",
+			"enum Color { red, green } type Base { String id; } abstract type T extends Base { String name; Color color; }",
+			"enum Color { red, blue } type Base { String id; } type T extends Base { String name; Color color; }",
+			"type Color { String id; } type Base { String id; } type T extends Base { String name; Color color; }"
+		}) {
+			DLCore otherCore = new DefaultCore();
+			otherCore.parse("BinaryDLTest.invalidTypeDefinedDifferentlyInCore.other", definition);
+
+			try (BinaryDLReader reader = new BinaryDLReader(ByteBuffer.wrap(out.toByteArray()), otherCore)) {
+				assertThrows(IOException.class, reader::readModule);
+			}
+		}
+	}
+
+	@Test
+	public void validBlockCompressedRoundTrip() throws Exception
+	{
+		DefaultCore core = new DefaultCore();
+		core.defineType(TestData.class);
+
+		Path file = Files.createTempFile("BinaryDLTest", ".dla");
+
+		try {
+			// small blocks to get a lot of them
+			try (BinaryDLWriter writer = new BinaryDLWriter(file, core, true, BinaryParsingProcessorV2.VERSION, 256)) {
+				for (int i = 0; i < 1000; ++i) {
+					writer.write(createTestData(i));
+				}
+			}
+
+			assertTrue(BlockInflater.isBlockContainer(file));
+			assertEquals(DLHelper.recognizeFileType(file), DLFileType.BINCOMPRESSED);
+
+			try (BlockInflater blocks = new BlockInflater(file, ForkJoinPool.commonPool(), 4)) {
+				assertTrue(blocks.getBlockCount() > 10, "Block count " + blocks.getBlockCount() + " has to be > 10");
+
+				// blocks can be read in any order
+				ByteBuffer first = blocks.readBlock(0);
+				assertEquals(first.getInt(), DLHelper.BIN_SIGNATURE);
+				assertTrue(blocks.readBlock(blocks.getBlockCount() - 1).hasRemaining());
+			}
+
+			try (BinaryDLReader reader = new BinaryDLReader(file, core)) {
+				assertTestData(reader.readModule(), 1000);
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void validLargeStringAndBinaryValues() throws Exception
+	{
+		DLCore core = new DefaultCore();
+		DLModule module = core.parse("BinaryDLTest.validLargeStringAndBinaryValues", "type T; T t;");
+		DLInstance expected = module.getChild(0);
+
+		String text = "äöü€ text ".repeat(20000);
+		byte[] blob = new byte[100000];
+		for (int i = 0; i < blob.length; ++i) {
+			blob[i] = (byte) i;
+		}
+		expected.set("text", text);
+		expected.set("blob", blob);
+
+		for (int version : new int[]{BinaryParsingProcessorV1.VERSION, BinaryParsingProcessorV2.VERSION}) {
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try (BinaryDLWriter writer = new BinaryDLWriter(out, core, version)) {
+				writer.write(expected);
+			}
+
+			// read from heap and direct buffers
+			ByteBuffer direct = ByteBuffer.allocateDirect(out.size());
+			direct.put(out.toByteArray()).flip();
+
+			for (ByteBuffer data : new ByteBuffer[]{ByteBuffer.wrap(out.toByteArray()), direct}) {
+				try (BinaryDLReader reader = new BinaryDLReader(data, core)) {
+
+					DLInstance t = reader.read();
+
+					assertEquals(t.getString("text"), text);
+
+					// binaries are read only slices of the source
+					ByteBuffer value = (ByteBuffer) t.get("blob");
+					assertTrue(value.isReadOnly());
+					assertEquals(value, ByteBuffer.wrap(blob));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void validReadInMappedWindows() throws Exception
+	{
+		DefaultCore core = new DefaultCore();
+		core.defineType(TestData.class);
+
+		Path file = Files.createTempFile("BinaryDLTest", ".dlb");
+
+		try {
+			// values larger than the window have to be read too
+			TestData large = createTestData(20000);
+			large.setStringValue("large ".repeat(100000));
+
+			try (BinaryDLWriter writer = new BinaryDLWriter(file, core, false)) {
+				for (int i = 0; i < 20000; ++i) {
+					writer.write(createTestData(i));
+				}
+				writer.write(large);
+			}
+
+			assertTrue(Files.size(file) > BinaryDLReader.LOAD_TOTAL_FILE_MAX_SIZE);
+
+			try (BinaryDLReader reader = new BinaryDLReader(file, core, 4096)) {
+				DLModule module = reader.readModule();
+				assertEquals(module.getChildCount(), 20001);
+				assertEquals(module.getChild(12345).getString("stringValue"), createTestData(12345).getStringValue());
+				assertEquals(module.getChild(19999).getLong("longValue"), createTestData(19999).getLongValue());
+				assertEquals(module.getChild(20000).getString("stringValue"), large.getStringValue());
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	protected static void assertRandomAccess(BinaryDLReader reader, DLCore core) throws Exception
+	{
+		assertTrue(reader.hasIndex());
+
+		assertEquals(reader.readInstance("data777").getLong("longValue"), createTestData(777).getLongValue());
+		assertEquals(reader.readInstance("data3").getString("stringValue"), createTestData(3).getStringValue());
+		assertNull(reader.readInstance("notContained"));
+
+		List<DLInstance> instances = reader.readInstances(core.getType(TestData.class).orElseThrow());
+		assertEquals(instances.size(), 1000);
+		assertEquals(instances.get(999).getName(), "data999");
+
+		// sequential reading is not affected by random access
+		assertTestData(reader.readModule(), 1000);
+	}
+
+	@Test
+	public void validIndexedRandomAccess() throws Exception
+	{
+		DefaultCore core = new DefaultCore();
+		core.defineType(TestData.class);
+
+		// stream
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (BinaryDLWriter writer = new BinaryDLWriter(out, core)) {
+			writer.setIndexed(true);
+			for (int i = 0; i < 1000; ++i) {
+				writer.write(createTestData(i));
+			}
+		}
+
+		try (BinaryDLReader reader = new BinaryDLReader(ByteBuffer.wrap(out.toByteArray()), core)) {
+			assertRandomAccess(reader, core);
+		}
+
+		// files in mapped windows and block compressed
+		for (boolean compress : new boolean[]{false, true}) {
+
+			Path file = Files.createTempFile("BinaryDLTest", compress ? ".dla" : ".dlb");
+
+			try {
+				try (BinaryDLWriter writer = new BinaryDLWriter(file, core, compress, BinaryParsingProcessorV1.VERSION, 4096)) {
+					writer.setIndexed(true);
+					for (int i = 0; i < 1000; ++i) {
+						writer.write(createTestData(i));
+					}
+				}
+
+				try (BinaryDLReader reader = new BinaryDLReader(file, core, 4096)) {
+					assertRandomAccess(reader, core);
+				}
+			} finally {
+				Files.delete(file);
+			}
+		}
+	}
+
+	@Test
+	public void validRandomAccessDefinesTypesInFreshCore() throws Exception
+	{
+		DLCore core = new DefaultCore();
+		DLModule module = core.parse("BinaryDLTest.validRandomAccessDefinesTypesInFreshCore",
+			"enum Color { red, green } "
+			+ "type T { String name; Color color : red; } "
+			+ "type U extends T; "
+			+ "T t1 { name : first; } "
+			+ "U t2 { name : second; color : green; }"
+		);
+
+		for (int version : new int[]{BinaryParsingProcessorV1.VERSION, BinaryParsingProcessorV2.VERSION}) {
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try (BinaryDLWriter writer = new BinaryDLWriter(out, core, version)) {
+				writer.setIndexed(true);
+				writer.write(module);
+				writer.writeAlias("Typ", "T");
+			}
+
+			// instances are read randomly without reading the stream before
+			DLCore freshCore = new DefaultCore();
+			try (BinaryDLReader reader = new BinaryDLReader(ByteBuffer.wrap(out.toByteArray()), freshCore)) {
+
+				DLInstance t2 = reader.readInstance("t2");
+				assertEquals(t2.getType().getName(), "U");
+				assertEquals(t2.getString("name"), "second");
+				assertEquals(t2.getString("color"), "green");
+
+				DLType t = freshCore.getType("T").orElseThrow();
+				assertSame(freshCore.getType("Typ").orElseThrow(), t);
+
+				List<DLInstance> instances = reader.readInstances(t);
+				assertEquals(instances.size(), 2);
+				assertEquals(instances.get(0).getString("name"), "first");
+			}
+
+			// readInstances works as first access too
+			DLCore otherCore = new DefaultCore();
+			try (BinaryDLReader reader = new BinaryDLReader(ByteBuffer.wrap(out.toByteArray()), otherCore)) {
+				reader.readDefinitions();
+				assertEquals(reader.readInstances(otherCore.getType("U").orElseThrow()).size(), 1);
+				assertEquals(reader.readModule().getChildCount(), 2);
+			}
+		}
+	}
+
+	protected static void writeChannelTestData(BinaryDLWriter writer, DLModule module, DLInstance large) throws IOException
+	{
+		writer.setIndexed(true);
+		writer.write(new LogPragma("binaryLog"));
+		writer.write(module);
+		for (int i = 0; i < 100; ++i) {
+			writer.write(createTestData(i));
+		}
+		writer.write(large);
+	}
+
+	@Test
+	public void validChannelWriterMatchesV1() throws Exception
+	{
+		DefaultCore core = new DefaultCore();
+		core.defineType(TestData.class);
+		DLModule module = core.parse("BinaryDLTest.validChannelWriterMatchesV1",
+			"enum Color { red, green } "
+			+ "type Shape { String label : \"ä€\ud83d\ude00\"; Color color : red; Double radius @greaterEqual(0.5) : 1.5; } "
+			+ "type T; Shape s { label : x; } T t;"
+		);
+
+		DLInstance large = module.getChild(1);
+		large.set("text", "äöü€ text ".repeat(2000));
+		large.set("blob", new byte[20000]);
+		large.set("ints", new int[]{1, 2, 3});
+		large.set("doubles", new double[5000]);
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		try (BinaryDLWriter writer = new BinaryDLWriter(expected, core, BinaryParsingProcessorV1.VERSION)) {
+			writeChannelTestData(writer, module, large);
+		}
+
+		// plain channel with a tiny buffer
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (BinaryDLWriter writer = new BinaryDLWriter(Channels.newChannel(out), core, ChannelParsingProcessorV1.MIN_BUFFER_SIZE)) {
+			writeChannelTestData(writer, module, large);
+		}
+		assertEquals(out.toByteArray(), expected.toByteArray());
+
+		// gathering file channel
+		Path file = Files.createTempFile("BinaryDLTest", ".dlb");
+
+		try {
+			try (BinaryDLWriter writer = new BinaryDLWriter(FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), core, 4096)) {
+				writeChannelTestData(writer, module, large);
+			}
+			assertEquals(Files.readAllBytes(file), expected.toByteArray());
+
+			try (BinaryDLReader reader = new BinaryDLReader(file, core, 4096)) {
+				assertEquals(reader.readInstance("data42").getInt("intValue"), -42000);
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	public enum Level
+	{
+		LOW, HIGH
+	}
+
+	@Test
+	public void validTypedValuesRoundTrip() throws Exception
+	{
+		DLCore core = new DefaultCore();
+		core.defineType(core.createEnum(Level.class));
+		DLModule module = core.parse("BinaryDLTest.validTypedValuesRoundTrip",
+			"enum Color { red, green, blue } type T { Color color; } T t { color : blue; }"
+		);
+
+		DLInstance expected = module.getChild(0);
+		UUID uuid = UUID.randomUUID();
+		Date date = new Date(1234567890123L);
+		Path path = Path.of("dir", "file.dl");
+		expected.set("byteValue", (byte) -5);
+		expected.set("shortValue", (short) -30000);
+		expected.set("charValue", 'ä');
+		expected.set("uuid", uuid);
+		expected.set("date", date);
+		expected.set("path", path);
+		expected.set("level", Level.HIGH);
+
+		for (int version : new int[]{BinaryParsingProcessorV1.VERSION, BinaryParsingProcessorV2.VERSION}) {
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try (BinaryDLWriter writer = new BinaryDLWriter(out, core, version)) {
+				writer.write(expected.getType());
+				writer.write(expected);
+			}
+
+			// Level is not used in a type definition and gets defined in the stream before its first value
+			DLCore freshCore = new DefaultCore();
+			try (BinaryDLReader reader = new BinaryDLReader(ByteBuffer.wrap(out.toByteArray()), freshCore)) {
+
+				DLInstance t = reader.read();
+
+				assertEquals(t.get("color"), "blue");
+				assertEquals(t.get("byteValue"), (byte) -5);
+				assertEquals(t.get("shortValue"), (short) -30000);
+				assertEquals(t.get("charValue"), 'ä');
+				assertEquals(t.get("uuid"), uuid);
+				assertEquals(t.get("date"), date);
+				assertEquals(t.get("path"), path);
+				assertSame(t.get("level"), Level.HIGH);
+			}
+		}
+	}
+
+	@Test
+	public void validValueDictionary() throws Exception
+	{
+		DefaultCore core = new DefaultCore();
+		core.defineType(TestData.class);
+
+		byte[][] results = new byte[2][];
+
+		for (boolean dictionary : new boolean[]{false, true}) {
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try (BinaryDLWriter writer = new BinaryDLWriter(out, core)) {
+				writer.setValueDictionary(dictionary);
+				writer.setIndexed(true);
+				for (int i = 0; i < 100; ++i) {
+					TestData data = createTestData(i);
+					data.setStringValue("status " + (i % 3));
+					writer.write(data);
+				}
+			}
+			results[dictionary ? 1 : 0] = out.toByteArray();
+
+			try (BinaryDLReader reader = new BinaryDLReader(ByteBuffer.wrap(out.toByteArray()), core)) {
+
+				DLModule module = reader.readModule();
+
+				assertEquals(module.getChild(4).getString("stringValue"), "status 1");
+				assertEquals(module.getChild(7).getString("stringValue"), "status 1");
+
+				// recurring values share one instance
+				if (dictionary) {
+					assertSame(module.getChild(4).getString("stringValue"), module.getChild(7).getString("stringValue"));
+				}
+			}
+
+			try (BinaryDLReader reader = new BinaryDLReader(ByteBuffer.wrap(out.toByteArray()), core)) {
+				assertEquals(reader.readInstance("data50").getString("stringValue"), "status 2");
+			}
+		}
+
+		assertTrue(results[1].length < results[0].length, "Dictionary size " + results[1].length + " has to be < " + results[0].length);
+	}
+
+	@Test
+	public void validStreamingRead() throws Exception
+	{
+		DefaultCore core = new DefaultCore();
+		core.defineType(TestData.class);
+
+		for (int version : new int[]{BinaryParsingProcessorV1.VERSION, BinaryParsingProcessorV2.VERSION}) {
+
+			PipedInputStream pipeIn = new PipedInputStream(256);
+			PipedOutputStream pipeOut = new PipedOutputStream(pipeIn);
+
+			// the payload is never buffered completely
+			Thread producer = new Thread(() -> {
+				try (BinaryDLWriter writer = new BinaryDLWriter(pipeOut, core, version)) {
+					for (int i = 0; i < 5000; ++i) {
+						TestData data = createTestData(i);
+						// values larger than the stream buffer
+						if (i % 1000 == 0) {
+							data.setStringValue("large äöü ".repeat(100));
+						}
+						writer.write(data);
+					}
+				} catch (IOException ex) {
+					throw new RuntimeException(ex);
+				}
+			});
+			producer.start();
+
+			try (BinaryDLReader reader = new BinaryDLReader(Channels.newChannel(pipeIn), core, BinaryDLReader.MAX_OPCODE_HEADER_SIZE)) {
+
+				int count = 0;
+				while (reader.ready()) {
+					DLInstance instance = reader.read();
+					assertEquals(instance.getName(), "data" + count);
+					assertEquals(instance.getLong("longValue"), Long.MAX_VALUE - count);
+					if (count % 1000 == 0) {
+						assertEquals(instance.getString("stringValue"), "large äöü ".repeat(100));
+					}
+					count++;
+				}
+
+				assertEquals(count, 5000);
+				assertFalse(reader.isRetainInstances());
+			}
+
+			producer.join();
+		}
+
+		// input streams can read complete modules
+		try (BinaryDLReader reader = new BinaryDLReader(new ByteArrayInputStream(writeTestData(core, BinaryParsingProcessorV2.VERSION, 100)), core)) {
+			assertTestData(reader.readModule(), 100);
+		}
+	}
+
+	@Test
+	public void validColumnBlocks() throws Exception
+	{
+		DefaultCore core = new DefaultCore();
+		core.defineType(TestData.class);
+
+		for (int version : new int[]{BinaryParsingProcessorV1.VERSION, BinaryParsingProcessorV2.VERSION}) {
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try (BinaryDLWriter writer = new BinaryDLWriter(out, core, version)) {
+				writer.setIndexed(true);
+				writer.setColumnBlockSize(256);
+				for (int i = 0; i < 1000; ++i) {
+					writer.write(createTestData(i));
+				}
+			}
+			byte[] data = out.toByteArray();
+
+			try (BinaryDLReader reader = new BinaryDLReader(ByteBuffer.wrap(data), core)) {
+				assertRandomAccess(reader, core);
+			}
+
+			// sequential reading returns every row of the blocks
+			try (BinaryDLReader reader = new BinaryDLReader(ByteBuffer.wrap(data), core)) {
+				int count = 0;
+				while (reader.ready()) {
+					DLInstance instance = reader.read();
+					assertEquals(instance.getName(), createTestData(count).getName());
+					count++;
+				}
+				assertEquals(count, 1000);
+				assertNull(reader.read());
+			}
+
+			// aggregate columns without creating instances
+			try (BinaryDLReader reader = new BinaryDLReader(ByteBuffer.wrap(data), core)) {
+
+				long expectedSum = 0;
+				for (int i = 0; i < 1000; ++i) {
+					expectedSum += createTestData(i).getIntValue();
+				}
+
+				int count = 0;
+				long sum = 0;
+				BinaryColumnBlock block;
+				while ((block = reader.readColumnBlock()) != null) {
+					assertEquals(block.getTypeName(), core.getType(TestData.class).orElseThrow().getName());
+					int column = block.findColumn("intValue");
+					count += block.count(column);
+					sum += block.sumLong(column);
+				}
+
+				assertEquals(count, 1000);
+				assertEquals(sum, expectedSum);
+			}
+		}
+
+		// long columns are summed exactly beyond the precision of double
+		BinaryColumnBlock.Builder builder = new BinaryColumnBlock.Builder(3);
+		builder.addColumn(1, BinaryColumnBlock.KIND_LONG, new Object[]{(1L << 53), 1L, 1L});
+		BinaryColumnBlock block = new BinaryColumnBlock(builder.build());
+		assertEquals(block.sumLong(0), (1L << 53) + 2L);
+	}
+
+	@Test
+	public void validCursor() throws Exception
+	{
+		DefaultCore core = new DefaultCore();
+		core.defineType(TestData.class);
+		DLModule module = core.parse("BinaryDLTest.validCursor",
+			"type Label { String text; } "
+			+ "type Point contains Label { Integer x; Integer y; } "
+			+ "Point p1 { x : 1; y : 2; } "
+			+ "Point p2 { x : 3; y : 4; Label inner { text : second; } }"
+		);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (BinaryDLWriter writer = new BinaryDLWriter(out, core)) {
+			for (int i = 0; i < 1000; ++i) {
+				writer.write(createTestData(i));
+			}
+			writer.write(module);
+		}
+
+		try (BinaryDLReader reader = new BinaryDLReader(ByteBuffer.wrap(out.toByteArray()), core)) {
+
+			BinaryDLCursor cursor = new BinaryDLCursor(reader, core);
+
+			List<DLInstance> kept = new ArrayList<>();
+			int count = 0;
+			while (cursor.next() && cursor.getName().startsWith("data")) {
+				if (cursor.getInt(cursor.getSymbolId("intValue")) <= -995000) {
+					kept.add(cursor.materialize());
+				}
+				count++;
+			}
+			assertEquals(count, 1000);
+			assertEquals(kept.size(), 5);
+			assertEquals(kept.get(0).getName(), "data995");
+			assertEquals(kept.get(0).getString("stringValue"), createTestData(995).getStringValue());
+			assertEquals(kept.get(4).getLong("longValue"), createTestData(999).getLongValue());
+
+			// the loop stopped on p1
+			assertEquals(cursor.getTypeName(), "Point");
+			assertEquals(cursor.getInt(cursor.getSymbolId("y")), 2);
+			assertFalse(cursor.has(cursor.getSymbolId("intValue")));
+
+			// nested content gets materialized while reading
+			assertTrue(cursor.next());
+			assertEquals(cursor.getName(), "p2");
+			assertEquals(cursor.getDouble(cursor.getSymbolId("x")), 3.0);
+			DLInstance p2 = cursor.materialize();
+			assertEquals(p2.getInt("y"), 4);
+			assertEquals(p2.getChild("inner").orElseThrow().getString("text"), "second");
+
+			assertFalse(cursor.next());
+		}
+	}
+
+	@Test(expectedExceptions = IOException.class)
+	public void invalidRandomAccessOnStream() throws Exception
+	{
+		DefaultCore core = new DefaultCore();
+		core.defineType(TestData.class);
+
+		try (BinaryDLReader reader = new BinaryDLReader(new ByteArrayInputStream(writeTestData(core, BinaryParsingProcessorV2.VERSION, 10)), core)) {
+			reader.readInstance("data1");
+		}
+	}
+
+	@Test(expectedExceptions = IOException.class)
+	public void invalidRandomAccessWithoutIndex() throws Exception
+	{
+		DefaultCore core = new DefaultCore();
+		core.defineType(TestData.class);
+
+		try (BinaryDLReader reader = new BinaryDLReader(ByteBuffer.wrap(writeTestData(core, BinaryParsingProcessorV2.VERSION, 10)), core)) {
+			assertFalse(reader.hasIndex());
+			reader.readInstance("data1");
+		}
+	}
+
+	@Test(expectedExceptions = IOException.class)
+	public void invalidUnsupportedVersion() throws Exception
+	{
+		DefaultCore core = new DefaultCore();
+		new BinaryDLWriter(new ByteArrayOutputStream(), core, 42);
+	}
+
+	/**
+	 * Set by the static initializer of TrackedPragma - is kept outside to not initialize the class when read
+	 */
+	protected static volatile boolean trackedPragmaInitialized;
+
+	public static class TrackedPragma extends AbstractDLPragma
+	{
+
+		static {
+			trackedPragmaInitialized = true;
+		}
+
+		public TrackedPragma()
+		{
+			super("tracked");
+		}
+
+		@Override
+		public void doPragma(DLCore core, Object... parameters)
+		{
+			// nothing to do
+		}
+	}
+
+	/**
+	 * Writes an extern definition naming TrackedPragma without initializing it
+	 */
+	protected static byte[] writeExternDefinition(DefaultCore core, String kind) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		try (BinaryDLWriter writer = new BinaryDLWriter(out, core)
+		{
+			{
+				int name = getOrMapSymbol("tracked");
+				int className = getOrMapSymbol(BinaryDLTest.class.getName() + "$TrackedPragma");
+				DLParsingProcessor target = processor;
+
+				if (kind.equals("type")) {
+					target.defineExternType(name, className);
+				} else if (kind.equals("annotation")) {
+					target.defineExternAnnotation(name, className);
+				} else {
+					target.defineExternPragma(name, className);
+				}
+			}
+		}) {
+			// just the definition
+		}
+
+		return out.toByteArray();
+	}
+
+	@Test
+	public void invalidExternDefinitionsInLockedCoreDoNotLoadClasses() throws Exception
+	{
+		for (String kind : List.of("type", "annotation", "pragma")) {
+
+			DefaultCore core = new DefaultCore();
+			core.setAllowDefineTypes(false);
+			core.setAllowDefineAnnotationsFactories(false);
+			core.setAllowDefinePragmas(false);
+
+			try (BinaryDLReader reader = new BinaryDLReader(ByteBuffer.wrap(writeExternDefinition(core, kind)), core)) {
+				reader.readModule();
+				fail("Extern " + kind + " may not be defined in locked core");
+			} catch (IOException ex) {
+				// expected
+			}
+
+			assertFalse(trackedPragmaInitialized, "Class of extern " + kind + " was initialized");
+		}
+
+		// a class of the wrong kind is rejected before it is instantiated
+		DefaultCore core = new DefaultCore();
+		try (BinaryDLReader reader = new BinaryDLReader(ByteBuffer.wrap(writeExternDefinition(core, "annotation")), core)) {
+			reader.readModule();
+			fail("TrackedPragma is no annotation factory");
+		} catch (IOException ex) {
+			// expected
+		}
+		assertFalse(core.hasAnnotationFactory("tracked"));
+	}
+}
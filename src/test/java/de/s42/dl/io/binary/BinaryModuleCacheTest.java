@@ -0,0 +1,187 @@
+// <editor-fold desc="The MIT License" defaultstate="collapsed">
+/*
+ * The MIT License
+ * 
+ * Copyright 2022 Studio 42 GmbH ( https://www.s42m.de ).
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+//</editor-fold>
+package de.s42.dl.io.binary;
+
+import de.s42.dl.DLInstance;
+import de.s42.dl.DLModule;
+import de.s42.dl.DLType;
+import de.s42.dl.core.DefaultCore;
+import de.s42.dl.core.resolvers.FileCoreResolver;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Benjamin Schiller
+ */
+public class BinaryModuleCacheTest
+{
+
+	protected final static String DATA
+		= "enum Mode { fast, safe } "
+		+ "type Base { String name @required; } "
+		+ "type Lib extends Base { Mode mode : safe; Integer level @greaterEqual(1) : 2; } "
+		+ "alias Library Lib; "
+		+ "Library lib { name : core; level : 3; } "
+		+ "Lib other { name : other; }";
+
+	protected static DefaultCore createCore(BinaryModuleCache cache)
+	{
+		DefaultCore core = new DefaultCore();
+		core.addResolverFirst(new FileCoreResolver(cache));
+		return core;
+	}
+
+	protected static Path createFile(Path directory, String name, String data) throws IOException
+	{
+		Path file = directory.resolve(name);
+		Files.writeString(file, data);
+		return file;
+	}
+
+	protected static void delete(Path directory) throws IOException
+	{
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	@Test
+	public void validSecondParseIsLoadedFromCache() throws Exception
+	{
+		Path directory = Files.createTempDirectory("BinaryModuleCacheTest");
+		try {
+			BinaryModuleCache cache = new BinaryModuleCache(directory.resolve("cache"));
+			Path file = createFile(directory, "module.dl", DATA);
+
+			DLModule parsed = createCore(cache).parse(file.toString());
+			assertEquals(parsed.getChildCount(), 2);
+			assertEquals(cache.getEntries().size(), 1);
+
+			// A fresh core has to be loaded from the cache as parsing fails
+			DefaultCore core = new DefaultCore();
+			DLModule module = cache.parse(core, "cached", file, () -> {
+				throw new AssertionError("Module was parsed instead of loaded from cache");
+			});
+
+			assertEquals(module.getName(), "cached");
+			DLType lib = core.getType("Lib").orElseThrow();
+
+			// the defined types are the same as when parsed
+			assertEquals(module.getDefinedTypes().toString(), parsed.getDefinedTypes().toString());
+			assertTrue(module.getDefinedTypes().contains(lib));
+			assertSame(core.getType("Library").orElseThrow(), lib);
+			assertTrue(lib.getAttribute("level").orElseThrow().hasAnnotation("greaterEqual"));
+
+			DLInstance instance = module.getChild("lib").orElseThrow();
+			assertSame(instance.getType(), lib);
+			assertEquals(instance.getString("name"), "core");
+			assertEquals(instance.getInt("level"), 3);
+			assertEquals(module.getChild("other").orElseThrow().getString("name"), "other");
+
+			// The resolver loads the same module from the cache
+			DLModule resolved = createCore(cache).parse(file.toString());
+			assertEquals(resolved.getName(), parsed.getName());
+			assertEquals(resolved.getChildCount(), 2);
+		} finally {
+			delete(directory);
+		}
+	}
+
+	@Test
+	public void validChangedContentGetsNewEntry() throws Exception
+	{
+		Path directory = Files.createTempDirectory("BinaryModuleCacheTest");
+		try {
+			BinaryModuleCache cache = new BinaryModuleCache(directory.resolve("cache"));
+			Path file = createFile(directory, "module.dl", DATA);
+
+			createCore(cache).parse(file.toString());
+
+			Files.writeString(file, DATA.replace("level : 3", "level : 4"));
+			DLModule module = createCore(cache).parse(file.toString());
+
+			assertEquals(module.getChild("lib").orElseThrow().getInt("level"), 4);
+			assertEquals(cache.getEntries().size(), 2);
+
+			cache.clear();
+			assertTrue(cache.getEntries().isEmpty());
+		} finally {
+			delete(directory);
+		}
+	}
+
+	@Test
+	public void validRequireAndPragmaAreNotCached() throws Exception
+	{
+		Path directory = Files.createTempDirectory("BinaryModuleCacheTest");
+		try {
+			BinaryModuleCache cache = new BinaryModuleCache(directory.resolve("cache"));
+			Path required = createFile(directory, "required.dl", "type T { Integer x; }");
+			Path file = createFile(directory, "module.dl", "require \"" + required.getFileName() + "\"; T t { x : 1; }");
+
+			DLModule module = createCore(cache).parse(file.toString());
+
+			assertEquals(module.getChild("t").orElseThrow().getInt("x"), 1);
+
+			// Just the required module is cached
+			assertEquals(cache.getEntries().size(), 1);
+		} finally {
+			delete(directory);
+		}
+	}
+
+	@Test
+	public void validLimitsEvictLeastRecentlyUsed() throws Exception
+	{
+		Path directory = Files.createTempDirectory("BinaryModuleCacheTest");
+		try {
+			BinaryModuleCache cache = new BinaryModuleCache(directory.resolve("cache"), BinaryModuleCache.DEFAULT_MAX_SIZE, 2);
+
+			for (int i = 0; i < 4; ++i) {
+				Path file = createFile(directory, "module" + i + ".dl", "type T { Integer x; } T t { x : " + i + "; }");
+				createCore(cache).parse(file.toString());
+				assertTrue(cache.getEntries().size() <= 2);
+			}
+
+			assertEquals(cache.getEntries().size(), 2);
+
+			// An entry larger than the size limit is not kept
+			BinaryModuleCache small = new BinaryModuleCache(directory.resolve("small"), 16, 2);
+			createCore(small).parse(createFile(directory, "large.dl", DATA).toString());
+			assertTrue(small.getEntries().isEmpty());
+		} finally {
+			delete(directory);
+		}
+	}
+}
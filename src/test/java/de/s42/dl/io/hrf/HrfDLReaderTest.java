@@ -0,0 +1,118 @@
+// <editor-fold desc="The MIT License" defaultstate="collapsed">
+/*
+ * The MIT License
+ * 
+ * Copyright 2022 Studio 42 GmbH ( https://www.s42m.de ).
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+//</editor-fold>
+package de.s42.dl.io.hrf;
+
+import de.s42.dl.DLInstance;
+import de.s42.dl.core.DefaultCore;
+import de.s42.dl.exceptions.ParserException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Benjamin Schiller
+ */
+public class HrfDLReaderTest
+{
+
+	protected final static String DATA
+		= "type Point { Integer x; } "
+		+ "Point p1 { x : 1; } "
+		+ "Point p2 { x : 2; } "
+		+ "Point p3 { x : 3; } ";
+
+	protected static Path createFile(String data) throws Exception
+	{
+		Path file = Files.createTempFile("HrfDLReaderTest", ".dl");
+		Files.writeString(file, data);
+		return file;
+	}
+
+	@Test
+	public void validReadIncrementally() throws Exception
+	{
+		Path file = createFile(DATA);
+
+		try (HrfDLReader reader = new HrfDLReader(file, new DefaultCore())) {
+
+			int x = 0;
+			while (reader.ready()) {
+				DLInstance instance = reader.read();
+				x++;
+				assertEquals(instance.getInt("x"), x);
+
+				// The file is just parsed up to the instance read
+				assertEquals(reader.module.getChildCount(), x);
+			}
+
+			assertEquals(x, 3);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void validReadBeforeSyntaxError() throws Exception
+	{
+		Path file = createFile(DATA + "Point p4 { x : 4 }");
+
+		try (HrfDLReader reader = new HrfDLReader(file, new DefaultCore())) {
+
+			assertEquals(((DLInstance) reader.read()).getName(), "p1");
+			assertEquals(((DLInstance) reader.read()).getName(), "p2");
+			assertEquals(((DLInstance) reader.read()).getName(), "p3");
+
+			try {
+				reader.read();
+				fail("Syntax error expected");
+			} catch (ParserException ex) {
+				// expected - p4 is missing a semicolon
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void validReadWithoutRetainingInstances() throws Exception
+	{
+		Path file = createFile(DATA);
+
+		try (HrfDLReader reader = new HrfDLReader(file, new DefaultCore())) {
+
+			reader.setRetainInstances(false);
+
+			assertEquals(((DLInstance) reader.read()).getName(), "p1");
+			assertEquals(((DLInstance) reader.read()).getName(), "p2");
+			assertEquals(reader.readModule().getChildCount(), 0);
+			assertFalse(reader.ready());
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
@@ -0,0 +1,208 @@
+// <editor-fold desc="The MIT License" defaultstate="collapsed">
+/*
+ * The MIT License
+ * 
+ * Copyright 2022 Studio 42 GmbH ( https://www.s42m.de ).
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+//</editor-fold>
+package de.s42.dl.parser;
+
+import de.s42.dl.DLAttribute.AttributeDL;
+import de.s42.dl.DLInstance;
+import de.s42.dl.core.DefaultCore;
+import de.s42.dl.io.binary.BinaryDLReader;
+import de.s42.dl.io.binary.BinaryDLWriter;
+import de.s42.dl.types.DLContainer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.antlr.v4.runtime.CharStreams;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Benjamin Schiller
+ */
+public class BeanParsingProcessorTest
+{
+
+	public static class Item
+	{
+
+		protected String name;
+
+		@AttributeDL(required = true)
+		protected String label;
+
+		protected int count;
+
+		protected double weight;
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public void setName(String name)
+		{
+			this.name = name;
+		}
+
+		public String getLabel()
+		{
+			return label;
+		}
+
+		public void setLabel(String label)
+		{
+			this.label = label;
+		}
+
+		public int getCount()
+		{
+			return count;
+		}
+
+		public void setCount(int count)
+		{
+			this.count = count;
+		}
+
+		public double getWeight()
+		{
+			return weight;
+		}
+
+		public void setWeight(double weight)
+		{
+			this.weight = weight;
+		}
+	}
+
+	public static class Group implements DLContainer<Item>
+	{
+
+		protected String name;
+
+		protected final List<Item> children = new ArrayList<>();
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public void setName(String name)
+		{
+			this.name = name;
+		}
+
+		@Override
+		public void addChild(String name, Item child)
+		{
+			children.add(child);
+		}
+
+		@Override
+		public List<Item> getChildren()
+		{
+			return children;
+		}
+	}
+
+	protected static DefaultCore createCore() throws Exception
+	{
+		DefaultCore core = new DefaultCore();
+		core.defineType(Item.class, "Item");
+		core.defineType(Group.class, "Group");
+		return core;
+	}
+
+	@Test
+	public void validBinaryToBeans() throws Exception
+	{
+		DefaultCore core = createCore();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (BinaryDLWriter writer = new BinaryDLWriter(out, core)) {
+			for (int i = 0; i < 100; ++i) {
+				Item item = new Item();
+				item.setName("item" + i);
+				item.setLabel("Label " + i);
+				item.setCount(i);
+				item.setWeight(i * 0.25);
+				writer.write(item);
+			}
+		}
+
+		BeanParsingProcessor processor = new BeanParsingProcessor(core);
+		try (BinaryDLReader reader = new BinaryDLReader(ByteBuffer.wrap(out.toByteArray()), core)) {
+			reader.readInto(processor);
+		}
+
+		assertEquals(processor.getBeans().size(), 100);
+		Item item = (Item) processor.getBeans().get(42);
+		assertEquals(item.getName(), "item42");
+		assertEquals(item.getLabel(), "Label 42");
+		assertEquals(item.getCount(), 42);
+		assertEquals(item.getWeight(), 10.5);
+	}
+
+	@Test
+	public void validHrfToBeans() throws Exception
+	{
+		DefaultCore core = createCore();
+		BeanParsingProcessor processor = new BeanParsingProcessor(core);
+
+		DLHrfStreamingParsing.parse(core, "validHrfToBeans", CharStreams.fromString(
+			"Group g { Item a { label : A; count : 1; } Item b { label : B; weight : 2.5; } } "
+			+ "Item c { label : C; }"
+		), processor);
+
+		assertEquals(processor.getBeans().size(), 2);
+		Group group = (Group) processor.getBeans().get(0);
+		assertEquals(group.getName(), "g");
+		assertEquals(group.getChildren().size(), 2);
+		assertEquals(group.getChildren().get(1).getWeight(), 2.5);
+		assertEquals(((Item) processor.getLastBean()).getLabel(), "C");
+	}
+
+	@Test(expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = "Error validating bean invalid .*")
+	public void invalidMissingRequiredAttribute() throws Exception
+	{
+		DefaultCore core = createCore();
+
+		// instances created directly are not validated before writing
+		DLInstance instance = core.createInstance(core.getType(Item.class).orElseThrow(), "invalid");
+		instance.set("count", 1);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (BinaryDLWriter writer = new BinaryDLWriter(out, core)) {
+			writer.write(instance);
+		}
+
+		try (BinaryDLReader reader = new BinaryDLReader(ByteBuffer.wrap(out.toByteArray()), core)) {
+			reader.readInto(new BeanParsingProcessor(core));
+		}
+	}
+}
@@ -28,6 +28,12 @@ package de.s42.dl.parser;
 import de.s42.dl.DLCore;
 import de.s42.dl.DLModule;
 import de.s42.dl.core.DefaultCore;
+import de.s42.dl.exceptions.ParserException;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
 import org.testng.annotations.Test;
 import static org.testng.Assert.*;
 
@@ -87,4 +93,72 @@ public class DLHrfParsingTest
 		String sVal = result.getString("s");
 		assertEquals(sVal, "\\n\n\\\n\\\\\n\\\\\\n\n\"");
 	}
+
+	@Test
+	public void validWarmUpDataWithoutLLFallback() throws Exception
+	{
+		DLHrfParsing.warmUp();
+
+		long fallbackCount = DLHrfParsing.getLLFallbackCount();
+
+		DLLexer lexer = new DLLexer(CharStreams.fromString(DLHrfParsing.WARM_UP_DATA));
+		DLHrfParsing.parseData(new CommonTokenStream(lexer), new BaseErrorListener()
+		{
+			@Override
+			public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int position, String message, RecognitionException ex)
+			{
+				fail(message);
+			}
+		});
+
+		assertEquals(DLHrfParsing.getLLFallbackCount(), fallbackCount);
+	}
+
+	@Test
+	public void invalidSyntaxFallsBackToLL() throws Exception
+	{
+		long fallbackCount = DLHrfParsing.getLLFallbackCount();
+
+		try {
+			DLHrfParsing.parse(new DefaultCore(), "invalidSyntaxFallsBackToLL", "type T { Integer x }");
+			fail("Syntax error expected");
+		} catch (ParserException ex) {
+			// expected - the error is reported by the LL stage
+		}
+
+		assertEquals(DLHrfParsing.getLLFallbackCount(), fallbackCount + 1);
+	}
+
+	@Test
+	public void validParseIncremental() throws Exception
+	{
+		String data
+			= "type Label { String text; } // comment\n"
+			+ "type Point contains Label { Integer x; Label marker; } "
+			+ "/* comment */ Point p1 { x : 1 + 2; Label inner { text : \"child\"; } } "
+			+ "Point p2 { marker : Label { text : \"assigned\"; }; }";
+
+		DLModule result = DLHrfParsing.parseIncremental(new DefaultCore(), "validParseIncremental", CharStreams.fromString(data));
+
+		assertEquals(result.getChildCount(), 2);
+		assertEquals(result.getChild(0).getInt("x"), 3);
+		assertEquals(result.getChild(0).getChild(0).getString("text"), "child");
+		assertEquals(result.getChild(1).getInstance("marker").getString("text"), "assigned");
+	}
+
+	@Test
+	public void invalidParseIncrementalKeepsPreviousDeclarations() throws Exception
+	{
+		DLCore core = new DefaultCore();
+
+		try {
+			DLHrfParsing.parseIncremental(core, "invalidParseIncrementalKeepsPreviousDeclarations", CharStreams.fromString("type A; type B { Integer x }"));
+			fail("Syntax error expected");
+		} catch (ParserException ex) {
+			// expected - the error is reported by the LL stage
+		}
+
+		assertTrue(core.hasType("A"));
+		assertFalse(core.hasType("B"));
+	}
 }
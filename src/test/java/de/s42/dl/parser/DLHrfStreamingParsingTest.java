@@ -0,0 +1,149 @@
+// <editor-fold desc="The MIT License" defaultstate="collapsed">
+/*
+ * The MIT License
+ * 
+ * Copyright 2022 Studio 42 GmbH ( https://www.s42m.de ).
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+//</editor-fold>
+package de.s42.dl.parser;
+
+import de.s42.dl.DLCore;
+import de.s42.dl.DLInstance;
+import de.s42.dl.DLModule;
+import de.s42.dl.core.DefaultCore;
+import de.s42.dl.io.binary.BinaryDLReader;
+import de.s42.dl.io.binary.BinaryDLWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.antlr.v4.runtime.CharStreams;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Benjamin Schiller
+ */
+public class DLHrfStreamingParsingTest
+{
+
+	protected final static String DATA
+		= "type Label { String text; } "
+		+ "type Point contains Label { Integer x; Integer y; String label; } "
+		+ "Point p1 { x : 1; y : 2; label : \"first\"; } "
+		+ "Point p2 { x : 3; y : 4; Label inner { text : \"second\"; } } "
+		+ "Point { x : 7; y : 8; }";
+
+	protected static class CountingProcessor extends NoopParsingProcessor
+	{
+
+		protected int instanceCount;
+		protected int depth;
+		protected int maxDepth;
+		protected boolean ended;
+
+		@Override
+		public void beginInstance(int type, String name) throws IOException
+		{
+			beginAnonymousInstance(type);
+		}
+
+		@Override
+		public void beginAnonymousInstance(int type) throws IOException
+		{
+			instanceCount++;
+			depth++;
+			maxDepth = Math.max(maxDepth, depth);
+		}
+
+		@Override
+		public void endInstance() throws IOException
+		{
+			depth--;
+		}
+
+		@Override
+		public void endModule() throws IOException
+		{
+			ended = true;
+		}
+	}
+
+	@Test
+	public void validTranscodeToBinary() throws Exception
+	{
+		DLCore core = new DefaultCore();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		DLModule parsed;
+		try (BinaryDLWriter writer = new BinaryDLWriter(out, core)) {
+			parsed = DLHrfStreamingParsing.parse(core, "validTranscodeToBinary", CharStreams.fromString(DATA), writer);
+		}
+
+		// top level instances are not retained
+		assertEquals(parsed.getChildCount(), 0);
+
+		// the type definition is contained in the stream
+		try (BinaryDLReader reader = new BinaryDLReader(ByteBuffer.wrap(out.toByteArray()), new DefaultCore())) {
+
+			DLModule module = reader.readModule();
+
+			assertEquals(module.getChildCount(), 3);
+			assertEquals(module.getChild(0).getName(), "p1");
+			assertEquals(module.getChild(0).getString("label"), "first");
+			assertEquals(module.getChild(1).getInt("y"), 4);
+			DLInstance inner = module.getChild(1).getChild("inner").orElseThrow();
+			assertEquals(inner.getString("text"), "second");
+			assertNull(module.getChild(2).getName());
+			assertEquals(module.getChild(2).getInt("x"), 7);
+		}
+	}
+
+	@Test
+	public void validEventsToProcessor() throws Exception
+	{
+		CountingProcessor processor = new CountingProcessor();
+
+		DLHrfStreamingParsing.parse(new DefaultCore(), "validEventsToProcessor", CharStreams.fromString(DATA), processor);
+
+		assertEquals(processor.instanceCount, 4);
+		assertEquals(processor.maxDepth, 2);
+		assertEquals(processor.depth, 0);
+		assertTrue(processor.ended);
+	}
+
+	@Test
+	public void validRetainInstances() throws Exception
+	{
+		DLCore core = new DefaultCore();
+		DLModule module = core.createModule("validRetainInstances");
+		CountingProcessor processor = new CountingProcessor();
+
+		try (BinaryDLWriter writer = new BinaryDLWriter(processor, core)) {
+			DLHrfStreamingParsing parsing = new DLHrfStreamingParsing(core, module, writer);
+			parsing.setRetainInstances(true);
+			DLHrfParsing.walk(parsing, module, CharStreams.fromString(DATA));
+		}
+
+		assertEquals(module.getChildCount(), 3);
+		assertEquals(processor.instanceCount, 4);
+	}
+}
@@ -0,0 +1,84 @@
+// <editor-fold desc="The MIT License" defaultstate="collapsed">
+/*
+ * The MIT License
+ * 
+ * Copyright 2022 Studio 42 GmbH ( https://www.s42m.de ).
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+//</editor-fold>
+package de.s42.dl.parser;
+
+import de.s42.dl.DLInstance;
+import de.s42.dl.DLType;
+import de.s42.dl.core.DefaultCore;
+import java.io.IOException;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Benjamin Schiller
+ */
+public class DefaultParsingProcessorTest
+{
+
+	@Test
+	public void validResolvedSymbolsAreCached() throws Exception
+	{
+		DefaultCore core = new DefaultCore();
+		core.parse("DefaultParsingProcessorTest.validResolvedSymbolsAreCached", "type T { Integer x; }");
+
+		DefaultParsingProcessor processor = new DefaultParsingProcessor(core);
+		processor.beginModule();
+		processor.defineSymbol(1, "T");
+		processor.defineSymbol(1000, "x");
+
+		DLType type = processor.getDefinedType(1);
+		assertSame(processor.getDefinedType(1), type);
+		assertSame(processor.getAttribute(type, 1000), type.getAttribute("x").orElseThrow());
+		assertEquals(processor.getSymbolId("x"), 1000);
+
+		processor.beginInstance(1, "t");
+		processor.setIntAttribute(1000, 42);
+		processor.endInstance();
+		processor.endModule();
+
+		DLInstance instance = processor.getLastInstance();
+		assertEquals(instance.getType(), type);
+		assertEquals(instance.getInt("x"), 42);
+	}
+
+	@Test(expectedExceptions = IOException.class)
+	public void invalidUndefinedSymbol() throws Exception
+	{
+		DefaultParsingProcessor processor = new DefaultParsingProcessor(new DefaultCore());
+		processor.beginModule();
+		processor.defineSymbol(1, "T");
+		processor.getSymbol(2);
+	}
+
+	@Test(expectedExceptions = IOException.class)
+	public void invalidSymbolIdTooLarge() throws Exception
+	{
+		DefaultParsingProcessor processor = new DefaultParsingProcessor(new DefaultCore());
+		processor.beginModule();
+		processor.defineSymbol(DefaultParsingProcessor.MAX_SYMBOL_ID + 1, "T");
+	}
+}
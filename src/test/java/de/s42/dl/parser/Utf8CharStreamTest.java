@@ -0,0 +1,181 @@
+// <editor-fold desc="The MIT License" defaultstate="collapsed">
+/*
+ * The MIT License
+ * 
+ * Copyright 2022 Studio 42 GmbH ( https://www.s42m.de ).
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+//</editor-fold>
+package de.s42.dl.parser;
+
+import de.s42.dl.DLModule;
+import de.s42.dl.core.DefaultCore;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.misc.Interval;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Benjamin Schiller
+ */
+public class Utf8CharStreamTest
+{
+
+	protected final static String DATA
+		= "type T { String s; } // Grüße\n"
+		+ "T t { s : \"Straße € 😀 ok\"; }\n"
+		+ "/* " + "ä".repeat(150) + " */ T u { s : \"end\"; }";
+
+	protected static Utf8CharStream createStream(String data)
+	{
+		return new Utf8CharStream(ByteBuffer.wrap(data.getBytes(StandardCharsets.UTF_8)), "test");
+	}
+
+	@Test
+	public void validMatchesCodePointCharStream()
+	{
+		CharStream expected = CharStreams.fromString(DATA);
+		Utf8CharStream actual = createStream(DATA);
+
+		assertFalse(actual.isAscii());
+		assertEquals(actual.size(), expected.size());
+
+		while (expected.LA(1) != CharStream.EOF) {
+			assertEquals(actual.index(), expected.index());
+			assertEquals(actual.LA(1), expected.LA(1));
+			assertEquals(actual.LA(2), expected.LA(2));
+			assertEquals(actual.LA(-1), expected.LA(-1));
+			actual.consume();
+			expected.consume();
+		}
+
+		assertEquals(actual.LA(1), CharStream.EOF);
+
+		// Seek back into the middle of multi byte content
+		for (int index : List.of(170, 3, 60, 0, 129, actual.size())) {
+			actual.seek(index);
+			expected.seek(index);
+			assertEquals(actual.LA(1), expected.LA(1));
+			assertEquals(actual.getText(Interval.of(index - 20, index + 20)), expected.getText(Interval.of(Math.max(0, index - 20), index + 20)));
+		}
+
+		assertEquals(actual.toString(), DATA);
+	}
+
+	@Test
+	public void validTokensMatchCodePointCharStream()
+	{
+		List<? extends Token> expected = new DLLexer(CharStreams.fromString(DATA)).getAllTokens();
+		List<? extends Token> actual = new DLLexer(createStream(DATA)).getAllTokens();
+
+		assertEquals(actual.size(), expected.size());
+
+		for (int i = 0; i < expected.size(); ++i) {
+			assertEquals(actual.get(i).getType(), expected.get(i).getType());
+			assertEquals(actual.get(i).getText(), expected.get(i).getText());
+			assertEquals(actual.get(i).getStartIndex(), expected.get(i).getStartIndex());
+			assertEquals(actual.get(i).getCharPositionInLine(), expected.get(i).getCharPositionInLine());
+		}
+	}
+
+	protected static void assertMatchesStringDecoder(byte[] bytes)
+	{
+		String expected = new String(bytes, StandardCharsets.UTF_8);
+		int[] codePoints = expected.codePoints().toArray();
+		Utf8CharStream actual = new Utf8CharStream(ByteBuffer.wrap(bytes), "test");
+
+		assertEquals(actual.size(), codePoints.length, expected);
+		assertEquals(actual.getText(Interval.of(0, actual.size() - 1)), expected);
+
+		for (int i = 0; i < codePoints.length; ++i) {
+			assertEquals(actual.LA(1), codePoints[i], expected + " at " + i);
+			if (i > 0) {
+				assertEquals(actual.LA(-1), codePoints[i - 1], expected + " at " + i);
+			}
+			actual.consume();
+		}
+
+		assertEquals(actual.LA(1), CharStream.EOF);
+	}
+
+	@Test
+	public void validMalformedSequencesMatchStringDecoder()
+	{
+		// Stray continuation byte after ASCII and a truncated sequence
+		byte[] stray = new byte[]{'a', (byte) 0x80, 'b', (byte) 0xC3, 'c'};
+		assertEquals(new Utf8CharStream(ByteBuffer.wrap(stray), "test").size(), 5);
+		assertMatchesStringDecoder(stray);
+
+		// Overlongs, surrogates, too large code points and sequences cut at the end
+		assertMatchesStringDecoder(new byte[]{(byte) 0xC0, (byte) 0xAF, (byte) 0xE0, (byte) 0x80, (byte) 0xAF, 'x'});
+		assertMatchesStringDecoder(new byte[]{(byte) 0xED, (byte) 0xA0, (byte) 0x80, (byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80});
+		assertMatchesStringDecoder(new byte[]{'o', 'k', (byte) 0xF0, (byte) 0x9F, (byte) 0x98});
+		assertMatchesStringDecoder(new byte[]{(byte) 0xE2, (byte) 0x82, 'y', (byte) 0xBF, (byte) 0xBF, (byte) 0xFF});
+
+		// Random bytes mixed with valid content
+		Random random = new Random(42);
+		byte[] valid = DATA.getBytes(StandardCharsets.UTF_8);
+		for (int n = 0; n < 200; ++n) {
+			byte[] bytes = Arrays.copyOf(valid, 40 + random.nextInt(valid.length - 40));
+			for (int i = random.nextInt(8); i >= 0; --i) {
+				bytes[random.nextInt(bytes.length)] = (byte) random.nextInt(256);
+			}
+			assertMatchesStringDecoder(bytes);
+		}
+	}
+
+	@Test
+	public void validAsciiCharSequence()
+	{
+		Utf8CharStream stream = createStream("T t { s : \"ascii\"; }");
+
+		assertTrue(stream.isAscii());
+		assertEquals(stream.asCharSequence().length(), 20);
+		assertEquals(stream.asCharSequence().charAt(11), 'a');
+		assertEquals(stream.asCharSequence().subSequence(11, 16).toString(), "ascii");
+	}
+
+	@Test
+	public void validParseMappedFile() throws Exception
+	{
+		Path file = Files.createTempFile("Utf8CharStreamTest", ".dl");
+
+		try {
+			Files.writeString(file, DATA, StandardCharsets.UTF_8);
+
+			DLModule module = DLHrfParsing.parse(new DefaultCore(), "validParseMappedFile", file);
+
+			assertEquals(module.getChild("t").orElseThrow().getString("s"), "Straße € 😀 ok");
+			assertEquals(module.getChild("u").orElseThrow().getString("s"), "end");
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
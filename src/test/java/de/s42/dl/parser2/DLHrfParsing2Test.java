@@ -26,8 +26,19 @@
 package de.s42.dl.parser2;
 
 import de.s42.dl.DLCore;
+import de.s42.dl.DLInstance;
 import de.s42.dl.DLModule;
 import de.s42.dl.core.DefaultCore;
+import de.s42.dl.exceptions.DLException;
+import de.s42.dl.exceptions.InvalidAttribute;
+import de.s42.dl.parser.DLHrfParsing;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+import static org.testng.Assert.*;
 import org.testng.annotations.Test;
 
 /**
@@ -36,14 +47,309 @@ import org.testng.annotations.Test;
  */
 public class DLHrfParsing2Test
 {
-	
-	@Test(enabled = false)
-	public void validParse() throws Exception
+
+	protected final static String TYPES
+		= "enum Status { New, Done } "
+		+ "type Label { String text; } "
+		+ "type Point contains Label { Integer x; Long big; Double weight; Boolean visible; String label; Status status; Label marker; } "
+		+ "dynamic type Bag;";
+
+	protected final static String DATA
+		= "// data only module\n"
+		+ "/* parsed without parse tree */\n"
+		+ "Point p1 {\n"
+		+ "\tx : 1; big : 0x10; weight : -1.5e2; visible : true; label : \"first\"; status : Done;\n"
+		+ "\tmarker : Label { text : \"assigned\"; };\n"
+		+ "\tLabel inner { text : \"child\"; }\n"
+		+ "\tLabel;\n"
+		+ "}\n"
+		+ "Point { x : -7; }\n"
+		+ "Bag bag { a : 1, 2, 3,; Integer b : 017; c : FALSE; d : de.s42.Symbol; }\n";
+
+	/**
+	 * Inline fixtures of other tests split into the definitions and the data as {types, data}
+	 */
+	protected final static String[][] FIXTURES = {
+		// DLHrfParsingTest
+		{"", "String s : \"\\n\";"},
+		{"", "String s : \"\\\\\";"},
+		{"type Label { String text; } type Point contains Label { Integer x; Label marker; }",
+			"/* comment */ Point p1 { x : 1 + 2; Label inner { text : \"child\"; } } "
+			+ "Point p2 { marker : Label { text : \"assigned\"; }; }"},
+		{"type Label { String text; } type Point contains Label { Integer x; Label marker; }",
+			"// comment\nPoint p1 { x : 3; Label inner { text : \"child\"; } } "
+			+ "Point p2 { marker : Label { text : \"assigned\"; }; }"},
+		// DLBasicTest
+		{"", ""},
+		{"", "Integer t : 0x35;"},
+		{"", "Integer t : 035;"},
+		{"", "Integer t : 0b1011010;"},
+		// AttributeAssignmentTest
+		{"", "int x : 42; boolean y : true; float z : 3.14; String w : \"Test\";"},
+		{"", "x : 42; y : true; z : 3.14; w : \"Test\";"},
+		{"", "Array x : 42, true, \"Test\";"},
+		{"", "x : 42, true, \"Test\";"},
+		{"", "Array<Integer> x : 42, 43;"},
+		{"type T { Integer x; }", "T t { x : 42; }"},
+		{"type T { Integer x; }", "T t { Integer x : 42; }"},
+		{"type T { Integer x; }", "T t { Long x : 42; }"},
+		{"type T { Array<Integer> x; }", "T t { x : 42, 43; }"},
+		{"type T { Integer x; }", "T t : T t2 @export { x : 42; };"},
+		{"type T { Integer x; }", "Array x : T t1 {}, T t2 {}, T t3 {};"},
+		// DLAttributesTest
+		{"type C { String d; } type A { C e @required; C c @required; } type B { A b @required; }",
+			"B test { b : A a1 { e : C c1 { d : YAY1; }; c : C c2 { d : YAY2; }; }; }"},
+		// DLInstanceTest
+		{"type A;", "A test : TEST;"},
+		{"type A; type B { A test; }", "B test2 { test: A{}; test : A{}; }"},
+		{"type T { Integer x; }", "T t1 {}"},
+		// DeclareTypesTest
+		{"declare type T; type T { int x; }", "T t { x : 42; }"},
+		// DLEnumTest
+		{"enum Status { New, InProgress, Done, Error, } type T { Status status : New; }", "T t; T t2 { status : Done; }"},
+		{"enum Status { New, InProgress, Done, Error } type Test { Status t; }", "Test { t : NotInEnum; }"},
+		// DLTypesContainsTest
+		{"type A; type B contains A;", "B test { A test2; }"},
+		{"type A contains A;", "A test { A test2; }"},
+		{"type A; type A2; type B contains A, A2;", "B test { A2 test2; A test3; A test4; }"},
+		{"type A; type B;", "B test { A test2; }"},
+		{"type A; type B contains A; type C extends B;", "C test { A test2; }"},
+		{"type A; type B contains A; type C extends B; type D extends A;", "C test { D test2; }"},
+		// DLTypesTest
+		{"abstract type T;", "T test;"},
+		{"type A; type B { A value; }", "B test : Hallo;"},
+		{"abstract type A;", "A test : Hallo;"},
+		{"type A;", "A test2 : 1.34;"},
+		// ArrayDLTypeTest
+		{"type A { Array<A> data; }", "A test1; A test2 { data : $test1; }"},
+		{"type A { Array<String> data; }", "A test { data : a, b, c; }"},
+		{"type A { Array<Long> data; }", "A test { data : 1, 2, 3; }"},
+		{"type A { Array<Integer> data; }", "A test { data : 1, 2, 3; }"},
+		// primitive and base types
+		{"", "byte b : 12;"},
+		{"", "short s : 1234;"},
+		{"", "URL url : \"https://www.google.de\";"},
+		{"", "URL url : \"invalid://www.google.de\";"}
+	};
+
+	protected static DLCore createCore() throws DLException
+	{
+		return createCore(TYPES);
+	}
+
+	protected static DLCore createCore(String types) throws DLException
+	{
+		DLCore core = new DefaultCore();
+		DLHrfParsing.parse(core, "types", types);
+		return core;
+	}
+
+	protected static void assertEqualValues(Object actual, Object expected)
+	{
+		if (expected instanceof DLInstance expectedInstance) {
+			assertEqualInstances((DLInstance) actual, expectedInstance);
+		} else if (expected instanceof Object[] expectedArray) {
+
+			Object[] actualArray = (Object[]) actual;
+			assertEquals(actualArray.length, expectedArray.length);
+
+			for (int i = 0; i < expectedArray.length; ++i) {
+				assertEqualValues(actualArray[i], expectedArray[i]);
+			}
+		} else {
+			assertEquals(actual, expected);
+		}
+	}
+
+	protected static void assertEqualInstances(DLInstance actual, DLInstance expected)
+	{
+		assertEquals(actual.getType(), expected.getType());
+		assertEquals(actual.getName(), expected.getName());
+		assertEquals(actual.getAttributes().keySet(), expected.getAttributes().keySet());
+
+		for (Map.Entry<String, Object> entry : expected.getAttributes().entrySet()) {
+			assertEqualValues(actual.get(entry.getKey()), entry.getValue());
+		}
+
+		assertEquals(actual.getChildCount(), expected.getChildCount());
+
+		for (int i = 0; i < expected.getChildCount(); ++i) {
+			assertEqualInstances(actual.getChild(i), expected.getChild(i));
+		}
+	}
+
+	@Test
+	public void validParseDirectEqualsDLHrfParsing() throws Exception
+	{
+		DLModule direct = DLHrfParsing2.parseDirect(createCore(), "data", DATA).orElseThrow();
+		DLModule expected = DLHrfParsing.parse(createCore(), "data", DATA);
+
+		assertEquals(direct.getChildCount(), 3);
+		assertEqualInstances(direct, expected);
+
+		DLInstance p1 = direct.getChild("p1").orElseThrow();
+		assertEquals(p1.getLong("big"), 16L);
+		assertEquals(p1.getDouble("weight"), -150.0);
+		assertEquals(p1.getInstance("marker").getString("text"), "assigned");
+		assertEquals(p1.getChildCount(), 2);
+		assertEquals(direct.getChild("bag").orElseThrow().getInt("b"), 15);
+	}
+
+	@Test
+	public void validFallbackOnTypeDefinition() throws Exception
+	{
+		String data = "type T { Integer x; } T t { x : 1 + 2; }";
+
+		assertTrue(DLHrfParsing2.parseDirect(new DefaultCore(), "fallback", data).isEmpty());
+
+		DLModule module = DLHrfParsing2.parse(new DefaultCore(), "fallback", data);
+
+		assertEquals(module.getChild("t").orElseThrow().getInt("x"), 3);
+	}
+
+	@Test(expectedExceptions = InvalidAttribute.class)
+	public void invalidAttributeReportedByFallback() throws Exception
+	{
+		DLHrfParsing2.parse(createCore(), "invalid", "Point p { unknown : 1; }");
+	}
+
+	/**
+	 * Asserts the data is parsed to the same module or the same error as by DLHrfParsing
+	 *
+	 * @param moduleId
+	 * @param types definitions parsed into the cores before
+	 * @param data
+	 *
+	 * @return true if the data was parsed directly
+	 *
+	 * @throws Exception
+	 */
+	protected static boolean assertEqualToDLHrfParsing(String moduleId, String types, String data) throws Exception
+	{
+		DLModule expected = null;
+		Exception expectedError = null;
+		try {
+			expected = DLHrfParsing.parse(createCore(types), moduleId, data);
+		} catch (Exception ex) {
+			expectedError = ex;
+		}
+
+		Optional<DLModule> direct = DLHrfParsing2.parseDirect(createCore(types), moduleId, data);
+
+		if (direct.isPresent()) {
+			assertNull(expectedError, "Direct parse of " + moduleId + " succeeded but DLHrfParsing failed");
+			assertEqualInstances(direct.orElseThrow(), expected);
+		}
+
+		try {
+			DLModule actual = DLHrfParsing2.parse(createCore(types), moduleId, data);
+			assertNull(expectedError, "Parsing " + moduleId + " succeeded but DLHrfParsing failed");
+			assertEqualInstances(actual, expected);
+		} catch (Exception ex) {
+			if (expectedError == null) {
+				throw ex;
+			}
+			assertEquals(ex.getClass(), expectedError.getClass(), moduleId);
+			assertEquals(ex.getMessage(), expectedError.getMessage(), moduleId);
+		}
+
+		return direct.isPresent();
+	}
+
+	@Test
+	public void validInlineFixturesEqualDLHrfParsing() throws Exception
+	{
+		int parsedDirect = 0;
+
+		for (String[] fixture : FIXTURES) {
+			if (assertEqualToDLHrfParsing(fixture[1], fixture[0], fixture[1])) {
+				parsedDirect++;
+			}
+		}
+
+		// most fixtures are in the direct subset once their definitions are split off
+		assertTrue(parsedDirect > FIXTURES.length / 2, "Parsed directly " + parsedDirect + " of " + FIXTURES.length);
+	}
+
+	@Test
+	public void validDataLeavingSubsetIsNotParsedDirect() throws Exception
+	{
+		StringBuilder data = new StringBuilder();
+		for (int i = 0; i < 100; ++i) {
+			data.append("Point p").append(i).append(" { x : ").append(i).append("; label : \"p\"; }\n");
+		}
+
+		assertTrue(DLHrfParsing2.isDataSubset(data));
+
+		// annotations, references, escaped strings, generics and definitions after the data are found by the scan
+		for (String tail : new String[]{
+			"Point p @export;", "Point p { x : $p1.x; }", "Point p { label : \"a\\\"b\"; }",
+			"Array<Integer> a : 1;", "type Late;", "Point p { x : 1 + 2; }", "/* unclosed"
+		}) {
+			assertFalse(DLHrfParsing2.isDataSubset(data + tail), tail);
+		}
+
+		// but not by text in strings and comments
+		assertTrue(DLHrfParsing2.isDataSubset(data + "// type @ $\nPoint p { label : \"type @ $ <>\"; weight : 1.5e+2; }"));
+	}
+
+	/**
+	 * Every test resource module is parsed to the same module or the same error as by DLHrfParsing
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void validTestResourcesEqualDLHrfParsing() throws Exception
+	{
+		List<Path> files;
+		try (Stream<Path> paths = Files.walk(Path.of(getClass().getResource("/de/s42/dl").toURI()))) {
+			files = paths.filter((path) -> path.toString().endsWith(".dl")).sorted().toList();
+		}
+
+		assertTrue(files.size() > 10);
+
+		int parsedDirect = 0;
+
+		for (Path file : files) {
+			if (assertEqualToDLHrfParsing(file.toString(), "", Files.readString(file))) {
+				parsedDirect++;
+			}
+		}
+
+		// at least data.dl is in the direct subset
+		assertTrue(parsedDirect > 0);
+	}
+
+	@Test
+	public void validFallbackOnModuleStartingWithDefinition() throws Exception
 	{
 		DLCore core = new DefaultCore();
-		String data = "   type T\n   {\n  int x : 5;\n\t\t}";
-		DLModule result = DLHrfParsing2.parse(core, "DLHrfParsing2Test.validParse", data);
-		//assertEquals(result, expResult);
+
+		// the require is not resolved by the direct parser if the module starts with a definition
+		assertTrue(DLHrfParsing2.parseDirect(core, "schema", "require \"unknown.dl\"; type T;").isEmpty());
+	}
+
+	@Test
+	public void invalidRequireReportedByFallback() throws Exception
+	{
+		String data = "require \"unknown.dl\"; Bag b;";
+
+		assertTrue(DLHrfParsing2.parseDirect(createCore(), "require", data).isEmpty());
+
+		Exception expected = null;
+		try {
+			DLHrfParsing.parse(createCore(), "require", data);
+		} catch (DLException ex) {
+			expected = ex;
+		}
+		assertNotNull(expected);
+
+		try {
+			DLHrfParsing2.parse(createCore(), "require", data);
+			fail("Require has to fail");
+		} catch (DLException ex) {
+			assertEquals(ex.getClass(), expected.getClass());
+			assertEquals(ex.getMessage(), expected.getMessage());
+		}
 	}
-	
 }